@@ -62,7 +62,8 @@ public class L2Boost extends GradientBoosting implements Classifier.ScoreEstimat
         return featureList;
     }
 
-    void setFeatureList(FeatureList featureList) {
+    @Override
+    public void setFeatureList(FeatureList featureList) {
         this.featureList = featureList;
     }
 
@@ -118,4 +118,8 @@ public class LKBoost extends GradientBoosting implements Classifier.ProbabilityE
         return labelTranslator;
     }
 
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+
 }
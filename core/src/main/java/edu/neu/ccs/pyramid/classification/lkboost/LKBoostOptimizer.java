@@ -56,7 +56,7 @@ public class LKBoostOptimizer extends GBOptimizer {
 
     @Override
     protected void initializeOthers() {
-        this.probabilityMatrix = new ProbabilityMatrix(dataSet.getNumDataPoints(),numClasses);
+        this.probabilityMatrix = new ProbabilityMatrix(matrixFactory.create(dataSet.getNumDataPoints(),numClasses));
     }
 
     @Override
@@ -94,7 +94,7 @@ public class LKBoostOptimizer extends GBOptimizer {
 
 
     private double gradient(int ensembleIndex, int dataPoint){
-        double prob = probabilityMatrix.getProbabilitiesForData(dataPoint)[ensembleIndex];
+        double prob = probabilityMatrix.getProbability(dataPoint,ensembleIndex);
         return targetDistribution[dataPoint][ensembleIndex] - prob;
     }
 
@@ -123,6 +123,7 @@ public class LKBoostOptimizer extends GBOptimizer {
                         ", scores = "+Arrays.toString(scores));
             }
         }
+        this.probabilityMatrix.getStorage().compact(i);
     }
 
     /**
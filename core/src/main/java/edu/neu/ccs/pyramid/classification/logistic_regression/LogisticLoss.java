@@ -3,6 +3,7 @@ package edu.neu.ccs.pyramid.classification.logistic_regression;
 import edu.neu.ccs.pyramid.dataset.ClfDataSet;
 import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.eval.KLDivergence;
+import edu.neu.ccs.pyramid.optimization.MiniBatchGradient;
 import edu.neu.ccs.pyramid.optimization.Optimizable;
 import edu.neu.ccs.pyramid.util.Vectors;
 import org.apache.commons.lang3.time.StopWatch;
@@ -17,7 +18,7 @@ import java.util.stream.IntStream;
 /**
  * Created by Rainicy on 10/24/15.
  */
-public class LogisticLoss implements Optimizable.ByGradientValue {
+public class LogisticLoss implements Optimizable.ByGradientValue, Optimizable.ByMiniBatchGradient {
     private static final Logger logger = LogManager.getLogger();
     private LogisticRegression logisticRegression;
     private DataSet dataSet;
@@ -372,6 +373,48 @@ public class LogisticLoss implements Optimizable.ByGradientValue {
 
 
 
+    @Override
+    public int getNumDataPoints() {
+        return dataSet.getNumDataPoints();
+    }
+
+    /**
+     * weighted KL divergence over [from, to) and its gradient, computed from the rows only
+     */
+    @Override
+    public double addBatchGradient(int from, int to, MiniBatchGradient gradient) {
+        int numFeatures = logisticRegression.getNumFeatures();
+        double sum = 0;
+        for (int i=from;i<to;i++){
+            if (weights[i]==0){
+                continue;
+            }
+            Vector row = dataSet.getRow(i);
+            double[] logProbs = logisticRegression.predictLogClassProbs(row);
+            sum += weights[i]*KLDivergence.klGivenPLogQ(targetDistributions[i], logProbs);
+            for (int k=0;k<numClasses;k++){
+                double diff = weights[i]*(Math.exp(logProbs[k]) - targetDistributions[i][k]);
+                if (diff==0){
+                    continue;
+                }
+                int start = (numFeatures+1)*k;
+                gradient.add(start, diff);
+                for (Vector.Element element: row.nonZeroes()){
+                    gradient.add(start+1+element.index(), diff*element.get());
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * bias is not regularized
+     */
+    @Override
+    public boolean isRegularized(int parameterIndex) {
+        return logisticRegression.getWeights().getFeatureIndex(parameterIndex)!=-1;
+    }
+
     private static double[] defaultWeights(int numDataPoints){
         double[] weights = new double[numDataPoints];
         Arrays.fill(weights,1.0);
@@ -131,6 +131,14 @@ public class LogisticRegression implements Classifier.ProbabilityEstimator, Clas
         return logProbVector;
     }
 
+    /**
+     * feature-major copy of the weights, scores all classes in one pass over the non-zeros of x
+     * the packed form does not change if the weights change later
+     */
+    public PackedLinearScorer pack(){
+        return PackedLinearScorer.pack(this);
+    }
+
     /**
      * logLikelihood for each datapoint.
      * @param vector
@@ -0,0 +1,127 @@
+package edu.neu.ccs.pyramid.classification.logistic_regression;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import org.apache.mahout.math.Vector;
+
+import java.io.Serializable;
+import java.util.stream.IntStream;
+
+/**
+ * many linear functions w_c.x + b_c packed into one feature-major matrix
+ * row j holds the weights of feature j for all columns, so one pass over the non-zeros of x gives all scores;
+ * rows of features with zero weight in every column are not stored
+ * the weights are copied, later changes of the source models are not seen
+ * each column should be set once
+ */
+public class PackedLinearScorer implements Serializable{
+    private static final long serialVersionUID = 1L;
+    private int numFeatures;
+    private int numColumns;
+    private double[] biases;
+    // numFeatures by numColumns, null for all-zero rows
+    private double[][] rows;
+
+    public PackedLinearScorer(int numFeatures, int numColumns) {
+        this.numFeatures = numFeatures;
+        this.numColumns = numColumns;
+        this.biases = new double[numColumns];
+        this.rows = new double[numFeatures][];
+    }
+
+    /**
+     * one column per class
+     */
+    public static PackedLinearScorer pack(LogisticRegression logisticRegression){
+        int numClasses = logisticRegression.getNumClasses();
+        PackedLinearScorer scorer = new PackedLinearScorer(logisticRegression.getNumFeatures(), numClasses);
+        for (int k=0;k<numClasses;k++){
+            scorer.setColumn(k, logisticRegression, k);
+        }
+        return scorer;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * column = score of class k
+     */
+    public void setColumn(int column, LogisticRegression logisticRegression, int k){
+        Weights weights = logisticRegression.getWeights();
+        biases[column] = weights.getBiasForClass(k);
+        add(column, weights.getWeightsWithoutBiasForClass(k), 1);
+    }
+
+    /**
+     * column = score of class 1 - score of class 0 of a binary logistic regression,
+     * the log odds of class 1
+     */
+    public void setLogOddsColumn(int column, LogisticRegression logisticRegression){
+        if (logisticRegression.getNumClasses()!=2){
+            throw new IllegalArgumentException("logistic regression is not binary");
+        }
+        Weights weights = logisticRegression.getWeights();
+        biases[column] = weights.getBiasForClass(1) - weights.getBiasForClass(0);
+        add(column, weights.getWeightsWithoutBiasForClass(1), 1);
+        add(column, weights.getWeightsWithoutBiasForClass(0), -1);
+    }
+
+    /**
+     * column = a constant, with zero weight for every feature
+     */
+    public void setConstantColumn(int column, double value){
+        biases[column] = value;
+    }
+
+    private void add(int column, Vector weights, double sign){
+        for (Vector.Element element: weights.nonZeroes()){
+            int j = element.index();
+            if (rows[j]==null){
+                rows[j] = new double[numColumns];
+            }
+            rows[j][column] += sign*element.get();
+        }
+    }
+
+    /**
+     * @param scores output, length = number of columns
+     */
+    public void score(Vector vector, double[] scores){
+        System.arraycopy(biases, 0, scores, 0, numColumns);
+        for (Vector.Element element: vector.nonZeroes()){
+            double[] row = rows[element.index()];
+            if (row==null){
+                continue;
+            }
+            double value = element.get();
+            for (int c=0;c<numColumns;c++){
+                scores[c] += value*row[c];
+            }
+        }
+    }
+
+    public double[] score(Vector vector){
+        double[] scores = new double[numColumns];
+        score(vector, scores);
+        return scores;
+    }
+
+    /**
+     * parallel over data points
+     * @param dataSet
+     * @param from inclusive
+     * @param to exclusive
+     * @return scores[i-from][c]
+     */
+    public double[][] score(DataSet dataSet, int from, int to){
+        double[][] scores = new double[to-from][numColumns];
+        IntStream.range(from,to).parallel()
+                .forEach(i -> score(dataSet.getRow(i),scores[i-from]));
+        return scores;
+    }
+}
@@ -4,10 +4,13 @@ import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.DataSetBuilder;
 import edu.neu.ccs.pyramid.dataset.Density;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import edu.neu.ccs.pyramid.dataset.RowSubsetDataSet;
 import edu.neu.ccs.pyramid.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.*;
+
 
 /**
  * select the best BMM from multiple random starts
@@ -39,11 +42,18 @@ public class BMSelector {
     }
 
     public static BMTrainer selectTrainer(DataSet dataSet, int numClusters, int numRuns) {
+        return selectTrainer(dataSet, null, numClusters, numRuns);
+    }
+
+    /**
+     * @param weights weights of data points, null if all 1
+     */
+    public static BMTrainer selectTrainer(DataSet dataSet, double[] weights, int numClusters, int numRuns) {
         BMTrainer best = null;
         double bestObjective = Double.POSITIVE_INFINITY;
         for (int i=0;i<numRuns;i++){
 //            System.out.println("fitting BM model "+i);
-            BMTrainer trainer = new BMTrainer(dataSet,numClusters, i);
+            BMTrainer trainer = new BMTrainer(dataSet, weights, numClusters, i);
             BM bm = trainer.train();
             double objective = trainer.getObjective();
             if (objective < bestObjective){
@@ -56,26 +66,62 @@ public class BMSelector {
 
 
     public static double[][] selectGammas(int numClasses, MultiLabel[] multiLabels, int numClusters) {
-        DataSet dataSet = DataSetBuilder.getBuilder()
-                .numDataPoints(multiLabels.length)
-                .numFeatures(numClasses)
-                // use sparse format to speed up computation
-                .density(Density.SPARSE_RANDOM)
-                .build();
+        return selectGammas(labelMatrix(numClasses, multiLabels), multiLabels, numClusters);
+    }
+
+    /**
+     * EM runs on a view of one row per distinct label set, weighted by the number of its copies,
+     * which gives the same gammas as EM on all rows
+     * @param labelMatrix row i has value 1 for the labels in multiLabels[i]
+     */
+    public static double[][] selectGammas(DataSet labelMatrix, MultiLabel[] multiLabels, int numClusters) {
+        return selectAll(labelMatrix, multiLabels, numClusters).getSecond();
+    }
+
+
+    public static Pair<BM,double[][]> selectAll(int numClasses, MultiLabel[] multiLabels, int numClusters) {
+        return selectAll(labelMatrix(numClasses, multiLabels), multiLabels, numClusters);
+    }
+
+    /**
+     * @param labelMatrix row i has value 1 for the labels in multiLabels[i]
+     * @return the BM and the gammas of all rows
+     */
+    public static Pair<BM,double[][]> selectAll(DataSet labelMatrix, MultiLabel[] multiLabels, int numClusters) {
+        // first row and number of copies of each distinct label set
+        Map<MultiLabel, Integer> distinctIndices = new HashMap<>();
+        int[] distinctOf = new int[multiLabels.length];
+        List<Integer> firstRows = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
         for (int i=0;i<multiLabels.length;i++){
-            MultiLabel multiLabel = multiLabels[i];
-            for (int label: multiLabel.getMatchedLabels()){
-                dataSet.setFeatureValue(i,label,1);
+            Integer d = distinctIndices.get(multiLabels[i]);
+            if (d==null){
+                d = firstRows.size();
+                distinctIndices.put(multiLabels[i], d);
+                firstRows.add(i);
+                counts.add(0);
             }
+            counts.set(d, counts.get(d)+1);
+            distinctOf[i] = d;
+        }
+        DataSet distinctRows = new RowSubsetDataSet(labelMatrix, firstRows.stream().mapToInt(Integer::intValue).toArray());
+        double[] weights = counts.stream().mapToDouble(Integer::doubleValue).toArray();
+        if (logger.isDebugEnabled()){
+            logger.debug("fitting BM on "+weights.length+" distinct label sets of "+multiLabels.length+" data points");
+        }
+        BMTrainer trainer = BMSelector.selectTrainer(distinctRows, weights, numClusters, 10);
+        // rows are updated independently later, so each gets its own copy
+        double[][] gammas = new double[multiLabels.length][];
+        for (int i=0;i<multiLabels.length;i++){
+            gammas[i] = Arrays.copyOf(trainer.gammas[distinctOf[i]], numClusters);
         }
-        BMTrainer trainer = BMSelector.selectTrainer(dataSet, numClusters, 10);
-//        System.out.println("bm = "+trainer.bm);
-//        System.out.println("gamma = "+ Arrays.deepToString(trainer.gammas));
-        return trainer.gammas;
+        Pair<BM,double[][]> pair = new Pair<>();
+        pair.setFirst(trainer.getBm());
+        pair.setSecond(gammas);
+        return pair;
     }
 
-
-    public static Pair<BM,double[][]> selectAll(int numClasses, MultiLabel[] multiLabels, int numClusters) {
+    private static DataSet labelMatrix(int numClasses, MultiLabel[] multiLabels){
         DataSet dataSet = DataSetBuilder.getBuilder()
                 .numDataPoints(multiLabels.length)
                 .numFeatures(numClasses)
@@ -88,13 +134,7 @@ public class BMSelector {
                 dataSet.setFeatureValue(i,label,1);
             }
         }
-        BMTrainer trainer = BMSelector.selectTrainer(dataSet, numClusters, 10);
-//        System.out.println("bm = "+trainer.bm);
-//        System.out.println("gamma = "+ Arrays.deepToString(trainer.gammas));
-        Pair<BM,double[][]> pair = new Pair<>();
-        pair.setFirst(trainer.getBm());
-        pair.setSecond(trainer.gammas);
-        return pair;
+        return dataSet;
     }
 
 }
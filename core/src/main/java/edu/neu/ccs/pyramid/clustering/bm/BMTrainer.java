@@ -11,6 +11,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
+import java.util.Arrays;
 import java.util.stream.IntStream;
 
 /**
@@ -23,14 +24,32 @@ public class BMTrainer {
      * gammas[i][k] = probability of data i in cluster k
      */
     double[][] gammas;
+    /**
+     * weights[i] = number of times data i counts, e.g. the number of copies of a distinct row; null if all 1
+     */
+    double[] weights;
+    double totalWeight;
     int numClusters;
     BM bm;
 //    Terminator terminator;
     int numIterations=200;
 
     public BMTrainer(DataSet dataSet, int numClusters, long randomSeed) {
+        this(dataSet, null, numClusters, randomSeed);
+    }
+
+    /**
+     * EM on weighted data; with integer weights, it is the same as EM on the data with data i repeated weights[i] times
+     * @param weights null if all 1
+     */
+    public BMTrainer(DataSet dataSet, double[] weights, int numClusters, long randomSeed) {
+        if (weights!=null && weights.length!=dataSet.getNumDataPoints()){
+            throw new IllegalArgumentException("weights.length!=dataSet.getNumDataPoints()");
+        }
         this.numClusters = numClusters;
         this.dataSet = dataSet;
+        this.weights = weights;
+        this.totalWeight = weights==null ? dataSet.getNumDataPoints() : Arrays.stream(weights).sum();
         this.gammas = new double[dataSet.getNumDataPoints()][numClusters];
         this.bm = new BM(numClusters,dataSet.getNumFeatures(), randomSeed);
 
@@ -112,7 +131,7 @@ public class BMTrainer {
 
         final double effectiveTotal = IntStream.range(0, dataSet.getNumDataPoints())
                 .parallel()
-                .mapToDouble(i-> gammas[i][k]).sum();
+                .mapToDouble(i-> weight(i)*gammas[i][k]).sum();
 
         IntStream.range(0, dataSet.getNumFeatures()).parallel()
                 .forEach(d-> {
@@ -125,7 +144,7 @@ public class BMTrainer {
                     bm.distributions[k][d] = new BernoulliDistribution(average);
                 });
 
-        bm.mixtureCoefficients[k] = effectiveTotal/dataSet.getNumDataPoints();
+        bm.mixtureCoefficients[k] = effectiveTotal/totalWeight;
         bm.logMixtureCoefficients[k] = Math.log(bm.mixtureCoefficients[k]);
     }
 
@@ -134,11 +153,15 @@ public class BMTrainer {
         double sum = 0;
         for (Vector.Element nonzero: column.nonZeroes()){
             int i = nonzero.index();
-            sum += gammas[i][clusterIndex];
+            sum += weight(i)*gammas[i][clusterIndex];
         }
         return sum;
     }
 
+    private double weight(int i){
+        return weights==null ? 1 : weights[i];
+    }
+
 
     /**
      * update all gammas
@@ -184,7 +207,7 @@ public class BMTrainer {
      * @return
      */
     private double exactObjective(int i){
-        return -1*bm.logProbability(dataSet.getRow(i));
+        return -1*weight(i)*bm.logProbability(dataSet.getRow(i));
     }
 
 
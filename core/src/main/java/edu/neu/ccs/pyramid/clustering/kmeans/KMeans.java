@@ -114,8 +114,9 @@ public class KMeans {
         for (int i=0;i<dataSet.getNumDataPoints();i++){
             if (assignments[i]==k){
                 Vector instance = dataSet.getRow(i);
-                for (int j=0;j<instance.size();j++){
-                    center.set(j, center.get(j)+instance.get(j));
+                for (Vector.Element element: instance.nonZeroes()){
+                    int j = element.index();
+                    center.set(j, center.get(j)+element.get());
                 }
                 count += 1;
             }
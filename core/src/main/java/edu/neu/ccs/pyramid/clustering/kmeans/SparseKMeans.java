@@ -0,0 +1,506 @@
+package edu.neu.ccs.pyramid.clustering.kmeans;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.util.ArgMax;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * k-means for large sparse data sets, e.g. tf-idf documents
+ * only non-zeros of the data are visited:
+ * ||x-c||^2 = ||x||^2 - 2 x.c + ||c||^2, with ||x||^2 and ||c||^2 cached
+ *
+ * full batch (batch size 0):
+ * centers are recomputed in one parallel pass over the non-zeros, each cluster summing up its own members;
+ * assignment keeps Hamerly's bounds per data point, an upper bound of the distance to the assigned center
+ * and a lower bound of the distance to any other center; when the centers move, the bounds are loosened by the moves,
+ * and a data point whose upper bound stays below its lower bound keeps its cluster without any distance computation
+ * the half distance between centers, also used by Hamerly, is not used as it costs K^2 * numFeatures per iteration
+ *
+ * mini-batch (batch size > 0):
+ * each iteration samples a batch, assigns it to the nearest centers and moves each center towards its new members
+ * with learning rate 1/(number of data points the center has seen), see
+ * Sculley, D. "Web-scale k-means clustering." WWW 2010
+ * a center is kept as scale * w, so an update costs the non-zeros of the data point instead of numFeatures;
+ * call assign() afterwards to assign all data points
+ *
+ * centers are dense, numComponents * numFeatures doubles, e.g. 8 GB for 2000 clusters over 500k features;
+ * they give O(non-zeros of x) distances. Only the non-zero positions of each center (its support) are visited
+ * when it is updated, so iterations cost the non-zeros of the data and of the center supports, not numFeatures;
+ * the sums of a full batch update go to a per-thread buffer of numFeatures doubles, reused across iterations
+ */
+public class SparseKMeans {
+    private int numComponents;
+    private DataSet dataSet;
+    private int numFeatures;
+    // 0 means full batch
+    private int batchSize = 0;
+    private Random random = new Random(0);
+
+    // center k = scales[k] * weights[k]
+    private double[][] weights;
+    private double[] scales;
+    // positions of the non-zeros of weights[k] are in supports[k][0, supportSizes[k]), may contain duplicates
+    private int[][] supports;
+    private int[] supportSizes;
+    // ||center||^2
+    private double[] centerSquaredNorms;
+    // number of data points each center has seen in mini-batch mode
+    private long[] centerCounts;
+
+    private double[] squaredNorms;
+    private int[] assignments;
+    // bounds are valid only after a full assignment
+    private double[] upperBounds;
+    private double[] lowerBounds;
+    private boolean boundsValid;
+
+    private LongAdder numDistances = new LongAdder();
+
+    private ThreadLocal<SumBuffer> sumBuffers;
+
+    public SparseKMeans(int numComponents, DataSet dataSet) {
+        this.numComponents = numComponents;
+        this.dataSet = dataSet;
+        this.numFeatures = dataSet.getNumFeatures();
+        this.weights = new double[numComponents][numFeatures];
+        this.scales = new double[numComponents];
+        this.supports = new int[numComponents][0];
+        this.supportSizes = new int[numComponents];
+        this.sumBuffers = ThreadLocal.withInitial(() -> new SumBuffer(numFeatures));
+        this.centerSquaredNorms = new double[numComponents];
+        this.centerCounts = new long[numComponents];
+        int numDataPoints = dataSet.getNumDataPoints();
+        this.squaredNorms = new double[numDataPoints];
+        IntStream.range(0,numDataPoints).parallel()
+                .forEach(i -> squaredNorms[i] = dataSet.getRow(i).getLengthSquared());
+        this.assignments = new int[numDataPoints];
+        this.upperBounds = new double[numDataPoints];
+        this.lowerBounds = new double[numDataPoints];
+    }
+
+    /**
+     * @param batchSize 0 for full batch
+     */
+    public SparseKMeans setBatchSize(int batchSize) {
+        if (batchSize<0){
+            throw new IllegalArgumentException("batch size should be non-negative");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public SparseKMeans setRandomSeed(long randomSeed) {
+        this.random = new Random(randomSeed);
+        return this;
+    }
+
+    public int getNumComponents() {
+        return numComponents;
+    }
+
+    public int[] getAssignments() {
+        return assignments;
+    }
+
+    public Vector[] getCenters() {
+        Vector[] centers = new Vector[numComponents];
+        for (int k=0;k<numComponents;k++){
+            centers[k] = new DenseVector(numFeatures);
+            for (int j=0;j<numFeatures;j++){
+                centers[k].set(j,scales[k]*weights[k][j]);
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * @return number of distances computed so far
+     */
+    public long getNumDistances() {
+        return numDistances.sum();
+    }
+
+    public void initialize(Vector[] centers){
+        if (centers.length!=numComponents){
+            throw new IllegalArgumentException("centers.length!=numComponents");
+        }
+        for (int k=0;k<numComponents;k++){
+            setCenter(k,centers[k]);
+        }
+        Arrays.fill(centerCounts,0);
+        assign();
+    }
+
+    /**
+     * distinct random data points as centers
+     */
+    public void randomInitialize(){
+        int numDataPoints = dataSet.getNumDataPoints();
+        if (numComponents>numDataPoints){
+            throw new IllegalArgumentException("more components than data points");
+        }
+        int[] picked = random.ints(0,numDataPoints).distinct().limit(numComponents).toArray();
+        Vector[] centers = new Vector[numComponents];
+        for (int k=0;k<numComponents;k++){
+            centers[k] = dataSet.getRow(picked[k]);
+        }
+        initialize(centers);
+    }
+
+    public void kmeansPlusPlusInitialize(){
+        KMeansPlusPlus kMeansPlusPlus = new KMeansPlusPlus(numComponents,dataSet);
+        kMeansPlusPlus.initialize(false);
+        initialize(kMeansPlusPlus.getCenters().toArray(new Vector[0]));
+    }
+
+    /**
+     * one Lloyd iteration in full batch mode, or one batch in mini-batch mode
+     * @return number of data points that change clusters in full batch mode, or the batch size in mini-batch mode
+     */
+    public int iterate(){
+        if (batchSize==0){
+            double[] moves = updateCenters();
+            loosenBounds(moves);
+            return assignWithBounds();
+        } else {
+            return iterateMiniBatch();
+        }
+    }
+
+    /**
+     * assign all data points to their nearest centers, and reset the bounds
+     */
+    public void assign(){
+        IntStream.range(0,dataSet.getNumDataPoints()).parallel()
+                .forEach(i -> assignExactly(i,dataSet.getRow(i)));
+        boundsValid = true;
+    }
+
+    public double objective(){
+        return IntStream.range(0,dataSet.getNumDataPoints()).parallel()
+                .mapToDouble(i -> squaredDistance(dataSet.getRow(i),i,assignments[i])).sum();
+    }
+
+    private void setCenter(int k, Vector center){
+        clearCenter(k);
+        for (Vector.Element element: center.nonZeroes()){
+            weights[k][element.index()] = element.get();
+            addToSupport(k,element.index());
+        }
+        scales[k] = 1;
+        centerSquaredNorms[k] = center.getLengthSquared();
+    }
+
+    /**
+     * @return how far each center moves
+     */
+    private double[] updateCenters(){
+        int[][] members = members(assignments);
+        double[] moves = new double[numComponents];
+        IntStream.range(0,numComponents).parallel().forEach(k -> {
+            int[] clusterMembers = members[k];
+            // an empty cluster keeps its center
+            if (clusterMembers.length==0){
+                return;
+            }
+            SumBuffer buffer = sumBuffers.get();
+            for (int i: clusterMembers){
+                for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+                    buffer.add(element.index(),element.get());
+                }
+            }
+            double count = clusterMembers.length;
+            double[] weight = weights[k];
+            double move = 0;
+            double squaredNorm = 0;
+            for (int t=0;t<buffer.numTouched;t++){
+                int j = buffer.touched[t];
+                double value = buffer.sums[j]/count;
+                double diff = value - scales[k]*weight[j];
+                move += diff*diff;
+                squaredNorm += value*value;
+            }
+            // old non-zeros that are not in the new center
+            for (int s=0;s<supportSizes[k];s++){
+                int j = supports[k][s];
+                if (!buffer.marked[j]){
+                    double old = scales[k]*weight[j];
+                    move += old*old;
+                    // duplicates in the support are counted once
+                    weight[j] = 0;
+                }
+            }
+            clearCenter(k);
+            for (int t=0;t<buffer.numTouched;t++){
+                int j = buffer.touched[t];
+                weight[j] = buffer.sums[j]/count;
+                addToSupport(k,j);
+            }
+            buffer.clear();
+            scales[k] = 1;
+            centerSquaredNorms[k] = squaredNorm;
+            moves[k] = Math.sqrt(move);
+        });
+        return moves;
+    }
+
+    /**
+     * set the weights of center k to 0, in the cost of its support
+     */
+    private void clearCenter(int k){
+        for (int s=0;s<supportSizes[k];s++){
+            weights[k][supports[k][s]] = 0;
+        }
+        supportSizes[k] = 0;
+    }
+
+    private void addToSupport(int k, int featureIndex){
+        if (supportSizes[k]==supports[k].length){
+            supports[k] = Arrays.copyOf(supports[k],Math.max(16,supportSizes[k]*2));
+        }
+        supports[k][supportSizes[k]] = featureIndex;
+        supportSizes[k] += 1;
+    }
+
+    /**
+     * sorted, without duplicates
+     */
+    private void compactSupport(int k){
+        int[] support = Arrays.copyOf(supports[k],supportSizes[k]);
+        Arrays.sort(support);
+        int size = 0;
+        for (int s=0;s<support.length;s++){
+            if (s==0 || support[s]!=support[s-1]){
+                support[size] = support[s];
+                size += 1;
+            }
+        }
+        supports[k] = support;
+        supportSizes[k] = size;
+    }
+
+    /**
+     * the data points of each cluster, by counting first
+     * @param clusters cluster of each data point
+     */
+    private int[][] members(int[] clusters){
+        return members(IntStream.range(0,clusters.length).toArray(),clusters);
+    }
+
+    /**
+     * @param dataPoints data points, in the order kept within each cluster
+     * @param clusters cluster of each of the data points
+     */
+    private int[][] members(int[] dataPoints, int[] clusters){
+        int[] sizes = new int[numComponents];
+        for (int cluster: clusters){
+            sizes[cluster] += 1;
+        }
+        int[][] members = new int[numComponents][];
+        for (int k=0;k<numComponents;k++){
+            members[k] = new int[sizes[k]];
+        }
+        Arrays.fill(sizes,0);
+        for (int p=0;p<dataPoints.length;p++){
+            int cluster = clusters[p];
+            members[cluster][sizes[cluster]] = dataPoints[p];
+            sizes[cluster] += 1;
+        }
+        return members;
+    }
+
+    /**
+     * by the triangle inequality, the distance to a center changes at most by the move of the center
+     */
+    private void loosenBounds(double[] moves){
+        if (!boundsValid){
+            return;
+        }
+        int largest = ArgMax.argMax(moves);
+        double largestMove = moves[largest];
+        double secondLargestMove = IntStream.range(0,numComponents).filter(k -> k!=largest)
+                .mapToDouble(k -> moves[k]).max().orElse(0);
+        IntStream.range(0,assignments.length).parallel().forEach(i -> {
+            int assignment = assignments[i];
+            upperBounds[i] += moves[assignment];
+            // the lower bound concerns other centers only
+            if (assignment==largest){
+                lowerBounds[i] -= secondLargestMove;
+            } else {
+                lowerBounds[i] -= largestMove;
+            }
+        });
+    }
+
+    /**
+     * @return number of data points that change clusters
+     */
+    private int assignWithBounds(){
+        if (!boundsValid){
+            int[] previous = Arrays.copyOf(assignments,assignments.length);
+            assign();
+            return (int)IntStream.range(0,assignments.length).filter(i -> assignments[i]!=previous[i]).count();
+        }
+        return IntStream.range(0,dataSet.getNumDataPoints()).parallel().map(i -> {
+            if (upperBounds[i]<=lowerBounds[i]){
+                return 0;
+            }
+            Vector vector = dataSet.getRow(i);
+            // tighten the upper bound
+            upperBounds[i] = distance(vector,i,assignments[i]);
+            if (upperBounds[i]<=lowerBounds[i]){
+                return 0;
+            }
+            int previous = assignments[i];
+            assignExactly(i,vector);
+            return assignments[i]==previous ? 0 : 1;
+        }).sum();
+    }
+
+    /**
+     * compute all distances, and set the bounds to the two smallest distances
+     */
+    private void assignExactly(int i, Vector vector){
+        int best = 0;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        double secondDistance = Double.POSITIVE_INFINITY;
+        for (int k=0;k<numComponents;k++){
+            double distance = distance(vector,i,k);
+            if (distance<bestDistance){
+                secondDistance = bestDistance;
+                bestDistance = distance;
+                best = k;
+            } else if (distance<secondDistance){
+                secondDistance = distance;
+            }
+        }
+        assignments[i] = best;
+        upperBounds[i] = bestDistance;
+        lowerBounds[i] = secondDistance;
+    }
+
+    private int iterateMiniBatch(){
+        int[] batch = random.ints(batchSize,0,dataSet.getNumDataPoints()).toArray();
+        // centers are fixed while the batch is assigned
+        int[] batchAssignments = Arrays.stream(batch).parallel()
+                .map(i -> nearestCenter(dataSet.getRow(i),i)).toArray();
+        int[][] batchMembers = members(batch,batchAssignments);
+        for (int b=0;b<batch.length;b++){
+            assignments[batch[b]] = batchAssignments[b];
+        }
+        IntStream.range(0,numComponents).parallel().forEach(k -> {
+            for (int i: batchMembers[k]){
+                moveCenter(k,dataSet.getRow(i),i);
+            }
+        });
+        boundsValid = false;
+        return batchSize;
+    }
+
+    private int nearestCenter(Vector vector, int i){
+        int best = 0;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int k=0;k<numComponents;k++){
+            double distance = squaredDistance(vector,i,k);
+            if (distance<bestDistance){
+                bestDistance = distance;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * center = (1-eta) * center + eta * x, with eta = 1/count
+     * the (1-eta) scaling goes to the scale of the center, only non-zeros of x touch the weights
+     */
+    private void moveCenter(int k, Vector vector, int i){
+        centerCounts[k] += 1;
+        if (centerCounts[k]==1){
+            setCenter(k,vector);
+            return;
+        }
+        double eta = 1.0/centerCounts[k];
+        double dot = scales[k]*dot(vector,weights[k]);
+        centerSquaredNorms[k] = (1-eta)*(1-eta)*centerSquaredNorms[k] + 2*eta*(1-eta)*dot + eta*eta*squaredNorms[i];
+        scales[k] *= 1-eta;
+        double[] weight = weights[k];
+        double ratio = eta/scales[k];
+        for (Vector.Element element: vector.nonZeroes()){
+            int j = element.index();
+            if (weight[j]==0){
+                addToSupport(k,j);
+            }
+            weight[j] += ratio*element.get();
+        }
+        // scales shrink roughly as 1/count; fold them back before they lose precision
+        if (scales[k]<1E-9){
+            compactSupport(k);
+            for (int s=0;s<supportSizes[k];s++){
+                weight[supports[k][s]] *= scales[k];
+            }
+            scales[k] = 1;
+        }
+    }
+
+    private double dot(Vector vector, double[] weight){
+        double dot = 0;
+        for (Vector.Element element: vector.nonZeroes()){
+            dot += element.get()*weight[element.index()];
+        }
+        return dot;
+    }
+
+    private double squaredDistance(Vector vector, int i, int k){
+        numDistances.increment();
+        double squaredDistance = squaredNorms[i] - 2*scales[k]*dot(vector,weights[k]) + centerSquaredNorms[k];
+        // rounding errors
+        return Math.max(squaredDistance,0);
+    }
+
+    private double distance(Vector vector, int i, int k){
+        return Math.sqrt(squaredDistance(vector,i,k));
+    }
+
+    /**
+     * sums of one cluster by feature, with the touched features listed; all 0 between uses
+     */
+    private static class SumBuffer {
+        private double[] sums;
+        private boolean[] marked;
+        private int[] touched;
+        private int numTouched;
+
+        SumBuffer(int numFeatures) {
+            this.sums = new double[numFeatures];
+            this.marked = new boolean[numFeatures];
+            this.touched = new int[16];
+        }
+
+        void add(int featureIndex, double value){
+            if (!marked[featureIndex]){
+                marked[featureIndex] = true;
+                if (numTouched==touched.length){
+                    touched = Arrays.copyOf(touched,numTouched*2);
+                }
+                touched[numTouched] = featureIndex;
+                numTouched += 1;
+            }
+            sums[featureIndex] += value;
+        }
+
+        void clear(){
+            for (int t=0;t<numTouched;t++){
+                sums[touched[t]] = 0;
+                marked[touched[t]] = false;
+            }
+            numTouched = 0;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.util.Arrays;
+
+/**
+ * SparseVectorView on heap arrays
+ * indices in [begin, end) should be sorted and distinct
+ */
+public class ArraySparseVectorView extends SparseVectorView {
+    private int[] indices;
+    private double[] values;
+
+    public ArraySparseVectorView(int size, int[] indices, double[] values, int begin, int end) {
+        super(size, begin, end);
+        this.indices = indices;
+        this.values = values;
+    }
+
+    @Override
+    protected int indexAt(int p) {
+        return indices[p];
+    }
+
+    @Override
+    protected double valueAt(int p) {
+        return values[p];
+    }
+
+    @Override
+    protected int search(int index) {
+        return Arrays.binarySearch(indices,begin,end,index);
+    }
+}
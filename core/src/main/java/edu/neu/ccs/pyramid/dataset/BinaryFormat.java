@@ -0,0 +1,498 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * single file binary format, loaded with memory mapping
+ *
+ * layout, all numbers big endian, every section starts at a multiple of 8:
+ * header (64 bytes): magic, version, type, numDataPoints, numFeatures, numClasses, missingValue,
+ *                    numNonZeros, numLabelEntries, (padding), metadataOffset
+ * CSR: rowPointers int[numDataPoints+1], columnIndices int[numNonZeros]
+ * CSC: columnPointers int[numFeatures+1], rowIndices int[numNonZeros]
+ * values double[numNonZeros] (CSR order), columnValues double[numNonZeros] (CSC order)
+ * labels: classification int[numDataPoints]; regression double[numDataPoints];
+ *         multi-label labelPointers int[numDataPoints+1], labelIndices int[numLabelEntries]
+ * metadata: feature list, id translator, label translator, each as (long length, java serialized bytes);
+ *           length 0 means absent
+ *
+ * loading only reads the header and maps the sections, so it takes constant time;
+ * labels and metadata are read on first access.
+ * loaded data sets are MappedDataSet, whose features are read-only
+ */
+public class BinaryFormat {
+    static final int MAGIC = 0x50595244;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    static final int TYPE_PLAIN = 0;
+    static final int TYPE_CLF = 1;
+    static final int TYPE_REG = 2;
+    static final int TYPE_MULTI_LABEL = 3;
+
+    static final int FEATURE_LIST = 0;
+    static final int ID_TRANSLATOR = 1;
+    static final int LABEL_TRANSLATOR = 2;
+
+    public static void save(DataSet dataSet, String binaryFile) throws IOException{
+        save(dataSet, new File(binaryFile));
+    }
+
+    public static void save(DataSet dataSet, File binaryFile) throws IOException{
+        int numDataPoints = dataSet.getNumDataPoints();
+        int numFeatures = dataSet.getNumFeatures();
+
+        Header header = new Header();
+        header.numDataPoints = numDataPoints;
+        header.numFeatures = numFeatures;
+        header.missingValue = dataSet.hasMissingValue();
+        if (dataSet instanceof ClfDataSet){
+            header.type = TYPE_CLF;
+            header.numClasses = ((ClfDataSet) dataSet).getNumClasses();
+        } else if (dataSet instanceof RegDataSet){
+            header.type = TYPE_REG;
+        } else if (dataSet instanceof MultiLabelClfDataSet){
+            header.type = TYPE_MULTI_LABEL;
+            header.numClasses = ((MultiLabelClfDataSet) dataSet).getNumClasses();
+            long numLabelEntries = 0;
+            for (MultiLabel multiLabel: ((MultiLabelClfDataSet) dataSet).getMultiLabels()){
+                numLabelEntries += multiLabel.getMatchedLabels().size();
+            }
+            header.numLabelEntries = toInt(numLabelEntries);
+        } else {
+            header.type = TYPE_PLAIN;
+        }
+
+        int[] rowPointers = new int[numDataPoints+1];
+        long numNonZeros = 0;
+        for (int i=0;i<numDataPoints;i++){
+            numNonZeros += countNonZeros(dataSet.getRow(i));
+            rowPointers[i+1] = toInt(numNonZeros);
+        }
+        int[] columnPointers = new int[numFeatures+1];
+        long numColumnNonZeros = 0;
+        for (int j=0;j<numFeatures;j++){
+            numColumnNonZeros += countNonZeros(dataSet.getColumn(j));
+            columnPointers[j+1] = toInt(numColumnNonZeros);
+        }
+        if (numNonZeros!=numColumnNonZeros){
+            throw new RuntimeException("rows and columns of the data set do not agree");
+        }
+        header.numNonZeros = toInt(numNonZeros);
+        header.metadataOffset = header.metadataOffset();
+
+        try (Writer writer = new Writer(binaryFile)){
+            header.write(writer);
+            writer.writeInts(rowPointers);
+            writer.pad();
+            for (int i=0;i<numDataPoints;i++){
+                writer.writeInts(new SortedEntries(dataSet.getRow(i)).indices);
+            }
+            writer.pad();
+            writer.writeInts(columnPointers);
+            writer.pad();
+            for (int j=0;j<numFeatures;j++){
+                writer.writeInts(new SortedEntries(dataSet.getColumn(j)).indices);
+            }
+            writer.pad();
+            for (int i=0;i<numDataPoints;i++){
+                writer.writeDoubles(new SortedEntries(dataSet.getRow(i)).values);
+            }
+            for (int j=0;j<numFeatures;j++){
+                writer.writeDoubles(new SortedEntries(dataSet.getColumn(j)).values);
+            }
+
+            LabelTranslator labelTranslator = null;
+            switch (header.type){
+                case TYPE_CLF:
+                    writer.writeInts(((ClfDataSet) dataSet).getLabels());
+                    labelTranslator = ((ClfDataSet) dataSet).getLabelTranslator();
+                    break;
+                case TYPE_REG:
+                    writer.writeDoubles(((RegDataSet) dataSet).getLabels());
+                    break;
+                case TYPE_MULTI_LABEL:
+                    MultiLabel[] multiLabels = ((MultiLabelClfDataSet) dataSet).getMultiLabels();
+                    int[] labelPointers = new int[numDataPoints+1];
+                    for (int i=0;i<numDataPoints;i++){
+                        labelPointers[i+1] = labelPointers[i] + multiLabels[i].getMatchedLabels().size();
+                    }
+                    writer.writeInts(labelPointers);
+                    for (int i=0;i<numDataPoints;i++){
+                        writer.writeInts(multiLabels[i].getMatchedLabels().stream().mapToInt(Integer::intValue)
+                                .sorted().toArray());
+                    }
+                    labelTranslator = ((MultiLabelClfDataSet) dataSet).getLabelTranslator();
+                    break;
+                default:
+                    break;
+            }
+            writer.pad();
+            if (writer.position!=header.metadataOffset){
+                throw new RuntimeException("wrong section sizes");
+            }
+
+            writer.writeObject(dataSet.getFeatureList());
+            writer.writeObject(dataSet.getIdTranslator());
+            writer.writeObject(labelTranslator);
+        }
+    }
+
+    /**
+     * map the file without reading the feature matrix
+     * @param binaryFile
+     * @return MappedDataSet, MappedClfDataSet, MappedRegDataSet or MappedMLClfDataSet
+     * @throws IOException
+     */
+    public static DataSet load(String binaryFile) throws IOException{
+        return load(new File(binaryFile));
+    }
+
+    public static DataSet load(File binaryFile) throws IOException{
+        Header header = Header.read(binaryFile);
+        switch (header.type){
+            case TYPE_CLF:
+                return new MappedClfDataSet(binaryFile, header);
+            case TYPE_REG:
+                return new MappedRegDataSet(binaryFile, header);
+            case TYPE_MULTI_LABEL:
+                return new MappedMLClfDataSet(binaryFile, header);
+            default:
+                return new MappedDataSet(binaryFile, header);
+        }
+    }
+
+    public static ClfDataSet loadClfDataSet(String binaryFile) throws IOException{
+        DataSet dataSet = load(binaryFile);
+        if (!(dataSet instanceof ClfDataSet)){
+            throw new IllegalArgumentException(binaryFile+" is not a classification data set");
+        }
+        return (ClfDataSet) dataSet;
+    }
+
+    public static RegDataSet loadRegDataSet(String binaryFile) throws IOException{
+        DataSet dataSet = load(binaryFile);
+        if (!(dataSet instanceof RegDataSet)){
+            throw new IllegalArgumentException(binaryFile+" is not a regression data set");
+        }
+        return (RegDataSet) dataSet;
+    }
+
+    public static MultiLabelClfDataSet loadMultiLabelClfDataSet(String binaryFile) throws IOException{
+        DataSet dataSet = load(binaryFile);
+        if (!(dataSet instanceof MultiLabelClfDataSet)){
+            throw new IllegalArgumentException(binaryFile+" is not a multi-label classification data set");
+        }
+        return (MultiLabelClfDataSet) dataSet;
+    }
+
+    //==========converters==========
+
+    public static void convertTRECClfDataSet(String trecFile, String binaryFile) throws IOException, ClassNotFoundException{
+        save(TRECFormat.loadClfDataSet(trecFile, DataSetType.CLF_COMPACT, true), binaryFile);
+    }
+
+    public static void convertTRECRegDataSet(String trecFile, String binaryFile) throws IOException, ClassNotFoundException{
+        save(TRECFormat.loadRegDataSet(trecFile, DataSetType.REG_SPARSE, true), binaryFile);
+    }
+
+    public static void convertTRECMultiLabelClfDataSet(String trecFile, String binaryFile) throws IOException, ClassNotFoundException{
+        save(TRECFormat.loadMultiLabelClfDataSet(trecFile, DataSetType.ML_CLF_COMPACT, true), binaryFile);
+    }
+
+    public static void convertLibSvmClfDataSet(String libSvmFile, int numFeatures, int numClasses,
+                                               String binaryFile) throws IOException, ClassNotFoundException{
+        save(LibSvmFormat.loadClfDataSet(libSvmFile, numFeatures, numClasses, false), binaryFile);
+    }
+
+    public static void convertLibSvmRegDataSet(String libSvmFile, int numFeatures,
+                                               String binaryFile) throws IOException, ClassNotFoundException{
+        save(LibSvmFormat.loadRegDataSet(libSvmFile, numFeatures, false), binaryFile);
+    }
+
+    public static void convertLibSvmMultiLabelClfDataSet(String libSvmFile, int numFeatures, int numClasses,
+                                                         String binaryFile) throws IOException, ClassNotFoundException{
+        save(LibSvmFormat.loadMultiLabelClfDataSet(libSvmFile, false, numFeatures, numClasses), binaryFile);
+    }
+
+    //==========PRIVATE==========
+
+    /**
+     * read one metadata object
+     * @param binaryFile
+     * @param header
+     * @param index FEATURE_LIST, ID_TRANSLATOR or LABEL_TRANSLATOR
+     * @return null if absent
+     */
+    static Object readMetadata(File binaryFile, Header header, int index) throws IOException, ClassNotFoundException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(binaryFile, "r")){
+            long position = header.metadataOffset;
+            randomAccessFile.seek(position);
+            long length = randomAccessFile.readLong();
+            for (int m=0;m<index;m++){
+                position += 8 + length;
+                randomAccessFile.seek(position);
+                length = randomAccessFile.readLong();
+            }
+            if (length==0){
+                return null;
+            }
+            byte[] bytes = new byte[toInt(length)];
+            randomAccessFile.readFully(bytes);
+            try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes))){
+                return objectInputStream.readObject();
+            }
+        }
+    }
+
+    static FileChannel openChannel(File binaryFile) throws IOException {
+        return FileChannel.open(binaryFile.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * stored zeros are skipped
+     */
+    private static int countNonZeros(Vector vector){
+        int count = 0;
+        for (Vector.Element element: vector.nonZeroes()){
+            if (element.get()!=0){
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    private static int toInt(long number){
+        if (number>Integer.MAX_VALUE-8){
+            throw new RuntimeException("too many entries for the binary format: "+number);
+        }
+        return (int) number;
+    }
+
+    private static long align(long position){
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * counts and section offsets
+     */
+    static class Header {
+        int type;
+        int numDataPoints;
+        int numFeatures;
+        int numClasses;
+        boolean missingValue;
+        int numNonZeros;
+        int numLabelEntries;
+        long metadataOffset;
+
+        long rowPointersOffset(){
+            return HEADER_SIZE;
+        }
+
+        long columnIndicesOffset(){
+            return align(rowPointersOffset() + 4L*(numDataPoints+1));
+        }
+
+        long columnPointersOffset(){
+            return align(columnIndicesOffset() + 4L*numNonZeros);
+        }
+
+        long rowIndicesOffset(){
+            return align(columnPointersOffset() + 4L*(numFeatures+1));
+        }
+
+        long valuesOffset(){
+            return align(rowIndicesOffset() + 4L*numNonZeros);
+        }
+
+        long columnValuesOffset(){
+            return valuesOffset() + 8L*numNonZeros;
+        }
+
+        long labelsOffset(){
+            return columnValuesOffset() + 8L*numNonZeros;
+        }
+
+        /**
+         * for multi-label data sets
+         */
+        long labelIndicesOffset(){
+            return labelsOffset() + 4L*(numDataPoints+1);
+        }
+
+        long metadataOffset(){
+            switch (type){
+                case TYPE_CLF:
+                    return align(labelsOffset() + 4L*numDataPoints);
+                case TYPE_REG:
+                    return align(labelsOffset() + 8L*numDataPoints);
+                case TYPE_MULTI_LABEL:
+                    return align(labelIndicesOffset() + 4L*numLabelEntries);
+                default:
+                    return labelsOffset();
+            }
+        }
+
+        private void write(Writer writer) throws IOException {
+            writer.writeInt(MAGIC);
+            writer.writeInt(VERSION);
+            writer.writeInt(type);
+            writer.writeInt(numDataPoints);
+            writer.writeInt(numFeatures);
+            writer.writeInt(numClasses);
+            writer.writeInt(missingValue ? 1 : 0);
+            writer.writeInt(numNonZeros);
+            writer.writeInt(numLabelEntries);
+            writer.writeInt(0);
+            writer.writeLong(metadataOffset);
+            while (writer.position<HEADER_SIZE){
+                writer.writeInt(0);
+            }
+        }
+
+        static Header read(File binaryFile) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            try (FileChannel channel = openChannel(binaryFile)){
+                while (buffer.hasRemaining()){
+                    if (channel.read(buffer)<0){
+                        throw new IOException(binaryFile+" is not a binary data set");
+                    }
+                }
+            }
+            buffer.flip();
+            if (buffer.getInt()!=MAGIC){
+                throw new IOException(binaryFile+" is not a binary data set");
+            }
+            int version = buffer.getInt();
+            if (version!=VERSION){
+                throw new IOException("unsupported binary data set version "+version);
+            }
+            Header header = new Header();
+            header.type = buffer.getInt();
+            header.numDataPoints = buffer.getInt();
+            header.numFeatures = buffer.getInt();
+            header.numClasses = buffer.getInt();
+            header.missingValue = buffer.getInt()==1;
+            header.numNonZeros = buffer.getInt();
+            header.numLabelEntries = buffer.getInt();
+            buffer.getInt();
+            header.metadataOffset = buffer.getLong();
+            return header;
+        }
+    }
+
+    /**
+     * non-zeros of a vector sorted by index
+     */
+    private static class SortedEntries {
+        private int[] indices;
+        private double[] values;
+
+        SortedEntries(Vector vector) {
+            int size = countNonZeros(vector);
+            int[] unsortedIndices = new int[size];
+            double[] unsortedValues = new double[size];
+            boolean sorted = true;
+            int p = 0;
+            for (Vector.Element element: vector.nonZeroes()){
+                if (element.get()==0){
+                    continue;
+                }
+                unsortedIndices[p] = element.index();
+                unsortedValues[p] = element.get();
+                if (p>0 && unsortedIndices[p]<unsortedIndices[p-1]){
+                    sorted = false;
+                }
+                p += 1;
+            }
+            if (sorted){
+                indices = unsortedIndices;
+                values = unsortedValues;
+                return;
+            }
+            // sort by (index, position)
+            long[] keys = new long[size];
+            for (int q=0;q<size;q++){
+                keys[q] = (((long) unsortedIndices[q])<<32) | q;
+            }
+            Arrays.sort(keys);
+            indices = new int[size];
+            values = new double[size];
+            for (int q=0;q<size;q++){
+                indices[q] = (int)(keys[q]>>>32);
+                values[q] = unsortedValues[(int)keys[q]];
+            }
+        }
+    }
+
+    /**
+     * buffered output keeping track of the byte position, which can exceed 2GB
+     */
+    private static class Writer implements Closeable {
+        private DataOutputStream out;
+        private long position;
+
+        Writer(File file) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<20));
+        }
+
+        void writeInt(int v) throws IOException {
+            out.writeInt(v);
+            position += 4;
+        }
+
+        void writeLong(long v) throws IOException {
+            out.writeLong(v);
+            position += 8;
+        }
+
+        void writeInts(int[] array) throws IOException {
+            for (int v: array){
+                writeInt(v);
+            }
+        }
+
+        void writeDoubles(double[] array) throws IOException {
+            for (double v: array){
+                out.writeDouble(v);
+                position += 8;
+            }
+        }
+
+        void pad() throws IOException {
+            while (position!=align(position)){
+                out.writeByte(0);
+                position += 1;
+            }
+        }
+
+        /**
+         * java serialization, prefixed by length
+         */
+        void writeObject(Object object) throws IOException {
+            if (object==null){
+                writeLong(0);
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes)){
+                objectOutputStream.writeObject(object);
+            }
+            writeLong(bytes.size());
+            bytes.writeTo(out);
+            position += bytes.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package edu.neu.ccs.pyramid.dataset;
+
+/**
+ * SparseVectorView on memory mapped arrays
+ */
+class BufferSparseVectorView extends SparseVectorView {
+    private MappedIntArray indices;
+    private MappedDoubleArray values;
+
+    BufferSparseVectorView(int size, MappedIntArray indices, MappedDoubleArray values, int begin, int end) {
+        super(size, begin, end);
+        this.indices = indices;
+        this.values = values;
+    }
+
+    @Override
+    protected int indexAt(int p) {
+        return indices.get(p);
+    }
+
+    @Override
+    protected double valueAt(int p) {
+        return values.get(p);
+    }
+
+    @Override
+    protected int search(int index) {
+        return indices.binarySearch(begin,end,index);
+    }
+}
@@ -7,7 +7,7 @@ package edu.neu.ccs.pyramid.dataset;
 public class ClfDataSetBuilder {
     private int numDataPoints = -1;
     private int numFeatures = -1;
-    private boolean dense = true;
+    private Density density = Density.DENSE;
     private boolean missingValue = false;
     private int numClasses = -1;
 
@@ -26,7 +26,19 @@ public class ClfDataSetBuilder {
     }
 
     public ClfDataSetBuilder dense(boolean dense) {
-        this.dense = dense;
+        if (dense){
+            this.density = Density.DENSE;
+        } else {
+            this.density = Density.SPARSE_RANDOM;
+        }
+        return this;
+    }
+
+    /**
+     * there is no sequential sparse classification data set, SPARSE_SEQUENTIAL gives a random access one
+     */
+    public ClfDataSetBuilder density(Density density) {
+        this.density = density;
         return this;
     }
 
@@ -45,10 +57,16 @@ public class ClfDataSetBuilder {
             throw new IllegalArgumentException("Illegal arguments");
         }
         ClfDataSet dataSet;
-        if (dense){
-            dataSet = new DenseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
-        } else {
-            dataSet = new SparseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+        switch (density){
+            case DENSE:
+                dataSet = new DenseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+                break;
+            case SPARSE_COMPACT:
+                dataSet = new CompactClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+                break;
+            default:
+                dataSet = new SparseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+                break;
         }
         return dataSet;
     }
@@ -0,0 +1,438 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * sparse data set stored in primitive arrays
+ * rows are in CSR form (rowPointers, columnIndices, values);
+ * the CSC mirror used by getColumn is built on the first column access.
+ * each non-zero takes 12 bytes per form, instead of two hash map entries in SparseDataSet
+ *
+ * the data set is filled first, then read:
+ * before the first read, setFeatureValue and setRow only append to per-row buffers,
+ * so different rows can be filled by different threads without a global lock.
+ * the first getRow or getColumn compacts all rows into the CSR arrays.
+ * after that, setFeatureValue on a stored entry updates it in place,
+ * while adding a new non-zero brings the data set back to the buffered form, which is expensive
+ * getRow and getColumn return read-only SparseVectorView without copying;
+ * views obtained before a new non-zero is added are not updated
+ * writers share the read side of a read/write lock; switching between the buffered and the CSR form
+ * takes the write side, so no writer sees a half-switched form
+ */
+public class CompactDataSet extends AbstractDataSet implements DataSet{
+    private static final long serialVersionUID = 1L;
+    private static final int NUM_LOCKS = 64;
+    private static final int INITIAL_ROW_CAPACITY = 4;
+
+    // buffered rows, null once compacted; entries are in the order they are set
+    private int[][] bufferedIndices;
+    private double[][] bufferedValues;
+    private int[] bufferedSizes;
+    // striped locks for buffered rows
+    private transient Object[] locks;
+    // guards the switch between buffered and CSR form
+    private transient ReadWriteLock formLock;
+
+    // CSR, null until compacted
+    private int[] rowPointers;
+    private int[] columnIndices;
+    private double[] values;
+    private volatile boolean compacted;
+
+    // CSC, built from CSR on demand
+    private transient int[] columnPointers;
+    private transient int[] rowIndices;
+    private transient double[] columnValues;
+    private transient volatile boolean columnsBuilt;
+
+    public CompactDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
+        super(numDataPoints, numFeatures, missingValue);
+        initBuffers();
+        initLocks();
+    }
+
+    public CompactDataSet(int numDataPoints, int numFeatures, boolean missingValue, IdTranslator idTranslator) {
+        super(numDataPoints, numFeatures, missingValue, idTranslator);
+        initBuffers();
+        initLocks();
+    }
+
+    @Override
+    public Density density() {
+        return Density.SPARSE_COMPACT;
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public Vector getRow(int dataPointIndex) {
+        if (!compacted){
+            compact();
+        }
+        return new ArraySparseVectorView(numFeatures,columnIndices,values,
+                rowPointers[dataPointIndex],rowPointers[dataPointIndex+1]);
+    }
+
+    @Override
+    public Vector getColumn(int featureIndex) {
+        if (!columnsBuilt){
+            buildColumns();
+        }
+        return new ArraySparseVectorView(numDataPoints,rowIndices,columnValues,
+                columnPointers[featureIndex],columnPointers[featureIndex+1]);
+    }
+
+    /**
+     * no global lock; rows are guarded by striped locks before compaction
+     * @param dataPointIndex
+     * @param featureIndex
+     * @param featureValue
+     */
+    @Override
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+        if (featureIndex<0||featureIndex>=numFeatures){
+            throw new IllegalArgumentException("feature index "+featureIndex+" is out of range");
+        }
+        if ((!this.hasMissingValue()) && Double.isNaN(featureValue)){
+            throw new IllegalArgumentException("missing value is not allowed in this data set");
+        }
+        while (true){
+            formLock.readLock().lock();
+            try {
+                if (!compacted){
+                    synchronized (locks[dataPointIndex%NUM_LOCKS]){
+                        append(dataPointIndex,featureIndex,featureValue);
+                    }
+                    return;
+                }
+                if (updateInPlace(dataPointIndex,featureIndex,featureValue)){
+                    return;
+                }
+                if (featureValue==0){
+                    return;
+                }
+            } finally {
+                formLock.readLock().unlock();
+            }
+            // a new non-zero; the read lock cannot be upgraded, so check the form again after decompacting
+            decompact();
+        }
+    }
+
+    /**
+     * replace a whole row
+     * rows are independent, so a loader can fill different rows from different threads
+     * @param dataPointIndex
+     * @param featureIndices
+     * @param featureValues
+     */
+    public void setRow(int dataPointIndex, int[] featureIndices, double[] featureValues){
+        if (featureIndices.length!=featureValues.length){
+            throw new IllegalArgumentException("featureIndices.length!=featureValues.length");
+        }
+        setRow(dataPointIndex,featureIndices,featureValues,featureIndices.length);
+    }
+
+    /**
+     * replace a whole row with the first length entries of the arrays; the arrays are copied
+     */
+    public void setRow(int dataPointIndex, int[] featureIndices, double[] featureValues, int length){
+        if (length>featureIndices.length||length>featureValues.length){
+            throw new IllegalArgumentException("length is larger than the arrays");
+        }
+        for (int p=0;p<length;p++){
+            if (featureIndices[p]<0||featureIndices[p]>=numFeatures){
+                throw new IllegalArgumentException("feature index "+featureIndices[p]+" is out of range");
+            }
+            if ((!this.hasMissingValue()) && Double.isNaN(featureValues[p])){
+                throw new IllegalArgumentException("missing value is not allowed in this data set");
+            }
+        }
+        int[] indices = Arrays.copyOf(featureIndices,length);
+        double[] entries = Arrays.copyOf(featureValues,length);
+        while (true){
+            formLock.readLock().lock();
+            try {
+                if (!compacted){
+                    synchronized (locks[dataPointIndex%NUM_LOCKS]){
+                        bufferedIndices[dataPointIndex] = indices;
+                        bufferedValues[dataPointIndex] = entries;
+                        bufferedSizes[dataPointIndex] = length;
+                    }
+                    return;
+                }
+            } finally {
+                formLock.readLock().unlock();
+            }
+            decompact();
+        }
+    }
+
+    public void setRow(int dataPointIndex, Vector vector){
+        int numNonZeros = vector.getNumNonZeroElements();
+        int[] featureIndices = new int[numNonZeros];
+        double[] featureValues = new double[numNonZeros];
+        int p = 0;
+        for (Vector.Element element: vector.nonZeroes()){
+            featureIndices[p] = element.index();
+            featureValues[p] = element.get();
+            p += 1;
+        }
+        setRow(dataPointIndex,featureIndices,featureValues);
+    }
+
+    /**
+     * number of stored entries
+     */
+    public long getNumNonZeros(){
+        if (!compacted){
+            compact();
+        }
+        return rowPointers[numDataPoints];
+    }
+
+    /**
+     * move all buffered rows into the CSR arrays
+     * duplicated entries keep the last value, zeros are dropped
+     */
+    public void compact(){
+        formLock.writeLock().lock();
+        try {
+            compactLocked();
+        } finally {
+            formLock.writeLock().unlock();
+        }
+    }
+
+    private void compactLocked(){
+        if (compacted){
+            return;
+        }
+        IntStream.range(0,numDataPoints).parallel().forEach(this::normalizeRow);
+        long numNonZeros = 0;
+        for (int i=0;i<numDataPoints;i++){
+            numNonZeros += bufferedSizes[i];
+        }
+        if (numNonZeros>Integer.MAX_VALUE-8){
+            throw new RuntimeException("too many non-zeros for a compact data set: "+numNonZeros);
+        }
+        int[] pointers = new int[numDataPoints+1];
+        int[] indices = new int[(int)numNonZeros];
+        double[] entries = new double[(int)numNonZeros];
+        for (int i=0;i<numDataPoints;i++){
+            int size = bufferedSizes[i];
+            if (size>0){
+                System.arraycopy(bufferedIndices[i],0,indices,pointers[i],size);
+                System.arraycopy(bufferedValues[i],0,entries,pointers[i],size);
+            }
+            pointers[i+1] = pointers[i] + size;
+            bufferedIndices[i] = null;
+            bufferedValues[i] = null;
+        }
+        this.rowPointers = pointers;
+        this.columnIndices = indices;
+        this.values = entries;
+        this.bufferedIndices = null;
+        this.bufferedValues = null;
+        this.bufferedSizes = null;
+        this.compacted = true;
+    }
+
+    /**
+     * transpose CSR into CSC with a counting pass;
+     * rows are visited in order, so row indices are sorted within each column
+     */
+    private void buildColumns(){
+        formLock.writeLock().lock();
+        try {
+            buildColumnsLocked();
+        } finally {
+            formLock.writeLock().unlock();
+        }
+    }
+
+    private void buildColumnsLocked(){
+        if (columnsBuilt){
+            return;
+        }
+        if (!compacted){
+            compactLocked();
+        }
+        int numNonZeros = rowPointers[numDataPoints];
+        int[] pointers = new int[numFeatures+1];
+        for (int p=0;p<numNonZeros;p++){
+            pointers[columnIndices[p]+1] += 1;
+        }
+        for (int j=0;j<numFeatures;j++){
+            pointers[j+1] += pointers[j];
+        }
+        int[] next = Arrays.copyOf(pointers,numFeatures);
+        int[] indices = new int[numNonZeros];
+        double[] entries = new double[numNonZeros];
+        for (int i=0;i<numDataPoints;i++){
+            for (int p=rowPointers[i];p<rowPointers[i+1];p++){
+                int q = next[columnIndices[p]];
+                indices[q] = i;
+                entries[q] = values[p];
+                next[columnIndices[p]] = q + 1;
+            }
+        }
+        this.columnPointers = pointers;
+        this.rowIndices = indices;
+        this.columnValues = entries;
+        this.columnsBuilt = true;
+    }
+
+    /**
+     * bring CSR rows back into buffers so that new non-zeros can be appended
+     */
+    private void decompact(){
+        formLock.writeLock().lock();
+        try {
+            decompactLocked();
+        } finally {
+            formLock.writeLock().unlock();
+        }
+    }
+
+    private void decompactLocked(){
+        if (!compacted){
+            return;
+        }
+        initBuffers();
+        for (int i=0;i<numDataPoints;i++){
+            int size = rowPointers[i+1] - rowPointers[i];
+            if (size>0){
+                bufferedIndices[i] = Arrays.copyOfRange(columnIndices,rowPointers[i],rowPointers[i+1]);
+                bufferedValues[i] = Arrays.copyOfRange(values,rowPointers[i],rowPointers[i+1]);
+            }
+            bufferedSizes[i] = size;
+        }
+        this.rowPointers = null;
+        this.columnIndices = null;
+        this.values = null;
+        this.columnsBuilt = false;
+        this.columnPointers = null;
+        this.rowIndices = null;
+        this.columnValues = null;
+        this.compacted = false;
+    }
+
+    /**
+     * called with the read lock held
+     * @return false if the entry is not stored
+     */
+    private boolean updateInPlace(int dataPointIndex, int featureIndex, double featureValue){
+        int p = Arrays.binarySearch(columnIndices,rowPointers[dataPointIndex],rowPointers[dataPointIndex+1],featureIndex);
+        if (p<0){
+            return false;
+        }
+        values[p] = featureValue;
+        if (columnsBuilt){
+            int q = Arrays.binarySearch(rowIndices,columnPointers[featureIndex],columnPointers[featureIndex+1],dataPointIndex);
+            columnValues[q] = featureValue;
+        }
+        return true;
+    }
+
+    private void append(int dataPointIndex, int featureIndex, double featureValue){
+        int size = bufferedSizes[dataPointIndex];
+        int[] indices = bufferedIndices[dataPointIndex];
+        if (indices==null){
+            bufferedIndices[dataPointIndex] = new int[INITIAL_ROW_CAPACITY];
+            bufferedValues[dataPointIndex] = new double[INITIAL_ROW_CAPACITY];
+        } else if (size==indices.length){
+            int capacity = indices.length + (indices.length>>1) + 1;
+            bufferedIndices[dataPointIndex] = Arrays.copyOf(indices,capacity);
+            bufferedValues[dataPointIndex] = Arrays.copyOf(bufferedValues[dataPointIndex],capacity);
+        }
+        bufferedIndices[dataPointIndex][size] = featureIndex;
+        bufferedValues[dataPointIndex][size] = featureValue;
+        bufferedSizes[dataPointIndex] = size + 1;
+    }
+
+    /**
+     * sort a buffered row by feature index, keep the last value of duplicated entries, drop zeros,
+     * and trim the buffers
+     */
+    private void normalizeRow(int dataPointIndex){
+        int size = bufferedSizes[dataPointIndex];
+        int[] indices = bufferedIndices[dataPointIndex];
+        double[] entries = bufferedValues[dataPointIndex];
+        if (size==0){
+            bufferedIndices[dataPointIndex] = null;
+            bufferedValues[dataPointIndex] = null;
+            return;
+        }
+        boolean normalized = entries[0]!=0;
+        for (int p=1;p<size && normalized;p++){
+            normalized = indices[p]>indices[p-1] && entries[p]!=0;
+        }
+        if (normalized){
+            if (size<indices.length){
+                bufferedIndices[dataPointIndex] = Arrays.copyOf(indices,size);
+                bufferedValues[dataPointIndex] = Arrays.copyOf(entries,size);
+            }
+            return;
+        }
+        // sort by (feature index, insertion order)
+        long[] keys = new long[size];
+        for (int p=0;p<size;p++){
+            keys[p] = (((long) indices[p])<<32) | p;
+        }
+        Arrays.sort(keys);
+        int[] newIndices = new int[size];
+        double[] newEntries = new double[size];
+        int count = 0;
+        for (int s=0;s<size;s++){
+            int featureIndex = (int)(keys[s]>>>32);
+            boolean last = s==size-1 || (int)(keys[s+1]>>>32)!=featureIndex;
+            if (last){
+                double value = entries[(int)keys[s]];
+                if (value!=0){
+                    newIndices[count] = featureIndex;
+                    newEntries[count] = value;
+                    count += 1;
+                }
+            }
+        }
+        bufferedIndices[dataPointIndex] = Arrays.copyOf(newIndices,count);
+        bufferedValues[dataPointIndex] = Arrays.copyOf(newEntries,count);
+        bufferedSizes[dataPointIndex] = count;
+    }
+
+    private void initBuffers(){
+        this.bufferedIndices = new int[numDataPoints][];
+        this.bufferedValues = new double[numDataPoints][];
+        this.bufferedSizes = new int[numDataPoints];
+    }
+
+    private void initLocks(){
+        this.locks = new Object[NUM_LOCKS];
+        for (int l=0;l<NUM_LOCKS;l++){
+            locks[l] = new Object();
+        }
+        this.formLock = new ReentrantReadWriteLock();
+    }
+
+    private void writeObject(java.io.ObjectOutputStream out)
+            throws IOException {
+        compact();
+        out.defaultWriteObject();
+    }
+
+    private void readObject(java.io.ObjectInputStream in)
+            throws IOException, ClassNotFoundException{
+        in.defaultReadObject();
+        initLocks();
+    }
+}
@@ -54,6 +54,9 @@ public class DataSetBuilder {
             case SPARSE_SEQUENTIAL:
                 dataSet = new SequentialSparseDataSet(numDataPoints,numFeatures,missingValue);
                 break;
+            case SPARSE_COMPACT:
+                dataSet = new CompactDataSet(numDataPoints,numFeatures,missingValue);
+                break;
         }
         return dataSet;
     }
@@ -5,5 +5,6 @@ package edu.neu.ccs.pyramid.dataset;
  */
 public enum DataSetType {
     CLF_DENSE, CLF_SPARSE, REG_DENSE, REG_SPARSE, RANK_DENSE, RANK_SPARSE,
-    ML_CLF_DENSE, ML_CLF_SPARSE, ML_CLF_SEQ_SPARSE
+    ML_CLF_DENSE, ML_CLF_SPARSE, ML_CLF_SEQ_SPARSE,
+    CLF_COMPACT, ML_CLF_COMPACT
 }
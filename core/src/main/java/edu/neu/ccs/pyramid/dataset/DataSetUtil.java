@@ -800,33 +800,30 @@ public class DataSetUtil {
     }
 
     /**
-     *
+     * the result is a read-only view of the rows, use sampleData for a copy
      * @param dataSet
      * @param numFolds
      * @param foldIndices 1 - numfolds
      * @return
      */
     public static ClfDataSet sampleByFold(ClfDataSet dataSet, int numFolds, Set<Integer> foldIndices){
+        return new RowSubsetClfDataSet(dataSet, foldRows(dataSet.getNumDataPoints(), numFolds, foldIndices));
+    }
+
+
+    /**
+     * rows i with i%numFolds+1 in foldIndices
+     */
+    private static int[] foldRows(int numData, int numFolds, Set<Integer> foldIndices){
         for (int fold: foldIndices){
             boolean con = fold>=1 && fold<=numFolds;
             if (! con){
                 throw new IllegalArgumentException("should have fold>=1 && fold<=numFolds");
             }
         }
-
-        int numData = dataSet.getNumDataPoints();
-        List<Integer> keep = new ArrayList<>();
-        for (int i=0;i<numData;i++){
-            int rem = i%numFolds;
-            if (foldIndices.contains(rem+1)){
-                keep.add(i);
-            }
-        }
-
-        return sampleData(dataSet,keep);
+        return IntStream.range(0, numData).filter(i -> foldIndices.contains(i%numFolds+1)).toArray();
     }
 
-
     public static List<ClfDataSet> partitionToBatches(ClfDataSet dataSet, int numBatches){
         List<ClfDataSet> batches = new ArrayList<>();
         for (int i=1;i<=numBatches;i++){
@@ -837,24 +834,11 @@ public class DataSetUtil {
         return batches;
     }
 
+    /**
+     * the result is a read-only view of the rows, use sampleData for a copy
+     */
     public static MultiLabelClfDataSet sampleByFold(MultiLabelClfDataSet dataSet, int numFolds, Set<Integer> foldIndices){
-        for (int fold: foldIndices){
-            boolean con = fold>=1 && fold<=numFolds;
-            if (! con){
-                throw new IllegalArgumentException("should have fold>=1 && fold<=numFolds");
-            }
-        }
-
-        int numData = dataSet.getNumDataPoints();
-        List<Integer> keep = new ArrayList<>();
-        for (int i=0;i<numData;i++){
-            int rem = i%numFolds;
-            if (foldIndices.contains(rem+1)){
-                keep.add(i);
-            }
-        }
-
-        return sampleData(dataSet,keep);
+        return new RowSubsetMLClfDataSet(dataSet, foldRows(dataSet.getNumDataPoints(), numFolds, foldIndices));
     }
 
     public static List<MultiLabelClfDataSet> partitionToBatches(MultiLabelClfDataSet dataSet, int numBatches){
@@ -869,50 +853,26 @@ public class DataSetUtil {
 
 
     /**
-     *
+     * the result is a read-only view of the rows, use sampleData for a copy
      * @param dataSet
      * @param numFolds
      * @param foldIndices 1 - numfolds
      * @return
      */
     public static RegDataSet sampleByFold(RegDataSet dataSet, int numFolds, Set<Integer> foldIndices){
-        for (int fold: foldIndices){
-            boolean con = fold>=1 && fold<=numFolds;
-            if (! con){
-                throw new IllegalArgumentException("should have fold>=1 && fold<=numFolds");
-            }
-        }
-
-        int numData = dataSet.getNumDataPoints();
-        List<Integer> keep = new ArrayList<>();
-        for (int i=0;i<numData;i++){
-            int rem = i%numFolds;
-            if (foldIndices.contains(rem+1)){
-                keep.add(i);
-            }
-        }
-
-        return sampleData(dataSet,keep);
+        return new RowSubsetRegDataSet(dataSet, foldRows(dataSet.getNumDataPoints(), numFolds, foldIndices));
     }
 
+    /**
+     * the result is a read-only view of the rows, use sampleData for a copy
+     */
     public static Pair<DataSet,double[][]> sampleByFold(DataSet dataSet, double[][] targetDistribution, int numFolds, Set<Integer> foldIndices){
-        for (int fold: foldIndices){
-            boolean con = fold>=1 && fold<=numFolds;
-            if (! con){
-                throw new IllegalArgumentException("should have fold>=1 && fold<=numFolds");
-            }
+        int[] rows = foldRows(dataSet.getNumDataPoints(), numFolds, foldIndices);
+        double[][] sampledTargets = new double[rows.length][];
+        for (int i=0;i<rows.length;i++){
+            sampledTargets[i] = Arrays.copyOf(targetDistribution[rows[i]], targetDistribution[rows[i]].length);
         }
-
-        int numData = dataSet.getNumDataPoints();
-        List<Integer> keep = new ArrayList<>();
-        for (int i=0;i<numData;i++){
-            int rem = i%numFolds;
-            if (foldIndices.contains(rem+1)){
-                keep.add(i);
-            }
-        }
-
-        return sampleData(dataSet,targetDistribution, keep);
+        return new Pair<>(new RowSubsetDataSet(dataSet, rows), sampledTargets);
     }
 
 
@@ -51,6 +51,35 @@ class DenseDataSet extends AbstractDataSet implements DataSet{
         this.featureColumns[featureIndex].set(dataPointIndex, featureValue);
     }
 
+    /**
+     * replace a whole row; entries not given are set to 0
+     * cells are plain array slots, so rows can be filled from different threads without locks
+     */
+    public void setRow(int dataPointIndex, int[] featureIndices, double[] featureValues, int length){
+        if (length>featureIndices.length||length>featureValues.length){
+            throw new IllegalArgumentException("length is larger than the arrays");
+        }
+        for (int p=0;p<length;p++){
+            if (featureIndices[p]<0||featureIndices[p]>=numFeatures){
+                throw new IllegalArgumentException("feature index "+featureIndices[p]+" is out of range");
+            }
+            if ((!this.hasMissingValue()) && Double.isNaN(featureValues[p])){
+                throw new IllegalArgumentException("missing value is not allowed in this data set");
+            }
+        }
+        DenseVector row = this.featureRows[dataPointIndex];
+        for (int j=0;j<numFeatures;j++){
+            if (row.getQuick(j)!=0){
+                row.setQuick(j, 0);
+                this.featureColumns[j].setQuick(dataPointIndex, 0);
+            }
+        }
+        for (int p=0;p<length;p++){
+            row.setQuick(featureIndices[p], featureValues[p]);
+            this.featureColumns[featureIndices[p]].setQuick(dataPointIndex, featureValues[p]);
+        }
+    }
+
 
     @Override
     public boolean isDense() {
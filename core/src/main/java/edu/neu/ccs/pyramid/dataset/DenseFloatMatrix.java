@@ -0,0 +1,78 @@
+package edu.neu.ccs.pyramid.dataset;
+
+/**
+ * all cells in flat float arrays, without one array object per row
+ * the cells are addressed by a long index and cut into chunks,
+ * so the matrix can hold more than Integer.MAX_VALUE cells
+ */
+public class DenseFloatMatrix implements FloatMatrix {
+    // 2^27 floats = 512MB per chunk
+    private static final int CHUNK_BITS = 27;
+    private static final long CHUNK_MASK = (1L<<CHUNK_BITS)-1;
+
+    private int numDataPoints;
+    private int numClasses;
+    private Layout layout;
+    private float[][] chunks;
+
+    public DenseFloatMatrix(int numDataPoints, int numClasses, Layout layout) {
+        this.numDataPoints = numDataPoints;
+        this.numClasses = numClasses;
+        this.layout = layout;
+        long numCells = (long)numDataPoints*numClasses;
+        int numChunks = (int)((numCells+CHUNK_MASK)>>>CHUNK_BITS);
+        this.chunks = new float[numChunks][];
+        for (int c=0;c<numChunks;c++){
+            long remaining = numCells - ((long)c<<CHUNK_BITS);
+            chunks[c] = new float[(int)Math.min(remaining, 1L<<CHUNK_BITS)];
+        }
+    }
+
+    public DenseFloatMatrix(int numDataPoints, int numClasses) {
+        this(numDataPoints, numClasses, Layout.ROW_MAJOR);
+    }
+
+    public static Factory factory(Layout layout){
+        return (numDataPoints, numClasses) -> new DenseFloatMatrix(numDataPoints, numClasses, layout);
+    }
+
+    private long index(int dataPointIndex, int classIndex){
+        if (layout==Layout.ROW_MAJOR){
+            return (long)dataPointIndex*numClasses + classIndex;
+        } else {
+            return (long)classIndex*numDataPoints + dataPointIndex;
+        }
+    }
+
+    @Override
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public float get(int dataPointIndex, int classIndex) {
+        long index = index(dataPointIndex, classIndex);
+        return chunks[(int)(index>>>CHUNK_BITS)][(int)(index&CHUNK_MASK)];
+    }
+
+    @Override
+    public void set(int dataPointIndex, int classIndex, float value) {
+        long index = index(dataPointIndex, classIndex);
+        chunks[(int)(index>>>CHUNK_BITS)][(int)(index&CHUNK_MASK)] = value;
+    }
+
+    @Override
+    public void increment(int dataPointIndex, int classIndex, float increment) {
+        long index = index(dataPointIndex, classIndex);
+        chunks[(int)(index>>>CHUNK_BITS)][(int)(index&CHUNK_MASK)] += increment;
+    }
+}
@@ -4,5 +4,5 @@ package edu.neu.ccs.pyramid.dataset;
  * Created by chengli on 3/6/17.
  */
 public enum Density {
-    DENSE, SPARSE_RANDOM, SPARSE_SEQUENTIAL
+    DENSE, SPARSE_RANDOM, SPARSE_SEQUENTIAL, SPARSE_COMPACT
 }
@@ -0,0 +1,58 @@
+package edu.neu.ccs.pyramid.dataset;
+
+/**
+ * num data points * num classes floats, the storage behind ScoreMatrix, ProbabilityMatrix and, if asked for, GradientMatrix
+ * implementations are safe for concurrent writes to different cells
+ */
+public interface FloatMatrix {
+
+    int getNumDataPoints();
+
+    int getNumClasses();
+
+    float get(int dataPointIndex, int classIndex);
+
+    void set(int dataPointIndex, int classIndex, float value);
+
+    void increment(int dataPointIndex, int classIndex, float increment);
+
+    /**
+     * copy the values of a data point into buffer
+     */
+    default void getRow(int dataPointIndex, float[] buffer){
+        for (int k=0;k<getNumClasses();k++){
+            buffer[k] = get(dataPointIndex,k);
+        }
+    }
+
+    /**
+     * copy the values of a class into buffer
+     */
+    default void getColumn(int classIndex, double[] buffer){
+        for (int i=0;i<getNumDataPoints();i++){
+            buffer[i] = get(i,classIndex);
+        }
+    }
+
+    /**
+     * called once all classes of a data point are written;
+     * storages that round small values, like SparseFloatMatrix, drop them here, others keep every cell
+     */
+    default void compact(int dataPointIndex){
+    }
+
+    /**
+     * cell order in flat storage
+     * ROW_MAJOR keeps the classes of a data point together, COLUMN_MAJOR keeps the data points of a class together
+     */
+    enum Layout{
+        ROW_MAJOR, COLUMN_MAJOR
+    }
+
+    /**
+     * used by trainers to create their matrices
+     */
+    interface Factory{
+        FloatMatrix create(int numDataPoints, int numClasses);
+    }
+}
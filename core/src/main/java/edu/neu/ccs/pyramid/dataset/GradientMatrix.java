@@ -6,9 +6,15 @@ package edu.neu.ccs.pyramid.dataset;
 public class GradientMatrix {
     private int numDataPoints;
     private int numClasses;
+    // num classes by num data points, null if the gradients are kept in storage
     private double[][] classData;
+    // float storage, only if the caller asks for it
+    private FloatMatrix storage;
     private Objective objective;
 
+    /**
+     * gradients kept as doubles
+     */
     public GradientMatrix(int numDataPoints, int numClasses, Objective objective) {
         this.numDataPoints = numDataPoints;
         this.numClasses = numClasses;
@@ -16,13 +22,52 @@ public class GradientMatrix {
         this.objective = objective;
     }
 
-    public void setGradient(int dataPointIndex, int classIndex, double gradient){
-        this.classData[classIndex][dataPointIndex] = gradient;
+    /**
+     * gradients kept as floats in the given storage, e.g. off-heap or sparse;
+     * half the memory of the default, at float precision
+     */
+    public GradientMatrix(FloatMatrix storage, Objective objective) {
+        this.numDataPoints = storage.getNumDataPoints();
+        this.numClasses = storage.getNumClasses();
+        this.storage = storage;
+        this.objective = objective;
+    }
+
+    /**
+     * @param factory float storage, or null to keep the gradients as doubles
+     */
+    public static GradientMatrix create(int numDataPoints, int numClasses, Objective objective, FloatMatrix.Factory factory){
+        if (factory==null){
+            return new GradientMatrix(numDataPoints, numClasses, objective);
+        }
+        return new GradientMatrix(factory.create(numDataPoints, numClasses), objective);
     }
 
+    public void setGradient(int dataPointIndex, int classIndex, double gradient){
+        if (storage==null){
+            this.classData[classIndex][dataPointIndex] = gradient;
+        } else {
+            this.storage.set(dataPointIndex, classIndex, (float)gradient);
+        }
+    }
 
+    /**
+     * @return the gradients of the class; a copy if they are kept in float storage
+     */
     public double[] getGradientsForClass(int classIndex){
-        return classData[classIndex];
+        if (storage==null){
+            return classData[classIndex];
+        }
+        double[] gradients = new double[numDataPoints];
+        storage.getColumn(classIndex, gradients);
+        return gradients;
+    }
+
+    /**
+     * @return the float storage, null if the gradients are kept as doubles
+     */
+    public FloatMatrix getStorage() {
+        return storage;
     }
 
     public static enum Objective{
@@ -106,15 +106,12 @@ public class LibSvmFormat {
         }
     }
 
+    /**
+     * features and external labels are read in one parallel pass;
+     * external labels are then mapped to internal labels in sorted order, as in loadLabelTranslator
+     */
     public static ClfDataSet loadClfDataSet(String libSvmFile,
                                             int numFeatures, int numClasses, boolean dense) throws IOException, ClassNotFoundException {
-        LabelTranslator labelTranslator = loadLabelTranslator(libSvmFile);
-        System.out.println(labelTranslator);
-
-        if (labelTranslator.getNumClasses()!=numClasses){
-            throw new RuntimeException("labelTranslator.getNumClasses()!=numClasse");
-        }
-
         int numDataPoints = getNumDataPoints(libSvmFile);
 
         ClfDataSet dataSet = ClfDataSetBuilder.getBuilder()
@@ -123,30 +120,23 @@ public class LibSvmFormat {
                 .numClasses(numClasses)
                 .dense(dense)
                 .build();
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                // sometimes, they use more than one spaces
-                String[] lineSplit = line.split("\\s+");
-                int extIntLabel = (int)Double.parseDouble(lineSplit[0]);
-                String extLabel = ""+extIntLabel;
-                int label = labelTranslator.toIntLabel(extLabel);
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0])-1;
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
+        int[] extLabels = new int[numDataPoints];
+        ParallelTextParser.parse(new File(libSvmFile), (dataIndex, line) -> {
+            extLabels[dataIndex] = (int)line.doubleLabel();
+            line.fill(dataSet, dataIndex, 1);
+        });
+
+        int[] sortedExtLabels = Arrays.stream(extLabels).distinct().sorted().toArray();
+        List<String> labelStrings = Arrays.stream(sortedExtLabels).mapToObj(label -> ""+label)
+                .collect(Collectors.toList());
+        LabelTranslator labelTranslator = new LabelTranslator(labelStrings);
+        System.out.println(labelTranslator);
+
+        if (labelTranslator.getNumClasses()!=numClasses){
+            throw new RuntimeException("labelTranslator.getNumClasses()!=numClasse");
+        }
+        for (int i=0;i<numDataPoints;i++){
+            dataSet.setLabel(i,Arrays.binarySearch(sortedExtLabels,extLabels[i]));
         }
         dataSet.setLabelTranslator(labelTranslator);
         return dataSet;
@@ -162,30 +152,10 @@ public class LibSvmFormat {
                 .numFeatures(numFeatures)
                 .dense(dense)
                 .build();
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                // sometimes, they use more than one spaces
-                String[] lineSplit = line.split("\\s+");
-                double label = Double.parseDouble(lineSplit[0]);
-
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0])-1;
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
-        }
+        ParallelTextParser.parse(new File(libSvmFile), (dataIndex, line) -> {
+            dataSet.setLabel(dataIndex, line.doubleLabel());
+            line.fill(dataSet, dataIndex, 1);
+        });
         return dataSet;
     }
 
@@ -206,16 +176,7 @@ public class LibSvmFormat {
     }
 
     public static int getNumDataPoints(String libSvmFile) throws IOException{
-        int num = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            while ((line=br.readLine())!=null){
-                num += 1;
-            }
-            br.close();
-        }
-        return num;
+        return ParallelTextParser.countLines(new File(libSvmFile));
     }
 
     public static RegDataSet loadRegDataSet(String libSvmFile, DataSetType dataSetType,
@@ -237,31 +198,15 @@ public class LibSvmFormat {
                 .numFeatures(numFeatures).numDataPoints(numDatapoints).
                         density(Density.SPARSE_RANDOM).build();
 
-        try (BufferedReader br = new BufferedReader(new FileReader(libSvmFile));
-        ) {
-            String line = null;
-            int lineCount = 0;
-            while ((line=br.readLine()) != null) {
-                String[] lineInfo = line.split(" ");
-                // adding labels
-                String labels = lineInfo[0];
-                for (String label : labels.split(",")) {
-                    int l = Integer.parseInt(label);
-                    dataSet.addLabel(lineCount, l-1);
-//                    dataSet.addLabel(lineCount, l);
-                }
-                // adding feature
-                for (int i=1; i<lineInfo.length; i++) {
-                    String[] featureValue = lineInfo[i].split(":");
-                    int feature = Integer.parseInt(featureValue[0]);
-                    double value = Double.parseDouble(featureValue[1]);
-                    dataSet.setFeatureValue(lineCount, feature-1, value);
-                }
-                lineCount++;
+        ParallelTextParser.parse(new File(libSvmFile), (dataIndex, line) -> {
+            // labels are 1-based
+            int numLabels = line.parseLabels();
+            int[] labels = line.getLabels();
+            for (int l=0;l<numLabels;l++){
+                dataSet.addLabel(dataIndex, labels[l]-1);
             }
-            br.close();
-        }
-
+            line.fill(dataSet, dataIndex, 1);
+        });
 
         return dataSet;
     }
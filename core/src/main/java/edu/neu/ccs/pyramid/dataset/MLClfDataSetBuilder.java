@@ -64,6 +64,9 @@ public class MLClfDataSetBuilder {
             case SPARSE_SEQUENTIAL:
                 dataSet = new SequentialSparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
                 break;
+            case SPARSE_COMPACT:
+                dataSet = new CompactMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+                break;
         }
 
         return dataSet;
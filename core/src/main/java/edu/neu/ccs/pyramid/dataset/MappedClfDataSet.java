@@ -0,0 +1,74 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * classification data set served from a memory mapped file in BinaryFormat
+ * labels are copied to the heap on first access, and can be changed there
+ */
+public class MappedClfDataSet extends MappedDataSet implements ClfDataSet{
+    private static final long serialVersionUID = 1L;
+    private int numClasses;
+    private transient MappedIntArray mappedLabels;
+    private int[] labels;
+    private LabelTranslator labelTranslator;
+
+    MappedClfDataSet(File file, BinaryFormat.Header header) throws IOException {
+        super(file, header);
+        this.numClasses = header.numClasses;
+    }
+
+    @Override
+    protected void map(FileChannel channel) throws IOException {
+        super.map(channel);
+        mappedLabels = new MappedIntArray(channel, header.labelsOffset(), header.numDataPoints);
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    @Override
+    public synchronized int[] getLabels() {
+        if (labels==null){
+            labels = mappedLabels.toArray();
+        }
+        return labels;
+    }
+
+    @Override
+    public void setLabel(int dataPointIndex, int label) {
+        if (label<0||label>=this.numClasses){
+            throw new IllegalArgumentException("label<0||label>=this.numClasses");
+        }
+        getLabels()[dataPointIndex] = label;
+    }
+
+    @Override
+    public synchronized LabelTranslator getLabelTranslator() {
+        if (labelTranslator==null){
+            labelTranslator = (LabelTranslator) readMetadata(BinaryFormat.LABEL_TRANSLATOR);
+            if (labelTranslator==null){
+                labelTranslator = LabelTranslator.newDefaultLabelTranslator(numClasses);
+            }
+        }
+        return labelTranslator;
+    }
+
+    @Override
+    public synchronized void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("memory mapped classification").append("\n");
+        sb.append("number of classes = ").append(this.numClasses);
+        return sb.toString();
+    }
+}
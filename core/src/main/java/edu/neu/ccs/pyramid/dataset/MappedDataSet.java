@@ -0,0 +1,182 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.Feature;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import org.apache.mahout.math.Vector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * data set served from a memory mapped file in BinaryFormat
+ * getRow and getColumn return read-only SparseVectorView on the mapped CSR and CSC sections;
+ * the operating system pages data in on access, so opening takes constant time and heap usage does not grow
+ * with the file size.
+ * features are read-only; feature list and id translator are read on first access
+ * serialization only keeps the file path and the metadata, the file is mapped again when deserialized
+ */
+public class MappedDataSet implements DataSet{
+    private static final long serialVersionUID = 1L;
+    protected File file;
+    protected transient BinaryFormat.Header header;
+    protected int numDataPoints;
+    protected int numFeatures;
+    protected boolean missingValue;
+
+    private transient MappedIntArray rowPointers;
+    private transient MappedIntArray columnIndices;
+    private transient MappedDoubleArray values;
+    private transient MappedIntArray columnPointers;
+    private transient MappedIntArray rowIndices;
+    private transient MappedDoubleArray columnValues;
+
+    private FeatureList featureList;
+    private IdTranslator idTranslator;
+
+    MappedDataSet(File file, BinaryFormat.Header header) throws IOException {
+        this.file = file;
+        this.header = header;
+        this.numDataPoints = header.numDataPoints;
+        this.numFeatures = header.numFeatures;
+        this.missingValue = header.missingValue;
+        try (FileChannel channel = BinaryFormat.openChannel(file)){
+            map(channel);
+        }
+    }
+
+    /**
+     * map the sections; mappings stay valid after the channel is closed
+     */
+    protected void map(FileChannel channel) throws IOException {
+        rowPointers = new MappedIntArray(channel, header.rowPointersOffset(), numDataPoints+1);
+        columnIndices = new MappedIntArray(channel, header.columnIndicesOffset(), header.numNonZeros);
+        columnPointers = new MappedIntArray(channel, header.columnPointersOffset(), numFeatures+1);
+        rowIndices = new MappedIntArray(channel, header.rowIndicesOffset(), header.numNonZeros);
+        values = new MappedDoubleArray(channel, header.valuesOffset(), header.numNonZeros);
+        columnValues = new MappedDoubleArray(channel, header.columnValuesOffset(), header.numNonZeros);
+    }
+
+    @Override
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    public int getNumNonZeros(){
+        return header.numNonZeros;
+    }
+
+    @Override
+    public Vector getRow(int dataPointIndex) {
+        return new BufferSparseVectorView(numFeatures,columnIndices,values,
+                rowPointers.get(dataPointIndex),rowPointers.get(dataPointIndex+1));
+    }
+
+    @Override
+    public Vector getColumn(int featureIndex) {
+        return new BufferSparseVectorView(numDataPoints,rowIndices,columnValues,
+                columnPointers.get(featureIndex),columnPointers.get(featureIndex+1));
+    }
+
+    @Override
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+        throw new UnsupportedOperationException("features of a memory mapped data set are read-only");
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public boolean hasMissingValue() {
+        return missingValue;
+    }
+
+    /**
+     * derived data sets are built as CompactDataSet
+     */
+    @Override
+    public Density density() {
+        return Density.SPARSE_COMPACT;
+    }
+
+    @Override
+    public synchronized FeatureList getFeatureList() {
+        if (featureList==null){
+            featureList = (FeatureList) readMetadata(BinaryFormat.FEATURE_LIST);
+            if (featureList==null){
+                featureList = new FeatureList();
+                for (int j=0;j<numFeatures;j++){
+                    featureList.add(new Feature());
+                }
+            }
+        }
+        return featureList;
+    }
+
+    @Override
+    public synchronized void setFeatureList(FeatureList featureList) {
+        if (featureList.size()!=this.numFeatures){
+            throw new IllegalArgumentException("featureList.size()!=this.numFeatures");
+        }
+        this.featureList = featureList;
+    }
+
+    @Override
+    public synchronized IdTranslator getIdTranslator() {
+        if (idTranslator==null){
+            idTranslator = (IdTranslator) readMetadata(BinaryFormat.ID_TRANSLATOR);
+            if (idTranslator==null){
+                idTranslator = IdTranslator.newDefaultIdTranslator(numDataPoints);
+            }
+        }
+        return idTranslator;
+    }
+
+    @Override
+    public synchronized void setIdTranslator(IdTranslator idTranslator) {
+        this.idTranslator = idTranslator;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("data set meta information:").append("\n");
+        sb.append("number of data points = ").append(getNumDataPoints()).append("\n");
+        sb.append("number of features = ").append(getNumFeatures()).append("\n");
+        sb.append("has missing value = ").append(missingValue).append("\n");
+        sb.append("file = ").append(file).append("\n");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getMetaInfo();
+    }
+
+    protected Object readMetadata(int index){
+        try {
+            return BinaryFormat.readMetadata(file, header, index);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream in)
+            throws IOException, ClassNotFoundException{
+        in.defaultReadObject();
+        header = BinaryFormat.Header.read(file);
+        try (FileChannel channel = BinaryFormat.openChannel(file)){
+            map(channel);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+/**
+ * read-only dense vector on the elements [begin, begin+size) of a MappedDoubleArray
+ * used for model weights mapped from a file, so that several processes share the same pages
+ */
+public class MappedDenseVector extends SparseVectorView {
+    private MappedDoubleArray values;
+
+    public MappedDenseVector(MappedDoubleArray values, int begin, int size) {
+        super(size, begin, begin+size);
+        if (begin<0 || begin+size>values.length()){
+            throw new IllegalArgumentException("range ["+begin+","+(begin+size)+") is out of the array");
+        }
+        this.values = values;
+    }
+
+    @Override
+    protected int indexAt(int p) {
+        return p - begin;
+    }
+
+    @Override
+    protected double valueAt(int p) {
+        return values.get(p);
+    }
+
+    @Override
+    protected int search(int index) {
+        if (index<0||index>=size){
+            return -1;
+        }
+        return begin + index;
+    }
+
+    @Override
+    public double getQuick(int i) {
+        return values.get(begin+i);
+    }
+
+    /**
+     * only visits the non-zeros of a sparse argument
+     */
+    @Override
+    public double dot(Vector vector) {
+        if (vector.size()!=size){
+            throw new IllegalArgumentException("vector.size()!=this.size()");
+        }
+        if (vector.isDense()){
+            return super.dot(vector);
+        }
+        double sum = 0;
+        for (Vector.Element element: vector.nonZeroes()){
+            sum += values.get(begin+element.index())*element.get();
+        }
+        return sum;
+    }
+
+    @Override
+    public boolean isDense() {
+        return true;
+    }
+
+    @Override
+    public double getLookupCost() {
+        return 1;
+    }
+}
@@ -0,0 +1,49 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * read-only double array backed by a memory mapped region of a file, see MappedIntArray
+ */
+public class MappedDoubleArray {
+    // 2^27 doubles = 1GB per segment
+    private static final int SHIFT = 27;
+    private static final int MASK = (1<<SHIFT)-1;
+    private DoubleBuffer[] segments;
+    private int length;
+
+    /**
+     *
+     * @param channel
+     * @param position byte offset of the first element
+     * @param length number of elements
+     */
+    public MappedDoubleArray(FileChannel channel, long position, int length) throws IOException {
+        this.length = length;
+        int numSegments = (int)(((long)length + MASK) >>> SHIFT);
+        this.segments = new DoubleBuffer[numSegments];
+        for (int s=0;s<numSegments;s++){
+            long first = ((long)s)<<SHIFT;
+            long size = Math.min(length-first, 1L<<SHIFT);
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, position+first*8, size*8).asDoubleBuffer();
+        }
+    }
+
+    public double get(int i){
+        return segments[i>>>SHIFT].get(i&MASK);
+    }
+
+    public int length(){
+        return length;
+    }
+
+    double[] toArray(){
+        double[] array = new double[length];
+        for (int i=0;i<length;i++){
+            array[i] = get(i);
+        }
+        return array;
+    }
+}
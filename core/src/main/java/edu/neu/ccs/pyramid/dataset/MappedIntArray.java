@@ -0,0 +1,71 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * read-only int array backed by a memory mapped region of a file
+ * a single mapping cannot exceed 2GB, so the region is mapped in segments
+ * absolute gets do not change buffer state, so concurrent reads are safe
+ */
+class MappedIntArray {
+    // 2^28 ints = 1GB per segment
+    private static final int SHIFT = 28;
+    private static final int MASK = (1<<SHIFT)-1;
+    private IntBuffer[] segments;
+    private int length;
+
+    /**
+     *
+     * @param channel
+     * @param position byte offset of the first element
+     * @param length number of elements
+     */
+    MappedIntArray(FileChannel channel, long position, int length) throws IOException {
+        this.length = length;
+        int numSegments = (int)(((long)length + MASK) >>> SHIFT);
+        this.segments = new IntBuffer[numSegments];
+        for (int s=0;s<numSegments;s++){
+            long first = ((long)s)<<SHIFT;
+            long size = Math.min(length-first, 1L<<SHIFT);
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, position+first*4, size*4).asIntBuffer();
+        }
+    }
+
+    int get(int i){
+        return segments[i>>>SHIFT].get(i&MASK);
+    }
+
+    int length(){
+        return length;
+    }
+
+    /**
+     * same contract as Arrays.binarySearch on [from, to)
+     */
+    int binarySearch(int from, int to, int key){
+        int low = from;
+        int high = to - 1;
+        while (low<=high){
+            int mid = (low + high) >>> 1;
+            int midValue = get(mid);
+            if (midValue<key){
+                low = mid + 1;
+            } else if (midValue>key){
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    int[] toArray(){
+        int[] array = new int[length];
+        for (int i=0;i<length;i++){
+            array[i] = get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,85 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * multi-label classification data set served from a memory mapped file in BinaryFormat
+ * labels are turned into MultiLabel objects on first access, and can be changed there
+ */
+public class MappedMLClfDataSet extends MappedDataSet implements MultiLabelClfDataSet{
+    private static final long serialVersionUID = 1L;
+    private int numClasses;
+    private transient MappedIntArray labelPointers;
+    private transient MappedIntArray labelIndices;
+    private MultiLabel[] multiLabels;
+    private LabelTranslator labelTranslator;
+
+    MappedMLClfDataSet(File file, BinaryFormat.Header header) throws IOException {
+        super(file, header);
+        this.numClasses = header.numClasses;
+    }
+
+    @Override
+    protected void map(FileChannel channel) throws IOException {
+        super.map(channel);
+        labelPointers = new MappedIntArray(channel, header.labelsOffset(), header.numDataPoints+1);
+        labelIndices = new MappedIntArray(channel, header.labelIndicesOffset(), header.numLabelEntries);
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    @Override
+    public synchronized MultiLabel[] getMultiLabels() {
+        if (multiLabels==null){
+            MultiLabel[] loaded = new MultiLabel[numDataPoints];
+            for (int i=0;i<numDataPoints;i++){
+                loaded[i] = new MultiLabel();
+                for (int p=labelPointers.get(i);p<labelPointers.get(i+1);p++){
+                    loaded[i].addLabel(labelIndices.get(p));
+                }
+            }
+            multiLabels = loaded;
+        }
+        return multiLabels;
+    }
+
+    @Override
+    public void addLabel(int dataPointIndex, int classIndex) {
+        getMultiLabels()[dataPointIndex].addLabel(classIndex);
+    }
+
+    @Override
+    public void setLabels(int dataPointIndex, MultiLabel multiLabel) {
+        getMultiLabels()[dataPointIndex] = multiLabel;
+    }
+
+    @Override
+    public synchronized LabelTranslator getLabelTranslator() {
+        if (labelTranslator==null){
+            labelTranslator = (LabelTranslator) readMetadata(BinaryFormat.LABEL_TRANSLATOR);
+            if (labelTranslator==null){
+                labelTranslator = LabelTranslator.newDefaultLabelTranslator(numClasses);
+            }
+        }
+        return labelTranslator;
+    }
+
+    @Override
+    public synchronized void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("memory mapped multi-label classification").append("\n");
+        sb.append("number of classes = ").append(this.numClasses);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,46 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * regression data set served from a memory mapped file in BinaryFormat
+ * labels are copied to the heap on first access, and can be changed there
+ */
+public class MappedRegDataSet extends MappedDataSet implements RegDataSet{
+    private static final long serialVersionUID = 1L;
+    private transient MappedDoubleArray mappedLabels;
+    private double[] labels;
+
+    MappedRegDataSet(File file, BinaryFormat.Header header) throws IOException {
+        super(file, header);
+    }
+
+    @Override
+    protected void map(FileChannel channel) throws IOException {
+        super.map(channel);
+        mappedLabels = new MappedDoubleArray(channel, header.labelsOffset(), header.numDataPoints);
+    }
+
+    @Override
+    public synchronized double[] getLabels() {
+        if (labels==null){
+            labels = mappedLabels.toArray();
+        }
+        return labels;
+    }
+
+    @Override
+    public void setLabel(int dataPointIndex, double label) {
+        getLabels()[dataPointIndex] = label;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("type = ").append("memory mapped regression");
+        return sb.toString();
+    }
+}
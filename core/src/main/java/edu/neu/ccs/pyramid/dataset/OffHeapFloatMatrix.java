@@ -0,0 +1,85 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * same as DenseFloatMatrix, but the cells live in direct byte buffers outside the java heap,
+ * so large matrices do not count against -Xmx and are not scanned by the garbage collector
+ * the memory is released when the matrix is garbage collected
+ */
+public class OffHeapFloatMatrix implements FloatMatrix {
+    // 2^28 floats = 1GB per buffer, a direct buffer holds at most Integer.MAX_VALUE bytes
+    private static final int CHUNK_BITS = 28;
+    private static final long CHUNK_MASK = (1L<<CHUNK_BITS)-1;
+
+    private int numDataPoints;
+    private int numClasses;
+    private Layout layout;
+    private FloatBuffer[] chunks;
+
+    public OffHeapFloatMatrix(int numDataPoints, int numClasses, Layout layout) {
+        this.numDataPoints = numDataPoints;
+        this.numClasses = numClasses;
+        this.layout = layout;
+        long numCells = (long)numDataPoints*numClasses;
+        int numChunks = (int)((numCells+CHUNK_MASK)>>>CHUNK_BITS);
+        this.chunks = new FloatBuffer[numChunks];
+        for (int c=0;c<numChunks;c++){
+            long remaining = numCells - ((long)c<<CHUNK_BITS);
+            int numFloats = (int)Math.min(remaining, 1L<<CHUNK_BITS);
+            // direct buffers are zeroed
+            chunks[c] = ByteBuffer.allocateDirect(numFloats*Float.BYTES)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+    }
+
+    public static Factory factory(Layout layout){
+        return (numDataPoints, numClasses) -> new OffHeapFloatMatrix(numDataPoints, numClasses, layout);
+    }
+
+    private long index(int dataPointIndex, int classIndex){
+        if (layout==Layout.ROW_MAJOR){
+            return (long)dataPointIndex*numClasses + classIndex;
+        } else {
+            return (long)classIndex*numDataPoints + dataPointIndex;
+        }
+    }
+
+    @Override
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    // absolute get and put do not move the buffer position, so they are safe across threads
+
+    @Override
+    public float get(int dataPointIndex, int classIndex) {
+        long index = index(dataPointIndex, classIndex);
+        return chunks[(int)(index>>>CHUNK_BITS)].get((int)(index&CHUNK_MASK));
+    }
+
+    @Override
+    public void set(int dataPointIndex, int classIndex, float value) {
+        long index = index(dataPointIndex, classIndex);
+        chunks[(int)(index>>>CHUNK_BITS)].put((int)(index&CHUNK_MASK), value);
+    }
+
+    @Override
+    public void increment(int dataPointIndex, int classIndex, float increment) {
+        long index = index(dataPointIndex, classIndex);
+        FloatBuffer chunk = chunks[(int)(index>>>CHUNK_BITS)];
+        int offset = (int)(index&CHUNK_MASK);
+        chunk.put(offset, chunk.get(offset)+increment);
+    }
+}
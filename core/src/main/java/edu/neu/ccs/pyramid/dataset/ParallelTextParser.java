@@ -0,0 +1,406 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * parallel parser for line based sparse formats (TREC feature matrix, LibSVM)
+ * a line is "label index:value index:value ... # comment"
+ *
+ * the file is cut into byte ranges that end on newlines; a first parallel pass counts the lines of each range,
+ * so every range knows the index of its first data point; a second parallel pass parses the ranges.
+ * tokens are parsed in place from the bytes, without String.split or boxed numbers;
+ * each range reuses one Line buffer, which is handed to the consumer for every line.
+ * lines are the same as in BufferedReader.readLine
+ */
+class ParallelTextParser {
+    private static final int CHUNK_SIZE = 1<<23;
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i=1;i<POWERS_OF_TEN.length;i++){
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1]*10;
+        }
+    }
+
+    interface LineConsumer {
+        /**
+         * called from multiple threads, each line index once
+         * @param lineIndex
+         * @param line only valid during the call
+         */
+        void accept(int lineIndex, Line line);
+    }
+
+    static int countLines(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long[] boundaries = boundaries(channel);
+            int[] counts = countLines(channel, boundaries);
+            return Arrays.stream(counts).sum();
+        }
+    }
+
+    /**
+     * @return number of lines
+     */
+    static int parse(File file, LineConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            long[] boundaries = boundaries(channel);
+            int numChunks = boundaries.length-1;
+            int[] counts = countLines(channel, boundaries);
+            int[] firstLines = new int[numChunks+1];
+            for (int c=0;c<numChunks;c++){
+                firstLines[c+1] = firstLines[c] + counts[c];
+            }
+            try {
+                IntStream.range(0,numChunks).parallel().forEach(c -> {
+                    byte[] bytes = read(channel, boundaries[c], boundaries[c+1]);
+                    parseChunk(bytes, firstLines[c], consumer);
+                });
+            } catch (UncheckedIOException e){
+                throw e.getCause();
+            }
+            return firstLines[numChunks];
+        }
+    }
+
+    /**
+     * chunk c is [boundaries[c], boundaries[c+1]); every chunk but the last ends with a newline
+     */
+    private static long[] boundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int maxNumChunks = (int)((size + CHUNK_SIZE - 1)/CHUNK_SIZE);
+        long[] boundaries = new long[maxNumChunks+1];
+        int numChunks = 0;
+        long position = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(1<<16);
+        while (position<size){
+            long end = position + CHUNK_SIZE;
+            if (end>=size){
+                end = size;
+            } else {
+                end = nextLineStart(channel, end-1, size, buffer);
+            }
+            numChunks += 1;
+            if (numChunks==boundaries.length){
+                boundaries = Arrays.copyOf(boundaries, boundaries.length*2);
+            }
+            boundaries[numChunks] = end;
+            position = end;
+        }
+        return Arrays.copyOf(boundaries, numChunks+1);
+    }
+
+    /**
+     * position after the first newline at or after from, or size
+     */
+    private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer buffer) throws IOException {
+        long position = from;
+        while (position<size){
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read<=0){
+                break;
+            }
+            for (int i=0;i<read;i++){
+                if (buffer.get(i)=='\n'){
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static int[] countLines(FileChannel channel, long[] boundaries) throws IOException {
+        int numChunks = boundaries.length-1;
+        int[] counts = new int[numChunks];
+        try {
+            IntStream.range(0,numChunks).parallel().forEach(c -> {
+                byte[] bytes = read(channel, boundaries[c], boundaries[c+1]);
+                int count = 0;
+                for (byte b: bytes){
+                    if (b=='\n'){
+                        count += 1;
+                    }
+                }
+                // last line without newline
+                if (bytes.length>0 && bytes[bytes.length-1]!='\n'){
+                    count += 1;
+                }
+                counts[c] = count;
+            });
+        } catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+        return counts;
+    }
+
+    /**
+     * positional reads, safe for concurrent use of the channel
+     */
+    private static byte[] read(FileChannel channel, long from, long to){
+        byte[] bytes = new byte[(int)(to-from)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining()){
+                int read = channel.read(buffer, from + buffer.position());
+                if (read<0){
+                    throw new IOException("unexpected end of file");
+                }
+            }
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return bytes;
+    }
+
+    private static void parseChunk(byte[] bytes, int firstLine, LineConsumer consumer){
+        Line line = new Line(bytes);
+        int lineIndex = firstLine;
+        int start = 0;
+        while (start<bytes.length){
+            int end = start;
+            while (end<bytes.length && bytes[end]!='\n'){
+                end += 1;
+            }
+            line.parse(start, end);
+            consumer.accept(lineIndex, line);
+            lineIndex += 1;
+            start = end + 1;
+        }
+    }
+
+    private static boolean isSpace(byte b){
+        return b==' '||b=='\t'||b=='\r'||b=='\f'||b==0x0B;
+    }
+
+    /**
+     * same result as Integer.parseInt
+     */
+    static int parseInt(byte[] bytes, int from, int to){
+        int p = from;
+        boolean negative = false;
+        if (p<to && (bytes[p]=='-'||bytes[p]=='+')){
+            negative = bytes[p]=='-';
+            p += 1;
+        }
+        // at most 9 digits cannot overflow
+        if (p==to || to-p>9){
+            return Integer.parseInt(new String(bytes, from, to-from, StandardCharsets.US_ASCII));
+        }
+        int value = 0;
+        for (;p<to;p++){
+            int digit = bytes[p]-'0';
+            if (digit<0||digit>9){
+                return Integer.parseInt(new String(bytes, from, to-from, StandardCharsets.US_ASCII));
+            }
+            value = value*10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * same result as Double.parseDouble
+     * decimals with at most 15 significant digits and small exponents are converted exactly
+     * with one multiplication or division (both operands are exact doubles);
+     * other inputs fall back to Double.parseDouble
+     */
+    static double parseDouble(byte[] bytes, int from, int to){
+        int p = from;
+        boolean negative = false;
+        if (p<to && (bytes[p]=='-'||bytes[p]=='+')){
+            negative = bytes[p]=='-';
+            p += 1;
+        }
+        long mantissa = 0;
+        int numSignificant = 0;
+        int exponent = 0;
+        int numDigits = 0;
+        boolean dot = false;
+        for (;p<to;p++){
+            byte b = bytes[p];
+            if (b>='0' && b<='9'){
+                numDigits += 1;
+                if (mantissa!=0 || b!='0'){
+                    numSignificant += 1;
+                    if (numSignificant>15){
+                        return fallback(bytes, from, to);
+                    }
+                    mantissa = mantissa*10 + (b-'0');
+                }
+                if (dot){
+                    exponent -= 1;
+                }
+            } else if (b=='.' && !dot){
+                dot = true;
+            } else if ((b=='e'||b=='E') && numDigits>0){
+                p += 1;
+                if (p==to || to-p>4){
+                    return fallback(bytes, from, to);
+                }
+                exponent += parseInt(bytes, p, to);
+                p = to;
+                break;
+            } else {
+                return fallback(bytes, from, to);
+            }
+        }
+        if (numDigits==0){
+            return fallback(bytes, from, to);
+        }
+        double value;
+        if (mantissa==0){
+            value = 0;
+        } else if (exponent>=0 && exponent<POWERS_OF_TEN.length){
+            value = mantissa*POWERS_OF_TEN[exponent];
+        } else if (exponent<0 && -exponent<POWERS_OF_TEN.length){
+            value = mantissa/POWERS_OF_TEN[-exponent];
+        } else {
+            return fallback(bytes, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double fallback(byte[] bytes, int from, int to){
+        return Double.parseDouble(new String(bytes, from, to-from, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * one parsed line; buffers grow as needed and are reused across lines
+     */
+    static class Line {
+        private byte[] bytes;
+        private int labelStart;
+        private int labelEnd;
+        private int numEntries;
+        private int[] indices = new int[16];
+        private double[] values = new double[16];
+        private int numLabels;
+        private int[] labels = new int[4];
+
+        private Line(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private void parse(int start, int end){
+            numEntries = 0;
+            int p = start;
+            while (p<end && isSpace(bytes[p])){
+                p += 1;
+            }
+            labelStart = p;
+            while (p<end && !isSpace(bytes[p])){
+                p += 1;
+            }
+            labelEnd = p;
+            while (true){
+                while (p<end && isSpace(bytes[p])){
+                    p += 1;
+                }
+                if (p==end || bytes[p]=='#'){
+                    break;
+                }
+                int tokenStart = p;
+                int colon = -1;
+                while (p<end && !isSpace(bytes[p])){
+                    if (bytes[p]==':' && colon<0){
+                        colon = p;
+                    }
+                    p += 1;
+                }
+                if (colon<0){
+                    throw new NumberFormatException("missing ':' in "
+                            +new String(bytes, tokenStart, p-tokenStart, StandardCharsets.US_ASCII));
+                }
+                if (numEntries==indices.length){
+                    indices = Arrays.copyOf(indices, indices.length*2);
+                    values = Arrays.copyOf(values, values.length*2);
+                }
+                indices[numEntries] = parseInt(bytes, tokenStart, colon);
+                values[numEntries] = parseDouble(bytes, colon+1, p);
+                numEntries += 1;
+            }
+        }
+
+        int intLabel(){
+            return parseInt(bytes, labelStart, labelEnd);
+        }
+
+        double doubleLabel(){
+            return parseDouble(bytes, labelStart, labelEnd);
+        }
+
+        /**
+         * comma separated integer labels, empty ones are skipped
+         * @return number of labels, which are in getLabels()
+         */
+        int parseLabels(){
+            numLabels = 0;
+            int p = labelStart;
+            while (p<labelEnd){
+                int tokenEnd = p;
+                while (tokenEnd<labelEnd && bytes[tokenEnd]!=','){
+                    tokenEnd += 1;
+                }
+                if (tokenEnd>p){
+                    if (numLabels==labels.length){
+                        labels = Arrays.copyOf(labels, labels.length*2);
+                    }
+                    labels[numLabels] = parseInt(bytes, p, tokenEnd);
+                    numLabels += 1;
+                }
+                p = tokenEnd + 1;
+            }
+            return numLabels;
+        }
+
+        int[] getLabels() {
+            return labels;
+        }
+
+        int getNumEntries() {
+            return numEntries;
+        }
+
+        int getIndex(int entry){
+            return indices[entry];
+        }
+
+        double getValue(int entry){
+            return values[entry];
+        }
+
+        /**
+         * write the features of the line as row dataIndex
+         * compact, sparse and dense data sets take the whole row at once, so no global lock is taken per entry;
+         * other data sets go through setFeatureValue
+         * @param indexBase 1 for LibSVM, 0 for TREC
+         */
+        void fill(DataSet dataSet, int dataIndex, int indexBase){
+            if (indexBase!=0){
+                for (int e=0;e<numEntries;e++){
+                    indices[e] -= indexBase;
+                }
+            }
+            if (dataSet instanceof CompactDataSet){
+                ((CompactDataSet) dataSet).setRow(dataIndex, indices, values, numEntries);
+            } else if (dataSet instanceof SparseDataSet){
+                ((SparseDataSet) dataSet).setRow(dataIndex, indices, values, numEntries);
+            } else if (dataSet instanceof DenseDataSet){
+                ((DenseDataSet) dataSet).setRow(dataIndex, indices, values, numEntries);
+            } else {
+                for (int e=0;e<numEntries;e++){
+                    dataSet.setFeatureValue(dataIndex, indices[e], values[e]);
+                }
+            }
+        }
+    }
+}
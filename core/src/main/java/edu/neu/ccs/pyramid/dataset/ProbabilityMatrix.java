@@ -5,25 +5,42 @@ package edu.neu.ccs.pyramid.dataset;
  */
 public class ProbabilityMatrix {
     // num data * num classes
-    private float[][] m;
+    private FloatMatrix m;
 
     public ProbabilityMatrix(int numDataPoints, int numClasses) {
-        this.m = new float[numDataPoints][numClasses];
+        this(new DenseFloatMatrix(numDataPoints, numClasses, FloatMatrix.Layout.ROW_MAJOR));
+    }
+
+    /**
+     * probabilities kept in the given storage, e.g. off-heap or sparse
+     */
+    public ProbabilityMatrix(FloatMatrix m) {
+        this.m = m;
     }
 
     public void setProbability(int dataPointIndex, int classIndex, double probability){
-        this.m[dataPointIndex][classIndex] = (float)probability;
+        this.m.set(dataPointIndex, classIndex, (float)probability);
+    }
+
+    public float getProbability(int dataPointIndex, int classIndex){
+        return m.get(dataPointIndex, classIndex);
     }
 
+    /**
+     * @return a copy of the probabilities of the data point
+     */
     public float[] getProbabilitiesForData(int dataPointIndex){
-        return m[dataPointIndex];
+        float[] probabilities = new float[m.getNumClasses()];
+        m.getRow(dataPointIndex, probabilities);
+        return probabilities;
     }
 
 
     public void increment(int dataPointIndex, int classIndex, double increment){
-        this.m[dataPointIndex][classIndex] += increment;
+        this.m.increment(dataPointIndex, classIndex, (float)increment);
     }
 
-
+    public FloatMatrix getStorage() {
+        return m;
+    }
 }
-
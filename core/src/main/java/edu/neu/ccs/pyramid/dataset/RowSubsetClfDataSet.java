@@ -0,0 +1,53 @@
+package edu.neu.ccs.pyramid.dataset;
+
+/**
+ * read-only view of some rows of a classification data set
+ */
+public class RowSubsetClfDataSet extends RowSubsetDataSet implements ClfDataSet{
+    private static final long serialVersionUID = 1L;
+    private int[] labels;
+    private LabelTranslator labelTranslator;
+
+    public RowSubsetClfDataSet(ClfDataSet parent, int[] rows) {
+        super(parent, rows);
+        int[] parentLabels = parent.getLabels();
+        this.labels = new int[rows.length];
+        for (int i=0;i<rows.length;i++){
+            labels[i] = parentLabels[rows[i]];
+        }
+        this.labelTranslator = parent.getLabelTranslator();
+    }
+
+    @Override
+    public int getNumClasses() {
+        return ((ClfDataSet)parent).getNumClasses();
+    }
+
+    @Override
+    public int[] getLabels() {
+        return labels;
+    }
+
+    @Override
+    public void setLabel(int dataPointIndex, int label) {
+        throw new UnsupportedOperationException("a row subset is read-only");
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+
+    @Override
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("number of classes = ").append(getNumClasses());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,182 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+
+/**
+ * read-only view of some rows of a data set, nothing is copied
+ * row i of the view is row rows[i] of the parent; rows may repeat
+ * getRow returns the row of the parent;
+ * the first getColumn transposes the rows of the view in one pass, which costs the number of features
+ * plus the non-zeros of the view, whatever the size of the parent; the columns of the view
+ * take as much memory as the non-zeros of the view
+ * setFeatureValue throws UnsupportedOperationException, and changes to the parent are visible in the view
+ * use DataSetUtil.sampleData for an independent copy
+ */
+public class RowSubsetDataSet implements DataSet{
+    private static final long serialVersionUID = 1L;
+    protected DataSet parent;
+    protected int[] rows;
+    private IdTranslator idTranslator;
+    private FeatureList featureList;
+
+    // columns of the view, built on the first column access
+    // entries of feature j are at [columnStarts[j], columnStarts[j+1]), indexed by position in the view
+    private transient int[] columnStarts;
+    private transient int[] columnPositions;
+    private transient double[] columnValues;
+    private transient volatile boolean columnsBuilt;
+
+    public RowSubsetDataSet(DataSet parent, int[] rows) {
+        for (int row: rows){
+            if (row<0 || row>=parent.getNumDataPoints()){
+                throw new IllegalArgumentException("row "+row+" is out of range");
+            }
+        }
+        this.parent = parent;
+        this.rows = rows;
+        this.featureList = parent.getFeatureList();
+    }
+
+    public DataSet getParent() {
+        return parent;
+    }
+
+    /**
+     * @return the index in the parent of each row
+     */
+    public int[] getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getNumDataPoints() {
+        return rows.length;
+    }
+
+    @Override
+    public int getNumFeatures() {
+        return parent.getNumFeatures();
+    }
+
+    @Override
+    public Vector getRow(int dataPointIndex) {
+        return parent.getRow(rows[dataPointIndex]);
+    }
+
+    @Override
+    public Vector getColumn(int featureIndex) {
+        if (!columnsBuilt){
+            buildColumns();
+        }
+        return new ArraySparseVectorView(rows.length, columnPositions, columnValues,
+                columnStarts[featureIndex], columnStarts[featureIndex+1]);
+    }
+
+    @Override
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+        throw new UnsupportedOperationException("a row subset is read-only");
+    }
+
+    @Override
+    public boolean isDense() {
+        return parent.isDense();
+    }
+
+    @Override
+    public boolean hasMissingValue() {
+        return parent.hasMissingValue();
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("data set meta information:").append("\n");
+        sb.append("number of data points = ").append(getNumDataPoints()).append("\n");
+        sb.append("number of features = ").append(getNumFeatures()).append("\n");
+        sb.append("has missing value = ").append(hasMissingValue()).append("\n");
+        sb.append("type = ").append("row subset of ").append(parent.getNumDataPoints()).append(" data points").append("\n");
+        return sb.toString();
+    }
+
+    /**
+     * the external ids of the parent rows, built on the first call unless set
+     */
+    @Override
+    public synchronized IdTranslator getIdTranslator() {
+        if (idTranslator==null){
+            IdTranslator translator = new IdTranslator();
+            IdTranslator parentTranslator = parent.getIdTranslator();
+            for (int i=0;i<rows.length;i++){
+                translator.addData(i, parentTranslator.toExtId(rows[i]));
+            }
+            idTranslator = translator;
+        }
+        return idTranslator;
+    }
+
+    @Override
+    public FeatureList getFeatureList() {
+        return featureList;
+    }
+
+    @Override
+    public void setFeatureList(FeatureList featureList) {
+        if (featureList.size()!=getNumFeatures()){
+            throw new IllegalArgumentException("featureList.size()!=this.numFeatures");
+        }
+        this.featureList = featureList;
+    }
+
+    @Override
+    public synchronized void setIdTranslator(IdTranslator idTranslator) {
+        this.idTranslator = idTranslator;
+    }
+
+    @Override
+    public Density density() {
+        return parent.density();
+    }
+
+    /**
+     * transpose the rows of the view with a counting pass;
+     * positions are visited in order, so they are sorted within each column
+     */
+    private synchronized void buildColumns(){
+        if (columnsBuilt){
+            return;
+        }
+        int numFeatures = getNumFeatures();
+        long numNonZeros = 0;
+        int[] starts = new int[numFeatures+1];
+        for (int row: rows){
+            for (Vector.Element element: parent.getRow(row).nonZeroes()){
+                starts[element.index()+1] += 1;
+                numNonZeros += 1;
+            }
+        }
+        if (numNonZeros>Integer.MAX_VALUE-8){
+            throw new RuntimeException("too many non-zeros for a row subset: "+numNonZeros);
+        }
+        for (int j=0;j<numFeatures;j++){
+            starts[j+1] += starts[j];
+        }
+        int[] positions = new int[(int)numNonZeros];
+        double[] values = new double[(int)numNonZeros];
+        int[] next = Arrays.copyOf(starts, numFeatures);
+        for (int p=0;p<rows.length;p++){
+            for (Vector.Element element: parent.getRow(rows[p]).nonZeroes()){
+                int q = next[element.index()];
+                positions[q] = p;
+                values[q] = element.get();
+                next[element.index()] = q+1;
+            }
+        }
+        columnStarts = starts;
+        columnPositions = positions;
+        columnValues = values;
+        columnsBuilt = true;
+    }
+}
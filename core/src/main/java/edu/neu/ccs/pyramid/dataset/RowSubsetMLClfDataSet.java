@@ -0,0 +1,59 @@
+package edu.neu.ccs.pyramid.dataset;
+
+/**
+ * read-only view of some rows of a multi-label classification data set
+ * the MultiLabel objects are shared with the parent
+ */
+public class RowSubsetMLClfDataSet extends RowSubsetDataSet implements MultiLabelClfDataSet{
+    private static final long serialVersionUID = 1L;
+    private MultiLabel[] multiLabels;
+    private LabelTranslator labelTranslator;
+
+    public RowSubsetMLClfDataSet(MultiLabelClfDataSet parent, int[] rows) {
+        super(parent, rows);
+        MultiLabel[] parentLabels = parent.getMultiLabels();
+        this.multiLabels = new MultiLabel[rows.length];
+        for (int i=0;i<rows.length;i++){
+            multiLabels[i] = parentLabels[rows[i]];
+        }
+        this.labelTranslator = parent.getLabelTranslator();
+    }
+
+    @Override
+    public MultiLabel[] getMultiLabels() {
+        return multiLabels;
+    }
+
+    @Override
+    public void addLabel(int dataPointIndex, int classIndex) {
+        throw new UnsupportedOperationException("a row subset is read-only");
+    }
+
+    @Override
+    public void setLabels(int dataPointIndex, MultiLabel multiLabel) {
+        throw new UnsupportedOperationException("a row subset is read-only");
+    }
+
+    @Override
+    public int getNumClasses() {
+        return ((MultiLabelClfDataSet)parent).getNumClasses();
+    }
+
+    @Override
+    public LabelTranslator getLabelTranslator() {
+        return labelTranslator;
+    }
+
+    @Override
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+
+    @Override
+    public String getMetaInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(super.getMetaInfo());
+        sb.append("number of classes = ").append(getNumClasses());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package edu.neu.ccs.pyramid.dataset;
+
+/**
+ * read-only view of some rows of a regression data set
+ */
+public class RowSubsetRegDataSet extends RowSubsetDataSet implements RegDataSet{
+    private static final long serialVersionUID = 1L;
+    private double[] labels;
+
+    public RowSubsetRegDataSet(RegDataSet parent, int[] rows) {
+        super(parent, rows);
+        double[] parentLabels = parent.getLabels();
+        this.labels = new double[rows.length];
+        for (int i=0;i<rows.length;i++){
+            labels[i] = parentLabels[rows[i]];
+        }
+    }
+
+    @Override
+    public double[] getLabels() {
+        return labels;
+    }
+
+    @Override
+    public void setLabel(int dataPointIndex, double label) {
+        throw new UnsupportedOperationException("a row subset is read-only");
+    }
+}
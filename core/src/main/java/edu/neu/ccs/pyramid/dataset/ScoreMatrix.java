@@ -5,23 +5,43 @@ package edu.neu.ccs.pyramid.dataset;
  */
 public class ScoreMatrix {
     // num data * num classes
-    private float[][] m;
+    private FloatMatrix m;
 
 
     public ScoreMatrix(int numDataPoints, int numClasses) {
-        this.m = new float[numDataPoints][numClasses];
+        this(new DenseFloatMatrix(numDataPoints, numClasses, FloatMatrix.Layout.ROW_MAJOR));
+    }
+
+    /**
+     * scores kept in the given storage, e.g. off-heap or sparse
+     */
+    public ScoreMatrix(FloatMatrix m) {
+        this.m = m;
     }
 
     public void setScore(int dataPointIndex, int classIndex, double score){
-        this.m[dataPointIndex][classIndex] = (float)score;
+        this.m.set(dataPointIndex, classIndex, (float)score);
+    }
+
+    public float getScore(int dataPointIndex, int classIndex){
+        return m.get(dataPointIndex, classIndex);
     }
 
+    /**
+     * @return a copy of the scores of the data point
+     */
     public float[] getScoresForData(int dataPointIndex){
-        return m[dataPointIndex];
+        float[] scores = new float[m.getNumClasses()];
+        m.getRow(dataPointIndex, scores);
+        return scores;
     }
 
 
     public void increment(int dataPointIndex, int classIndex, double increment){
-        this.m[dataPointIndex][classIndex] += increment;
+        this.m.increment(dataPointIndex, classIndex, (float)increment);
+    }
+
+    public FloatMatrix getStorage() {
+        return m;
     }
 }
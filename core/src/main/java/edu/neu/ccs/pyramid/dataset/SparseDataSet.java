@@ -6,12 +6,18 @@ import edu.neu.ccs.pyramid.feature.FeatureList;
 import org.apache.mahout.math.RandomAccessSparseVector;
 import org.apache.mahout.math.Vector;
 
+import java.io.IOException;
+
 /**
  * Created by chengli on 8/4/14.
  */
 public class SparseDataSet extends AbstractDataSet implements DataSet{
+    private static final int NUM_LOCKS = 64;
     protected transient RandomAccessSparseVector[] featureRows;
     protected transient RandomAccessSparseVector[] featureColumns;
+    // striped locks; a row lock is always taken before a column lock
+    private transient Object[] rowLocks;
+    private transient Object[] columnLocks;
 
     public SparseDataSet(int numDataPoints, int numFeatures, boolean missingValue) {
         super(numDataPoints,numFeatures,missingValue);
@@ -23,6 +29,7 @@ public class SparseDataSet extends AbstractDataSet implements DataSet{
         for (int j=0;j<numFeatures;j++){
             this.featureColumns[j] = new RandomAccessSparseVector(numDataPoints);
         }
+        initLocks();
     }
 
     public SparseDataSet(int numDataPoints, int numFeatures, boolean missingValue, IdTranslator idTranslator) {
@@ -35,6 +42,7 @@ public class SparseDataSet extends AbstractDataSet implements DataSet{
         for (int j=0;j<numFeatures;j++){
             this.featureColumns[j] = new RandomAccessSparseVector(numDataPoints);
         }
+        initLocks();
     }
 
 
@@ -55,17 +63,71 @@ public class SparseDataSet extends AbstractDataSet implements DataSet{
 
     /**
      * must be synchronized, otherwise may get ArrayIndexOutOfBoundsException
+     * rows and columns are guarded by striped locks instead of a global one
      * @param dataPointIndex
      * @param featureIndex
      * @param featureValue
      */
     @Override
-    public synchronized void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
+    public void setFeatureValue(int dataPointIndex, int featureIndex, double featureValue) {
         if ((!this.hasMissingValue()) && Double.isNaN(featureValue)){
             throw new IllegalArgumentException("missing value is not allowed in this data set");
         }
-        this.featureRows[dataPointIndex].set(featureIndex, featureValue);
-        this.featureColumns[featureIndex].set(dataPointIndex, featureValue);
+        synchronized (rowLocks[dataPointIndex%NUM_LOCKS]){
+            this.featureRows[dataPointIndex].set(featureIndex, featureValue);
+            synchronized (columnLocks[featureIndex%NUM_LOCKS]){
+                this.featureColumns[featureIndex].set(dataPointIndex, featureValue);
+            }
+        }
+    }
+
+    /**
+     * replace a whole row
+     * the row lock is taken once; only column updates contend with other rows
+     * @param dataPointIndex
+     * @param featureIndices
+     * @param featureValues
+     */
+    public void setRow(int dataPointIndex, int[] featureIndices, double[] featureValues){
+        if (featureIndices.length!=featureValues.length){
+            throw new IllegalArgumentException("featureIndices.length!=featureValues.length");
+        }
+        setRow(dataPointIndex,featureIndices,featureValues,featureIndices.length);
+    }
+
+    /**
+     * replace a whole row with the first length entries of the arrays
+     */
+    public void setRow(int dataPointIndex, int[] featureIndices, double[] featureValues, int length){
+        if (length>featureIndices.length||length>featureValues.length){
+            throw new IllegalArgumentException("length is larger than the arrays");
+        }
+        for (int p=0;p<length;p++){
+            if (featureIndices[p]<0||featureIndices[p]>=numFeatures){
+                throw new IllegalArgumentException("feature index "+featureIndices[p]+" is out of range");
+            }
+            if ((!this.hasMissingValue()) && Double.isNaN(featureValues[p])){
+                throw new IllegalArgumentException("missing value is not allowed in this data set");
+            }
+        }
+        synchronized (rowLocks[dataPointIndex%NUM_LOCKS]){
+            RandomAccessSparseVector row = this.featureRows[dataPointIndex];
+            for (Vector.Element element: row.nonZeroes()){
+                int featureIndex = element.index();
+                synchronized (columnLocks[featureIndex%NUM_LOCKS]){
+                    this.featureColumns[featureIndex].set(dataPointIndex, 0);
+                }
+            }
+            RandomAccessSparseVector newRow = new RandomAccessSparseVector(numFeatures, Math.max(length,1));
+            for (int p=0;p<length;p++){
+                int featureIndex = featureIndices[p];
+                newRow.set(featureIndex, featureValues[p]);
+                synchronized (columnLocks[featureIndex%NUM_LOCKS]){
+                    this.featureColumns[featureIndex].set(dataPointIndex, featureValues[p]);
+                }
+            }
+            this.featureRows[dataPointIndex] = newRow;
+        }
     }
 
 
@@ -74,6 +136,21 @@ public class SparseDataSet extends AbstractDataSet implements DataSet{
         return false;
     }
 
+    private void initLocks(){
+        this.rowLocks = new Object[NUM_LOCKS];
+        this.columnLocks = new Object[NUM_LOCKS];
+        for (int l=0;l<NUM_LOCKS;l++){
+            rowLocks[l] = new Object();
+            columnLocks[l] = new Object();
+        }
+    }
+
+    private void readObject(java.io.ObjectInputStream in)
+            throws IOException, ClassNotFoundException{
+        in.defaultReadObject();
+        initLocks();
+    }
+
 
 
 
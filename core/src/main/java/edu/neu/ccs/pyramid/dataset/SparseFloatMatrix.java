@@ -0,0 +1,207 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * only active cells are stored, each data point keeps its active classes in a sorted array
+ * a cell is active once written with a value other than the default value; other cells read as the default value
+ * writes are exact, so small increments accumulate;
+ * compact drops the cells within the threshold of the default value, rounding them to it
+ * e.g. for probabilities, default 0 and threshold 1E-4 keep only classes with non-negligible probabilities
+ * after each compaction
+ * writes to the same data point are serialized by striped locks;
+ * rows are immutable apart from their values, so readers without the lock see whole rows
+ */
+public class SparseFloatMatrix implements FloatMatrix {
+    private static final int NUM_LOCKS = 1024;
+
+    private int numDataPoints;
+    private int numClasses;
+    private float defaultValue;
+    private float threshold;
+    // null if no class is active; replaced, not resized, when classes become active or inactive
+    private Row[] rows;
+    private Object[] locks;
+
+    public SparseFloatMatrix(int numDataPoints, int numClasses, float defaultValue, float threshold) {
+        this.numDataPoints = numDataPoints;
+        this.numClasses = numClasses;
+        this.defaultValue = defaultValue;
+        this.threshold = threshold;
+        this.rows = new Row[numDataPoints];
+        this.locks = new Object[NUM_LOCKS];
+        for (int l=0;l<NUM_LOCKS;l++){
+            locks[l] = new Object();
+        }
+    }
+
+    public static Factory factory(float defaultValue, float threshold){
+        return (numDataPoints, numClasses) -> new SparseFloatMatrix(numDataPoints, numClasses, defaultValue, threshold);
+    }
+
+    @Override
+    public int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    @Override
+    public float get(int dataPointIndex, int classIndex) {
+        Row row = rows[dataPointIndex];
+        if (row==null){
+            return defaultValue;
+        }
+        int position = Arrays.binarySearch(row.classes, classIndex);
+        if (position<0){
+            return defaultValue;
+        }
+        return row.values[position];
+    }
+
+    @Override
+    public void set(int dataPointIndex, int classIndex, float value) {
+        synchronized (locks[dataPointIndex%NUM_LOCKS]){
+            setLocked(dataPointIndex, classIndex, value);
+        }
+    }
+
+    @Override
+    public void increment(int dataPointIndex, int classIndex, float increment) {
+        synchronized (locks[dataPointIndex%NUM_LOCKS]){
+            setLocked(dataPointIndex, classIndex, get(dataPointIndex, classIndex)+increment);
+        }
+    }
+
+    @Override
+    public void getRow(int dataPointIndex, float[] buffer) {
+        Arrays.fill(buffer, 0, numClasses, defaultValue);
+        Row row = rows[dataPointIndex];
+        if (row==null){
+            return;
+        }
+        for (int p=0;p<row.classes.length;p++){
+            buffer[row.classes[p]] = row.values[p];
+        }
+    }
+
+    /**
+     * @return number of active cells
+     */
+    public long getNumActiveCells(){
+        long count = 0;
+        for (Row row: rows){
+            if (row!=null){
+                count += row.classes.length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * drop the cells of a data point within the threshold of the default value
+     */
+    @Override
+    public void compact(int dataPointIndex){
+        synchronized (locks[dataPointIndex%NUM_LOCKS]){
+            Row row = rows[dataPointIndex];
+            if (row==null){
+                return;
+            }
+            int numActive = 0;
+            for (float value: row.values){
+                if (Math.abs(value-defaultValue)>=threshold){
+                    numActive += 1;
+                }
+            }
+            if (numActive==row.classes.length){
+                return;
+            }
+            if (numActive==0){
+                rows[dataPointIndex] = null;
+                return;
+            }
+            int[] classes = new int[numActive];
+            float[] values = new float[numActive];
+            int p = 0;
+            for (int q=0;q<row.classes.length;q++){
+                if (Math.abs(row.values[q]-defaultValue)>=threshold){
+                    classes[p] = row.classes[q];
+                    values[p] = row.values[q];
+                    p += 1;
+                }
+            }
+            rows[dataPointIndex] = new Row(classes, values);
+        }
+    }
+
+    /**
+     * compact all data points
+     */
+    public void compact(){
+        IntStream.range(0, numDataPoints).parallel().forEach(this::compact);
+    }
+
+    private void setLocked(int dataPointIndex, int classIndex, float value){
+        boolean active = value!=defaultValue;
+        Row row = rows[dataPointIndex];
+        int position = row==null ? -1 : Arrays.binarySearch(row.classes, classIndex);
+        if (position>=0){
+            if (active){
+                row.values[position] = value;
+            } else {
+                rows[dataPointIndex] = row.remove(position);
+            }
+        } else if (active){
+            if (row==null){
+                rows[dataPointIndex] = new Row(new int[]{classIndex}, new float[]{value});
+            } else {
+                rows[dataPointIndex] = row.insert(-position-1, classIndex, value);
+            }
+        }
+    }
+
+    private static class Row {
+        private final int[] classes;
+        private final float[] values;
+
+        Row(int[] classes, float[] values) {
+            this.classes = classes;
+            this.values = values;
+        }
+
+        Row insert(int position, int classIndex, float value){
+            int size = classes.length;
+            int[] newClasses = new int[size+1];
+            float[] newValues = new float[size+1];
+            System.arraycopy(classes, 0, newClasses, 0, position);
+            System.arraycopy(values, 0, newValues, 0, position);
+            newClasses[position] = classIndex;
+            newValues[position] = value;
+            System.arraycopy(classes, position, newClasses, position+1, size-position);
+            System.arraycopy(values, position, newValues, position+1, size-position);
+            return new Row(newClasses, newValues);
+        }
+
+        /**
+         * @return null if the row becomes empty
+         */
+        Row remove(int position){
+            int size = classes.length;
+            if (size==1){
+                return null;
+            }
+            int[] newClasses = new int[size-1];
+            float[] newValues = new float[size-1];
+            System.arraycopy(classes, 0, newClasses, 0, position);
+            System.arraycopy(values, 0, newValues, 0, position);
+            System.arraycopy(classes, position+1, newClasses, position, size-position-1);
+            System.arraycopy(values, position+1, newValues, position, size-position-1);
+            return new Row(newClasses, newValues);
+        }
+    }
+}
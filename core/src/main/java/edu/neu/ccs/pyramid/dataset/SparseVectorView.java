@@ -0,0 +1,458 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.OrderedIntDoubleMapping;
+import org.apache.mahout.math.SequentialAccessSparseVector;
+import org.apache.mahout.math.Vector;
+import org.apache.mahout.math.function.DoubleDoubleFunction;
+import org.apache.mahout.math.function.DoubleFunction;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * read-only view of one row or one column of a CSR/CSC data set
+ * entries are the positions [begin, end) of the index and value storage of the data set, nothing is copied;
+ * indices in the range are sorted, so get is a binary search
+ * operations that produce new vectors work on a SequentialAccessSparseVector copy
+ * all mutators throw UnsupportedOperationException
+ */
+public abstract class SparseVectorView implements Vector {
+    protected int size;
+    protected int begin;
+    protected int end;
+
+    protected SparseVectorView(int size, int begin, int end) {
+        this.size = size;
+        this.begin = begin;
+        this.end = end;
+    }
+
+    /**
+     * index of the entry at position p
+     */
+    protected abstract int indexAt(int p);
+
+    /**
+     * value of the entry at position p
+     */
+    protected abstract double valueAt(int p);
+
+    /**
+     * binary search in [begin, end)
+     * @return position of the index, or a negative number if it is not stored
+     */
+    protected abstract int search(int index);
+
+    /**
+     * an independent copy
+     */
+    public SequentialAccessSparseVector toSequentialAccessSparseVector(){
+        SequentialAccessSparseVector vector = new SequentialAccessSparseVector(size, Math.max(end-begin,1));
+        for (int p=begin;p<end;p++){
+            if (valueAt(p)!=0){
+                vector.setQuick(indexAt(p),valueAt(p));
+            }
+        }
+        return vector;
+    }
+
+    @Override
+    public double get(int i) {
+        if (i<0||i>=size){
+            throw new IndexOutOfBoundsException("index "+i+" is out of range [0,"+size+")");
+        }
+        return getQuick(i);
+    }
+
+    @Override
+    public double getQuick(int i) {
+        int p = search(i);
+        if (p>=0){
+            return valueAt(p);
+        }
+        return 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isDense() {
+        return false;
+    }
+
+    @Override
+    public boolean isSequentialAccess() {
+        return true;
+    }
+
+    @Override
+    public Iterable<Element> all() {
+        return AllIterator::new;
+    }
+
+    @Override
+    public Iterable<Element> nonZeroes() {
+        return NonZeroIterator::new;
+    }
+
+    @Override
+    public Element getElement(int i) {
+        ViewElement element = new ViewElement();
+        element.index = i;
+        element.value = get(i);
+        return element;
+    }
+
+    @Override
+    public double dot(Vector vector) {
+        if (vector.size()!=size){
+            throw new IllegalArgumentException("vector.size()!=this.size()");
+        }
+        double sum = 0;
+        for (int p=begin;p<end;p++){
+            sum += valueAt(p)*vector.getQuick(indexAt(p));
+        }
+        return sum;
+    }
+
+    @Override
+    public double norm(double power) {
+        if (power<0){
+            throw new IllegalArgumentException("power<0");
+        }
+        if (power==0){
+            return getNumNonZeroElements();
+        }
+        if (Double.isInfinite(power)){
+            double max = 0;
+            for (int p=begin;p<end;p++){
+                max = Math.max(max,Math.abs(valueAt(p)));
+            }
+            return max;
+        }
+        if (power==1){
+            double sum = 0;
+            for (int p=begin;p<end;p++){
+                sum += Math.abs(valueAt(p));
+            }
+            return sum;
+        }
+        if (power==2){
+            return Math.sqrt(getLengthSquared());
+        }
+        double sum = 0;
+        for (int p=begin;p<end;p++){
+            sum += Math.pow(Math.abs(valueAt(p)),power);
+        }
+        return Math.pow(sum,1.0/power);
+    }
+
+    @Override
+    public double zSum() {
+        double sum = 0;
+        for (int p=begin;p<end;p++){
+            sum += valueAt(p);
+        }
+        return sum;
+    }
+
+    @Override
+    public double getLengthSquared() {
+        double sum = 0;
+        for (int p=begin;p<end;p++){
+            sum += valueAt(p)*valueAt(p);
+        }
+        return sum;
+    }
+
+    @Override
+    public double minValue() {
+        double min = end-begin<size ? 0 : Double.POSITIVE_INFINITY;
+        for (int p=begin;p<end;p++){
+            min = Math.min(min,valueAt(p));
+        }
+        return min;
+    }
+
+    @Override
+    public double maxValue() {
+        double max = end-begin<size ? 0 : Double.NEGATIVE_INFINITY;
+        for (int p=begin;p<end;p++){
+            max = Math.max(max,valueAt(p));
+        }
+        return max;
+    }
+
+    @Override
+    public int minValueIndex() {
+        return toSequentialAccessSparseVector().minValueIndex();
+    }
+
+    @Override
+    public int maxValueIndex() {
+        return toSequentialAccessSparseVector().maxValueIndex();
+    }
+
+    @Override
+    public int getNumNondefaultElements() {
+        return end - begin;
+    }
+
+    @Override
+    public int getNumNonZeroElements() {
+        int count = 0;
+        for (int p=begin;p<end;p++){
+            if (valueAt(p)!=0){
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public double getLookupCost() {
+        return Math.max(1, Math.round(Math.log(end-begin+1)/Math.log(2)));
+    }
+
+    @Override
+    public double getIteratorAdvanceCost() {
+        return 1;
+    }
+
+    @Override
+    public boolean isAddConstantTime() {
+        return false;
+    }
+
+    @Override
+    public String asFormatString() {
+        return toSequentialAccessSparseVector().asFormatString();
+    }
+
+    @Override
+    public String toString() {
+        return toSequentialAccessSparseVector().toString();
+    }
+
+    //==========operations on a copy==========
+
+    @Override
+    public Vector clone() {
+        return toSequentialAccessSparseVector();
+    }
+
+    @Override
+    public Vector like() {
+        return new SequentialAccessSparseVector(size);
+    }
+
+    @Override
+    public Vector like(int i) {
+        return new SequentialAccessSparseVector(i);
+    }
+
+    @Override
+    public Vector divide(double v) {
+        return toSequentialAccessSparseVector().divide(v);
+    }
+
+    @Override
+    public Vector minus(Vector vector) {
+        return toSequentialAccessSparseVector().minus(vector);
+    }
+
+    @Override
+    public Vector normalize() {
+        return toSequentialAccessSparseVector().normalize();
+    }
+
+    @Override
+    public Vector normalize(double v) {
+        return toSequentialAccessSparseVector().normalize(v);
+    }
+
+    @Override
+    public Vector logNormalize() {
+        return toSequentialAccessSparseVector().logNormalize();
+    }
+
+    @Override
+    public Vector logNormalize(double v) {
+        return toSequentialAccessSparseVector().logNormalize(v);
+    }
+
+    @Override
+    public Vector plus(double v) {
+        return toSequentialAccessSparseVector().plus(v);
+    }
+
+    @Override
+    public Vector plus(Vector vector) {
+        return toSequentialAccessSparseVector().plus(vector);
+    }
+
+    @Override
+    public Vector times(double v) {
+        return toSequentialAccessSparseVector().times(v);
+    }
+
+    @Override
+    public Vector times(Vector vector) {
+        return toSequentialAccessSparseVector().times(vector);
+    }
+
+    @Override
+    public Vector viewPart(int i, int i1) {
+        return toSequentialAccessSparseVector().viewPart(i,i1);
+    }
+
+    @Override
+    public Matrix cross(Vector vector) {
+        return toSequentialAccessSparseVector().cross(vector);
+    }
+
+    @Override
+    public double aggregate(DoubleDoubleFunction doubleDoubleFunction, DoubleFunction doubleFunction) {
+        return toSequentialAccessSparseVector().aggregate(doubleDoubleFunction,doubleFunction);
+    }
+
+    @Override
+    public double aggregate(Vector vector, DoubleDoubleFunction doubleDoubleFunction, DoubleDoubleFunction doubleDoubleFunction1) {
+        return toSequentialAccessSparseVector().aggregate(vector,doubleDoubleFunction,doubleDoubleFunction1);
+    }
+
+    @Override
+    public double getDistanceSquared(Vector vector) {
+        return toSequentialAccessSparseVector().getDistanceSquared(vector);
+    }
+
+    //==========mutators==========
+
+    @Override
+    public Vector assign(double v) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public Vector assign(double[] doubles) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public Vector assign(Vector vector) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public Vector assign(DoubleFunction doubleFunction) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public Vector assign(Vector vector, DoubleDoubleFunction doubleDoubleFunction) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public Vector assign(DoubleDoubleFunction doubleDoubleFunction, double v) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public void mergeUpdates(OrderedIntDoubleMapping orderedIntDoubleMapping) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public void set(int i, double v) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public void setQuick(int i, double v) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    @Override
+    public void incrementQuick(int i, double v) {
+        throw new UnsupportedOperationException("read-only view");
+    }
+
+    /**
+     * reused by iterators, as mahout vectors do
+     */
+    private static class ViewElement implements Element {
+        private int index;
+        private double value;
+
+        @Override
+        public double get() {
+            return value;
+        }
+
+        @Override
+        public int index() {
+            return index;
+        }
+
+        @Override
+        public void set(double value) {
+            throw new UnsupportedOperationException("read-only view");
+        }
+    }
+
+    private class NonZeroIterator implements Iterator<Element> {
+        private int p = begin;
+        private ViewElement element = new ViewElement();
+
+        @Override
+        public boolean hasNext() {
+            while (p<end && valueAt(p)==0){
+                p += 1;
+            }
+            return p<end;
+        }
+
+        @Override
+        public Element next() {
+            if (!hasNext()){
+                throw new NoSuchElementException();
+            }
+            element.index = indexAt(p);
+            element.value = valueAt(p);
+            p += 1;
+            return element;
+        }
+    }
+
+    private class AllIterator implements Iterator<Element> {
+        private int index = 0;
+        private int p = begin;
+        private ViewElement element = new ViewElement();
+
+        @Override
+        public boolean hasNext() {
+            return index<size;
+        }
+
+        @Override
+        public Element next() {
+            if (!hasNext()){
+                throw new NoSuchElementException();
+            }
+            element.index = index;
+            if (p<end && indexAt(p)==index){
+                element.value = valueAt(p);
+                p += 1;
+            } else {
+                element.value = 0;
+            }
+            index += 1;
+            return element;
+        }
+    }
+}
@@ -10,7 +10,6 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -117,7 +116,7 @@ public class TRECFormat {
     public static ClfDataSet loadClfDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
         boolean legalArg = ((dataSetType == DataSetType.CLF_DENSE)
-                ||(dataSetType==DataSetType.CLF_SPARSE));
+                ||(dataSetType==DataSetType.CLF_SPARSE)||(dataSetType==DataSetType.CLF_COMPACT));
         if (!legalArg){
             throw new IllegalArgumentException("illegal data set type");
         }
@@ -132,6 +131,9 @@ public class TRECFormat {
         if (dataSetType==DataSetType.CLF_SPARSE){
             dataSet = new SparseClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
         }
+        if (dataSetType==DataSetType.CLF_COMPACT){
+            dataSet = new CompactClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+        }
         fillClfDataSet(dataSet,trecFile);
         if (loadSettings){
             loadFeatureList(dataSet,trecFile);
@@ -145,7 +147,8 @@ public class TRECFormat {
     public static MultiLabelClfDataSet loadMultiLabelClfDataSet(File trecFile, DataSetType dataSetType,
                                             boolean loadSettings) throws IOException, ClassNotFoundException {
         boolean legalArg = ((dataSetType == DataSetType.ML_CLF_DENSE)
-                ||(dataSetType==DataSetType.ML_CLF_SPARSE)||(dataSetType == DataSetType.ML_CLF_SEQ_SPARSE));
+                ||(dataSetType==DataSetType.ML_CLF_SPARSE)||(dataSetType == DataSetType.ML_CLF_SEQ_SPARSE)
+                ||(dataSetType==DataSetType.ML_CLF_COMPACT));
         if (!legalArg){
             throw new IllegalArgumentException("illegal data set type");
         }
@@ -163,6 +166,9 @@ public class TRECFormat {
         if (dataSetType==DataSetType.ML_CLF_SEQ_SPARSE) {
             dataSet = new SequentialSparseMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
         }
+        if (dataSetType==DataSetType.ML_CLF_COMPACT){
+            dataSet = new CompactMLClfDataSet(numDataPoints,numFeatures,missingValue,numClasses);
+        }
         fillMultiLabelClfDataSet(dataSet,trecFile);
         if (loadSettings){
             loadFeatureList(dataSet, trecFile);
@@ -335,106 +341,38 @@ public class TRECFormat {
 
     }
 
+    /**
+     * lines are parsed in parallel by ParallelTextParser; line i is data point i
+     */
     private static void fillClfDataSet(ClfDataSet dataSet, File trecFile) throws IOException {
         File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
-        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                int label = Integer.parseInt(lineSplit[0]);
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0]);
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
-        }
+        ParallelTextParser.parse(matrixFile, (dataIndex, line) -> {
+            dataSet.setLabel(dataIndex, line.intLabel());
+            line.fill(dataSet, dataIndex, 0);
+        });
     }
 
     private static void fillMultiLabelClfDataSet(MultiLabelClfDataSet dataSet, File trecFile) throws IOException {
         File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
-        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                // the line is not just a space
-                if (lineSplit.length>=1){
-                    String multiLabelString = null;
-                    try {
-                        multiLabelString = lineSplit[0];
-                    } catch (Exception e) {
-                        System.out.println("load data error happens");
-                        System.out.println("line number: " + dataIndex);
-                        System.out.println("line: " + line);
-                    }
-                    String[] multiLabelSplit = multiLabelString.split(Pattern.quote(","));
-                    for (String label: multiLabelSplit){
-                        if (label.equals("")) {
-                            continue;
-                        }
-                        dataSet.addLabel(dataIndex,Integer.parseInt(label));
-                    }
-                }
-
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0]);
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
+        ParallelTextParser.parse(matrixFile, (dataIndex, line) -> {
+            int numLabels = line.parseLabels();
+            int[] labels = line.getLabels();
+            for (int l=0;l<numLabels;l++){
+                dataSet.addLabel(dataIndex, labels[l]);
             }
-        }
+            line.fill(dataSet, dataIndex, 0);
+        });
     }
 
 
     private static void fillRegDataSet(RegDataSet dataSet, File trecFile) throws IOException {
         File matrixFile = new File(trecFile, TREC_MATRIX_FILE_NAME);
-        try (BufferedReader br = new BufferedReader(new FileReader(matrixFile));
-        ) {
-            String line = null;
-            int dataIndex = 0;
-            while ((line=br.readLine())!=null){
-                String[] lineSplit = line.split("\\s+");
-                double label = Double.parseDouble(lineSplit[0]);
-                dataSet.setLabel(dataIndex,label);
-                for (int i=1;i<lineSplit.length;i++){
-                    String pair = lineSplit[i];
-                    // ignore things after #
-                    if (pair.startsWith("#")){
-                        break;
-                    }
-                    String[] pairSplit = pair.split(":");
-                    int featureIndex = Integer.parseInt(pairSplit[0]);
-                    double featureValue = Double.parseDouble(pairSplit[1]);
-                    dataSet.setFeatureValue(dataIndex, featureIndex,featureValue);
-                }
-                dataIndex += 1;
-            }
-        }
+        ParallelTextParser.parse(matrixFile, (dataIndex, line) -> {
+            dataSet.setLabel(dataIndex, line.doubleLabel());
+            line.fill(dataSet, dataIndex, 0);
+        });
     }
 
-
-
-
-
     private static void writeConfigFile(ClfDataSet dataSet, File trecFile) {
         File configFile = new File(trecFile, TREC_CONFIG_FILE_NAME);
         Config config = new Config();
@@ -34,22 +34,37 @@ public class DuplicateDetector implements Serializable{
     public void detect(){
         Map<Integer, Set<String>> hashToIds = new ConcurrentHashMap<>();
         int numDocs = esIndex.getNumDocs();
-        IntStream.range(0,numDocs).parallel()
-                .filter(i -> esIndex.getStringField("" + i, splitField).
-                        equalsIgnoreCase("train"))
-                .forEach(i -> {
-                    Map<Integer, String> termVector = esIndex.getTermVectorFromIndex("" + i);
-                    int hash = termVector.hashCode();
-                    if (!hashToIds.containsKey(hash)) {
-                        hashToIds.put(hash, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
-                    }
-                    hashToIds.get(hash).add("" + i);
-                });
+        String[] trainIds = trainIds(numDocs);
+        esIndex.forEachTermVector(trainIds, (id, termVector) -> {
+            int hash = termVector.hashCode();
+            hashToIds.computeIfAbsent(hash, h -> Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()))
+                    .add(id);
+        });
         hashToIds.entrySet().stream().parallel().map(Map.Entry::getValue)
                 .forEach(this::check);
 
     }
 
+    /**
+     * the split field is fetched by one multi get per batch of termVectorBatchSize documents,
+     * on the calling thread
+     */
+    private String[] trainIds(int numDocs){
+        List<String> ids = IntStream.range(0,numDocs).mapToObj(i -> "" + i).collect(Collectors.toList());
+        List<String> trainIds = new ArrayList<>();
+        int batchSize = esIndex.getTermVectorBatchSize();
+        for (int start=0;start<numDocs;start+=batchSize){
+            List<String> batch = ids.subList(start, Math.min(start+batchSize, numDocs));
+            Map<String,String> splits = esIndex.getStringFields(splitField, batch);
+            for (String id: batch){
+                if (splits.get(id).equalsIgnoreCase("train")){
+                    trainIds.add(id);
+                }
+            }
+        }
+        return trainIds.toArray(new String[0]);
+    }
+
     private void check(Set<String> candidates){
 
         Set<Doc> docs = new HashSet<>();
@@ -57,8 +72,9 @@ public class DuplicateDetector implements Serializable{
         if (size==1){
             return;
         }
+        Map<String, Map<Integer, String>> termVectors = esIndex.getTermVectorsFromIndex(candidates);
         for (String id: candidates){
-            Doc doc = new Doc(id,esIndex.getTermVectorFromIndex(id));
+            Doc doc = new Doc(id,termVectors.get(id));
             docs.add(doc);
         }
         Set<String> uniqueIds = docs.stream().map(Doc::getId).collect(Collectors.toSet());
@@ -7,13 +7,20 @@ import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 import edu.neu.ccs.pyramid.esplugins.PhraseCountQueryBuilder;
@@ -29,7 +36,15 @@ import org.elasticsearch.action.admin.indices.analyze.AnalyzeResponse;
 import org.elasticsearch.action.admin.indices.mapping.get.GetFieldMappingsResponse;
 import org.elasticsearch.action.admin.indices.mapping.get.GetMappingsResponse;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.termvectors.MultiTermVectorsItemResponse;
+import org.elasticsearch.action.termvectors.MultiTermVectorsRequestBuilder;
+import org.elasticsearch.action.termvectors.MultiTermVectorsResponse;
+import org.elasticsearch.action.termvectors.TermVectorsRequest;
 import org.elasticsearch.action.termvectors.TermVectorsResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.transport.TransportClient;
@@ -44,6 +59,7 @@ import org.elasticsearch.node.Node;
 import org.elasticsearch.script.Script;
 //import org.elasticsearch.script.ScriptService.ScriptType;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.transport.client.PreBuiltTransportClient;
 
 import com.google.common.cache.CacheBuilder;
@@ -75,6 +91,8 @@ public class ESIndex implements AutoCloseable{
      * concurrent LRU cache for termvectors
      */
     LoadingCache<String,Map<Integer,String>> termVectorCache;
+    int termVectorBatchSize;
+    int numTermVectorFetchThreads;
 
 
     public int getNumDocs() {
@@ -494,6 +512,47 @@ public class ESIndex implements AutoCloseable{
         return object.toString();
     }
 
+    /**
+     * string field of many documents in one multi get request
+     * the caller decides the batch size
+     * @param field
+     * @param ids
+     * @return id -> field value, STRING_MISSING_VALUE for documents without the field
+     */
+    public Map<String,String> getStringFields(String field, Collection<String> ids){
+        if (ids.isEmpty()){
+            return new HashMap<>();
+        }
+        FetchSourceContext fetchSourceContext = new FetchSourceContext(true, new String[]{field}, null);
+        MultiGetRequestBuilder requestBuilder = client.prepareMultiGet();
+        for (String id: ids){
+            requestBuilder.add(new MultiGetRequest.Item(indexName, documentType, id)
+                    .fetchSourceContext(fetchSourceContext));
+        }
+        MultiGetResponse response = requestBuilder.execute().actionGet();
+        Map<String,String> values = new HashMap<>();
+        for (MultiGetItemResponse item: response.getResponses()){
+            if (item.isFailed()){
+                throw new RuntimeException("fail to fetch field "+field+" of document "+item.getId(),
+                        item.getFailure().getFailure());
+            }
+            GetResponse getResponse = item.getResponse();
+            Object object = null;
+            if (getResponse.isExists() && getResponse.getSourceAsMap()!=null){
+                object = getResponse.getSourceAsMap().get(field);
+            }
+            if (object==null){
+                if (logger.isWarnEnabled()) {
+                    logger.warn("document " + item.getId() + " has no field " + field + "!");
+                }
+                values.put(item.getId(), STRING_MISSING_VALUE);
+            } else {
+                values.put(item.getId(), object.toString());
+            }
+        }
+        return values;
+    }
+
     // it seems we should allow int field, as it seems difficult to handle missing values
     public int getIntField(String id, String field){
         return Integer.parseInt(getField(id,field).toString());
@@ -629,7 +688,10 @@ public class ESIndex implements AutoCloseable{
                 .setTermStatistics(false)
                 .setSelectedFields(field).
                         execute().actionGet();
+        return toTermVector(response, field);
+    }
 
+    private static Map<Integer,String> toTermVector(TermVectorsResponse response, String field) throws IOException {
         Map<Integer,String> map = new HashMap<>();
         Terms terms = response.getFields().terms(field);
         if (terms==null){
@@ -658,6 +720,99 @@ public class ESIndex implements AutoCloseable{
         return map;
     }
 
+    /**
+     * term vectors of many documents in one multi term vectors request
+     * the caller decides the batch size
+     * @param field
+     * @param ids
+     * @return id -> position -> term
+     */
+    public Map<String, Map<Integer,String>> getTermVectorsFromIndex(String field, Collection<String> ids){
+        if (ids.isEmpty()){
+            return new HashMap<>();
+        }
+        MultiTermVectorsRequestBuilder requestBuilder = client.prepareMultiTermVectors();
+        for (String id: ids){
+            requestBuilder.add(new TermVectorsRequest(indexName, documentType, id)
+                    .offsets(false).positions(true).fieldStatistics(false)
+                    .termStatistics(false)
+                    .selectedFields(field));
+        }
+        MultiTermVectorsResponse response = requestBuilder.execute().actionGet();
+        Map<String, Map<Integer,String>> termVectors = new HashMap<>();
+        for (MultiTermVectorsItemResponse item: response.getResponses()){
+            if (item.isFailed()){
+                throw new RuntimeException("fail to fetch the term vector of document "+item.getId(),
+                        item.getFailure().getCause());
+            }
+            try {
+                termVectors.put(item.getId(), toTermVector(item.getResponse(), field));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return termVectors;
+    }
+
+    public Map<String, Map<Integer,String>> getTermVectorsFromIndex(Collection<String> ids){
+        return getTermVectorsFromIndex(this.bodyField, ids);
+    }
+
+    /**
+     * fetch the term vectors of the body field in batches and put them into the term vector cache
+     */
+    public void loadTermVectors(String[] ids){
+        forEachTermVector(this.bodyField, ids, termVectorCache::put);
+    }
+
+    /**
+     * fetch term vectors in batches of termVectorBatchSize on dedicated fetch threads,
+     * and pass each of them to the consumer as soon as its batch arrives;
+     * consumers run on the common fork join pool, overlapping with the fetching of later batches,
+     * so the common pool is not blocked by network I/O
+     * at most 2 * numTermVectorFetchThreads batches are in flight or waiting for consumers
+     * the consumer should be thread safe; it is called once per document, in no particular order
+     * @param field
+     * @param ids
+     * @param consumer (id, position -> term)
+     */
+    public void forEachTermVector(String field, String[] ids, BiConsumer<String, Map<Integer,String>> consumer){
+        int maxInFlight = 2*numTermVectorFetchThreads;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ExecutorService fetchers = Executors.newFixedThreadPool(numTermVectorFetchThreads);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<String> idList = Arrays.asList(ids);
+        try {
+            for (int start=0;start<ids.length;start+=termVectorBatchSize){
+                List<String> batch = idList.subList(start, Math.min(start+termVectorBatchSize, ids.length));
+                inFlight.acquire();
+                CompletableFuture<Void> future = CompletableFuture
+                        .supplyAsync(() -> getTermVectorsFromIndex(field, batch), fetchers)
+                        .thenAcceptAsync(termVectors -> termVectors.forEach(consumer), ForkJoinPool.commonPool())
+                        .whenComplete((result, throwable) -> inFlight.release());
+                futures.add(future);
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            fetchers.shutdownNow();
+        }
+    }
+
+    public void forEachTermVector(String[] ids, BiConsumer<String, Map<Integer,String>> consumer){
+        forEachTermVector(this.bodyField, ids, consumer);
+    }
+
+    public int getTermVectorBatchSize() {
+        return termVectorBatchSize;
+    }
+
+    public int getNumTermVectorFetchThreads() {
+        return numTermVectorFetchThreads;
+    }
+
 
 
 
@@ -1470,6 +1625,8 @@ public class ESIndex implements AutoCloseable{
         private List<String> hosts = new ArrayList<>();
         private List<Integer> ports = new ArrayList<>();
         private int termVectorCacheSize = 10000;
+        private int termVectorBatchSize = 100;
+        private int numTermVectorFetchThreads = 4;
 
 
 
@@ -1517,6 +1674,29 @@ public class ESIndex implements AutoCloseable{
         }
 
 
+        /**
+         * number of documents per multi term vectors request, at least 1
+         */
+        public Builder setTermVectorBatchSize(int termVectorBatchSize) {
+            if (termVectorBatchSize<1){
+                throw new IllegalArgumentException("termVectorBatchSize should be at least 1");
+            }
+            this.termVectorBatchSize = termVectorBatchSize;
+            return this;
+        }
+
+        /**
+         * at least 1
+         */
+        public Builder setNumTermVectorFetchThreads(int numTermVectorFetchThreads) {
+            if (numTermVectorFetchThreads<1){
+                throw new IllegalArgumentException("numTermVectorFetchThreads should be at least 1");
+            }
+            this.numTermVectorFetchThreads = numTermVectorFetchThreads;
+            return this;
+        }
+
+
         public ESIndex build() throws Exception {
             boolean legal = (clientType.equals("node"))||(clientType.equals("transport"));
             if (!legal){
@@ -1529,6 +1709,8 @@ public class ESIndex implements AutoCloseable{
             esIndex.clientType = clientType;
             esIndex.clusterName = clusterName;
             esIndex.bodyField = bodyField;
+            esIndex.termVectorBatchSize = termVectorBatchSize;
+            esIndex.numTermVectorFetchThreads = numTermVectorFetchThreads;
 
             if (clientType.equals("node")){
                 /**
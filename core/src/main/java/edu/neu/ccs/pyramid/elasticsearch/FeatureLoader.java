@@ -2,10 +2,14 @@ package edu.neu.ccs.pyramid.elasticsearch;
 
 import edu.neu.ccs.pyramid.dataset.*;
 import edu.neu.ccs.pyramid.feature.*;
+import edu.neu.ccs.pyramid.feature_extraction.NgramMatcher;
+import org.apache.lucene.search.Query;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.search.SearchHit;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.IntStream;
@@ -41,6 +45,141 @@ public class FeatureLoader {
 //        System.out.println();
     }
 
+    /**
+     * load features from a local lucene index
+     * code description features are not supported
+     * @param docFilter lucene query selecting the documents of the data set, optional
+     */
+    public static void loadFeatures(LuceneIndex index, DataSet dataSet, FeatureList features,
+                                    IdTranslator idTranslator, MatchScoreType matchScoreType, Query docFilter,
+                                    Map<String, float[]> fieldLength){
+        IntStream.range(0,features.size())
+                .parallel()
+                .forEach(i-> {
+                    Feature feature = features.get(i);
+                    int featureIndex = feature.getIndex();
+                    if (feature instanceof CategoricalFeature){
+                        CategoricalFeature categoricalFeature = (CategoricalFeature)feature;
+                        for (String matchedId: index.termFilter(categoricalFeature.getVariableName(),
+                                categoricalFeature.getCategory(), docFilter)){
+                            dataSet.setFeatureValue(idTranslator.toIntId(matchedId),featureIndex,1);
+                        }
+                    } else if (feature instanceof Ngram){
+                        loadNgramFeature(index, dataSet, (Ngram)feature, idTranslator, matchScoreType, docFilter, fieldLength);
+                    } else if (feature instanceof CodeDescription) {
+                        throw new IllegalArgumentException("code description features are not supported by LuceneIndex");
+                    } else {
+                        String source = feature.getSettings().get("source");
+                        if (source.equals("field")){
+                            for (String id: idTranslator.getAllExtIds()){
+                                //may return NaN
+                                double value = index.getFloatField(id,feature.getName());
+                                dataSet.setFeatureValue(idTranslator.toIntId(id), featureIndex, value);
+                            }
+                        }
+                    }
+                }
+                );
+    }
+
+    private static void loadNgramFeature(LuceneIndex index, DataSet dataSet, Ngram feature,
+                                         IdTranslator idTranslator, MatchScoreType matchScoreType, Query docFilter,
+                                         Map<String, float[]> fieldLength){
+        int featureIndex = feature.getIndex();
+        Map<String, Float> hits;
+        if (matchScoreType==MatchScoreType.FREQUENCY || matchScoreType==MatchScoreType.TFIFL){
+            hits = index.spanNearFrequency(feature, docFilter);
+        } else {
+            hits = index.spanNear(feature, docFilter);
+        }
+        for (Map.Entry<String, Float> hit: hits.entrySet()){
+            int algorithmId = idTranslator.toIntId(hit.getKey());
+            double score = hit.getValue();
+            switch (matchScoreType){
+                case BINARY:
+                    if (score>0){
+                        score = 1;
+                    }
+                    break;
+                case TFIFL:
+                    score = score/fieldLength.get(feature.getField())[algorithmId];
+                    break;
+                default:
+                    break;
+            }
+            dataSet.setFeatureValue(algorithmId,featureIndex,score);
+        }
+    }
+
+    /**
+     * load all Ngram and SpanNotNgram features with one pass over the term vectors of each field,
+     * instead of one query per feature; other features are ignored
+     * values are the same as loadNgramFeature with the phrase count plugin;
+     * documents are the ones in idTranslator, no filter is needed
+     * @param matchScoreType BINARY, FREQUENCY or TFIFL; ES_ORIGINAL scores need index statistics and are not supported
+     */
+    public static void loadNgramFeatures(ESIndex index, DataSet dataSet, FeatureList features,
+                                         IdTranslator idTranslator, MatchScoreType matchScoreType,
+                                         Map<String, float[]> fieldLength){
+        for (NgramMatcher matcher: ngramMatchers(features, matchScoreType)){
+            index.forEachTermVector(matcher.getField(), idTranslator.getAllExtIds(), (id, termVector) ->
+                    setNgramRow(dataSet, idTranslator.toIntId(id), matcher, termVector, matchScoreType, fieldLength));
+        }
+    }
+
+    /**
+     * same as loadNgramFeatures(ESIndex, ...), on a local lucene index
+     */
+    public static void loadNgramFeatures(LuceneIndex index, DataSet dataSet, FeatureList features,
+                                         IdTranslator idTranslator, MatchScoreType matchScoreType,
+                                         Map<String, float[]> fieldLength){
+        for (NgramMatcher matcher: ngramMatchers(features, matchScoreType)){
+            index.forEachTermVector(matcher.getField(), idTranslator.getAllExtIds(), (id, termVector) ->
+                    setNgramRow(dataSet, idTranslator.toIntId(id), matcher, termVector, matchScoreType, fieldLength));
+        }
+    }
+
+    /**
+     * one matcher per field
+     */
+    private static List<NgramMatcher> ngramMatchers(FeatureList features, MatchScoreType matchScoreType){
+        if (matchScoreType==MatchScoreType.ES_ORIGINAL){
+            throw new IllegalArgumentException("ES_ORIGINAL scores can not be computed from term vectors");
+        }
+        Map<String, List<Feature>> featuresByField = new LinkedHashMap<>();
+        for (Feature feature: features.getAll()){
+            if (feature instanceof Ngram){
+                featuresByField.computeIfAbsent(((Ngram) feature).getField(), f -> new ArrayList<>()).add(feature);
+            } else if (feature instanceof SpanNotNgram){
+                String field = ((SpanNotNgram) feature).getInclude().getField();
+                featuresByField.computeIfAbsent(field, f -> new ArrayList<>()).add(feature);
+            }
+        }
+        List<NgramMatcher> matchers = new ArrayList<>();
+        for (Map.Entry<String, List<Feature>> entry: featuresByField.entrySet()){
+            matchers.add(new NgramMatcher(entry.getKey(), entry.getValue()));
+        }
+        return matchers;
+    }
+
+    private static void setNgramRow(DataSet dataSet, int algorithmId, NgramMatcher matcher, Map<Integer,String> termVector,
+                                    MatchScoreType matchScoreType, Map<String, float[]> fieldLength){
+        for (Map.Entry<Integer, Integer> entry: matcher.match(termVector).entrySet()){
+            double score = entry.getValue();
+            switch (matchScoreType){
+                case BINARY:
+                    score = 1;
+                    break;
+                case TFIFL:
+                    score = score/fieldLength.get(matcher.getField())[algorithmId];
+                    break;
+                default:
+                    break;
+            }
+            dataSet.setFeatureValue(algorithmId, entry.getKey(), score);
+        }
+    }
+
     public static void loadCategoricalFeature(ESIndex index, DataSet dataSet, CategoricalFeature feature,
                                               IdTranslator idTranslator, String docFilter){
 //        String[] dataIndexIds = idTranslator.getAllExtIds();
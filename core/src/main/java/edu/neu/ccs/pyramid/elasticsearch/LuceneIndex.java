@@ -0,0 +1,392 @@
+package edu.neu.ccs.pyramid.elasticsearch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.neu.ccs.pyramid.esplugins.CustomSpanTermQuery;
+import edu.neu.ccs.pyramid.esplugins.PhraseCountQuery;
+import edu.neu.ccs.pyramid.feature.Ngram;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.spans.SpanNearQuery;
+import org.apache.lucene.search.spans.SpanQuery;
+import org.apache.lucene.search.spans.SpanTermQuery;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * read-only access to local lucene indices in the same process, e.g. the shard directories of an elasticsearch index
+ * (data/nodes/0/indices/{index uuid}/{shard}/index), with the operations of ESIndex used for feature extraction;
+ * every query is answered from local postings, without any network round trip
+ * a search returns all matched documents as a map from document id to score
+ * filters are lucene queries instead of elasticsearch json
+ * ngram frequencies are computed by PhraseCountQuery of the phrase count plugin, as in ESIndex.spanNearFrequency
+ * scores of spanNear are BM25 scores with statistics over all opened directories,
+ * while elasticsearch computes them per shard by default
+ * term vectors must be stored in the index with positions
+ */
+public class LuceneIndex implements AutoCloseable{
+    private static final Logger logger = LogManager.getLogger();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private IndexReader reader;
+    private IndexSearcher searcher;
+    private String idField;
+    private String sourceField;
+    private String bodyField;
+    // lucene doc id -> document id, null for deleted documents
+    private String[] externalIds;
+    // document id -> lucene doc id
+    private Map<String, Integer> docIds;
+
+    public int getNumDocs() {
+        return docIds.size();
+    }
+
+    public List<String> getAllDocs(){
+        List<String> list = new ArrayList<>(docIds.size());
+        for (String id: externalIds){
+            if (id!=null){
+                list.add(id);
+            }
+        }
+        return list;
+    }
+
+    public String getBodyField() {
+        return bodyField;
+    }
+
+    public IndexSearcher getSearcher() {
+        return searcher;
+    }
+
+    public Map<Integer,String> getTermVectorFromIndex(String field, String id){
+        try {
+            Map<Integer,String> map = new HashMap<>();
+            Terms terms = reader.getTermVector(docId(id), field);
+            if (terms==null){
+                return map;
+            }
+            TermsEnum iterator = terms.iterator();
+            PostingsEnum postings = null;
+            for (BytesRef termBytes = null; (termBytes = iterator.next()) != null; ) {
+                String term = termBytes.utf8ToString();
+                postings = iterator.postings(postings, PostingsEnum.POSITIONS);
+                // a term vector holds a single document
+                postings.nextDoc();
+                int tf = postings.freq();
+                for (int i = 0; i < tf; i++) {
+                    map.put(postings.nextPosition(), term);
+                }
+            }
+            return map;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Map<Integer,String> getTermVectorFromIndex(String id){
+        return getTermVectorFromIndex(bodyField, id);
+    }
+
+    /**
+     * same contract as ESIndex.forEachTermVector, term vectors are read in parallel
+     */
+    public void forEachTermVector(String field, String[] ids, BiConsumer<String, Map<Integer,String>> consumer){
+        Arrays.stream(ids).parallel().forEach(id -> consumer.accept(id, getTermVectorFromIndex(field, id)));
+    }
+
+    /**
+     * use as an inverted index
+     * no score is computed
+     * @param filter optional
+     * @return ids of matched documents
+     */
+    public List<String> termFilter(String field, String term, Query filter){
+        Query query = new ConstantScoreQuery(filter(new TermQuery(new Term(field, term)), filter));
+        return new ArrayList<>(search(query).keySet());
+    }
+
+    public List<String> termFilter(String field, String term){
+        return termFilter(field, term, null);
+    }
+
+    /**
+     * span near query scored by the similarity of the searcher
+     * @param filter optional
+     * @return document id -> score
+     */
+    public Map<String, Float> spanNear(Ngram ngram, Query filter){
+        return search(filter(spanNearQuery(ngram), filter));
+    }
+
+    /**
+     * number of occurrences of the ngram in each matched document
+     * @param filter optional
+     * @return document id -> frequency
+     */
+    public Map<String, Float> spanNearFrequency(Ngram ngram, Query filter){
+        String[] terms = ngram.getTerms();
+        if (terms.length == 0) {
+            throw new IllegalArgumentException("No term for span");
+        }
+        // the terms are lower cased as in PhraseCountQueryBuilder
+        CustomSpanTermQuery[] clauses = Arrays.stream(String.join(" ", terms).split("\\s+"))
+                .filter(term -> !term.isEmpty())
+                .map(term -> new CustomSpanTermQuery(new Term(ngram.getField(), term.toLowerCase(Locale.ROOT))))
+                .toArray(CustomSpanTermQuery[]::new);
+        Query query = new PhraseCountQuery(clauses, ngram.getSlop(), ngram.isInOrder(), false);
+        return search(filter(query, filter));
+    }
+
+    /**
+     * number of documents matching the ngram
+     */
+    public long count(Ngram ngram){
+        try {
+            return searcher.count(spanNearQuery(ngram));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * number of documents matching the phrase
+     * @param phrase already stemmed, terms are separated by white spaces
+     */
+    public long phraseDF(String field, String phrase, int slop){
+        try {
+            return searcher.count(new PhraseQuery(slop, field, phrase.trim().split("\\s+")));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean hasField(String id, String field){
+        return getField(id, field) != null;
+    }
+
+    /**
+     * the stored field if there is one, otherwise the field in the source
+     * @return null if the document has no such field
+     */
+    public Object getField(String id, String field){
+        try {
+            Document document = reader.document(docId(id), new HashSet<>(Arrays.asList(field, sourceField)));
+            if (document.get(field)!=null){
+                return document.get(field);
+            }
+            BytesRef source = document.getBinaryValue(sourceField);
+            Object res = null;
+            if (source!=null){
+                Map map = OBJECT_MAPPER.readValue(source.bytes, source.offset, source.length, Map.class);
+                res = map.get(field);
+            }
+            if (res==null && logger.isWarnEnabled()){
+                logger.warn("document " + id + " has no field " + field + "!");
+            }
+            return res;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String getStringField(String id, String field){
+        Object object = getField(id,field);
+        if (object==null){
+            return ESIndex.STRING_MISSING_VALUE;
+        }
+        return object.toString();
+    }
+
+    public int getIntField(String id, String field){
+        return Integer.parseInt(getField(id,field).toString());
+    }
+
+    public float getFloatField(String id, String field){
+        Object object = getField(id,field);
+        if (object==null){
+            return Float.NaN;
+        }
+        return Float.parseFloat(object.toString());
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int docId(String id){
+        Integer docId = docIds.get(id);
+        if (docId==null){
+            throw new IllegalArgumentException("document "+id+" is not in the index");
+        }
+        return docId;
+    }
+
+    private static SpanQuery spanNearQuery(Ngram ngram){
+        String[] terms = ngram.getTerms();
+        if (terms.length == 0) {
+            throw new IllegalArgumentException("No terms for span");
+        }
+        String field = ngram.getField();
+        SpanQuery[] clauses = Arrays.stream(terms).map(term -> new SpanTermQuery(new Term(field, term)))
+                .toArray(SpanQuery[]::new);
+        if (clauses.length==1){
+            return clauses[0];
+        }
+        return new SpanNearQuery(clauses, ngram.getSlop(), ngram.isInOrder());
+    }
+
+    private static Query filter(Query query, Query filter){
+        if (filter==null){
+            return query;
+        }
+        return new BooleanQuery.Builder()
+                .add(query, BooleanClause.Occur.MUST)
+                .add(filter, BooleanClause.Occur.FILTER)
+                .build();
+    }
+
+    /**
+     * all matched documents, in index order
+     */
+    private Map<String, Float> search(Query query){
+        Map<String, Float> hits = new LinkedHashMap<>();
+        try {
+            searcher.search(query, new SimpleCollector() {
+                private Scorer scorer;
+                private int docBase;
+
+                @Override
+                protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                    docBase = context.docBase;
+                }
+
+                @Override
+                public void setScorer(Scorer scorer) throws IOException {
+                    this.scorer = scorer;
+                }
+
+                @Override
+                public void collect(int doc) throws IOException {
+                    String id = externalIds[docBase+doc];
+                    if (id!=null){
+                        hits.put(id, scorer.score());
+                    }
+                }
+
+                @Override
+                public boolean needsScores() {
+                    return true;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hits;
+    }
+
+    public static class Builder {
+        private List<String> paths = new ArrayList<>();
+        private String idField = "_uid";
+        private String sourceField = "_source";
+        private String bodyField = "body";
+
+        /**
+         * a lucene index directory; directories of all shards should be added for a sharded index
+         */
+        public Builder addPath(String path) {
+            this.paths.add(path);
+            return this;
+        }
+
+        /**
+         * stored field holding the document id;
+         * for the elasticsearch _uid field, the type prefix "type#" is removed
+         */
+        public Builder setIdField(String idField) {
+            this.idField = idField;
+            return this;
+        }
+
+        public Builder setSourceField(String sourceField) {
+            this.sourceField = sourceField;
+            return this;
+        }
+
+        public Builder setBodyField(String bodyField) {
+            this.bodyField = bodyField;
+            return this;
+        }
+
+        public LuceneIndex build() throws IOException {
+            if (paths.isEmpty()){
+                throw new IllegalArgumentException("no index path is given");
+            }
+            IndexReader[] readers = new IndexReader[paths.size()];
+            for (int i=0;i<paths.size();i++){
+                readers[i] = DirectoryReader.open(FSDirectory.open(Paths.get(paths.get(i))));
+            }
+            LuceneIndex index = new LuceneIndex();
+            index.reader = readers.length==1 ? readers[0] : new MultiReader(readers, true);
+            index.searcher = new IndexSearcher(index.reader);
+            index.idField = idField;
+            index.sourceField = sourceField;
+            index.bodyField = bodyField;
+            loadIds(index);
+            return index;
+        }
+
+        private void loadIds(LuceneIndex index) throws IOException {
+            IndexReader reader = index.reader;
+            Bits liveDocs = MultiFields.getLiveDocs(reader);
+            index.externalIds = new String[reader.maxDoc()];
+            index.docIds = new HashMap<>();
+            Set<String> fieldsToLoad = Collections.singleton(idField);
+            for (int doc=0;doc<reader.maxDoc();doc++){
+                if (liveDocs!=null && !liveDocs.get(doc)){
+                    continue;
+                }
+                String id = reader.document(doc, fieldsToLoad).get(idField);
+                if (id==null){
+                    continue;
+                }
+                if (idField.equals("_uid")){
+                    id = id.substring(id.indexOf('#')+1);
+                }
+                index.externalIds[doc] = id;
+                index.docIds.put(id, doc);
+            }
+        }
+    }
+}
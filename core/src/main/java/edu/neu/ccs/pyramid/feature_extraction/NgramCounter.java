@@ -0,0 +1,462 @@
+package edu.neu.ccs.pyramid.feature_extraction;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * document frequency counting of ngrams with bounded memory
+ * ngrams are identified by 64-bit hashes and counted in primitive open addressing maps, one per partition;
+ * when the entries in memory exceed the budget, the counts of a partition are sorted by key and spilled to a temporary file;
+ * merge() adds up the spilled runs of each partition and keeps the keys with document frequency >= minDF
+ * an optional count-min sketch, filled by a previous pass over the corpus, keeps rare ngrams out of the maps;
+ * the sketch never underestimates, so no frequent ngram is lost
+ * distinct ngrams with the same hash are counted together, which is unlikely with 64 bits
+ * add() and sketch() are thread safe
+ */
+public class NgramCounter implements AutoCloseable{
+    private int numPartitions;
+    private int maxEntriesPerPartition;
+    private File tempDirectory;
+    private int sketchWidth;
+    private int sketchDepth;
+    // depth * width counters
+    private AtomicIntegerArray sketch;
+    private Partition[] partitions;
+    private LongIntMap frequent;
+
+    /**
+     * 64-bit FNV-1a hash with a final avalanche step
+     */
+    public static long hash(String ngram){
+        long h = 0xcbf29ce484222325L;
+        for (int i=0;i<ngram.length();i++){
+            h ^= ngram.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    public boolean hasSketch(){
+        return sketch!=null;
+    }
+
+    /**
+     * first pass, only if there is a sketch
+     * @param keys distinct keys of one document
+     */
+    public void sketch(long[] keys){
+        for (long key: keys){
+            for (int row=0;row<sketchDepth;row++){
+                sketch.incrementAndGet(sketchIndex(key,row));
+            }
+        }
+    }
+
+    /**
+     * @param keys distinct keys of one document
+     * @param minDF keys which the sketch estimates below minDF are skipped
+     */
+    public void add(long[] keys, int minDF){
+        for (long key: keys){
+            if (sketch!=null && estimate(key)<minDF){
+                continue;
+            }
+            partitions[partition(key)].add(key);
+        }
+    }
+
+    /**
+     * adds up the counts of all runs; only keys with document frequency >= minDF are kept
+     * temporary files are deleted
+     */
+    public void merge(int minDF){
+        LongIntMap[] results = new LongIntMap[numPartitions];
+        IntStream.range(0,numPartitions).parallel().forEach(p -> results[p] = partitions[p].merge(minDF));
+        int size = 0;
+        for (LongIntMap result: results){
+            size += result.size();
+        }
+        frequent = new LongIntMap(size);
+        for (LongIntMap result: results){
+            for (int i=0;i<result.keys.length;i++){
+                if (result.values[i]!=0){
+                    frequent.addTo(result.keys[i],result.values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * after merge()
+     * @return document frequency, 0 if the key is below minDF
+     */
+    public int getCount(long key){
+        return frequent.get(key);
+    }
+
+    /**
+     * after merge()
+     * @return number of keys with document frequency >= minDF
+     */
+    public int getNumFrequent(){
+        return frequent.size();
+    }
+
+    /**
+     * number of runs written to disk so far
+     */
+    public int getNumSpills(){
+        int numSpills = 0;
+        for (Partition partition: partitions){
+            numSpills += partition.numSpills;
+        }
+        return numSpills;
+    }
+
+    @Override
+    public void close() {
+        for (Partition partition: partitions){
+            partition.deleteRuns();
+        }
+    }
+
+    private int partition(long key){
+        return (int)((key>>>32)%numPartitions);
+    }
+
+    private int sketchIndex(long key, int row){
+        long h = mix(key+(row+1)*0x9e3779b97f4a7c15L);
+        return row*sketchWidth + (int)Long.remainderUnsigned(h,sketchWidth);
+    }
+
+    private int estimate(long key){
+        int min = Integer.MAX_VALUE;
+        for (int row=0;row<sketchDepth;row++){
+            min = Math.min(min, sketch.get(sketchIndex(key,row)));
+        }
+        return min;
+    }
+
+    private static long mix(long h){
+        h ^= h>>>33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h>>>33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h>>>33;
+        return h;
+    }
+
+    private class Partition {
+        private LongIntMap counts = new LongIntMap(16);
+        private List<File> runs = new ArrayList<>();
+        private int numSpills;
+
+        synchronized void add(long key){
+            counts.addTo(key,1);
+            if (counts.size()>=maxEntriesPerPartition){
+                spill();
+            }
+        }
+
+        private void spill(){
+            try {
+                File file = File.createTempFile("ngram_counts",".bin",tempDirectory);
+                file.deleteOnExit();
+                long[] keys = counts.sortedKeys();
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))){
+                    out.writeInt(keys.length);
+                    for (long key: keys){
+                        out.writeLong(key);
+                        out.writeInt(counts.get(key));
+                    }
+                }
+                runs.add(file);
+                numSpills += 1;
+                counts = new LongIntMap(16);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * k-way merge of the sorted runs and the counts in memory
+         */
+        synchronized LongIntMap merge(int minDF){
+            LongIntMap result = new LongIntMap(16);
+            List<Run> sources = new ArrayList<>();
+            try {
+                long[] keys = counts.sortedKeys();
+                int[] values = new int[keys.length];
+                for (int i=0;i<keys.length;i++){
+                    values[i] = counts.get(keys[i]);
+                }
+                counts = new LongIntMap(16);
+                sources.add(new MemoryRun(keys,values));
+                for (File file: runs){
+                    sources.add(new FileRun(file));
+                }
+                PriorityQueue<Run> queue = new PriorityQueue<>(Comparator.comparingLong(Run::key));
+                for (Run run: sources){
+                    if (run.next()){
+                        queue.add(run);
+                    }
+                }
+                while (!queue.isEmpty()){
+                    long key = queue.peek().key();
+                    int count = 0;
+                    while (!queue.isEmpty() && queue.peek().key()==key){
+                        Run run = queue.poll();
+                        count += run.count();
+                        if (run.next()){
+                            queue.add(run);
+                        }
+                    }
+                    if (count>=minDF){
+                        result.addTo(key,count);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                for (Run run: sources){
+                    run.close();
+                }
+                deleteRuns();
+            }
+            return result;
+        }
+
+        synchronized void deleteRuns(){
+            for (File file: runs){
+                file.delete();
+            }
+            runs.clear();
+        }
+    }
+
+    /**
+     * sorted (key, count) pairs
+     */
+    private interface Run {
+        /**
+         * @return false if exhausted
+         */
+        boolean next() throws IOException;
+        long key();
+        int count();
+        void close();
+    }
+
+    private static class MemoryRun implements Run {
+        private long[] keys;
+        private int[] values;
+        private int position = -1;
+
+        MemoryRun(long[] keys, int[] values) {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public boolean next() {
+            position += 1;
+            return position<keys.length;
+        }
+
+        @Override
+        public long key() {
+            return keys[position];
+        }
+
+        @Override
+        public int count() {
+            return values[position];
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class FileRun implements Run {
+        private DataInputStream in;
+        private int remaining;
+        private long key;
+        private int count;
+
+        FileRun(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            this.remaining = in.readInt();
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (remaining==0){
+                return false;
+            }
+            key = in.readLong();
+            count = in.readInt();
+            remaining -= 1;
+            return true;
+        }
+
+        @Override
+        public long key() {
+            return key;
+        }
+
+        @Override
+        public int count() {
+            return count;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * open addressing with linear probing; a slot is empty if its value is 0, so values must be positive
+     */
+    private static class LongIntMap {
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        LongIntMap(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize,8)*2-1)*2;
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+        }
+
+        int size(){
+            return size;
+        }
+
+        int get(long key){
+            int mask = keys.length-1;
+            for (int slot=(int)mix(key)&mask;values[slot]!=0;slot=(slot+1)&mask){
+                if (keys[slot]==key){
+                    return values[slot];
+                }
+            }
+            return 0;
+        }
+
+        void addTo(long key, int increment){
+            int mask = keys.length-1;
+            int slot = (int)mix(key)&mask;
+            while (values[slot]!=0){
+                if (keys[slot]==key){
+                    values[slot] += increment;
+                    return;
+                }
+                slot = (slot+1)&mask;
+            }
+            keys[slot] = key;
+            values[slot] = increment;
+            size += 1;
+            // load factor at most 1/2
+            if (size*2>keys.length){
+                rehash();
+            }
+        }
+
+        long[] sortedKeys(){
+            long[] sorted = new long[size];
+            int j = 0;
+            for (int i=0;i<keys.length;i++){
+                if (values[i]!=0){
+                    sorted[j] = keys[i];
+                    j += 1;
+                }
+            }
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        private void rehash(){
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length*2];
+            values = new int[oldValues.length*2];
+            size = 0;
+            for (int i=0;i<oldKeys.length;i++){
+                if (oldValues[i]!=0){
+                    addTo(oldKeys[i],oldValues[i]);
+                }
+            }
+        }
+    }
+
+    public static class Builder {
+        private int maxEntriesInMemory = 10000000;
+        private int numPartitions = 16;
+        private File tempDirectory = null;
+        private int sketchWidth = 0;
+        private int sketchDepth = 4;
+
+        /**
+         * total number of distinct keys held in memory before spilling, about 24-48 bytes per key
+         */
+        public Builder setMaxEntriesInMemory(int maxEntriesInMemory) {
+            this.maxEntriesInMemory = maxEntriesInMemory;
+            return this;
+        }
+
+        public Builder setNumPartitions(int numPartitions) {
+            this.numPartitions = numPartitions;
+            return this;
+        }
+
+        /**
+         * where runs are spilled; the default temporary directory if not set
+         */
+        public Builder setTempDirectory(File tempDirectory) {
+            this.tempDirectory = tempDirectory;
+            return this;
+        }
+
+        /**
+         * number of counters per row of the count-min sketch, 0 for no sketch
+         * with width w, the estimate of a key exceeds its true count by at most e*N/w with probability 1-exp(-depth),
+         * where N is the total number of (document, ngram) pairs
+         */
+        public Builder setSketchWidth(int sketchWidth) {
+            this.sketchWidth = sketchWidth;
+            return this;
+        }
+
+        public Builder setSketchDepth(int sketchDepth) {
+            this.sketchDepth = sketchDepth;
+            return this;
+        }
+
+        public NgramCounter build(){
+            if (numPartitions<=0 || maxEntriesInMemory<numPartitions){
+                throw new IllegalArgumentException("numPartitions should be positive and no more than maxEntriesInMemory");
+            }
+            NgramCounter counter = new NgramCounter();
+            counter.numPartitions = numPartitions;
+            counter.maxEntriesPerPartition = maxEntriesInMemory/numPartitions;
+            counter.tempDirectory = tempDirectory;
+            counter.sketchWidth = sketchWidth;
+            counter.sketchDepth = sketchDepth;
+            if (sketchWidth>0){
+                counter.sketch = new AtomicIntegerArray(sketchWidth*sketchDepth);
+            }
+            counter.partitions = new Partition[numPartitions];
+            for (int p=0;p<numPartitions;p++){
+                counter.partitions[p] = counter.new Partition();
+            }
+            return counter;
+        }
+    }
+}
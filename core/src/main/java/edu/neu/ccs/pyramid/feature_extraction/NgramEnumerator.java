@@ -7,10 +7,12 @@ import edu.neu.ccs.pyramid.feature.Ngram;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * naive enumeration of ngrams
+ * term vectors are fetched in batches, see ESIndex.forEachTermVector
  * Created by chengli on 1/15/15.
  */
 public class NgramEnumerator {
@@ -18,20 +20,14 @@ public class NgramEnumerator {
     public static Multiset<Ngram> gatherNgram(ESIndex index, String[] ids, NgramTemplate template){
         Multiset<Ngram> multiset = ConcurrentHashMultiset.create();
         String field = template.getField();
-        Arrays.stream(ids).parallel().forEach(id -> {
-            Map<Integer,String> termVector = index.getTermVectorFromIndex(field, id);
-            add(termVector,multiset,template);
-        });
+        index.forEachTermVector(field, ids, (id, termVector) -> add(termVector,multiset,template));
         return multiset;
     }
 
     public static Multiset<Ngram> gatherNgram(ESIndex index, String[] ids, NgramTemplate template, int minDF){
         Multiset<Ngram> multiset = ConcurrentHashMultiset.create();
         String field = template.getField();
-        Arrays.stream(ids).parallel().forEach(id -> {
-            Map<Integer,String> termVector = index.getTermVectorFromIndex(field, id);
-            add(termVector,multiset,template);
-        });
+        index.forEachTermVector(field, ids, (id, termVector) -> add(termVector,multiset,template));
         Multiset<Ngram> filtered = ConcurrentHashMultiset.create();
         for (Multiset.Entry entry: multiset.entrySet()){
             Ngram ngram = (Ngram)entry.getElement();
@@ -43,6 +39,64 @@ public class NgramEnumerator {
         return filtered;
     }
 
+    /**
+     * same as gatherNgram(index, ids, template, minDF), but ngrams are counted by 64-bit keys with bounded memory,
+     * see NgramCounter; only ngrams with document frequency >= minDF are materialized as Ngram objects
+     * term vectors are read twice, or three times if the counter uses a sketch
+     * @param counterBuilder memory budget, temporary directory and sketch of the counter
+     */
+    public static Multiset<Ngram> gatherNgram(ESIndex index, String[] ids, NgramTemplate template, int minDF,
+                                              NgramCounter.Builder counterBuilder){
+        String field = template.getField();
+        Multiset<Ngram> multiset = ConcurrentHashMultiset.create();
+        try (NgramCounter counter = counterBuilder.build()){
+            if (counter.hasSketch()){
+                index.forEachTermVector(field, ids, (id, termVector) -> counter.sketch(ngramKeys(termVector,template)));
+            }
+            index.forEachTermVector(field, ids, (id, termVector) -> counter.add(ngramKeys(termVector,template),minDF));
+            counter.merge(minDF);
+            Set<Long> materialized = ConcurrentHashMap.newKeySet();
+            index.forEachTermVector(field, ids, (id, termVector) -> forEachNgram(termVector, template, string -> {
+                long key = NgramCounter.hash(string);
+                int count = counter.getCount(key);
+                if (count>0 && materialized.add(key)){
+                    Ngram ngram = new Ngram();
+                    ngram.setNgram(string);
+                    ngram.setSlop(template.getSlop());
+                    ngram.setField(field);
+                    ngram.setInOrder(true);
+                    multiset.add(ngram,count);
+                }
+            }));
+        }
+        return multiset;
+    }
+
+    /**
+     * distinct keys of the ngrams in one doc, sorted
+     */
+    static long[] ngramKeys(Map<Integer, String> termVector, NgramTemplate template){
+        List<String> ngrams = new ArrayList<>();
+        forEachNgram(termVector, template, ngrams::add);
+        return ngrams.stream().mapToLong(NgramCounter::hash).sorted().distinct().toArray();
+    }
+
+    private static void forEachNgram(Map<Integer, String> termVector, NgramTemplate template, Consumer<String> consumer){
+        Comparator<Map.Entry<Integer,String>> comparator = Comparator.comparing(Map.Entry::getKey);
+        List<String> source = termVector.entrySet().stream()
+                .sorted(comparator).map(Map.Entry::getValue).collect(Collectors.toList());
+        for (List<Integer> positions: template.getPositionTemplate()){
+            int last = positions.get(positions.size()-1);
+            for (int i=0;i+last<source.size();i++){
+                List<String> list = new ArrayList<>(positions.size());
+                for (int j: positions){
+                    list.add(source.get(i+j));
+                }
+                consumer.accept(String.join(" ",list));
+            }
+        }
+    }
+
     /**
      * gather ngrams with document frequency >= threshold
      * @param index
@@ -55,15 +109,11 @@ public class NgramEnumerator {
     public static List<String> gatherNgrams(ESIndex index,String field,
                                      String[] ids, int n, int minDf) throws Exception{
         Map<String,Integer> counts = new ConcurrentHashMap<>();
-        Arrays.stream(ids).parallel().forEach(id -> {
-            Map<Integer,String> termVector = index.getTermVectorFromIndex(field, id);
+        index.forEachTermVector(field, ids, (id, termVector) -> {
             Map<String, Integer> localCount = NgramEnumerator.getNgramCounts(termVector,n);
-            for (Map.Entry<String, Integer> entry: localCount.entrySet()){
-                String ngram = entry.getKey();
-                int oldCount = counts.getOrDefault(ngram,0);
+            for (String ngram: localCount.keySet()){
                 //document count += 1
-                int newCount = oldCount + 1;
-                counts.put(ngram,newCount);
+                counts.merge(ngram,1,Integer::sum);
             }
         });
         return counts.entrySet().parallelStream().filter(entry -> entry.getValue()>=minDf)
@@ -0,0 +1,331 @@
+package edu.neu.ccs.pyramid.feature_extraction;
+
+import edu.neu.ccs.pyramid.feature.Feature;
+import edu.neu.ccs.pyramid.feature.Ngram;
+import edu.neu.ccs.pyramid.feature.SpanNotNgram;
+
+import java.util.*;
+
+/**
+ * matches many ngram features of one field against a positional term vector in a single pass,
+ * instead of one span query per feature
+ * in order ngrams with slop 0 and single terms are matched by walking a trie of terms from every position;
+ * other ngrams are indexed by their first term and matched by joining the positions of their terms,
+ * only if all of their terms occur in the document
+ * counts are the same as the phrase count plugin (ESIndex.spanNearFrequency): for in order ngrams,
+ * the number of positions of the first term from which the greedy chain of following terms is within the slop;
+ * for unordered ngrams, the number of matches of CustomNearSpansUnordered
+ * for a SpanNotNgram, the number of matches of the include ngram which do not overlap any match of the exclude ngram,
+ * after the include match is extended by pre positions to the left and post positions to the right
+ * query terms are lower cased as in PhraseCountQueryBuilder
+ * thread safe
+ */
+public class NgramMatcher {
+    private String field;
+    private Node root = new Node();
+    // first term -> ngrams not in the trie
+    private Map<String, List<Pattern>> sloppyPatterns = new HashMap<>();
+    private List<SpanNot> spanNots = new ArrayList<>();
+    private int numFeatures;
+
+    /**
+     * @param field all features should be defined on this field
+     * @param features Ngram or SpanNotNgram
+     */
+    public NgramMatcher(String field, List<? extends Feature> features) {
+        this.field = field;
+        // the same ngram may be used by several features
+        Map<String, Pattern> patterns = new HashMap<>();
+        for (Feature feature: features){
+            if (feature instanceof Ngram){
+                Pattern pattern = pattern((Ngram)feature, patterns);
+                pattern.featureIndices.add(feature.getIndex());
+            } else if (feature instanceof SpanNotNgram){
+                SpanNotNgram spanNotNgram = (SpanNotNgram)feature;
+                SpanNot spanNot = new SpanNot();
+                spanNot.featureIndex = feature.getIndex();
+                spanNot.include = pattern(spanNotNgram.getInclude(), patterns);
+                spanNot.exclude = pattern(spanNotNgram.getExclude(), patterns);
+                spanNot.include.needsSpans = true;
+                spanNot.exclude.needsSpans = true;
+                spanNot.pre = spanNotNgram.getPre();
+                spanNot.post = spanNotNgram.getPost();
+                spanNots.add(spanNot);
+            } else {
+                throw new IllegalArgumentException("feature "+feature.getName()+" is not an ngram");
+            }
+            numFeatures += 1;
+        }
+        for (Pattern pattern: patterns.values()){
+            if (pattern.terms.length==1 || (pattern.inOrder && pattern.slop==0)){
+                Node node = root;
+                for (String term: pattern.terms){
+                    node = node.children.computeIfAbsent(term, t -> new Node());
+                }
+                node.patterns.add(pattern);
+            } else {
+                sloppyPatterns.computeIfAbsent(pattern.terms[0], t -> new ArrayList<>()).add(pattern);
+            }
+        }
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * @param termVector position -> term
+     * @return feature index -> number of matches, features without matches are absent
+     */
+    public Map<Integer, Integer> match(Map<Integer, String> termVector){
+        Map<Integer, Integer> row = new HashMap<>();
+        if (termVector.isEmpty()){
+            return row;
+        }
+        int length = Collections.max(termVector.keySet())+1;
+        String[] tokens = new String[length];
+        Map<String, List<Integer>> positionLists = new HashMap<>();
+        for (Map.Entry<Integer, String> entry: termVector.entrySet()){
+            tokens[entry.getKey()] = entry.getValue();
+            positionLists.computeIfAbsent(entry.getValue(), t -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        Map<Pattern, Matches> matches = new HashMap<>();
+        for (int start=0;start<length;start++){
+            Node node = root;
+            for (int end=start;end<length && tokens[end]!=null;end++){
+                node = node.children.get(tokens[end]);
+                if (node==null){
+                    break;
+                }
+                for (Pattern pattern: node.patterns){
+                    matches.computeIfAbsent(pattern, Matches::new).add(start, end+1);
+                }
+            }
+        }
+
+        if (!sloppyPatterns.isEmpty()){
+            Map<String, int[]> positions = new HashMap<>();
+            for (Map.Entry<String, List<Integer>> entry: positionLists.entrySet()){
+                int[] sorted = entry.getValue().stream().mapToInt(Integer::intValue).sorted().toArray();
+                positions.put(entry.getKey(), sorted);
+            }
+            for (String term: positions.keySet()){
+                List<Pattern> candidates = sloppyPatterns.get(term);
+                if (candidates==null){
+                    continue;
+                }
+                for (Pattern pattern: candidates){
+                    int[][] termPositions = new int[pattern.terms.length][];
+                    boolean allPresent = true;
+                    for (int i=0;i<pattern.terms.length;i++){
+                        termPositions[i] = positions.get(pattern.terms[i]);
+                        if (termPositions[i]==null){
+                            allPresent = false;
+                            break;
+                        }
+                    }
+                    if (!allPresent){
+                        continue;
+                    }
+                    Matches patternMatches = new Matches(pattern);
+                    if (pattern.inOrder){
+                        matchInOrder(termPositions, pattern.slop, patternMatches);
+                    } else {
+                        matchUnordered(termPositions, pattern.slop, patternMatches);
+                    }
+                    if (patternMatches.count>0){
+                        matches.put(pattern, patternMatches);
+                    }
+                }
+            }
+        }
+
+        for (Matches patternMatches: matches.values()){
+            for (int featureIndex: patternMatches.pattern.featureIndices){
+                row.put(featureIndex, patternMatches.count);
+            }
+        }
+        for (SpanNot spanNot: spanNots){
+            Matches include = matches.get(spanNot.include);
+            if (include==null){
+                continue;
+            }
+            Matches exclude = matches.get(spanNot.exclude);
+            int count = 0;
+            for (int m=0;m<include.count;m++){
+                int start = include.starts[m];
+                int end = include.ends[m];
+                boolean overlap = false;
+                for (int x=0;exclude!=null && x<exclude.count;x++){
+                    if (exclude.starts[x]<end+spanNot.post && exclude.ends[x]>start-spanNot.pre){
+                        overlap = true;
+                        break;
+                    }
+                }
+                if (!overlap){
+                    count += 1;
+                }
+            }
+            if (count>0){
+                row.put(spanNot.featureIndex, count);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * same as NearSpansOrdered: for each position of the first term,
+     * every following term moves to its first position after the end of the previous term
+     */
+    private static void matchInOrder(int[][] termPositions, int slop, Matches matches){
+        int n = termPositions.length;
+        int[] cursors = new int[n];
+        for (int start: termPositions[0]){
+            int previousEnd = start+1;
+            int width = 0;
+            for (int i=1;i<n;i++){
+                int[] positions = termPositions[i];
+                while (cursors[i]<positions.length && positions[cursors[i]]<previousEnd){
+                    cursors[i] += 1;
+                }
+                if (cursors[i]==positions.length){
+                    return;
+                }
+                width += positions[cursors[i]]-previousEnd;
+                previousEnd = positions[cursors[i]]+1;
+            }
+            if (width<=slop){
+                matches.add(start, previousEnd);
+            }
+        }
+    }
+
+    /**
+     * same as CustomNearSpansUnordered: the term at the smallest position moves forward, one step at a time;
+     * a position is used by at most one term
+     */
+    private static void matchUnordered(int[][] termPositions, int slop, Matches matches){
+        int n = termPositions.length;
+        int[] cursors = new int[n];
+        Set<Integer> used = new HashSet<>();
+        int maxEnd = -1;
+        for (int i=0;i<n;i++){
+            if (!advance(termPositions[i], cursors, i, used)){
+                return;
+            }
+            maxEnd = Math.max(maxEnd, termPositions[i][cursors[i]]+1);
+        }
+        while (true){
+            int top = 0;
+            for (int i=1;i<n;i++){
+                if (termPositions[i][cursors[i]]<termPositions[top][cursors[top]]){
+                    top = i;
+                }
+            }
+            int start = termPositions[top][cursors[top]];
+            if (maxEnd-start-n<=slop){
+                matches.add(start, maxEnd);
+            }
+            cursors[top] += 1;
+            if (!advance(termPositions[top], cursors, top, used)){
+                return;
+            }
+            maxEnd = Math.max(maxEnd, termPositions[top][cursors[top]]+1);
+        }
+    }
+
+    /**
+     * moves the cursor to the first unused position and marks it as used
+     * @return false if the positions are exhausted
+     */
+    private static boolean advance(int[] positions, int[] cursors, int i, Set<Integer> used){
+        while (cursors[i]<positions.length && used.contains(positions[cursors[i]])){
+            cursors[i] += 1;
+        }
+        if (cursors[i]==positions.length){
+            return false;
+        }
+        used.add(positions[cursors[i]]);
+        return true;
+    }
+
+    private Pattern pattern(Ngram ngram, Map<String, Pattern> patterns){
+        if (!ngram.getField().equals(field)){
+            throw new IllegalArgumentException("ngram "+ngram.getNgram()+" is not defined on field "+field);
+        }
+        String[] terms = Arrays.stream(ngram.getNgram().split("\\s+"))
+                .filter(term -> !term.isEmpty())
+                .map(term -> term.toLowerCase(Locale.ROOT))
+                .toArray(String[]::new);
+        if (terms.length==0){
+            throw new IllegalArgumentException("No term for span");
+        }
+        boolean inOrder = ngram.isInOrder() || terms.length==1;
+        String key = String.join(" ", terms)+"|"+ngram.getSlop()+"|"+inOrder;
+        return patterns.computeIfAbsent(key, k -> new Pattern(terms, ngram.getSlop(), inOrder));
+    }
+
+    private static class Node {
+        private Map<String, Node> children = new HashMap<>();
+        private List<Pattern> patterns = new ArrayList<>(1);
+    }
+
+    private static class Pattern {
+        private String[] terms;
+        private int slop;
+        private boolean inOrder;
+        private List<Integer> featureIndices = new ArrayList<>(1);
+        // spans of matches are kept for span not features
+        private boolean needsSpans;
+
+        Pattern(String[] terms, int slop, boolean inOrder) {
+            this.terms = terms;
+            this.slop = slop;
+            this.inOrder = inOrder;
+        }
+    }
+
+    private static class SpanNot {
+        private int featureIndex;
+        private Pattern include;
+        private Pattern exclude;
+        private int pre;
+        private int post;
+    }
+
+    /**
+     * matches of a pattern in one document
+     */
+    private static class Matches {
+        private Pattern pattern;
+        private int count;
+        // start inclusive, end exclusive
+        private int[] starts;
+        private int[] ends;
+
+        Matches(Pattern pattern) {
+            this.pattern = pattern;
+            if (pattern.needsSpans){
+                this.starts = new int[4];
+                this.ends = new int[4];
+            }
+        }
+
+        void add(int start, int end){
+            if (pattern.needsSpans){
+                if (count==starts.length){
+                    starts = Arrays.copyOf(starts, count*2);
+                    ends = Arrays.copyOf(ends, count*2);
+                }
+                starts[count] = start;
+                ends[count] = end;
+            }
+            count += 1;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package edu.neu.ccs.pyramid.multilabel_classification;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * predicted counts of the feature-label weights of a linear model, in one pass over rows
+ * count(k, j) = sum_i classProbMatrix[i][k] * x_ij, and count(k, bias) = sum_i classProbMatrix[i][k]
+ * the result uses the layout of the weights: class k occupies [k*(numFeatures+1), (k+1)*(numFeatures+1)),
+ * with the bias first
+ * rows are split into one chunk per thread; each chunk scatters its rows into a dense block of its own,
+ * and blocks are added up by a tree reduction
+ * compared with one column scan per parameter, each non-zero is read once instead of numClasses times,
+ * at the cost of one numClasses*(numFeatures+1) block per thread
+ * featureGradients switches between the two for losses with feature-label weights in this layout
+ */
+public class PredictedCounts {
+
+    public static double[] compute(DataSet dataSet, double[][] classProbMatrix, int numClasses){
+        int numData = dataSet.getNumDataPoints();
+        int blockSize = dataSet.getNumFeatures()+1;
+        int numChunks = Math.max(1, Math.min(numData, ForkJoinPool.getCommonPoolParallelism()));
+        return IntStream.range(0, numChunks).parallel()
+                .mapToObj(chunk -> {
+                    double[] counts = new double[numClasses*blockSize];
+                    int from = (int)((long)numData*chunk/numChunks);
+                    int to = (int)((long)numData*(chunk+1)/numChunks);
+                    for (int i=from;i<to;i++){
+                        addRow(dataSet.getRow(i), classProbMatrix[i], blockSize, counts);
+                    }
+                    return counts;
+                })
+                .reduce(PredictedCounts::add)
+                .get();
+    }
+
+    /**
+     * gradient of the feature-label weights, predicted count - empirical count + regularization,
+     * set at [0, numClasses*(numFeatures+1)) of gradient
+     * @param rowMajor if true, counts come from compute; otherwise from one column scan per parameter
+     * @param regularization regularization term of the loss for a parameter index
+     */
+    public static void featureGradients(DataSet dataSet, double[][] classProbMatrix, int numClasses,
+                                        double[] empiricalCounts, IntToDoubleFunction regularization,
+                                        boolean rowMajor, Vector gradient){
+        int blockSize = dataSet.getNumFeatures()+1;
+        double[] counts = rowMajor ? compute(dataSet, classProbMatrix, numClasses) : null;
+        IntStream.range(0, numClasses*blockSize).parallel()
+                .forEach(i -> {
+                    double count = rowMajor ? counts[i] : columnCount(dataSet, classProbMatrix, blockSize, i);
+                    gradient.set(i, count - empiricalCounts[i] + regularization.applyAsDouble(i));
+                });
+    }
+
+    // this calculation uses a short cut for equation (4) of
+    // the paper "Collective Multi-Label Classification"
+    // the sum of y can be pushed in and gives the marginal
+    private static double columnCount(DataSet dataSet, double[][] classProbMatrix, int blockSize, int parameterIndex){
+        int classIndex = parameterIndex/blockSize;
+        int featureIndex = parameterIndex - classIndex*blockSize - 1;
+        double count = 0;
+        if (featureIndex == -1) {
+            for (int i=0; i<dataSet.getNumDataPoints(); i++) {
+                count += classProbMatrix[i][classIndex];
+            }
+        } else {
+            Vector featureColumn = dataSet.getColumn(featureIndex);
+            for (Vector.Element element: featureColumn.nonZeroes()) {
+                count += classProbMatrix[element.index()][classIndex] * element.get();
+            }
+        }
+        return count;
+    }
+
+    private static void addRow(Vector row, double[] classProbs, int blockSize, double[] counts){
+        int[] indices = new int[Math.max(1, row.getNumNondefaultElements())];
+        double[] values = new double[indices.length];
+        int size = 0;
+        for (Vector.Element element: row.nonZeroes()){
+            if (size==indices.length){
+                indices = Arrays.copyOf(indices, size*2);
+                values = Arrays.copyOf(values, size*2);
+            }
+            indices[size] = element.index();
+            values[size] = element.get();
+            size += 1;
+        }
+        for (int k=0;k<classProbs.length;k++){
+            double prob = classProbs[k];
+            if (prob==0){
+                continue;
+            }
+            int start = k*blockSize;
+            counts[start] += prob;
+            for (int e=0;e<size;e++){
+                counts[start+1+indices[e]] += prob*values[e];
+            }
+        }
+    }
+
+    private static double[] add(double[] counts1, double[] counts2){
+        for (int j=0;j<counts1.length;j++){
+            counts1[j] += counts2[j];
+        }
+        return counts1;
+    }
+}
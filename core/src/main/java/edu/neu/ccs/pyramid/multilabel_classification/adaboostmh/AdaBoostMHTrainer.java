@@ -1,5 +1,7 @@
 package edu.neu.ccs.pyramid.multilabel_classification.adaboostmh;
 
+import edu.neu.ccs.pyramid.dataset.DenseFloatMatrix;
+import edu.neu.ccs.pyramid.dataset.FloatMatrix;
 import edu.neu.ccs.pyramid.dataset.WeightMatrix;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import edu.neu.ccs.pyramid.dataset.ScoreMatrix;
@@ -28,6 +30,13 @@ public class AdaBoostMHTrainer {
     private boolean[][] labels;
 
     public AdaBoostMHTrainer(MultiLabelClfDataSet dataSet, AdaBoostMH boosting) {
+        this(dataSet, boosting, DenseFloatMatrix.factory(FloatMatrix.Layout.ROW_MAJOR));
+    }
+
+    /**
+     * @param matrixFactory storage of the score matrix, e.g. off-heap or sparse for many data points and labels
+     */
+    public AdaBoostMHTrainer(MultiLabelClfDataSet dataSet, AdaBoostMH boosting, FloatMatrix.Factory matrixFactory) {
         this.dataSet = dataSet;
         this.boosting = boosting;
         this.boosting.setFeatureList(this.dataSet.getFeatureList());
@@ -35,7 +44,7 @@ public class AdaBoostMHTrainer {
         if (boosting.getRegressors(0).size()==0){
             this.setPriorProbs(dataSet);
         }
-        this.scoreMatrix = new ScoreMatrix(dataSet.getNumDataPoints(),dataSet.getNumClasses());
+        this.scoreMatrix = new ScoreMatrix(matrixFactory.create(dataSet.getNumDataPoints(),dataSet.getNumClasses()));
         this.initStagedClassScoreMatrix();
         this.weightMatrix = new WeightMatrix(dataSet.getNumDataPoints(),dataSet.getNumClasses());
         this.updateDistribution();
@@ -1,6 +1,7 @@
 package edu.neu.ccs.pyramid.multilabel_classification.cbm;
 
 import edu.neu.ccs.pyramid.classification.PriorProbClassifier;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
 import edu.neu.ccs.pyramid.clustering.bm.BM;
 import edu.neu.ccs.pyramid.clustering.bm.BMSelector;
 import edu.neu.ccs.pyramid.dataset.*;
@@ -10,14 +11,24 @@ import edu.neu.ccs.pyramid.util.Pair;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
  * Created by chengli on 3/21/17.
+ *
+ * in stochastic mode, each step takes a mini-batch of data points, updates their gammas,
+ * and warm starts the classifiers on the batch with binaryUpdatesPerIter and multiclassUpdatesPerIter updates;
+ * the parameters then move stepSize = (t+stepOffset)^(-stepDecay) of the way from the old values to the batch fit, t = 0, 1, ...
+ * the label fractions used for skipping and smoothing come from running sums of gammas over all data points,
+ * which are kept up to date with the batch updates
+ * Liang, Percy, and Dan Klein. "Online EM for unsupervised models." NAACL 2009.
  */
 public abstract class AbstractCBMOptimizer {
     private static final Logger logger = LogManager.getLogger();
@@ -49,6 +60,35 @@ public abstract class AbstractCBMOptimizer {
 
     protected boolean parallelBinaryUpdates =true;
 
+    // cap on the total non-zeros of the active data sets trained at the same time
+    private long maxActiveNonZeros = Long.MAX_VALUE;
+    // number of non-zeros of each row
+    private int[] rowNonZeros;
+    // tasks of the last binary update, with their timings
+    private List<BinaryTask> binaryTasks = new ArrayList<>();
+
+    private boolean stochastic = false;
+    private int batchSize = 10000;
+    private double stepOffset = 1;
+    private double stepDecay = 0.7;
+    // number of mini-batches processed so far
+    private int numBatchUpdates;
+    private int[] batchOrder;
+    private int batchPosition;
+    private Random random = new Random(0L);
+
+    // fraction of the way from the old parameters to the fit of the current M step; 1 except in stochastic M steps
+    protected double stepSize = 1;
+    // number of data points / number of data points in the current M step,
+    // for regularization that is not normalized by the size of the data; 1 except in stochastic M steps
+    protected double dataScale = 1;
+    private boolean inBatchStep = false;
+
+    // running sums for stochastic mode, format [#components][#labels] and [#components]
+    private double[][] componentPositives;
+    private double[] componentWeights;
+    private boolean componentSumsValid = false;
+
     public AbstractCBMOptimizer(CBM cbm, MultiLabelClfDataSet dataSet) {
         this.cbm = cbm;
         this.dataSet = dataSet;
@@ -101,8 +141,69 @@ public abstract class AbstractCBMOptimizer {
         this.skipDataThreshold = skipDataThreshold;
     }
 
+    /**
+     * components whose active data sets together have more non-zeros are trained in separate rounds;
+     * a component larger than the cap still runs, in a round of its own
+     */
+    public void setMaxActiveNonZeros(long maxActiveNonZeros) {
+        if (maxActiveNonZeros<1){
+            throw new IllegalArgumentException("max active non-zeros should be at least 1");
+        }
+        this.maxActiveNonZeros = maxActiveNonZeros;
+    }
+
+    /**
+     * @return the (component, label) tasks of the last binary update, in the order they were queued
+     */
+    public List<BinaryTask> getBinaryTasks() {
+        return binaryTasks;
+    }
+
+    public void setStochastic(boolean stochastic) {
+        this.stochastic = stochastic;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize<1){
+            throw new IllegalArgumentException("batch size should be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * larger offsets make early steps smaller; with offset 1 the first batch replaces the parameters
+     */
+    public void setStepOffset(double stepOffset) {
+        if (stepOffset<1){
+            throw new IllegalArgumentException("step offset should be at least 1");
+        }
+        this.stepOffset = stepOffset;
+    }
+
+    /**
+     * should be in (0.5, 1] for convergence
+     */
+    public void setStepDecay(double stepDecay) {
+        if (stepDecay<=0.5 || stepDecay>1){
+            throw new IllegalArgumentException("step decay should be in (0.5, 1]");
+        }
+        this.stepDecay = stepDecay;
+    }
+
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * @return whether the current M step is on a mini-batch
+     */
+    protected boolean isBatchStep() {
+        return inBatchStep;
+    }
+
     public void initialize(){
-        gammas = BMSelector.selectGammas(dataSet.getNumClasses(),dataSet.getMultiLabels(), cbm.getNumComponents());
+        componentSumsValid = false;
+        gammas = BMSelector.selectGammas(labelMatrix, dataSet.getMultiLabels(), cbm.getNumComponents());
         if (logger.isDebugEnabled()){
             logger.debug("performing M step");
         }
@@ -110,6 +211,7 @@ public abstract class AbstractCBMOptimizer {
     }
 
     public void randInitialize() {
+        componentSumsValid = false;
         int K = cbm.getNumComponents();
         for (int i=0; i<dataSet.getNumDataPoints(); i++) {
             double[] dist = new double[K];
@@ -131,12 +233,98 @@ public abstract class AbstractCBMOptimizer {
         mStep();
     }
 
+    /**
+     * one EM iteration, or one pass of mini-batches in stochastic mode
+     */
     public void iterate() {
+        if (stochastic){
+            int numBatches = (dataSet.getNumDataPoints()+batchSize-1)/batchSize;
+            for (int b=0;b<numBatches;b++){
+                iterateBatch();
+            }
+            return;
+        }
         eStep();
         mStep();
     }
 
+    /**
+     * one stochastic EM step on the next mini-batch; batches follow a random order which is reshuffled every pass
+     */
+    public void iterateBatch(){
+        int[] batch = nextBatch();
+        if (!componentSumsValid){
+            computeComponentSums();
+        }
+        double[][] oldGammas = new double[batch.length][];
+        for (int b=0;b<batch.length;b++){
+            oldGammas[b] = Arrays.copyOf(gammas[batch[b]], cbm.getNumComponents());
+        }
+        Arrays.stream(batch).parallel().forEach(this::updateGamma);
+        for (int b=0;b<batch.length;b++){
+            updateComponentSums(batch[b], oldGammas[b]);
+        }
+
+        stepSize = Math.pow(numBatchUpdates+stepOffset, -stepDecay);
+        dataScale = (double)dataSet.getNumDataPoints()/batch.length;
+        numBatchUpdates += 1;
+        inBatchStep = true;
+        if (logger.isDebugEnabled()){
+            logger.debug("start stochastic M step "+numBatchUpdates+" on "+batch.length+" data points, step size = "+stepSize);
+        }
+        try {
+            updateBinaryClassifiers(IntStream.range(0, cbm.numComponents).toArray(), batch);
+            MultiLabelClfDataSet batchDataSet = new RowSubsetMLClfDataSet(dataSet, batch);
+            double[][] batchGammas = Arrays.stream(batch).mapToObj(i -> gammas[i]).toArray(double[][]::new);
+            updateMultiClassClassifier(batchDataSet, batchGammas);
+        } finally {
+            inBatchStep = false;
+            stepSize = 1;
+            dataScale = 1;
+        }
+    }
+
+    private int[] nextBatch(){
+        int numData = dataSet.getNumDataPoints();
+        if (batchOrder==null || batchPosition>=numData){
+            batchOrder = IntStream.range(0, numData).toArray();
+            for (int i=numData-1;i>0;i--){
+                int r = random.nextInt(i+1);
+                int tmp = batchOrder[i];
+                batchOrder[i] = batchOrder[r];
+                batchOrder[r] = tmp;
+            }
+            batchPosition = 0;
+        }
+        int to = Math.min(batchPosition+batchSize, numData);
+        int[] batch = Arrays.copyOfRange(batchOrder, batchPosition, to);
+        batchPosition = to;
+        return batch;
+    }
+
+    private void computeComponentSums(){
+        componentPositives = new double[cbm.numComponents][cbm.numLabels];
+        componentWeights = new double[cbm.numComponents];
+        double[] zeros = new double[cbm.numComponents];
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            updateComponentSums(i, zeros);
+        }
+        componentSumsValid = true;
+    }
+
+    private void updateComponentSums(int dataIndex, double[] oldGammas){
+        MultiLabel multiLabel = dataSet.getMultiLabels()[dataIndex];
+        for (int k=0;k<cbm.numComponents;k++){
+            double change = gammas[dataIndex][k]-oldGammas[k];
+            componentWeights[k] += change;
+            for (int l: multiLabel.getMatchedLabels()){
+                componentPositives[k][l] += change;
+            }
+        }
+    }
+
     protected void eStep(){
+        componentSumsValid = false;
         if (logger.isDebugEnabled()){
             logger.debug("start E step");
         }
@@ -178,82 +366,162 @@ public abstract class AbstractCBMOptimizer {
         if (logger.isDebugEnabled()){
             logger.debug("start updateBinaryClassifiers");
         }
-        IntStream.range(0, cbm.numComponents).forEach(this::updateBinaryClassifiers);
+        updateBinaryClassifiers(IntStream.range(0, cbm.numComponents).toArray(), IntStream.range(0, dataSet.getNumDataPoints()).toArray());
         if (logger.isDebugEnabled()){
             logger.debug("finish updateBinaryClassifiers");
         }
     }
 
-    //todo pay attention to parallelism
     protected void updateBinaryClassifiers(int component){
+        updateBinaryClassifiers(new int[]{component}, IntStream.range(0, dataSet.getNumDataPoints()).toArray());
+    }
+
+    /**
+     * trains the binary classifiers of the component on the given data points
+     */
+    protected void updateBinaryClassifiers(int component, int[] indices){
+        updateBinaryClassifiers(new int[]{component}, indices);
+    }
+
+    /**
+     * trains the binary classifiers of the components on the given data points
+     * the (component, label) tasks of all components go to one queue, largest estimated cost first,
+     * which the worker threads drain; a task that falls back to the prior costs nothing
+     * components enter in rounds whose active non-zeros stay within maxActiveNonZeros,
+     * so only the active data sets of one round are alive at a time
+     */
+    protected void updateBinaryClassifiers(int[] components, int[] indices){
+        if (rowNonZeros==null){
+            rowNonZeros = IntStream.range(0, dataSet.getNumDataPoints()).parallel()
+                    .map(i -> dataSet.getRow(i).getNumNonZeroElements()).toArray();
+        }
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        List<BinaryTask> tasks = new ArrayList<>();
+        List<ActiveComponent> round = new ArrayList<>();
+        long roundNonZeros = 0;
+        for (int component: components){
+            ActiveComponent active = activeComponent(component, indices);
+            if (!round.isEmpty() && roundNonZeros+active.nonZeros>maxActiveNonZeros){
+                runRound(round, tasks);
+                round.clear();
+                roundNonZeros = 0;
+            }
+            round.add(active);
+            roundNonZeros += active.nonZeros;
+        }
+        if (!round.isEmpty()){
+            runRound(round, tasks);
+        }
+        binaryTasks = tasks;
+
+        if (logger.isDebugEnabled()){
+            long numSkipped = tasks.stream().filter(BinaryTask::isSkipped).count();
+            double taskSeconds = tasks.stream().mapToLong(BinaryTask::getNanoTime).sum()/1E9;
+            logger.debug(tasks.size()+" binary tasks, "+numSkipped+" use the prior, task time = "+taskSeconds
+                    +" seconds, wall time = "+stopWatch.toString());
+        }
+    }
+
+    private ActiveComponent activeComponent(int component, int[] indices){
 
         if (logger.isDebugEnabled()){
             logger.debug("computing active dataset for component " +component);
         }
 
         // skip small gammas
-        List<Double> activeGammasList = new ArrayList<>();
-        List<Integer> activeIndices = new ArrayList<>();
-        double[] gammasForComponent = IntStream.range(0, dataSet.getNumDataPoints()).mapToDouble(i->gammas[i][component]).toArray();
-        int maxIndex = ArgMax.argMax(gammasForComponent);
+        int[] selectedIndices = new int[indices.length];
+        double[] selectedGammas = new double[indices.length];
+        double[] gammasForComponent = Arrays.stream(indices).mapToDouble(i->gammas[i][component]).toArray();
+        int maxIndex = indices[ArgMax.argMax(gammasForComponent)];
 
         double weightedTotal = 0;
         double thresholdedWeightedTotal = 0;
+        long nonZeros = 0;
         int counter = 0;
-        for (int i=0;i<dataSet.getNumDataPoints();i++){
+        for (int i: indices){
             double v = gammas[i][component];
             weightedTotal += v;
             if (v>= skipDataThreshold || i==maxIndex){
-                activeGammasList.add(v);
-                activeIndices.add(i);
+                selectedIndices[counter] = i;
+                selectedGammas[counter] = v;
                 thresholdedWeightedTotal += v;
+                nonZeros += rowNonZeros[i];
                 counter += 1;
             }
         }
 
         //todo deal with empty components
 
-
-
-        double[] activeGammas = activeGammasList.stream().mapToDouble(a->a).toArray();
+        int[] activeIndices = Arrays.copyOf(selectedIndices, counter);
+        double[] activeGammas = Arrays.copyOf(selectedGammas, counter);
 
         if (logger.isDebugEnabled()){
             logger.debug("number of active data  = "+ counter);
             logger.debug("total weight  = "+weightedTotal);
             logger.debug("total weight of active data  = "+thresholdedWeightedTotal);
-            logger.debug("creating active dataset");
+            logger.debug("number of active non-zeros  = "+nonZeros);
         }
 
+        // a view of the active rows, nothing is copied
+        MultiLabelClfDataSet activeDataSet = new RowSubsetMLClfDataSet(dataSet, activeIndices);
 
-        MultiLabelClfDataSet activeDataSet = DataSetUtil.sampleData(dataSet, activeIndices);
-        int activeFeatures = (int) IntStream.range(0, activeDataSet.getNumFeatures()).filter(j->activeDataSet.getColumn(j).getNumNonZeroElements()>0).count();
-        if (logger.isDebugEnabled()){
-            logger.debug("active dataset created");
-            logger.debug("number of active features = "+activeFeatures);
-        }
+        // in a stochastic step, the label fractions are over all data points
+        double totalWeight = inBatchStep ? componentWeights[component] : weightedTotal;
+        return new ActiveComponent(component, activeDataSet, activeGammas, totalWeight, nonZeros);
+    }
 
-        // to please lambda
-        final double totalWeight = weightedTotal;
-        if (parallelBinaryUpdates){
-            IntStream.range(0, cbm.numLabels).parallel()
-                    .forEach(l-> skipOrUpdateBinaryClassifier(component,l, activeDataSet, activeGammas, totalWeight));
-        } else {
-            IntStream.range(0, cbm.numLabels)
-                    .forEach(l-> skipOrUpdateBinaryClassifier(component,l, activeDataSet, activeGammas, totalWeight));
+    /**
+     * the estimated cost depends on the component only; among tasks of the same cost,
+     * labels whose minority class has more weight go first, as they tend to take more iterations to fit
+     */
+    private void runRound(List<ActiveComponent> round, List<BinaryTask> tasks){
+        Map<Integer, ActiveComponent> byComponent = new HashMap<>();
+        for (ActiveComponent active: round){
+            byComponent.put(active.component, active);
         }
-
+        int numLabels = cbm.numLabels;
+        // effective positives scan the label columns in full EM, so the planning is parallel too
+        List<BinaryTask> roundTasks = IntStream.range(0, round.size()*numLabels).parallel()
+                .mapToObj(t -> planTask(round.get(t/numLabels), t%numLabels))
+                .collect(Collectors.toList());
+        roundTasks.sort(Comparator.comparingLong(BinaryTask::getEstimatedCost)
+                .thenComparingDouble(BinaryTask::getMinorityWeight).reversed());
+
+        AtomicInteger next = new AtomicInteger();
+        int numWorkers = parallelBinaryUpdates ? ForkJoinPool.getCommonPoolParallelism()+1 : 1;
+        IntStream.range(0, Math.min(numWorkers, roundTasks.size())).parallel().forEach(worker -> {
+            for (int t=next.getAndIncrement();t<roundTasks.size();t=next.getAndIncrement()){
+                BinaryTask task = roundTasks.get(t);
+                ActiveComponent active = byComponent.get(task.component);
+                long start = System.nanoTime();
+                skipOrUpdateBinaryClassifier(task.component, task.label, active.dataSet, active.gammas,
+                        active.totalWeight, task.effectivePositives);
+                task.nanoTime = System.nanoTime()-start;
+            }
+        });
+        tasks.addAll(roundTasks);
     }
 
 
+    private BinaryTask planTask(ActiveComponent active, int label){
+        double effectivePositives = effectivePositives(active.component, label);
+        boolean skipped = isSkipped(effectivePositives, active.totalWeight);
+        long cost = skipped ? 0 : active.nonZeros+active.gammas.length;
+        double minorityWeight = Math.min(effectivePositives, active.totalWeight-effectivePositives);
+        return new BinaryTask(active.component, label, active.gammas.length, cost, skipped, effectivePositives, minorityWeight);
+    }
+
     protected void skipOrUpdateBinaryClassifier(int component, int label, MultiLabelClfDataSet activeDataSet,
                                                 double[] activeGammas, double totalWeight){
+        skipOrUpdateBinaryClassifier(component, label, activeDataSet, activeGammas, totalWeight, effectivePositives(component, label));
+    }
+
+    private void skipOrUpdateBinaryClassifier(int component, int label, MultiLabelClfDataSet activeDataSet,
+                                              double[] activeGammas, double totalWeight, double effectivePositives){
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
 
-        double effectivePositives = effectivePositives(component, label);
-
-        double nonSmoothedPositiveProb = effectivePositives/totalWeight;
-
         // smooth the component-wise label fraction with global label fraction
 
         double smoothedPositiveProb = (effectivePositives+smoothingStrength*positiveCounts[label])/(totalWeight+smoothingStrength*dataSet.getNumDataPoints());
@@ -275,7 +543,7 @@ public abstract class AbstractCBMOptimizer {
             smoothedPositiveProb=1;
         }
 
-        if (nonSmoothedPositiveProb<skipLabelThreshold || nonSmoothedPositiveProb>1-skipLabelThreshold){
+        if (isSkipped(effectivePositives, totalWeight)){
             double[] probs = {1-smoothedPositiveProb, smoothedPositiveProb};
             cbm.binaryClassifiers[component][label] = new PriorProbClassifier(probs);
             sb.append(", skip, use prior = ").append(smoothedPositiveProb);
@@ -292,11 +560,51 @@ public abstract class AbstractCBMOptimizer {
         updateBinaryClassifier(component, label, activeDataSet, activeGammas);
     }
 
+    private boolean isSkipped(double effectivePositives, double totalWeight){
+        double nonSmoothedPositiveProb = effectivePositives/totalWeight;
+        return nonSmoothedPositiveProb<skipLabelThreshold || nonSmoothedPositiveProb>1-skipLabelThreshold;
+    }
+
     abstract protected void updateBinaryClassifier(int component, int label, MultiLabelClfDataSet activeDataset, double[] activeGammas);
 
-    protected abstract void updateMultiClassClassifier();
+    protected void updateMultiClassClassifier(){
+        updateMultiClassClassifier(dataSet, gammas);
+    }
+
+    /**
+     * @param targets gammas of the data points in the data set
+     */
+    protected abstract void updateMultiClassClassifier(MultiLabelClfDataSet dataSet, double[][] targets);
+
+    /**
+     * the weights before an update, to be passed to takeStep; null if the update should replace them
+     * @param fresh whether the classifier has just been created
+     */
+    protected Vector weightsBeforeStep(LogisticRegression logisticRegression, boolean fresh){
+        if (fresh || stepSize>=1){
+            return null;
+        }
+        return new DenseVector(logisticRegression.getWeights().getAllWeights());
+    }
+
+    /**
+     * moves the weights stepSize of the way from the weights before the update to the updated ones
+     */
+    protected void takeStep(LogisticRegression logisticRegression, Vector weightsBefore){
+        if (weightsBefore==null){
+            return;
+        }
+        Vector weights = logisticRegression.getWeights().getAllWeights();
+        for (int j=0;j<weights.size();j++){
+            weights.set(j, (1-stepSize)*weightsBefore.get(j)+stepSize*weights.get(j));
+        }
+        logisticRegression.getWeights().setWeightVector(weights);
+    }
 
     private double effectivePositives(int componentIndex, int labelIndex){
+        if (inBatchStep){
+            return componentPositives[componentIndex][labelIndex];
+        }
         double sum = 0;
         Vector labelColumn = labelMatrix.getColumn(labelIndex);
         for (Vector.Element element: labelColumn.nonZeroes()){
@@ -330,6 +638,20 @@ public abstract class AbstractCBMOptimizer {
         return gammas;
     }
 
+    /**
+     * running sums of gammas of positive data points, format [#components][#labels]; null before the first mini-batch
+     */
+    double[][] getComponentPositives() {
+        return componentPositives;
+    }
+
+    /**
+     * running sums of gammas, format [#components]; null before the first mini-batch
+     */
+    double[] getComponentWeights() {
+        return componentWeights;
+    }
+
     private void checkGamma(){
         for (int i=0;i<gammas.length;i++){
             for (int k=0;k<gammas[0].length;k++){
@@ -340,5 +662,99 @@ public abstract class AbstractCBMOptimizer {
         }
     }
 
+    private static class ActiveComponent {
+        private int component;
+        private MultiLabelClfDataSet dataSet;
+        private double[] gammas;
+        private double totalWeight;
+        private long nonZeros;
+
+        private ActiveComponent(int component, MultiLabelClfDataSet dataSet, double[] gammas, double totalWeight, long nonZeros) {
+            this.component = component;
+            this.dataSet = dataSet;
+            this.gammas = gammas;
+            this.totalWeight = totalWeight;
+            this.nonZeros = nonZeros;
+        }
+    }
+
+    /**
+     * fitting of the binary classifier of one (component, label)
+     * the estimated cost is the number of non-zeros plus the number of rows in the active data set, 0 if the prior is used;
+     * it is the same for all labels of a component
+     */
+    public static class BinaryTask {
+        private int component;
+        private int label;
+        private int numActiveData;
+        private long estimatedCost;
+        private boolean skipped;
+        private double effectivePositives;
+        private double minorityWeight;
+        private long nanoTime;
+
+        private BinaryTask(int component, int label, int numActiveData, long estimatedCost, boolean skipped,
+                           double effectivePositives, double minorityWeight) {
+            this.component = component;
+            this.label = label;
+            this.numActiveData = numActiveData;
+            this.estimatedCost = estimatedCost;
+            this.skipped = skipped;
+            this.effectivePositives = effectivePositives;
+            this.minorityWeight = minorityWeight;
+        }
+
+        public int getComponent() {
+            return component;
+        }
+
+        public int getLabel() {
+            return label;
+        }
+
+        public int getNumActiveData() {
+            return numActiveData;
+        }
+
+        public long getEstimatedCost() {
+            return estimatedCost;
+        }
+
+        /**
+         * whether the prior probability is used instead of training
+         */
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        /**
+         * total gamma of the data points of the label in the component
+         */
+        public double getEffectivePositives() {
+            return effectivePositives;
+        }
+
+        /**
+         * the smaller of the positive and the negative weights, used to order tasks of the same cost
+         */
+        public double getMinorityWeight() {
+            return minorityWeight;
+        }
 
+        public long getNanoTime() {
+            return nanoTime;
+        }
+
+        @Override
+        public String toString() {
+            return "BinaryTask{" +
+                    "component=" + component +
+                    ", label=" + label +
+                    ", numActiveData=" + numActiveData +
+                    ", estimatedCost=" + estimatedCost +
+                    ", skipped=" + skipped +
+                    ", nanoTime=" + nanoTime +
+                    '}';
+        }
+    }
 }
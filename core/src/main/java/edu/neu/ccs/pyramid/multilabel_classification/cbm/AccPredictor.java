@@ -26,7 +26,7 @@ public class AccPredictor implements PluginPredictor<CBM> {
 
     @Override
     public MultiLabel predict(Vector vector) {
-        BMDistribution bmDistribution = new BMDistribution(cbm, vector, componentContributionThreshold);
+        BMDistribution bmDistribution = cbm.computeBM(vector, componentContributionThreshold);
         CBMPredictor cbmPredictor = new CBMPredictor(bmDistribution);
         cbmPredictor.setAllowEmpty(cbm.getAllowEmpty());
         return cbmPredictor.predictByDynamic();
@@ -45,6 +45,13 @@ public class BMDistribution {
         }
     }
 
+    BMDistribution(int numLabels, double[] logProportions, double[][][] logClassProbs) {
+        this.numComponents = logProportions.length;
+        this.numLabels = numLabels;
+        this.logProportions = logProportions;
+        this.logClassProbs = logClassProbs;
+    }
+
     public double[] getLogProportions() {
         return logProportions;
     }
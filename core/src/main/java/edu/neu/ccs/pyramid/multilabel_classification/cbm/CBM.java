@@ -46,6 +46,8 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
     ProbabilityEstimator multiClassClassifier;
     private String binaryClassifierType;
     private String multiClassClassifierType;
+    // used by computeBM if not null
+    private transient PackedCBM packed;
 
     private CBM() {
     }
@@ -83,9 +85,36 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
 
     // takes time
     public BMDistribution computeBM(Vector x){
+        if (packed!=null){
+            return packed.computeBM(x);
+        }
         return new BMDistribution(this, x);
     }
 
+    /**
+     * skip components with proportions below the threshold
+     */
+    public BMDistribution computeBM(Vector x, double piThreshold){
+        if (packed!=null){
+            return packed.computeBM(x, piThreshold);
+        }
+        return new BMDistribution(this, x, piThreshold);
+    }
+
+    /**
+     * from now on, compute BMDistributions from a packed copy of the logistic regression weights,
+     * in one pass over the non-zeros of x
+     * the copy does not follow later changes of the weights; call unpackWeights() before training further
+     * only for CBMs whose classifiers are logistic regressions, or prior classifiers for skipped labels
+     */
+    public void packWeights(){
+        this.packed = PackedCBM.pack(this);
+    }
+
+    public void unpackWeights(){
+        this.packed = null;
+    }
+
     /**
      * for single assignment, compute log assignment probability
      * @param x
@@ -149,7 +178,7 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
      * @return
      */
     public double predictLogAssignmentProb(Vector x, MultiLabel y, double piThreshold){
-        BMDistribution bmDistribution = new BMDistribution(this,x, piThreshold);
+        BMDistribution bmDistribution = computeBM(x, piThreshold);
         return bmDistribution.logProbability(y);
     }
 
@@ -166,7 +195,7 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
      */
 
     public double[] predictLogAssignmentProbs(Vector x, List<MultiLabel> assignments, double piThreshold) {
-        BMDistribution bmDistribution = new BMDistribution(this,x, piThreshold);
+        BMDistribution bmDistribution = computeBM(x, piThreshold);
         double[] probs = new double[assignments.size()];
         for (int c = 0; c < assignments.size(); c++) {
             MultiLabel multiLabel = assignments.get(c);
@@ -240,7 +269,7 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
      */
     public double[] predictClassProbs(Vector vector){
         //todo threshold
-        BMDistribution bmDistribution = new BMDistribution(this, vector, 0.1);
+        BMDistribution bmDistribution = computeBM(vector, 0.1);
         return bmDistribution.marginals();
     }
 
@@ -304,6 +333,10 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
     public void setPredictMode(String mode) {
         this.predictMode = mode;
     }
+
+    public String getPredictMode() {
+        return predictMode;
+    }
     public void setAllowEmpty(boolean allowEmpty) {
         this.allowEmpty = allowEmpty;
     }
@@ -327,6 +360,18 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
         this.numSample = numSample;
     }
 
+    public int getNumSample() {
+        return numSample;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    public List<MultiLabel> getSupport() {
+        return support;
+    }
+
     /**
      * batch sample
      * @param x
@@ -363,6 +408,7 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
         private List<MultiLabel> support;
         private String binaryClassifierType= "lr";
         private String multiClassClassifierType = "lr";
+        private ProbabilityEstimator multiClassClassifier;
 
         private Builder() {
         }
@@ -397,6 +443,14 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
             return this;
         }
 
+        /**
+         * use an existing multi-class classifier instead of a new one of multiClassClassifierType
+         */
+        public Builder setMultiClassClassifier(ProbabilityEstimator multiClassClassifier) {
+            this.multiClassClassifier = multiClassClassifier;
+            return this;
+        }
+
         public CBM build(){
             CBM CBM = new CBM();
             CBM.numLabels = numClasses;
@@ -431,6 +485,11 @@ public class CBM implements MultiLabelClassifier.ClassProbEstimator, MultiLabelC
                     throw new IllegalArgumentException("binaryClassifierType can be lr or boost. Given: "+binaryClassifierType);
             }
 
+            if (multiClassClassifier!=null){
+                CBM.multiClassClassifier = multiClassClassifier;
+                return CBM;
+            }
+
             switch (multiClassClassifierType){
                 case "lr":
                     CBM.multiClassClassifier = new LogisticRegression(numComponents, numFeatures,true);
@@ -9,6 +9,7 @@ import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.Vector;
 
 /**
  * CBM with Logistic Regression using ElasticNet optimizer
@@ -34,41 +35,49 @@ public class ENCBMOptimizer  extends AbstractCBMOptimizer {
         stopWatch.start();
 
 
-        if (cbm.binaryClassifiers[component][label] == null || cbm.binaryClassifiers[component][label] instanceof PriorProbClassifier) {
+        boolean fresh = cbm.binaryClassifiers[component][label] == null || cbm.binaryClassifiers[component][label] instanceof PriorProbClassifier;
+        if (fresh) {
             cbm.binaryClassifiers[component][label] = new LogisticRegression(2, activeDataset.getNumFeatures());
         }
+        LogisticRegression logisticRegression = (LogisticRegression)cbm.binaryClassifiers[component][label];
+        Vector weightsBefore = weightsBeforeStep(logisticRegression, fresh);
 
         int[] binaryLabels = DataSetUtil.toBinaryLabels(activeDataset.getMultiLabels(), label);
         double[][] targetsDistribution = DataSetUtil.labelsToDistributions(binaryLabels, 2);
 
-        ElasticNetLogisticTrainer elasticNetLogisticTrainer = new ElasticNetLogisticTrainer.Builder((LogisticRegression)
-                cbm.binaryClassifiers[component][label],  activeDataset, 2, targetsDistribution, activeGammas)
+        // the loss is averaged over data points, so the regularization does not depend on the size of the batch
+        ElasticNetLogisticTrainer elasticNetLogisticTrainer = new ElasticNetLogisticTrainer.Builder(logisticRegression,
+                activeDataset, 2, targetsDistribution, activeGammas)
                 .setRegularization(regularizationBinary)
                 .setL1Ratio(l1RatioBinary)
                 .setLineSearch(lineSearch).build();
         elasticNetLogisticTrainer.setActiveSet(activeSet);
         elasticNetLogisticTrainer.getTerminator().setMaxIteration(this.binaryUpdatesPerIter);
         elasticNetLogisticTrainer.optimize();
+        takeStep(logisticRegression, weightsBefore);
         if (logger.isDebugEnabled()){
             logger.debug("time spent on updating component "+component+" label "+label+" = "+stopWatch);
         }
     }
 
     @Override
-    protected void updateMultiClassClassifier() {
+    protected void updateMultiClassClassifier(MultiLabelClfDataSet dataSet, double[][] targets) {
 
         if (logger.isDebugEnabled()) {
             logger.debug("start updateMultiClassClassifier");
         }
+        LogisticRegression logisticRegression = (LogisticRegression)cbm.multiClassClassifier;
+        Vector weightsBefore = weightsBeforeStep(logisticRegression, false);
 
-        ElasticNetLogisticTrainer elasticNetLogisticTrainer = new ElasticNetLogisticTrainer.Builder((LogisticRegression)
-                cbm.multiClassClassifier, dataSet, cbm.multiClassClassifier.getNumClasses(), gammas)
+        ElasticNetLogisticTrainer elasticNetLogisticTrainer = new ElasticNetLogisticTrainer.Builder(logisticRegression,
+                dataSet, cbm.multiClassClassifier.getNumClasses(), targets)
                 .setRegularization(regularizationMultiClass)
                 .setL1Ratio(l1RatioMultiClass)
                 .setLineSearch(lineSearch).build();
         elasticNetLogisticTrainer.setActiveSet(activeSet);
         elasticNetLogisticTrainer.getTerminator().setMaxIteration(this.multiclassUpdatesPerIter);
         elasticNetLogisticTrainer.optimize();
+        takeStep(logisticRegression, weightsBefore);
 
         if (logger.isDebugEnabled()) {
             logger.debug("finish updateMultiClassClassifier");
@@ -14,11 +14,25 @@ import org.apache.logging.log4j.Logger;
 
 /**
  * Created by chengli on 4/29/17.
+ *
+ * boosting cannot step back, so in stochastic mode each mini-batch adds trees, scaled by the step size;
+ * the ensembles grow by treesPerBatch trees per (component, label) and per batch,
+ * i.e. numBatches * treesPerBatch trees per pass, instead of binaryUpdatesPerIter per EM iteration
+ *
+ * cost in stochastic mode: each batch starts a new LKBoostOptimizer, whose initialize() scores every existing tree
+ * on the batch rows, so a batch costs batchSize * (trees in the ensemble) tree evaluations per ensemble on top of
+ * fitting, and a pass of numBatches batches costs O(numBatches^2 * treesPerBatch * batchSize) evaluations;
+ * maxTreesPerEnsemble bounds this: an ensemble with that many regressors is left unchanged by later batches,
+ * so a batch costs at most batchSize * maxTreesPerEnsemble evaluations per ensemble
  */
 public class GBCBMOptimizer extends AbstractCBMOptimizer{
     private static final Logger logger = LogManager.getLogger();
     private int numLeaves=2;
     private double shrinkage=1;
+    // trees added to each ensemble by one mini-batch in stochastic mode
+    private int treesPerBatch=1;
+    // in stochastic mode, ensembles stop growing at this many regressors
+    private int maxTreesPerEnsemble=500;
 
     public GBCBMOptimizer(CBM cbm, MultiLabelClfDataSet dataSet) {
         super(cbm, dataSet);
@@ -33,6 +47,38 @@ public class GBCBMOptimizer extends AbstractCBMOptimizer{
         this.shrinkage = shrinkage;
     }
 
+    /**
+     * number of trees each mini-batch adds to each ensemble in stochastic mode, 1 by default
+     */
+    public void setTreesPerBatch(int treesPerBatch) {
+        if (treesPerBatch<1){
+            throw new IllegalArgumentException("trees per batch should be at least 1");
+        }
+        this.treesPerBatch = treesPerBatch;
+    }
+
+    /**
+     * in stochastic mode, batches stop adding trees to an ensemble once it has this many regressors, 500 by default;
+     * full EM iterations are not limited
+     */
+    public void setMaxTreesPerEnsemble(int maxTreesPerEnsemble) {
+        if (maxTreesPerEnsemble<1){
+            throw new IllegalArgumentException("max trees per ensemble should be at least 1");
+        }
+        this.maxTreesPerEnsemble = maxTreesPerEnsemble;
+    }
+
+    /**
+     * treesPerBatch in stochastic mode, as long as the ensemble stays within maxTreesPerEnsemble
+     */
+    private int numTreesToAdd(LKBoost boost, int updatesPerIter){
+        if (!isBatchStep()){
+            return updatesPerIter;
+        }
+        int numTrees = boost.getEnsemble(0).getRegressors().size();
+        return Math.max(0, Math.min(treesPerBatch, maxTreesPerEnsemble-numTrees));
+    }
+
     @Override
     protected void updateBinaryClassifier(int component, int label, MultiLabelClfDataSet activeDataset, double[] activeGammas) {
         StopWatch stopWatch = new StopWatch();
@@ -46,15 +92,20 @@ public class GBCBMOptimizer extends AbstractCBMOptimizer{
         double[][] targetsDistributions = DataSetUtil.labelsToDistributions(binaryLabels, 2);
 
         LKBoost boost = (LKBoost)this.cbm.binaryClassifiers[component][label];
+        int numTrees = numTreesToAdd(boost, binaryUpdatesPerIter);
+        if (numTrees==0){
+            return;
+        }
         RegTreeConfig regTreeConfig = new RegTreeConfig()
                 .setMaxNumLeaves(numLeaves);
         RegTreeFactory regTreeFactory = new RegTreeFactory(regTreeConfig);
         regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(2));
         LKBoostOptimizer optimizer = new LKBoostOptimizer(boost,activeDataset, regTreeFactory,
                 activeGammas,targetsDistributions);
-        optimizer.setShrinkage(shrinkage);
+        // in stochastic mode, the trees of each batch are scaled by the step size
+        optimizer.setShrinkage(shrinkage*stepSize);
         optimizer.initialize();
-        optimizer.iterate(binaryUpdatesPerIter);
+        optimizer.iterate(numTrees);
 
         if (logger.isDebugEnabled()){
             logger.debug("time spent on updating component "+component+" label "+label+" = "+stopWatch);
@@ -62,21 +113,25 @@ public class GBCBMOptimizer extends AbstractCBMOptimizer{
     }
 
     @Override
-    protected void updateMultiClassClassifier() {
+    protected void updateMultiClassClassifier(MultiLabelClfDataSet dataSet, double[][] targets) {
         if (logger.isDebugEnabled()){
             logger.debug("start updateMultiClassClassifier");
         }
         // parallel
         LKBoost boost = (LKBoost)this.cbm.multiClassClassifier;
+        int numTrees = numTreesToAdd(boost, multiclassUpdatesPerIter);
+        if (numTrees==0){
+            return;
+        }
         RegTreeConfig regTreeConfig = new RegTreeConfig()
                 .setMaxNumLeaves(numLeaves);
         RegTreeFactory regTreeFactory = new RegTreeFactory(regTreeConfig);
         regTreeFactory.setLeafOutputCalculator(new LKBOutputCalculator(cbm.getNumComponents()));
 
-        LKBoostOptimizer optimizer = new LKBoostOptimizer(boost, dataSet, regTreeFactory, gammas);
-        optimizer.setShrinkage(shrinkage);
+        LKBoostOptimizer optimizer = new LKBoostOptimizer(boost, dataSet, regTreeFactory, targets);
+        optimizer.setShrinkage(shrinkage*stepSize);
         optimizer.initialize();
-        optimizer.iterate(multiclassUpdatesPerIter);
+        optimizer.iterate(numTrees);
         if (logger.isDebugEnabled()){
             logger.debug("finish updateMultiClassClassifier");
         }
@@ -9,6 +9,7 @@ import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.Vector;
 
 /**
  * CBM optimizer for LR base learners
@@ -39,34 +40,41 @@ public class LRCBMOptimizer extends AbstractCBMOptimizer {
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
 
-        if (cbm.binaryClassifiers[component][label] == null || cbm.binaryClassifiers[component][label] instanceof PriorProbClassifier){
+        boolean fresh = cbm.binaryClassifiers[component][label] == null || cbm.binaryClassifiers[component][label] instanceof PriorProbClassifier;
+        if (fresh){
             cbm.binaryClassifiers[component][label] = new LogisticRegression(2, activeDataset.getNumFeatures());
         }
+        LogisticRegression logisticRegression = (LogisticRegression)cbm.binaryClassifiers[component][label];
+        Vector weightsBefore = weightsBeforeStep(logisticRegression, fresh);
 
         RidgeLogisticOptimizer ridgeLogisticOptimizer;
 
         int[] binaryLabels = DataSetUtil.toBinaryLabels(activeDataset.getMultiLabels(), label);
         // no parallelism
-        ridgeLogisticOptimizer = new RidgeLogisticOptimizer((LogisticRegression)cbm.binaryClassifiers[component][label],
-                activeDataset, binaryLabels, activeGammas, priorVarianceBinary, false);
+        ridgeLogisticOptimizer = new RidgeLogisticOptimizer(logisticRegression,
+                activeDataset, binaryLabels, activeGammas, priorVarianceBinary*dataScale, false);
 
         ridgeLogisticOptimizer.getOptimizer().getTerminator().setMaxIteration(binaryUpdatesPerIter);
         ridgeLogisticOptimizer.optimize();
+        takeStep(logisticRegression, weightsBefore);
         if (logger.isDebugEnabled()){
             logger.debug("time spent on updating component "+component+" label "+label+" = "+stopWatch);
         }
     }
 
     @Override
-    protected void updateMultiClassClassifier() {
+    protected void updateMultiClassClassifier(MultiLabelClfDataSet dataSet, double[][] targets) {
         if (logger.isDebugEnabled()){
             logger.debug("start updateMultiClassClassifier");
         }
+        LogisticRegression logisticRegression = (LogisticRegression)cbm.multiClassClassifier;
+        Vector weightsBefore = weightsBeforeStep(logisticRegression, false);
         // parallel
-        RidgeLogisticOptimizer ridgeLogisticOptimizer = new RidgeLogisticOptimizer((LogisticRegression)cbm.multiClassClassifier,
-                dataSet, gammas, priorVarianceMultiClass, true);
+        RidgeLogisticOptimizer ridgeLogisticOptimizer = new RidgeLogisticOptimizer(logisticRegression,
+                dataSet, targets, priorVarianceMultiClass*dataScale, true);
         ridgeLogisticOptimizer.getOptimizer().getTerminator().setMaxIteration(multiclassUpdatesPerIter);
         ridgeLogisticOptimizer.optimize();
+        takeStep(logisticRegression, weightsBefore);
         if (logger.isDebugEnabled()){
             logger.debug("finish updateMultiClassClassifier");
         }
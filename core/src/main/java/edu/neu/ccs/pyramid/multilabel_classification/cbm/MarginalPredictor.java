@@ -26,7 +26,7 @@ public class MarginalPredictor implements PluginPredictor<CBM> {
 
     @Override
     public MultiLabel predict(Vector vector) {
-        BMDistribution bmDistribution = new BMDistribution(cbm, vector, piThreshold);
+        BMDistribution bmDistribution = cbm.computeBM(vector, piThreshold);
         double[] probs = bmDistribution.marginals();
         MultiLabel prediction = new MultiLabel();
         for (int l=0;l<cbm.getNumClasses();l++){
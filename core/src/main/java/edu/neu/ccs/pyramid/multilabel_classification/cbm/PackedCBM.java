@@ -0,0 +1,139 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.classification.Classifier;
+import edu.neu.ccs.pyramid.classification.PriorProbClassifier;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
+import edu.neu.ccs.pyramid.classification.logistic_regression.PackedLinearScorer;
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.util.MathUtil;
+import org.apache.mahout.math.Vector;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * all logistic regressions of a CBM in one PackedLinearScorer
+ * columns [0, numComponents) are the multi-class scores,
+ * column numComponents + k*numLabels + l is the log odds of the binary classifier of component k and label l
+ * one pass over the non-zeros of x gives the whole BMDistribution
+ * the multi-class classifier must be a logistic regression; a binary classifier can be a logistic regression,
+ * or a PriorProbClassifier installed for a skipped (component, label), packed as a constant log odds column
+ * the weights are copied at packing time
+ */
+public class PackedCBM implements Serializable{
+    private static final long serialVersionUID = 1L;
+    private int numComponents;
+    private int numLabels;
+    private PackedLinearScorer scorer;
+
+    public static PackedCBM pack(CBM cbm){
+        if (!(cbm.multiClassClassifier instanceof LogisticRegression)){
+            throw new IllegalArgumentException("the multi-class classifier is not a logistic regression");
+        }
+        for (Classifier.ProbabilityEstimator[] classifiers: cbm.binaryClassifiers){
+            for (Classifier.ProbabilityEstimator classifier: classifiers){
+                if (!(classifier instanceof LogisticRegression) && !(classifier instanceof PriorProbClassifier)){
+                    throw new IllegalArgumentException("the binary classifiers are not logistic regressions or prior classifiers");
+                }
+            }
+        }
+        PackedCBM packed = new PackedCBM();
+        packed.numComponents = cbm.numComponents;
+        packed.numLabels = cbm.numLabels;
+        packed.scorer = new PackedLinearScorer(cbm.getNumFeatures(), cbm.numComponents*(1+cbm.numLabels));
+        LogisticRegression multiClassClassifier = (LogisticRegression) cbm.multiClassClassifier;
+        for (int k=0;k<cbm.numComponents;k++){
+            packed.scorer.setColumn(k, multiClassClassifier, k);
+        }
+        for (int k=0;k<cbm.numComponents;k++){
+            for (int l=0;l<cbm.numLabels;l++){
+                Classifier.ProbabilityEstimator classifier = cbm.binaryClassifiers[k][l];
+                if (classifier instanceof PriorProbClassifier){
+                    double[] probs = ((PriorProbClassifier) classifier).getClassProbs();
+                    packed.scorer.setConstantColumn(packed.binaryColumn(k,l), Math.log(probs[1]) - Math.log(probs[0]));
+                } else {
+                    packed.scorer.setLogOddsColumn(packed.binaryColumn(k,l), (LogisticRegression) classifier);
+                }
+            }
+        }
+        return packed;
+    }
+
+    private int binaryColumn(int k, int l){
+        return numComponents + k*numLabels + l;
+    }
+
+    public BMDistribution computeBM(Vector x){
+        return computeBM(scorer.score(x));
+    }
+
+    /**
+     * components with proportions below the threshold are dropped, as in BMDistribution(cbm, x, threshold)
+     */
+    public BMDistribution computeBM(Vector x, double threshold){
+        double[] scores = scorer.score(x);
+        double[] allLogProportions = logProportions(scores);
+        double logThreshold = Math.log(threshold);
+        int[] activeComponents = IntStream.range(0, numComponents)
+                .filter(k -> allLogProportions[k]>=logThreshold).toArray();
+        double[] logProportions = new double[activeComponents.length];
+        double[][][] logClassProbs = new double[activeComponents.length][][];
+        for (int a=0;a<activeComponents.length;a++){
+            logProportions[a] = allLogProportions[activeComponents[a]];
+            logClassProbs[a] = logClassProbs(scores, activeComponents[a]);
+        }
+        return new BMDistribution(numLabels, logProportions, logClassProbs);
+    }
+
+    /**
+     * parallel over data points
+     * @param dataSet
+     * @param from inclusive
+     * @param to exclusive
+     * @return distributions[i-from]
+     */
+    public BMDistribution[] computeBM(DataSet dataSet, int from, int to){
+        BMDistribution[] distributions = new BMDistribution[to-from];
+        IntStream.range(from,to).parallel()
+                .forEach(i -> distributions[i-from] = computeBM(dataSet.getRow(i)));
+        return distributions;
+    }
+
+    private BMDistribution computeBM(double[] scores){
+        double[][][] logClassProbs = new double[numComponents][][];
+        for (int k=0;k<numComponents;k++){
+            logClassProbs[k] = logClassProbs(scores, k);
+        }
+        return new BMDistribution(numLabels, logProportions(scores), logClassProbs);
+    }
+
+    private double[] logProportions(double[] scores){
+        double[] logProportions = new double[numComponents];
+        double logDenominator = MathUtil.logSumExp(Arrays.copyOf(scores, numComponents));
+        for (int k=0;k<numComponents;k++){
+            logProportions[k] = scores[k] - logDenominator;
+        }
+        return logProportions;
+    }
+
+    /**
+     * [l][0] = log p(y_l=0|z=k), [l][1] = log p(y_l=1|z=k)
+     */
+    private double[][] logClassProbs(double[] scores, int k){
+        double[][] logClassProbs = new double[numLabels][2];
+        for (int l=0;l<numLabels;l++){
+            double logOdds = scores[binaryColumn(k,l)];
+            // log(1+exp(logOdds))
+            double logDenominator;
+            if (logOdds>0){
+                logDenominator = logOdds + Math.log1p(Math.exp(-logOdds));
+            } else {
+                logDenominator = Math.log1p(Math.exp(logOdds));
+            }
+            logClassProbs[l][0] = -logDenominator;
+            logClassProbs[l][1] = logOdds - logDenominator;
+        }
+        return logClassProbs;
+    }
+}
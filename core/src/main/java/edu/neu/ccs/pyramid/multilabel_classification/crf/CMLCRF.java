@@ -55,6 +55,9 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
 
     private FeatureList featureList;
 
+    // rebuilt after label part scores change
+    private transient volatile SupportIndex supportIndex;
+
 
     public CMLCRF(MultiLabelClfDataSet dataSet) {
         this.numClasses = dataSet.getNumClasses();
@@ -79,9 +82,13 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
 
 
     public CMLCRF(int numClasses, int numFeatures, List<MultiLabel> supportCombinations) {
+        this(numClasses, numFeatures, supportCombinations, new Weights(numClasses, numFeatures));
+    }
+
+    public CMLCRF(int numClasses, int numFeatures, List<MultiLabel> supportCombinations, Weights weights) {
         this.numClasses = numClasses;
         this.numFeatures = numFeatures;
-        this.weights = new Weights(numClasses, numFeatures);
+        this.weights = weights;
 
         //todo
         this.supportCombinations = supportCombinations;
@@ -138,26 +145,61 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
     }
 
     double[] predictCombinationScores(double[] classScores){
-        double[] scores = new double[this.numSupports];
-        for (int k=0;k<scores.length;k++){
-            scores[k] = predictCombinationScore(k, classScores);
-        }
-        return scores;
+        return supportIndex().scores(classScores);
     }
 
 
-    // todo fix: handle separately
     private double predictCombinationScore(int labelComIndex, double[] classScores){
-        MultiLabel label = supportCombinations.get(labelComIndex);
-        double score = 0.0;
-        for (Integer l: label.getMatchedLabels()){
-            score += classScores[l];
+        return supportIndex().score(labelComIndex, classScores);
+    }
+
+    /**
+     * the topK combinations with the highest scores, found without scoring all combinations
+     * see SupportIndex for the bound used for pruning
+     * @param topK at least 1
+     */
+    public TopCombinations predictTopCombinations(Vector vector, int topK){
+        return predictTopCombinations(predictClassScores(vector), topK, -1);
+    }
+
+    /**
+     * @param required combination to keep even if not in the top K, -1 for none
+     */
+    TopCombinations predictTopCombinations(double[] classScores, int topK, int required){
+        if (topK<1){
+            throw new IllegalArgumentException("topK should be at least 1");
         }
-        if (considerPair){
-            score += combinationLabelPartScores[labelComIndex];
+        return supportIndex().top(classScores, topK, required);
+    }
+
+    /**
+     * marginal probabilities from the probabilities of some combinations
+     * @param combinations indices of combinations
+     * @param probs probabilities of the combinations
+     */
+    double[] calClassProbs(int[] combinations, double[] probs){
+        SupportIndex index = supportIndex();
+        double[] classProbs = new double[numClasses];
+        for (int i=0;i<combinations.length;i++){
+            index.addClassProbs(combinations[i], probs[i], classProbs);
         }
+        return classProbs;
+    }
 
-        return score;
+    private SupportIndex supportIndex(){
+        SupportIndex index = supportIndex;
+        if (index==null){
+            synchronized (this){
+                index = supportIndex;
+                if (index==null){
+                    // without pairs, all label part scores are 0
+                    double[] labelPartScores = considerPair ? combinationLabelPartScores : new double[numSupports];
+                    index = new SupportIndex(supportCombinations, labelPartScores);
+                    supportIndex = index;
+                }
+            }
+        }
+        return index;
     }
 
 
@@ -229,6 +271,7 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
     void updateCombLabelPartScores(){
         IntStream.range(0, supportCombinations.size()).parallel()
                 .forEach(c -> combinationLabelPartScores[c]=computeLabelPartScore(c));
+        supportIndex = null;
     }
 
 
@@ -259,13 +302,10 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
      * @return
      */
     public double[] calClassProbs(double[] assignmentProbs){
+        SupportIndex index = supportIndex();
         double[] classProbs = new double[numClasses];
         for (int a=0;a< numSupports;a++){
-            MultiLabel assignment = supportCombinations.get(a);
-            double prob = assignmentProbs[a];
-            for (Integer label:assignment.getMatchedLabels()){
-                classProbs[label] += prob;
-            }
+            index.addClassProbs(a, assignmentProbs[a], classProbs);
         }
         return classProbs;
     }
@@ -322,11 +362,19 @@ public class CMLCRF implements MultiLabelClassifier, MultiLabelClassifier.Assign
         return featureList;
     }
 
+    public void setFeatureList(FeatureList featureList) {
+        this.featureList = featureList;
+    }
+
     @Override
     public LabelTranslator getLabelTranslator() {
         return labelTranslator;
     }
 
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
+        this.labelTranslator = labelTranslator;
+    }
+
 
     // TODO
     @Override
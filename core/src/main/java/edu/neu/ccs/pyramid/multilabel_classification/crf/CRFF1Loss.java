@@ -2,6 +2,7 @@ package edu.neu.ccs.pyramid.multilabel_classification.crf;
 
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.multilabel_classification.PredictedCounts;
 import edu.neu.ccs.pyramid.eval.FMeasure;
 import edu.neu.ccs.pyramid.eval.InstanceAverage;
 import edu.neu.ccs.pyramid.optimization.Optimizable;
@@ -44,6 +45,7 @@ public class CRFF1Loss implements Optimizable.ByGradientValue {
     // whether the support combination contains the label;
     private boolean[][] labelInSupported;
     private boolean isParallel = true;
+    private boolean rowMajorGradient = false;
     private boolean isGradientCacheValid = false;
     private boolean isValueCacheValid = false;
 
@@ -132,6 +134,13 @@ public class CRFF1Loss implements Optimizable.ByGradientValue {
         this.regularizeAll = regularizeAll;
     }
 
+    /**
+     * see PredictedCounts.featureGradients
+     */
+    public void setRowMajorGradient(boolean rowMajorGradient) {
+        this.rowMajorGradient = rowMajorGradient;
+    }
+
 
     public double[][] getCombScoreMatrix() {
         return combScoreMatrix;
@@ -191,8 +200,8 @@ public class CRFF1Loss implements Optimizable.ByGradientValue {
         if (logger.isDebugEnabled()){
             logger.debug("start method updatedFeatureLabelGradient()");
         }
-        IntStream.range(0,numWeightsForFeatures).parallel()
-                .forEach(i -> gradient.set(i,calGradientForFeature(i)));
+        PredictedCounts.featureGradients(dataSet, classProbMatrix, numClasses, empiricalCounts,
+                this::regularizationForFeature, rowMajorGradient, gradient);
         if (logger.isDebugEnabled()){
             logger.debug("finish method updatedFeatureLabelGradient()");
         }
@@ -232,38 +241,11 @@ public class CRFF1Loss implements Optimizable.ByGradientValue {
     }
 
 
-    // this calculation uses a short cut for equation (4) of
-    // the paper "Collective Multi-Label Classification"
-    // the sum of y can be pushed in and gives the marginal
-    private double calGradientForFeature(int parameterIndex) {
-        double count = 0.0;
-        int classIndex = parameterToClass[parameterIndex];
-        int featureIndex = parameterToFeature[parameterIndex];
-
-        if (featureIndex == -1) {
-            for (int i=0; i<dataSet.getNumDataPoints(); i++) {
-                count += this.classProbMatrix[i][classIndex];
-            }
-        } else {
-            Vector featureColumn = dataSet.getColumn(featureIndex);
-            for (Vector.Element element: featureColumn.nonZeroes()) {
-                int dataPointIndex = element.index();
-                double featureValue = element.get();
-                count += this.classProbMatrix[dataPointIndex][classIndex] * featureValue;
-            }
-        }
-
-        count -= this.empiricalCounts[parameterIndex];
-
-        // regularize
-        if (regularizeAll){
-            count += cmlcrf.getWeights().getWeightForIndex(parameterIndex)/gaussianPriorVariance;
-        } else {
-            if (featureIndex != -1) {
-                count += cmlcrf.getWeights().getWeightForIndex(parameterIndex)/gaussianPriorVariance;
-            }
+    private double regularizationForFeature(int parameterIndex) {
+        if (regularizeAll || parameterToFeature[parameterIndex] != -1){
+            return cmlcrf.getWeights().getWeightForIndex(parameterIndex)/gaussianPriorVariance;
         }
-        return count;
+        return 0;
     }
 
 
@@ -2,6 +2,8 @@ package edu.neu.ccs.pyramid.multilabel_classification.crf;
 
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.multilabel_classification.PredictedCounts;
+import edu.neu.ccs.pyramid.optimization.MiniBatchGradient;
 import edu.neu.ccs.pyramid.optimization.Optimizable;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.logging.log4j.LogManager;
@@ -16,7 +18,7 @@ import java.util.stream.IntStream;
 /**
  * Created by Rainicy on 12/13/15.
  */
-public class CRFLoss implements Optimizable.ByGradientValue {
+public class CRFLoss implements Optimizable.ByGradientValue, Optimizable.ByMiniBatchGradient {
     private static final Logger logger = LogManager.getLogger();
     private CMLCRF cmlcrf;
     private List<MultiLabel> supportedCombinations;
@@ -37,7 +39,10 @@ public class CRFLoss implements Optimizable.ByGradientValue {
     // whether the support combination contains the label;
     // size num combination* num classes
     private boolean[][] comContainsLabel;
+    // labels of each support combination, in increasing order
+    private int[][] comLabels;
     private boolean isParallel = true;
+    private boolean rowMajorGradient = false;
     private boolean isGradientCacheValid = false;
     private boolean isValueCacheValid = false;
 
@@ -69,10 +74,37 @@ public class CRFLoss implements Optimizable.ByGradientValue {
     // for each data point, store the position of the true combination in the support list
     private int[] labelComIndices;
 
+    // number of combinations kept per data point, 0 for all
+    private int topK;
+
+    // size = numDataPoints, used instead of combScoreMatrix and combProbMatrix if topK>0
+    private TopCombinations[] topCombinations;
+
+    // probabilities of topCombinations, normalized over the kept combinations
+    private double[][] topCombProbs;
+
 
 
 
     public CRFLoss (CMLCRF cmlcrf, MultiLabelClfDataSet dataSet, double gaussianPriorVariance) {
+        this(cmlcrf, dataSet, gaussianPriorVariance, 0);
+    }
+
+    /**
+     * for large supports
+     * only the topK combinations with highest scores, plus the true one, are kept for each data point;
+     * value and gradient are both computed over the kept combinations, with logZ = logSumExp of the kept scores,
+     * so the gradient is the derivative of the value while the kept sets do not change;
+     * the value is a lower bound of the full negative log-likelihood;
+     * see getValueWithTailEstimate for an estimate that includes the other combinations
+     * memory is O(numDataPoints*topK) instead of O(numDataPoints*numSupports)
+     * @param topK 0 to keep all combinations
+     */
+    public CRFLoss (CMLCRF cmlcrf, MultiLabelClfDataSet dataSet, double gaussianPriorVariance, int topK) {
+        if (topK<0){
+            throw new IllegalArgumentException("topK should be non-negative");
+        }
+        this.topK = topK;
         this.cmlcrf = cmlcrf;
         this.supportedCombinations = cmlcrf.getSupportCombinations();
         this.numSupport = cmlcrf.getNumSupports();
@@ -85,8 +117,13 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         this.numWeightsForLabelPairs = cmlcrf.getWeights().getNumWeightsForLabels();
         this.classScoreMatrix = new double[numData][numClasses];
         this.classProbMatrix = new double[numData][numClasses];
-        this.combScoreMatrix = new double[numData][numSupport];
-        this.combProbMatrix = new double[numData][numSupport];
+        if (topK>0){
+            this.topCombinations = new TopCombinations[numData];
+            this.topCombProbs = new double[numData][];
+        } else {
+            this.combScoreMatrix = new double[numData][numSupport];
+            this.combProbMatrix = new double[numData][numSupport];
+        }
         this.isGradientCacheValid = false;
         this.isValueCacheValid = false;
         this.empiricalCounts = new double[numParameters];
@@ -114,6 +151,13 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         this.regularizeAll = regularizeAll;
     }
 
+    /**
+     * see PredictedCounts.featureGradients
+     */
+    public void setRowMajorGradient(boolean rowMajorGradient) {
+        this.rowMajorGradient = rowMajorGradient;
+    }
+
 
 
     /**
@@ -166,8 +210,8 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         if (logger.isDebugEnabled()){
             logger.debug("start method updatedFeatureLabelGradient()");
         }
-        IntStream.range(0,numWeightsForFeatures).parallel()
-                .forEach(i -> gradient.set(i,calGradientForFeature(i)));
+        PredictedCounts.featureGradients(dataSet, classProbMatrix, numClasses, empiricalCounts,
+                this::regularizationForFeature, rowMajorGradient, gradient);
         if (logger.isDebugEnabled()){
             logger.debug("finish method updatedFeatureLabelGradient()");
         }
@@ -207,38 +251,11 @@ public class CRFLoss implements Optimizable.ByGradientValue {
     }
 
 
-    // this calculation uses a short cut for equation (4) of
-    // the paper "Collective Multi-Label Classification"
-    // the sum of y can be pushed in and gives the marginal
-    private double calGradientForFeature(int parameterIndex) {
-        double count = 0.0;
-        int classIndex = parameterToClass[parameterIndex];
-        int featureIndex = parameterToFeature[parameterIndex];
-
-        if (featureIndex == -1) {
-            for (int i=0; i<dataSet.getNumDataPoints(); i++) {
-                count += this.classProbMatrix[i][classIndex];
-            }
-        } else {
-            Vector featureColumn = dataSet.getColumn(featureIndex);
-            for (Vector.Element element: featureColumn.nonZeroes()) {
-                int dataPointIndex = element.index();
-                double featureValue = element.get();
-                count += this.classProbMatrix[dataPointIndex][classIndex] * featureValue;
-            }
+    private double regularizationForFeature(int parameterIndex) {
+        if (regularizeAll || parameterToFeature[parameterIndex] != -1){
+            return cmlcrf.getWeights().getWeightForIndex(parameterIndex)/gaussianPriorVariance;
         }
-
-        count -= this.empiricalCounts[parameterIndex];
-
-        // regularize
-        if (regularizeAll){
-            count += cmlcrf.getWeights().getWeightForIndex(parameterIndex)/gaussianPriorVariance;
-        } else {
-            if (featureIndex != -1) {
-                count += cmlcrf.getWeights().getWeightForIndex(parameterIndex)/gaussianPriorVariance;
-            }
-        }
-        return count;
+        return 0;
     }
 
 
@@ -347,6 +364,11 @@ public class CRFLoss implements Optimizable.ByGradientValue {
                 }
             }
         }
+        comLabels = new int[numSupport][];
+        for (int num=0; num< numSupport; num++) {
+            comLabels[num] = supportedCombinations.get(num).getMatchedLabelsOrdered().stream()
+                    .mapToInt(Integer::intValue).toArray();
+        }
     }
 
     /**
@@ -396,6 +418,10 @@ public class CRFLoss implements Optimizable.ByGradientValue {
 
     // NLL
     private double getValueForOneData(int i) {
+        if (topK>0){
+            TopCombinations top = topCombinations[i];
+            return top.getKeptLogNormalizer() - top.getScores()[truePosition(i)];
+        }
         double sum = 0.0;
         // sum logZ(x_n)
         sum += MathUtil.logSumExp(combScoreMatrix[i]);
@@ -405,6 +431,33 @@ public class CRFLoss implements Optimizable.ByGradientValue {
     }
 
 
+    /**
+     * position of the true combination among the kept combinations of data point i
+     */
+    private int truePosition(int i){
+        int[] combinations = topCombinations[i].getCombinations();
+        int position = 0;
+        while (combinations[position]!=labelComIndices[i]){
+            position += 1;
+        }
+        return position;
+    }
+
+    /**
+     * for reporting only, not consistent with getGradient
+     * if topK>0, the negative log-likelihood with logZ including the tail mass estimate of TopCombinations;
+     * otherwise the same as getValue
+     */
+    public double getValueWithTailEstimate(){
+        double value = getValue();
+        if (topK==0){
+            return value;
+        }
+        return value + IntStream.range(0,numData).parallel()
+                .mapToDouble(i -> topCombinations[i].getLogNormalizer()-topCombinations[i].getKeptLogNormalizer())
+                .sum();
+    }
+
     @Override
     public Vector getParameters() {
         return cmlcrf.getWeights().getAllWeights();
@@ -420,6 +473,105 @@ public class CRFLoss implements Optimizable.ByGradientValue {
 
 
 
+    @Override
+    public int getNumDataPoints() {
+        return numData;
+    }
+
+    /**
+     * negative log-likelihood over [from, to) and its gradient, computed from the rows only
+     * relies on setParameters being called after the label pair weights change
+     */
+    @Override
+    public double addBatchGradient(int from, int to, MiniBatchGradient gradient) {
+        MultiLabel[] multiLabels = dataSet.getMultiLabels();
+        int stride = numWeightsForFeatures/numClasses;
+        // predicted minus true counts of each combination in the batch
+        double[] combCounts = new double[numSupport];
+        double sum = 0;
+        for (int i=from;i<to;i++){
+            Vector row = dataSet.getRow(i);
+            double[] classScores = cmlcrf.predictClassScores(row);
+            double[] combScores = cmlcrf.predictCombinationScores(classScores);
+            sum += MathUtil.logSumExp(combScores) - combScores[labelComIndices[i]];
+            double[] combProbs = cmlcrf.predictCombinationProbs(combScores);
+            double[] classProbs = cmlcrf.calClassProbs(combProbs);
+            for (int c=0;c<numSupport;c++){
+                combCounts[c] += combProbs[c];
+            }
+            combCounts[labelComIndices[i]] -= 1;
+            for (int k=0;k<numClasses;k++){
+                double diff = classProbs[k];
+                if (multiLabels[i].matchClass(k)){
+                    diff -= 1;
+                }
+                if (diff==0){
+                    continue;
+                }
+                int start = stride*k;
+                gradient.add(start, diff);
+                for (Vector.Element element: row.nonZeroes()){
+                    gradient.add(start+1+element.index(), diff*element.get());
+                }
+            }
+        }
+        if (cmlcrf.considerPair()){
+            addLabelPairGradient(combCounts, gradient);
+        }
+        return sum;
+    }
+
+    /**
+     * label pair part of the batch gradient, from the counts of the combinations;
+     * only combinations with non-zero counts are visited, and each of them only for the pairs of labels it contains,
+     * which gives the total count, the count of each label and the count of each pair of labels;
+     * the 4 cases of a pair follow by inclusion-exclusion
+     * O(numSupport * labels per combination^2 + numWeightsForLabelPairs)
+     * instead of O(numWeightsForLabelPairs * matched combinations per pair)
+     */
+    private void addLabelPairGradient(double[] combCounts, MiniBatchGradient gradient){
+        double total = 0;
+        double[] labelCounts = new double[numClasses];
+        double[][] bothCounts = new double[numClasses][numClasses];
+        for (int c=0;c<numSupport;c++){
+            double count = combCounts[c];
+            if (count==0){
+                continue;
+            }
+            total += count;
+            int[] labels = comLabels[c];
+            for (int a=0;a<labels.length;a++){
+                labelCounts[labels[a]] += count;
+                for (int b=a+1;b<labels.length;b++){
+                    bothCounts[labels[a]][labels[b]] += count;
+                }
+            }
+        }
+        for (int pos=0;pos<numWeightsForLabelPairs;pos+=4){
+            int l1 = parameterToL1[pos];
+            int l2 = parameterToL2[pos];
+            double both = bothCounts[l1][l2];
+            double onlyL1 = labelCounts[l1] - both;
+            double onlyL2 = labelCounts[l2] - both;
+            // same order of cases as mapPairToCombination
+            gradient.add(numWeightsForFeatures+pos, total - onlyL1 - onlyL2 - both);
+            gradient.add(numWeightsForFeatures+pos+1, onlyL1);
+            gradient.add(numWeightsForFeatures+pos+2, onlyL2);
+            gradient.add(numWeightsForFeatures+pos+3, both);
+        }
+    }
+
+    /**
+     * same as getValue
+     */
+    @Override
+    public boolean isRegularized(int parameterIndex) {
+        if (regularizeAll){
+            return true;
+        }
+        return parameterIndex<numWeightsForFeatures && parameterToFeature[parameterIndex]!=-1;
+    }
+
     private void updateClassScoreMatrix(){
         if (logger.isDebugEnabled()){
             logger.debug("start updateClassScoreMatrix()");
@@ -435,9 +587,13 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         if (logger.isDebugEnabled()){
             logger.debug("start updateAssignmentScoreMatrix()");
         }
-        //todo
-        IntStream.range(0,dataSet.getNumDataPoints()).parallel()
-                .forEach(i -> combScoreMatrix[i] = cmlcrf.predictCombinationScores(classScoreMatrix[i]));
+        if (topK>0){
+            IntStream.range(0,dataSet.getNumDataPoints()).parallel()
+                    .forEach(i -> topCombinations[i] = cmlcrf.predictTopCombinations(classScoreMatrix[i], topK, labelComIndices[i]));
+        } else {
+            IntStream.range(0,dataSet.getNumDataPoints()).parallel()
+                    .forEach(i -> combScoreMatrix[i] = cmlcrf.predictCombinationScores(classScoreMatrix[i]));
+        }
         if (logger.isDebugEnabled()){
             logger.debug("finish updateAssignmentScoreMatrix()");
         }
@@ -447,8 +603,13 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         if (logger.isDebugEnabled()){
             logger.debug("start updateAssignmentProbMatrix()");
         }
-        IntStream.range(0,dataSet.getNumDataPoints()).parallel()
-                .forEach(i -> combProbMatrix[i] = cmlcrf.predictCombinationProbs(combScoreMatrix[i]));
+        if (topK>0){
+            IntStream.range(0,dataSet.getNumDataPoints()).parallel()
+                    .forEach(i -> topCombProbs[i] = topCombinations[i].getKeptProbs());
+        } else {
+            IntStream.range(0,dataSet.getNumDataPoints()).parallel()
+                    .forEach(i -> combProbMatrix[i] = cmlcrf.predictCombinationProbs(combScoreMatrix[i]));
+        }
         if (logger.isDebugEnabled()){
             logger.debug("finish updateAssignmentProbMatrix()");
         }
@@ -458,8 +619,13 @@ public class CRFLoss implements Optimizable.ByGradientValue {
         if (logger.isDebugEnabled()){
             logger.debug("start updateClassProbMatrix()");
         }
-        IntStream.range(0,dataSet.getNumDataPoints()).parallel()
-                .forEach(i -> classProbMatrix[i] = cmlcrf.calClassProbs(combProbMatrix[i]));
+        if (topK>0){
+            IntStream.range(0,dataSet.getNumDataPoints()).parallel()
+                    .forEach(i -> classProbMatrix[i] = cmlcrf.calClassProbs(topCombinations[i].getCombinations(), topCombProbs[i]));
+        } else {
+            IntStream.range(0,dataSet.getNumDataPoints()).parallel()
+                    .forEach(i -> classProbMatrix[i] = cmlcrf.calClassProbs(combProbMatrix[i]));
+        }
         if (logger.isDebugEnabled()){
             logger.debug("finish updateClassProbMatrix()");
         }
@@ -521,6 +687,16 @@ public class CRFLoss implements Optimizable.ByGradientValue {
     }
 
     private void updateCombProbSums(){
+        if (topK>0){
+            Arrays.fill(combProbSums, 0);
+            for (int i=0;i<dataSet.getNumDataPoints();i++){
+                int[] combinations = topCombinations[i].getCombinations();
+                for (int j=0;j<combinations.length;j++){
+                    combProbSums[combinations[j]] += topCombProbs[i][j];
+                }
+            }
+            return;
+        }
         IntStream.range(0,numSupport).parallel()
                 .forEach(this::updateCombProbSums);
     }
@@ -2,6 +2,7 @@ package edu.neu.ccs.pyramid.multilabel_classification.crf;
 
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.multilabel_classification.PredictedCounts;
 import edu.neu.ccs.pyramid.optimization.Optimizable;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.logging.log4j.LogManager;
@@ -40,6 +41,7 @@ public class KLLoss implements Optimizable.ByGradientValue {
     // size num combination* num classes
     private boolean[][] comContainsLabel;
     private boolean isParallel = true;
+    private boolean rowMajorGradient = false;
     private boolean isGradientCacheValid = false;
     private boolean isValueCacheValid = false;
 
@@ -113,6 +115,13 @@ public class KLLoss implements Optimizable.ByGradientValue {
         this.regularizeAll = regularizeAll;
     }
 
+    /**
+     * see PredictedCounts.featureGradients
+     */
+    public void setRowMajorGradient(boolean rowMajorGradient) {
+        this.rowMajorGradient = rowMajorGradient;
+    }
+
 
 
     /**
@@ -165,8 +174,8 @@ public class KLLoss implements Optimizable.ByGradientValue {
         if (logger.isDebugEnabled()){
             logger.debug("start method updatedFeatureLabelGradient()");
         }
-        IntStream.range(0,numWeightsForFeatures).parallel()
-                .forEach(i -> gradient.set(i,calGradientForFeature(i)));
+        PredictedCounts.featureGradients(dataSet, classProbMatrix, numClasses, empiricalCounts,
+                this::regularizationForFeature, rowMajorGradient, gradient);
         if (logger.isDebugEnabled()){
             logger.debug("finish method updatedFeatureLabelGradient()");
         }
@@ -199,38 +208,11 @@ public class KLLoss implements Optimizable.ByGradientValue {
     }
 
 
-    // this calculation uses a short cut for equation (4) of
-    // the paper "Collective Multi-Label Classification"
-    // the sum of y can be pushed in and gives the marginal
-    private double calGradientForFeature(int parameterIndex) {
-        double gradient = 0.0;
-        int classIndex = parameterToClass[parameterIndex];
-        int featureIndex = parameterToFeature[parameterIndex];
-
-        if (featureIndex == -1) {
-            for (int i=0; i<dataSet.getNumDataPoints(); i++) {
-                gradient += this.classProbMatrix[i][classIndex];
-            }
-        } else {
-            Vector featureColumn = dataSet.getColumn(featureIndex);
-            for (Vector.Element element: featureColumn.nonZeroes()) {
-                int dataPointIndex = element.index();
-                double featureValue = element.get();
-                gradient += this.classProbMatrix[dataPointIndex][classIndex] * featureValue;
-            }
-        }
-
-        gradient -= this.empiricalCounts[parameterIndex];
-
-        // regularize
-        if (regularizeAll){
-            gradient += cmlcrf.getWeights().getWeightForIndex(parameterIndex)/gaussianPriorVariance;
-        } else {
-            if (featureIndex != -1) {
-                gradient += cmlcrf.getWeights().getWeightForIndex(parameterIndex)/gaussianPriorVariance;
-            }
+    private double regularizationForFeature(int parameterIndex) {
+        if (regularizeAll || parameterToFeature[parameterIndex] != -1){
+            return cmlcrf.getWeights().getWeightForIndex(parameterIndex)/gaussianPriorVariance;
         }
-        return gradient;
+        return 0;
     }
 
 
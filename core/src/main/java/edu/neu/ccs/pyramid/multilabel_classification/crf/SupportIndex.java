@@ -0,0 +1,232 @@
+package edu.neu.ccs.pyramid.multilabel_classification.crf;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * support combinations as primitive arrays, for scoring without boxing and for top-K search
+ * labels are stored in compressed sparse rows: the labels of combination c are labels[offsets[c]] ... labels[offsets[c+1]-1]
+ * combinations are grouped by number of labels m, and each group is sorted by label part score, descending;
+ * the score of a combination is at most its label part score plus the sum of the m largest class scores,
+ * so a group can be cut as soon as this bound falls below the K-th best score
+ * depends on the label part scores, so it is rebuilt when they change
+ */
+class SupportIndex {
+    private int[] offsets;
+    private int[] labels;
+    private double[] labelPartScores;
+    // number of labels of each group
+    private int[] groupSizes;
+    private int[][] groups;
+    // log of the sum of exp(label part score) over groups[g][p], groups[g][p+1], ...
+    private double[][] logSuffixMasses;
+
+    SupportIndex(List<MultiLabel> supportCombinations, double[] labelPartScores) {
+        int numSupports = supportCombinations.size();
+        this.labelPartScores = labelPartScores;
+        this.offsets = new int[numSupports+1];
+        for (int c=0;c<numSupports;c++){
+            offsets[c+1] = offsets[c] + supportCombinations.get(c).getMatchedLabels().size();
+        }
+        this.labels = new int[offsets[numSupports]];
+        for (int c=0;c<numSupports;c++){
+            int position = offsets[c];
+            for (int label: supportCombinations.get(c).getMatchedLabelsOrdered()){
+                labels[position] = label;
+                position += 1;
+            }
+        }
+
+        Map<Integer, List<Integer>> bySize = new TreeMap<>();
+        for (int c=0;c<numSupports;c++){
+            bySize.computeIfAbsent(offsets[c+1]-offsets[c], m -> new ArrayList<>()).add(c);
+        }
+        this.groupSizes = new int[bySize.size()];
+        this.groups = new int[bySize.size()][];
+        this.logSuffixMasses = new double[bySize.size()][];
+        int g = 0;
+        for (Map.Entry<Integer, List<Integer>> entry: bySize.entrySet()){
+            groupSizes[g] = entry.getKey();
+            groups[g] = entry.getValue().stream()
+                    .sorted(Comparator.comparingDouble(c -> -labelPartScores[c]))
+                    .mapToInt(Integer::intValue).toArray();
+            int size = groups[g].length;
+            logSuffixMasses[g] = new double[size+1];
+            logSuffixMasses[g][size] = Double.NEGATIVE_INFINITY;
+            for (int p=size-1;p>=0;p--){
+                logSuffixMasses[g][p] = logAdd(logSuffixMasses[g][p+1], labelPartScores[groups[g][p]]);
+            }
+            g += 1;
+        }
+    }
+
+    int getNumLabels(int combination){
+        return offsets[combination+1]-offsets[combination];
+    }
+
+    /**
+     * sum of class scores of the labels in the combination, plus its label part score
+     */
+    double score(int combination, double[] classScores){
+        double score = labelPartScores[combination];
+        for (int p=offsets[combination];p<offsets[combination+1];p++){
+            score += classScores[labels[p]];
+        }
+        return score;
+    }
+
+    double[] scores(double[] classScores){
+        return IntStream.range(0, offsets.length-1).mapToDouble(c -> score(c, classScores)).toArray();
+    }
+
+    /**
+     * adds prob to the class probabilities of the labels in the combination
+     */
+    void addClassProbs(int combination, double prob, double[] classProbs){
+        for (int p=offsets[combination];p<offsets[combination+1];p++){
+            classProbs[labels[p]] += prob;
+        }
+    }
+
+    /**
+     * the topK combinations with highest scores
+     * combinations cut by the bound enter the tail mass by their upper bounds,
+     * scored combinations outside the top K enter it exactly; so the tail mass is an overestimate
+     * @param required a combination to keep even if not in the top K, e.g. the true combination in training; -1 for none
+     */
+    TopCombinations top(double[] classScores, int topK, int required){
+        double[] sortedScores = Arrays.copyOf(classScores, classScores.length);
+        Arrays.sort(sortedScores);
+        // prefix sums of the largest class scores
+        double[] largestSums = new double[sortedScores.length+1];
+        for (int m=1;m<=sortedScores.length;m++){
+            largestSums[m] = largestSums[m-1] + sortedScores[sortedScores.length-m];
+        }
+        // visit groups with the best first bound first, so the heap threshold rises early
+        Integer[] groupOrder = new Integer[groups.length];
+        for (int g=0;g<groups.length;g++){
+            groupOrder[g] = g;
+        }
+        Arrays.sort(groupOrder, Comparator.comparingDouble(g -> -(labelPartScores[groups[g][0]]+largestSums[groupSizes[g]])));
+
+        Heap heap = new Heap(topK);
+        double logTailMass = Double.NEGATIVE_INFINITY;
+        for (int g: groupOrder){
+            int[] group = groups[g];
+            double largestSum = largestSums[groupSizes[g]];
+            for (int p=0;p<group.length;p++){
+                int combination = group[p];
+                if (heap.isFull() && labelPartScores[combination]+largestSum<=heap.minScore()){
+                    // each of the remaining scores is at most its bound, and at most the K-th best score
+                    double boundMass = logSuffixMasses[g][p]+largestSum;
+                    double thresholdMass = Math.log(group.length-p)+heap.minScore();
+                    logTailMass = logAdd(logTailMass, Math.min(boundMass, thresholdMass));
+                    break;
+                }
+                double score = score(combination, classScores);
+                if (!heap.isFull()){
+                    heap.add(combination, score);
+                } else if (score>heap.minScore()){
+                    int dropped = heap.minCombination();
+                    double droppedScore = heap.minScore();
+                    heap.replaceMin(combination, score);
+                    if (dropped!=required){
+                        logTailMass = logAdd(logTailMass, droppedScore);
+                    }
+                } else if (combination!=required){
+                    logTailMass = logAdd(logTailMass, score);
+                }
+            }
+        }
+        int size = heap.size;
+        boolean appendRequired = required>=0 && !heap.contains(required);
+        int[] combinations = Arrays.copyOf(heap.combinations, appendRequired ? size+1 : size);
+        double[] scores = Arrays.copyOf(heap.scores, appendRequired ? size+1 : size);
+        if (appendRequired){
+            combinations[size] = required;
+            scores[size] = score(required, classScores);
+        }
+        return new TopCombinations(combinations, scores, logTailMass);
+    }
+
+    static double logAdd(double logA, double logB){
+        if (logA==Double.NEGATIVE_INFINITY){
+            return logB;
+        }
+        if (logB==Double.NEGATIVE_INFINITY){
+            return logA;
+        }
+        double max = Math.max(logA, logB);
+        return max + Math.log1p(Math.exp(-Math.abs(logA-logB)));
+    }
+
+    /**
+     * binary min heap of (combination, score) by score, with a fixed capacity
+     */
+    private static class Heap {
+        private int[] combinations;
+        private double[] scores;
+        private int size;
+
+        Heap(int capacity) {
+            this.combinations = new int[capacity];
+            this.scores = new double[capacity];
+        }
+
+        boolean isFull(){
+            return size==combinations.length;
+        }
+
+        double minScore(){
+            return scores[0];
+        }
+
+        int minCombination(){
+            return combinations[0];
+        }
+
+        boolean contains(int combination){
+            for (int p=0;p<size;p++){
+                if (combinations[p]==combination){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void add(int combination, double score){
+            int p = size;
+            size += 1;
+            while (p>0 && scores[(p-1)/2]>score){
+                combinations[p] = combinations[(p-1)/2];
+                scores[p] = scores[(p-1)/2];
+                p = (p-1)/2;
+            }
+            combinations[p] = combination;
+            scores[p] = score;
+        }
+
+        void replaceMin(int combination, double score){
+            int p = 0;
+            while (true){
+                int child = 2*p+1;
+                if (child>=size){
+                    break;
+                }
+                if (child+1<size && scores[child+1]<scores[child]){
+                    child += 1;
+                }
+                if (scores[child]>=score){
+                    break;
+                }
+                combinations[p] = combinations[child];
+                scores[p] = scores[child];
+                p = child;
+            }
+            combinations[p] = combination;
+            scores[p] = score;
+        }
+    }
+}
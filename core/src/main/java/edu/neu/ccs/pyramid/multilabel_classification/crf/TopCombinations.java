@@ -0,0 +1,76 @@
+package edu.neu.ccs.pyramid.multilabel_classification.crf;
+
+import edu.neu.ccs.pyramid.util.MathUtil;
+
+import java.util.Arrays;
+
+/**
+ * the combinations of a CMLCRF kept for one instance, with their exact scores,
+ * plus the log of the mass exp(score) of all other combinations, which is an overestimate
+ * logZ is approximated by logSumExp(scores, logTailMass)
+ * restricted to the kept combinations, logZ is logSumExp(scores), a lower bound of the full logZ
+ */
+public class TopCombinations {
+    private int[] combinations;
+    private double[] scores;
+    private double logTailMass;
+
+    public TopCombinations(int[] combinations, double[] scores, double logTailMass) {
+        this.combinations = combinations;
+        this.scores = scores;
+        this.logTailMass = logTailMass;
+    }
+
+    /**
+     * indices in the support combinations, not sorted
+     */
+    public int[] getCombinations() {
+        return combinations;
+    }
+
+    public double[] getScores() {
+        return scores;
+    }
+
+    public double getLogTailMass() {
+        return logTailMass;
+    }
+
+    public double getLogNormalizer(){
+        double[] all = Arrays.copyOf(scores, scores.length+1);
+        all[scores.length] = logTailMass;
+        return MathUtil.logSumExp(all);
+    }
+
+    /**
+     * logSumExp over the kept combinations only; does not depend on the tail mass estimate
+     */
+    public double getKeptLogNormalizer(){
+        return MathUtil.logSumExp(scores);
+    }
+
+    /**
+     * probabilities of the kept combinations normalized among themselves, they sum to 1;
+     * the derivatives of getKeptLogNormalizer with respect to the scores
+     */
+    public double[] getKeptProbs(){
+        double logNormalizer = getKeptLogNormalizer();
+        double[] probs = new double[scores.length];
+        for (int i=0;i<scores.length;i++){
+            probs[i] = Math.exp(scores[i]-logNormalizer);
+        }
+        return probs;
+    }
+
+    /**
+     * probabilities of the kept combinations, they sum to less than 1 by the tail mass
+     */
+    public double[] getProbs(){
+        double logNormalizer = getLogNormalizer();
+        double[] probs = new double[scores.length];
+        for (int i=0;i<scores.length;i++){
+            probs[i] = Math.exp(scores[i]-logNormalizer);
+        }
+        return probs;
+    }
+}
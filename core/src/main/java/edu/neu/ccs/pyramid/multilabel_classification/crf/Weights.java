@@ -42,6 +42,17 @@ public class Weights  implements Serializable {
 //        System.out.println("numWeightsForLabels: " + numWeightsForLabels);
     }
 
+    /**
+     * wrap an existing weight vector, which is not copied
+     */
+    public Weights(int numClasses, int numFeatures, Vector weightVector) {
+        this.numClasses = numClasses;
+        this.numFeatures = numFeatures;
+        this.numWeightsForFeatures = (numFeatures + 1) * numClasses;
+        this.numWeightsForLabels = (numClasses * (numClasses-1)/2) * 4;
+        setWeightVector(weightVector);
+    }
+
     //todo buggy
     public Weights deepCopy(){
         Weights copy = new Weights(this.numClasses,numFeatures);
@@ -178,6 +189,9 @@ public class Weights  implements Serializable {
 
     private void writeObject(java.io.ObjectOutputStream out)
             throws IOException {
+        if (serializableWeights==null){
+            serializableWeights = new double[numWeightsForFeatures + numWeightsForLabels];
+        }
         for (int i=0;i<serializableWeights.length;i++){
             serializableWeights[i] = weightVector.get(i);
         }
@@ -1,5 +1,7 @@
 package edu.neu.ccs.pyramid.multilabel_classification.hmlgb;
 
+import edu.neu.ccs.pyramid.dataset.DenseFloatMatrix;
+import edu.neu.ccs.pyramid.dataset.FloatMatrix;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 import edu.neu.ccs.pyramid.util.Sampling;
@@ -19,6 +21,9 @@ public class HMLGBConfig {
     private int[] activeDataPoints;
     private int numSplitIntervals;
     private boolean usePrior;
+    private boolean useHistogram;
+    private FloatMatrix.Factory matrixFactory;
+    private FloatMatrix.Factory gradientMatrixFactory;
 
     boolean usePrior() {
         return usePrior;
@@ -60,6 +65,18 @@ public class HMLGBConfig {
         return numSplitIntervals;
     }
 
+    boolean useHistogram() {
+        return useHistogram;
+    }
+
+    FloatMatrix.Factory getMatrixFactory() {
+        return matrixFactory;
+    }
+
+    FloatMatrix.Factory getGradientMatrixFactory() {
+        return gradientMatrixFactory;
+    }
+
 
     public static class Builder {
         /**
@@ -77,6 +94,10 @@ public class HMLGBConfig {
         double featureSamplingRate=1;
         private int numSplitIntervals =100;
         boolean usePrior=true;
+        boolean useHistogram=false;
+        private FloatMatrix.Factory matrixFactory = DenseFloatMatrix.factory(FloatMatrix.Layout.ROW_MAJOR);
+        // null keeps gradients as doubles
+        private FloatMatrix.Factory gradientMatrixFactory = null;
 
         public Builder(MultiLabelClfDataSet dataSet) {
             this.dataSet = dataSet;
@@ -118,6 +139,31 @@ public class HMLGBConfig {
             return this;
         }
 
+        /**
+         * bin features once and find splits with histograms
+         */
+        public Builder useHistogram(boolean useHistogram) {
+            this.useHistogram = useHistogram;
+            return this;
+        }
+
+        /**
+         * storage of the score and probability matrices, e.g. off-heap or sparse for many data points and labels
+         */
+        public Builder matrixFactory(FloatMatrix.Factory matrixFactory) {
+            this.matrixFactory = matrixFactory;
+            return this;
+        }
+
+        /**
+         * keep the gradients as floats in this storage, instead of doubles;
+         * gradients are read by class, so a column-major storage fits best
+         */
+        public Builder gradientMatrixFactory(FloatMatrix.Factory gradientMatrixFactory) {
+            this.gradientMatrixFactory = gradientMatrixFactory;
+            return this;
+        }
+
         public HMLGBConfig build() {
             return new HMLGBConfig(this);
         }
@@ -135,6 +181,9 @@ public class HMLGBConfig {
         double featureSamplingRate = builder.featureSamplingRate;
         this.numSplitIntervals = builder.numSplitIntervals;
         this.usePrior = builder.usePrior;
+        this.useHistogram = builder.useHistogram;
+        this.matrixFactory = builder.matrixFactory;
+        this.gradientMatrixFactory = builder.gradientMatrixFactory;
         int numDataPoints = dataSet.getNumDataPoints();
         if (dataSamplingRate == 1) {
             /**
@@ -4,6 +4,7 @@ import edu.neu.ccs.pyramid.dataset.*;
 import edu.neu.ccs.pyramid.multilabel_classification.MLPriorProbClassifier;
 import edu.neu.ccs.pyramid.regression.ConstantRegressor;
 import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.FeatureBins;
 import edu.neu.ccs.pyramid.regression.regression_tree.LeafOutputCalculator;
 import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
 import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeTrainer;
@@ -45,6 +46,10 @@ public class HMLGBTrainer {
     private GradientMatrix gradientMatrix;
     private ProbabilityMatrix probabilityMatrix;
     private HMLGradientBoosting boosting;
+    /**
+     * shared by all trees, null if histogram is not used
+     */
+    private FeatureBins featureBins;
 
 
 
@@ -62,17 +67,21 @@ public class HMLGBTrainer {
         int numClasses = dataSet.getNumClasses();
         int numDataPoints = dataSet.getNumDataPoints();
         int numAssignments = this.assignments.size();
-        this.scoreMatrix = new ScoreMatrix(numDataPoints,numClasses);
+        this.scoreMatrix = new ScoreMatrix(config.getMatrixFactory().create(numDataPoints,numClasses));
         if (config.usePrior()&& boosting.getRegressors(0).size()==0){
             setPriorProbs(config.getDataSet());
         }
         this.initScoreMatrix(boosting);
         this.assignmentProbabilityMatrix = new double[numDataPoints][numAssignments];
         this.updateAssignmentProbMatrix();
-        this.probabilityMatrix = new ProbabilityMatrix(numDataPoints,numClasses);
+        this.probabilityMatrix = new ProbabilityMatrix(config.getMatrixFactory().create(numDataPoints,numClasses));
         this.updateProbabilityMatrix();
-        this.gradientMatrix = new GradientMatrix(numDataPoints,numClasses, GradientMatrix.Objective.MAXIMIZE);
+        this.gradientMatrix = GradientMatrix.create(numDataPoints,numClasses, GradientMatrix.Objective.MAXIMIZE,
+                config.getGradientMatrixFactory());
         this.updateClassGradientMatrix();
+        if (config.useHistogram()){
+            this.featureBins = FeatureBins.build(dataSet, config.getNumSplitIntervals(), true);
+        }
     }
 
     public void iterate(){
@@ -156,6 +165,15 @@ public class HMLGBTrainer {
     private void updateClassScores(Regressor regressor, int k){
         DataSet dataSet= this.config.getDataSet();
         int numDataPoints = dataSet.getNumDataPoints();
+        // leaves found in training are added directly
+        if (regressor instanceof RegressionTree && ((RegressionTree)regressor).hasTrainingLeaves()){
+            RegressionTree tree = (RegressionTree)regressor;
+            IntStream.range(0, numDataPoints).parallel()
+                    .forEach(dataIndex -> this.scoreMatrix.increment(dataIndex,k,
+                            tree.predictTrainingDataPoint(dataSet,dataIndex)));
+            tree.clearTrainingLeaves();
+            return;
+        }
         IntStream.range(0, numDataPoints).parallel()
                 .forEach(dataIndex -> this.updateClassScore(regressor, k, dataIndex));
     }
@@ -236,6 +254,7 @@ public class HMLGBTrainer {
                 this.probabilityMatrix.increment(dataPoint,label,prob);
             }
         }
+        this.probabilityMatrix.getStorage().compact(dataPoint);
     }
 
 
@@ -288,6 +307,9 @@ public class HMLGBTrainer {
         regTreeConfig.setMinDataPerLeaf(this.config.getMinDataPerLeaf());
 
         regTreeConfig.setNumSplitIntervals(this.config.getNumSplitIntervals());
+        if (featureBins!=null){
+            regTreeConfig.setFeatureBins(featureBins);
+        }
 
         RegressionTree regressionTree = RegTreeTrainer.fit(regTreeConfig,
                 this.config.getDataSet(),
@@ -4,6 +4,7 @@ import edu.neu.ccs.pyramid.dataset.LabelTranslator;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.CompiledBoosting;
 import edu.neu.ccs.pyramid.regression.Regressor;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.mahout.math.Vector;
@@ -156,6 +157,14 @@ public class HMLGradientBoosting implements MultiLabelClassifier, MultiLabelClas
     }
 
 
+    /**
+     * flatten all trees for fast scoring, one ensemble per class
+     * the compiled form does not change if more regressors are added later
+     */
+    public CompiledBoosting compile(){
+        return CompiledBoosting.compile(regressors);
+    }
+
     public List<Regressor> getRegressors(int k){
         return this.regressors.get(k);
     }
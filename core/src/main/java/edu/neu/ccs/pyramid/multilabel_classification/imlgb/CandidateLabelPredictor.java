@@ -0,0 +1,202 @@
+package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import edu.neu.ccs.pyramid.multilabel_classification.PluginPredictor;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.CompiledBoosting;
+import edu.neu.ccs.pyramid.util.Pair;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * two-stage inference for large label sets
+ * stage 1 finds candidate labels without running any tree:
+ * a label whose trees use none of the non-zero features of a vector has the score of the zero vector, which is computed once;
+ * the other labels are found by an inverted index from features to labels
+ * stage 2 runs the trees of the candidates only, and stops a label as soon as the largest possible output
+ * of its remaining trees cannot lift it to the threshold
+ * the cost per vector depends on the labels reachable from its non-zero features, not on the number of labels
+ * scores are the same as IMLGradientBoosting.predictClassScores;
+ * the model is compiled at construction, later changes to the model are not seen
+ */
+public class CandidateLabelPredictor implements PluginPredictor<IMLGradientBoosting> {
+    private static final long serialVersionUID = 1L;
+    private IMLGradientBoosting imlGradientBoosting;
+    private CompiledBoosting compiledBoosting;
+    private int numClasses;
+    // scores of the zero vector
+    private double[] zeroScores;
+    // labels sorted by zero scores, descending
+    private int[] labelsByZeroScore;
+    // feature index -> labels whose trees use the feature
+    private int[][] labelsOfFeature;
+
+    private transient volatile ThreadLocal<boolean[]> markers;
+
+    public CandidateLabelPredictor(IMLGradientBoosting imlGradientBoosting) {
+        this.imlGradientBoosting = imlGradientBoosting;
+        this.compiledBoosting = imlGradientBoosting.compile();
+        this.numClasses = imlGradientBoosting.getNumClasses();
+        int[][] featuresOfLabel = new int[numClasses][];
+        int numFeatures = 0;
+        for (int k=0;k<numClasses;k++){
+            featuresOfLabel[k] = compiledBoosting.getFeatureIndices(k);
+            for (int featureIndex: featuresOfLabel[k]){
+                numFeatures = Math.max(numFeatures,featureIndex+1);
+            }
+        }
+        this.zeroScores = compiledBoosting.score(new RandomAccessSparseVector(numFeatures));
+        this.labelsByZeroScore = IntStream.range(0,numClasses).boxed()
+                .sorted(Comparator.comparing(k -> -zeroScores[k]))
+                .mapToInt(Integer::intValue).toArray();
+        int[] numLabels = new int[numFeatures];
+        for (int[] features: featuresOfLabel){
+            for (int featureIndex: features){
+                numLabels[featureIndex] += 1;
+            }
+        }
+        this.labelsOfFeature = new int[numFeatures][];
+        for (int j=0;j<numFeatures;j++){
+            labelsOfFeature[j] = new int[numLabels[j]];
+        }
+        int[] filled = new int[numFeatures];
+        for (int k=0;k<numClasses;k++){
+            for (int featureIndex: featuresOfLabel[k]){
+                labelsOfFeature[featureIndex][filled[featureIndex]] = k;
+                filled[featureIndex] += 1;
+            }
+        }
+    }
+
+    @Override
+    public IMLGradientBoosting getModel() {
+        return imlGradientBoosting;
+    }
+
+    /**
+     * optimal for Hamming Loss, same as HammingPredictor
+     */
+    @Override
+    public MultiLabel predict(Vector vector) {
+        MultiLabel prediction = new MultiLabel();
+        for (Pair<Integer,Double> pair: predictCandidateScores(vector,0)){
+            if (pair.getSecond()>0){
+                prediction.addLabel(pair.getFirst());
+            }
+        }
+        return prediction;
+    }
+
+    /**
+     * labels whose scores reach the threshold, with exact scores, sorted by label
+     * other labels are pruned without computing their exact scores
+     * @param vector
+     * @param threshold
+     * @return (label, score) pairs
+     */
+    public List<Pair<Integer,Double>> predictCandidateScores(Vector vector, double threshold){
+        boolean[] touched = markers();
+        int[] candidates = touchedLabels(vector,touched);
+        double[] scores = new double[candidates.length];
+        compiledBoosting.scoreWithThreshold(vector,candidates,threshold,scores);
+        List<Pair<Integer,Double>> result = new ArrayList<>();
+        for (int j=0;j<candidates.length;j++){
+            if (scores[j]>=threshold){
+                result.add(new Pair<>(candidates[j],scores[j]));
+            }
+        }
+        for (int k: labelsByZeroScore){
+            if (zeroScores[k]<threshold){
+                break;
+            }
+            if (!touched[k]){
+                result.add(new Pair<>(k,zeroScores[k]));
+            }
+        }
+        clear(candidates,touched);
+        result.sort(Comparator.comparing(Pair::getFirst));
+        return result;
+    }
+
+    /**
+     * scores of all labels; only the trees of touched labels are run
+     */
+    public double[] predictClassScores(Vector vector){
+        double[] scores = Arrays.copyOf(zeroScores,numClasses);
+        boolean[] touched = markers();
+        int[] candidates = touchedLabels(vector,touched);
+        clear(candidates,touched);
+        double[] candidateScores = new double[candidates.length];
+        compiledBoosting.score(vector,candidates,candidateScores);
+        for (int j=0;j<candidates.length;j++){
+            scores[candidates[j]] = candidateScores[j];
+        }
+        return scores;
+    }
+
+    public double[] predictAssignmentScores(Vector vector, List<MultiLabel> multiLabels){
+        double[] classScores = predictClassScores(vector);
+        double[] assignmentScores = new double[multiLabels.size()];
+        for (int i=0;i<multiLabels.size();i++){
+            assignmentScores[i] = imlGradientBoosting.calAssignmentScore(multiLabels.get(i),classScores);
+        }
+        return assignmentScores;
+    }
+
+    public double[] predictAllAssignmentProbsWithConstraint(Vector vector){
+        if (imlGradientBoosting.getAssignments()==null){
+            throw new RuntimeException("CRF is used but legal assignments is not specified!");
+        }
+        return imlGradientBoosting.calAssignmentProbs(predictClassScores(vector));
+    }
+
+    /**
+     * labels whose trees use a non-zero feature of the vector; they are marked in touched
+     */
+    private int[] touchedLabels(Vector vector, boolean[] touched){
+        int[] labels = new int[16];
+        int size = 0;
+        for (Vector.Element element: vector.nonZeroes()){
+            int featureIndex = element.index();
+            if (featureIndex>=labelsOfFeature.length){
+                continue;
+            }
+            for (int k: labelsOfFeature[featureIndex]){
+                if (!touched[k]){
+                    touched[k] = true;
+                    if (size==labels.length){
+                        labels = Arrays.copyOf(labels,size*2);
+                    }
+                    labels[size] = k;
+                    size += 1;
+                }
+            }
+        }
+        return Arrays.copyOf(labels,size);
+    }
+
+    private static void clear(int[] labels, boolean[] touched){
+        for (int k: labels){
+            touched[k] = false;
+        }
+    }
+
+    /**
+     * all false between uses
+     */
+    private boolean[] markers(){
+        if (markers==null){
+            synchronized (this){
+                if (markers==null){
+                    markers = ThreadLocal.withInitial(() -> new boolean[numClasses]);
+                }
+            }
+        }
+        return markers.get();
+    }
+}
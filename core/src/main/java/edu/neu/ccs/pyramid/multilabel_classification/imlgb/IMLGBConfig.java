@@ -1,6 +1,9 @@
 package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
 
+import edu.neu.ccs.pyramid.dataset.DenseFloatMatrix;
+import edu.neu.ccs.pyramid.dataset.FloatMatrix;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.RowSampler;
 import edu.neu.ccs.pyramid.util.Sampling;
 
 import java.util.stream.IntStream;
@@ -16,6 +19,10 @@ public class IMLGBConfig {
     private int numSplitIntervals;
     private boolean usePrior;
     private int numActiveFeatures;
+    private boolean useHistogram;
+    private int labelBlockSize;
+    private RowSampler rowSampler;
+    private FloatMatrix.Factory matrixFactory;
 
     boolean usePrior() {
         return usePrior;
@@ -46,6 +53,22 @@ public class IMLGBConfig {
         return numActiveFeatures;
     }
 
+    boolean useHistogram() {
+        return useHistogram;
+    }
+
+    int getLabelBlockSize() {
+        return labelBlockSize;
+    }
+
+    RowSampler getRowSampler() {
+        return rowSampler;
+    }
+
+    FloatMatrix.Factory getMatrixFactory() {
+        return matrixFactory;
+    }
+
     public static class Builder {
         /**
          * required
@@ -61,6 +84,11 @@ public class IMLGBConfig {
         private int numSplitIntervals =100;
         private boolean usePrior = true;
         private int numActiveFeatures=20;
+        private boolean useHistogram = false;
+        private int labelBlockSize = 1;
+        private RowSampler rowSampler = null;
+        // classes are updated one at a time
+        private FloatMatrix.Factory matrixFactory = DenseFloatMatrix.factory(FloatMatrix.Layout.COLUMN_MAJOR);
 
         public Builder(MultiLabelClfDataSet dataSet) {
             this.dataSet = dataSet;
@@ -97,6 +125,46 @@ public class IMLGBConfig {
             return this;
         }
 
+        /**
+         * bin features once and find splits with histograms;
+         * all labels share the same bins, and active features are not needed
+         */
+        public Builder useHistogram(boolean useHistogram) {
+            this.useHistogram = useHistogram;
+            return this;
+        }
+
+        /**
+         * only used with histogram
+         * labels are fit in blocks of this size; the trees of a block share one structure,
+         * grown on the gradients of all labels in the block with one histogram scan per node
+         * 1 means an independent tree for each label
+         */
+        public Builder labelBlockSize(int labelBlockSize) {
+            if (labelBlockSize<1){
+                throw new IllegalArgumentException("labelBlockSize must be positive");
+            }
+            this.labelBlockSize = labelBlockSize;
+            return this;
+        }
+
+        /**
+         * fit each tree on a sample of rows, e.g. subsampling or GOSS; null for all rows
+         * for a label block, GOSS ranks rows by the sum of |gradient| over the labels of the block
+         */
+        public Builder rowSampler(RowSampler rowSampler) {
+            this.rowSampler = rowSampler;
+            return this;
+        }
+
+        /**
+         * storage of the score matrix, e.g. off-heap or sparse for many data points and labels
+         */
+        public Builder matrixFactory(FloatMatrix.Factory matrixFactory) {
+            this.matrixFactory = matrixFactory;
+            return this;
+        }
+
         //todo add setter for active featureList
 
         public IMLGBConfig build() {
@@ -115,5 +183,9 @@ public class IMLGBConfig {
         this.numSplitIntervals = builder.numSplitIntervals;
         this.usePrior = builder.usePrior;
         this.numActiveFeatures = builder.numActiveFeatures;
+        this.useHistogram = builder.useHistogram;
+        this.labelBlockSize = builder.labelBlockSize;
+        this.rowSampler = builder.rowSampler;
+        this.matrixFactory = builder.matrixFactory;
     }
 }
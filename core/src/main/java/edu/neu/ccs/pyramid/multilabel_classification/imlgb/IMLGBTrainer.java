@@ -2,6 +2,7 @@ package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
 
 import edu.neu.ccs.pyramid.dataset.*;
 import edu.neu.ccs.pyramid.multilabel_classification.MLPriorProbClassifier;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.RowSampler;
 import edu.neu.ccs.pyramid.regression.ConstantRegressor;
 import edu.neu.ccs.pyramid.regression.Regressor;
 import edu.neu.ccs.pyramid.regression.regression_tree.*;
@@ -11,6 +12,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.mahout.math.Vector;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -38,6 +40,11 @@ public class IMLGBTrainer {
 
     private boolean[] shouldStop;
 
+    /**
+     * shared by all labels, null if histogram is not used
+     */
+    private FeatureBins featureBins;
+
 
     public IMLGBTrainer(IMLGBConfig config,
                         IMLGradientBoosting boosting) {
@@ -51,11 +58,12 @@ public class IMLGBTrainer {
         boosting.setLabelTranslator(dataSet.getLabelTranslator());
         int numClasses = dataSet.getNumClasses();
         int numDataPoints = dataSet.getNumDataPoints();
-        this.scoreMatrix = new ScoreMatrix(numDataPoints,numClasses);
+        this.scoreMatrix = new ScoreMatrix(config.getMatrixFactory().create(numDataPoints,numClasses));
         if (config.usePrior() && boosting.getRegressors(0).size()==0){
             this.setPriorProbs(dataSet);
         }
         this.initStagedClassScoreMatrix(boosting);
+        this.initFeatureBins();
 //        this.gradientMatrix = new FloatGradientMatrix(numDataPoints,numClasses, FloatGradientMatrix.Objective.MAXIMIZE);
 //        List<MultiLabel> assignments = DataSetUtil.gatherMultiLabels(dataSet);
 //        boosting.setAssignments(assignments);
@@ -75,12 +83,13 @@ public class IMLGBTrainer {
         boosting.setLabelTranslator(dataSet.getLabelTranslator());
         int numClasses = dataSet.getNumClasses();
         int numDataPoints = dataSet.getNumDataPoints();
-        this.scoreMatrix = new ScoreMatrix(numDataPoints,numClasses);
+        this.scoreMatrix = new ScoreMatrix(config.getMatrixFactory().create(numDataPoints,numClasses));
         if (config.usePrior() && boosting.getRegressors(0).size()==0){
             this.setPriorProbs(dataSet);
         }
         this.shouldStop = shouldStop;
         this.initStagedClassScoreMatrix(boosting, shouldStop);
+        this.initFeatureBins();
     }
 
     public void setShouldStop(int classIndex){
@@ -95,6 +104,10 @@ public class IMLGBTrainer {
     }
 
     public void iterate(){
+        if (useLabelBlocks()){
+            fitLabelBlocks(true);
+            return;
+        }
 
         List<Integer> allFeatureIndices = IntStream.range(0, this.config.getDataSet().getNumFeatures()).boxed().collect(Collectors.toList());
 
@@ -115,6 +128,10 @@ public class IMLGBTrainer {
 
 
     public void iterate(List<Integer>[] activeFeatureLists, boolean fullScan){
+        if (useLabelBlocks()){
+            fitLabelBlocks(true);
+            return;
+        }
         if (fullScan){
 
             IntStream.range(0, this.boosting.getNumClasses()).parallel()
@@ -150,6 +167,10 @@ public class IMLGBTrainer {
 
 
     public void iterateWithoutStagingScores(List<Integer>[] activeFeatureLists, boolean fullScan){
+        if (useLabelBlocks()){
+            fitLabelBlocks(false);
+            return;
+        }
         if(fullScan){
             IntStream.range(0, this.boosting.getNumClasses()).parallel()
                     .forEach(k->{
@@ -157,7 +178,9 @@ public class IMLGBTrainer {
                             if (logger.isDebugEnabled()){
                                 logger.debug("updating class "+k);
                             }
-                            Regressor regressor = this.fitClassK(k, activeFeatureLists[k], true);
+                            RegressionTree regressor = this.fitClassK(k, activeFeatureLists[k], true);
+                            // scores are not staged, the leaves are not needed
+                            regressor.clearTrainingLeaves();
                             this.boosting.addRegressor(regressor, k);
                         }
                     });
@@ -170,7 +193,9 @@ public class IMLGBTrainer {
                             if (logger.isDebugEnabled()){
                                 logger.debug("updating class "+k);
                             }
-                            Regressor regressor = this.fitClassK(k, activeFeatureLists[k], false);
+                            RegressionTree regressor = this.fitClassK(k, activeFeatureLists[k], false);
+                            // scores are not staged, the leaves are not needed
+                            regressor.clearTrainingLeaves();
                             this.boosting.addRegressor(regressor, k);
                         }
                     });
@@ -226,6 +251,78 @@ public class IMLGBTrainer {
         this.setPriorProbs(probs);
     }
 
+    private boolean useLabelBlocks(){
+        return featureBins!=null && config.getLabelBlockSize()>1;
+    }
+
+    /**
+     * parallel over blocks of active labels
+     * the trees of a block share one structure and one histogram per node
+     * @param stageScores whether to update the score matrix
+     */
+    private void fitLabelBlocks(boolean stageScores){
+        int[] activeLabels = IntStream.range(0, this.boosting.getNumClasses())
+                .filter(k -> !shouldStop[k]).toArray();
+        int blockSize = config.getLabelBlockSize();
+        int numBlocks = (activeLabels.length+blockSize-1)/blockSize;
+        IntStream.range(0, numBlocks).parallel()
+                .forEach(b -> {
+                    int[] labels = Arrays.copyOfRange(activeLabels, b*blockSize,
+                            Math.min((b+1)*blockSize, activeLabels.length));
+                    if (logger.isDebugEnabled()){
+                        logger.debug("updating classes "+Arrays.toString(labels));
+                    }
+                    RegressionTree[] trees = this.fitLabelBlock(labels);
+                    for (int l=0;l<labels.length;l++){
+                        this.boosting.addRegressor(trees[l], labels[l]);
+                        if (stageScores){
+                            this.updateStagedClassScores(trees[l], labels[l]);
+                        } else {
+                            trees[l].clearTrainingLeaves();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * trees of the same structure for a block of classes
+     * apply learning rate
+     * @param labels class indices
+     * @return trees[l] for class labels[l], shrunk
+     */
+    private RegressionTree[] fitLabelBlock(int[] labels){
+        double[][] gradients = new double[labels.length][];
+        for (int l=0;l<labels.length;l++){
+            gradients[l] = computeGradientForClass(labels[l]);
+        }
+        RegTreeConfig regTreeConfig = new RegTreeConfig();
+        regTreeConfig.setMaxNumLeaves(this.config.getNumLeaves());
+        regTreeConfig.setMinDataPerLeaf(this.config.getMinDataPerLeaf());
+        regTreeConfig.setNumSplitIntervals(this.config.getNumSplitIntervals());
+        regTreeConfig.setParallel(false);
+        regTreeConfig.setFeatureBins(featureBins);
+        double[] absGradientSums = new double[this.config.getDataSet().getNumDataPoints()];
+        for (double[] classGradients: gradients){
+            for (int i=0;i<absGradientSums.length;i++){
+                absGradientSums[i] += Math.abs(classGradients[i]);
+            }
+        }
+        RegressionTree[] trees = MultiOutputRegTreeTrainer.fit(regTreeConfig,
+                this.config.getDataSet(),
+                gradients,
+                sampleWeights(absGradientSums));
+        for (RegressionTree tree: trees){
+            tree.shrink(this.config.getLearningRate());
+        }
+        return trees;
+    }
+
+    private void initFeatureBins(){
+        if (config.useHistogram()){
+            this.featureBins = FeatureBins.build(config.getDataSet(), config.getNumSplitIntervals(), true);
+        }
+    }
+
     private void initStagedClassScoreMatrix(IMLGradientBoosting boosting){
         DataSet dataSet = config.getDataSet();
         IntStream.range(0, dataSet.getNumDataPoints()).parallel()
@@ -269,6 +366,15 @@ public class IMLGBTrainer {
     private void updateStagedClassScores(Regressor regressor, int k){
         DataSet dataSet= this.config.getDataSet();
         int numDataPoints = dataSet.getNumDataPoints();
+        // leaves found in training are added directly
+        if (regressor instanceof RegressionTree && ((RegressionTree)regressor).hasTrainingLeaves()){
+            RegressionTree tree = (RegressionTree)regressor;
+            IntStream.range(0, numDataPoints)
+                    .forEach(dataIndex -> this.scoreMatrix.increment(dataIndex,k,
+                            tree.predictTrainingDataPoint(dataSet,dataIndex)));
+            tree.clearTrainingLeaves();
+            return;
+        }
         IntStream.range(0, numDataPoints)
                 .forEach(dataIndex -> this.updateStagedClassScore(regressor, k, dataIndex));
     }
@@ -290,7 +396,7 @@ public class IMLGBTrainer {
 
 
     private double calClassProb(int dataPoint, int k){
-        double score = this.scoreMatrix.getScoresForData(dataPoint)[k];
+        double score = this.scoreMatrix.getScore(dataPoint,k);
         double logNumerator = score;
         double[] scores = new double[2];
         scores[0] = 0;
@@ -302,6 +408,46 @@ public class IMLGBTrainer {
 
 
 
+    /**
+     * with a row sampler, the tree is fit on a read-only view of the sampled rows, so that it only visits them,
+     * and its training leaves are mapped back to the data set
+     */
+    private RegressionTree fitActiveTree(RegTreeConfig regTreeConfig, double[] gradients,
+                                         LeafOutputCalculator leafOutputCalculator,
+                                         List<Integer> activeFeatures, boolean fullScan){
+        DataSet dataSet = this.config.getDataSet();
+        double[] weights = sampleWeights(gradients);
+        if (this.config.getRowSampler()==null){
+            return ActiveRegTreeTrainer.fit(regTreeConfig,dataSet,gradients,weights,
+                    leafOutputCalculator,activeFeatures,fullScan);
+        }
+        int[] rows = IntStream.range(0, weights.length).filter(i -> weights[i]!=0).toArray();
+        RegressionTree regressionTree = ActiveRegTreeTrainer.fit(regTreeConfig,
+                new RowSubsetDataSet(dataSet, rows),
+                Arrays.stream(rows).mapToDouble(i -> gradients[i]).toArray(),
+                Arrays.stream(rows).mapToDouble(i -> weights[i]).toArray(),
+                leafOutputCalculator,
+                activeFeatures,
+                fullScan);
+        regressionTree.mapTrainingLeaves(rows, dataSet.getNumDataPoints());
+        return regressionTree;
+    }
+
+    /**
+     * weights of the rows used to fit a tree
+     * @param gradients used by GOSS to rank rows
+     * @return all 1 without row sampler, otherwise 0 for rows left out
+     */
+    private double[] sampleWeights(double[] gradients){
+        double[] weights = new double[gradients.length];
+        Arrays.fill(weights,1.0);
+        RowSampler rowSampler = this.config.getRowSampler();
+        if (rowSampler==null){
+            return weights;
+        }
+        return rowSampler.sample(gradients, weights);
+    }
+
     private double[] computeGradientForClass(int k){
         return IntStream.range(0, this.config.getDataSet().getNumDataPoints())
                 .mapToDouble(i->computeGradient(k,i)).toArray();
@@ -323,11 +469,30 @@ public class IMLGBTrainer {
      * parallel
      * find the best regression tree for class k
      * apply newton step and learning rate
+     * with histogram, all features are scanned and activeFeatures is ignored
      * @param k class index
      * @return regressionTreeLk, shrunk
      * @throws Exception
      */
     private RegressionTree fitClassK(int k, List<Integer> activeFeatures, boolean fullScan){
+        if (featureBins!=null){
+            double[] gradients = computeGradientForClass(k);
+            RegTreeConfig regTreeConfig = new RegTreeConfig();
+            regTreeConfig.setMaxNumLeaves(this.config.getNumLeaves());
+            regTreeConfig.setMinDataPerLeaf(this.config.getMinDataPerLeaf());
+            regTreeConfig.setNumSplitIntervals(this.config.getNumSplitIntervals());
+            regTreeConfig.setParallel(false);
+            regTreeConfig.setFeatureBins(featureBins);
+            // rows left out are dropped at the root, so nodes only visit the sampled rows
+            regTreeConfig.setUseRowPartition(this.config.getRowSampler()!=null);
+            RegressionTree regressionTree = RegTreeTrainer.fit(regTreeConfig,
+                    this.config.getDataSet(),
+                    gradients,
+                    sampleWeights(gradients),
+                    new AverageOutputCalculator());
+            regressionTree.shrink(this.config.getLearningRate());
+            return regressionTree;
+        }
         if (fullScan){
             double[] gradients = computeGradientForClass(k);
             double learningRate = this.config.getLearningRate();
@@ -343,8 +508,7 @@ public class IMLGBTrainer {
             regTreeConfig.setParallel(false);
             regTreeConfig.setNumActiveFeatures(this.config.getNumActiveFeatures());
 
-            RegressionTree regressionTree = ActiveRegTreeTrainer.fit(regTreeConfig,
-                    this.config.getDataSet(),
+            RegressionTree regressionTree = fitActiveTree(regTreeConfig,
                     gradients,
                     leafOutputCalculator,
                     activeFeatures,
@@ -368,8 +532,7 @@ public class IMLGBTrainer {
             regTreeConfig.setParallel(false);
             regTreeConfig.setNumActiveFeatures(this.config.getNumActiveFeatures());
 
-            RegressionTree regressionTree = ActiveRegTreeTrainer.fit(regTreeConfig,
-                    this.config.getDataSet(),
+            RegressionTree regressionTree = fitActiveTree(regTreeConfig,
                     gradients,
                     leafOutputCalculator,
                     activeFeatures,
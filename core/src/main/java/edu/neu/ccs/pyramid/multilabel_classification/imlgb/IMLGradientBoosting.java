@@ -5,6 +5,7 @@ import edu.neu.ccs.pyramid.dataset.LabelTranslator;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.multilabel_classification.MultiLabelClassifier;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.CompiledBoosting;
 import edu.neu.ccs.pyramid.regression.Regressor;
 import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.mahout.math.DenseVector;
@@ -125,15 +126,31 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
 
 
     double[] predictClassScoresCachedInput(Vector vector){
-        Vector cachedVector = new CachedAccessOnlyVector((RandomAccessSparseVector) vector);
-        return predictClassScores(cachedVector);
+        return predictClassScores(cachedInput(vector));
     }
 
     double[] predictClassScoresCachedInput(Vector vector, boolean[] shouldStop){
-        Vector cachedVector = new CachedAccessOnlyVector((RandomAccessSparseVector) vector);
-        return predictClassScores(cachedVector, shouldStop);
+        return predictClassScores(cachedInput(vector), shouldStop);
     }
 
+    /**
+     * only hash based vectors benefit from the cache
+     */
+    private static Vector cachedInput(Vector vector){
+        if (vector instanceof RandomAccessSparseVector){
+            return new CachedAccessOnlyVector((RandomAccessSparseVector) vector);
+        }
+        return vector;
+    }
+
+
+    /**
+     * flatten all trees for fast scoring, one ensemble per class
+     * the compiled form does not change if more regressors are added later
+     */
+    public CompiledBoosting compile(){
+        return CompiledBoosting.compile(regressors);
+    }
 
     public List<Regressor> getRegressors(int k){
         return this.regressors.get(k);
@@ -198,7 +215,13 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
             throw new RuntimeException("CRF is used but legal assignments is not specified!");
         }
 
-        double[] classScores = predictClassScores(vector);
+        return calAssignmentProbs(predictClassScores(vector));
+    }
+
+    /**
+     * probabilities of the legal assignments given the class scores
+     */
+    double[] calAssignmentProbs(double[] classScores){
         double[] assignmentScores = new double[this.assignments.size()];
         for (int i=0;i<assignments.size();i++){
             assignmentScores[i] = calAssignmentScore(assignments.get(i),classScores);
@@ -287,7 +310,7 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
         return featureList;
     }
 
-    void setFeatureList(FeatureList featureList) {
+    public void setFeatureList(FeatureList featureList) {
         this.featureList = featureList;
     }
 
@@ -296,7 +319,7 @@ public class IMLGradientBoosting implements MultiLabelClassifier.ClassScoreEstim
         return labelTranslator;
     }
 
-    void setLabelTranslator(LabelTranslator labelTranslator) {
+    public void setLabelTranslator(LabelTranslator labelTranslator) {
         this.labelTranslator = labelTranslator;
     }
 
@@ -4,7 +4,9 @@ import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
 
+import edu.neu.ccs.pyramid.optimization.MiniBatchGradient;
 import edu.neu.ccs.pyramid.optimization.Optimizable;
+import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
@@ -13,7 +15,7 @@ import java.util.stream.IntStream;
 /**
  * Created by chengli on 5/15/15.
  */
-public class IMLLogisticLoss implements Optimizable.ByGradientValue {
+public class IMLLogisticLoss implements Optimizable.ByGradientValue, Optimizable.ByMiniBatchGradient {
     private IMLLogisticRegression logisticRegression;
     private MultiLabelClfDataSet dataSet;
     private double gaussianPriorVariance;
@@ -146,6 +148,55 @@ public class IMLLogisticLoss implements Optimizable.ByGradientValue {
         return classProbMatrix[dataPointIndex];
     }
 
+    @Override
+    public int getNumDataPoints() {
+        return dataSet.getNumDataPoints();
+    }
+
+    /**
+     * negative log likelihood over [from, to) and its gradient, computed from the rows only
+     * each class is an independent binary problem
+     */
+    @Override
+    public double addBatchGradient(int from, int to, MiniBatchGradient gradient) {
+        MultiLabel[] labels = dataSet.getMultiLabels();
+        int numFeatures = logisticRegression.getNumFeatures();
+        int numClasses = logisticRegression.getNumClasses();
+        double[] scores = new double[2];
+        double sum = 0;
+        for (int i=from;i<to;i++){
+            Vector row = dataSet.getRow(i);
+            double[] classScores = logisticRegression.predictClassScores(row);
+            for (int k=0;k<numClasses;k++){
+                scores[1] = classScores[k];
+                double logDenominator = MathUtil.logSumExp(scores);
+                double diff = Math.exp(classScores[k]-logDenominator);
+                sum += logDenominator;
+                if (labels[i].matchClass(k)){
+                    sum -= classScores[k];
+                    diff -= 1;
+                }
+                if (diff==0){
+                    continue;
+                }
+                int start = (numFeatures+1)*k;
+                gradient.add(start, diff);
+                for (Vector.Element element: row.nonZeroes()){
+                    gradient.add(start+1+element.index(), diff*element.get());
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * same as getValue, all parameters are regularized
+     */
+    @Override
+    public boolean isRegularized(int parameterIndex) {
+        return true;
+    }
+
 
 
     private void updateClassProbMatrix(){
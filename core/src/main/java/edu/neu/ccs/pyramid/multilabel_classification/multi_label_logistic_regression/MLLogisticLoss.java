@@ -2,7 +2,10 @@ package edu.neu.ccs.pyramid.multilabel_classification.multi_label_logistic_regre
 
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.multilabel_classification.PredictedCounts;
+import edu.neu.ccs.pyramid.optimization.MiniBatchGradient;
 import edu.neu.ccs.pyramid.optimization.Optimizable;
+import edu.neu.ccs.pyramid.util.MathUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.mahout.math.DenseVector;
@@ -13,7 +16,7 @@ import java.util.stream.IntStream;
 /**
  * Created by chengli on 12/23/14.
  */
-public class MLLogisticLoss implements Optimizable.ByGradient, Optimizable.ByGradientValue{
+public class MLLogisticLoss implements Optimizable.ByGradient, Optimizable.ByGradientValue, Optimizable.ByMiniBatchGradient{
     private static final Logger logger = LogManager.getLogger();
     private MLLogisticRegression mlLogisticRegression;
     private MultiLabelClfDataSet dataSet;
@@ -40,6 +43,7 @@ public class MLLogisticLoss implements Optimizable.ByGradient, Optimizable.ByGra
     private double value;
     private boolean isGradientCacheValid;
     private boolean isValueCacheValid;
+    private boolean rowMajorGradient = false;
 
     public MLLogisticLoss(MLLogisticRegression mlLogisticRegression,
                         MultiLabelClfDataSet dataSet, double gaussianPriorVariance) {
@@ -63,6 +67,13 @@ public class MLLogisticLoss implements Optimizable.ByGradient, Optimizable.ByGra
     }
 
 
+    /**
+     * if true, predicted counts are computed in one pass over rows, see PredictedCounts
+     */
+    public void setRowMajorGradient(boolean rowMajorGradient) {
+        this.rowMajorGradient = rowMajorGradient;
+    }
+
     public Vector getParameters(){
         return mlLogisticRegression.getWeights().getAllWeights();
     }
@@ -114,8 +125,13 @@ public class MLLogisticLoss implements Optimizable.ByGradient, Optimizable.ByGra
         if (logger.isDebugEnabled()){
             logger.debug("start method  updatePredictedCounts");
         }
-        IntStream.range(0,numParameters).parallel()
-                .forEach(i -> this.predictedCounts.set(i, calPredictedCount(i)));
+        if (rowMajorGradient){
+            double[] counts = PredictedCounts.compute(dataSet, classProbMatrix, dataSet.getNumClasses());
+            this.predictedCounts = new DenseVector(counts, true);
+        } else {
+            IntStream.range(0,numParameters).parallel()
+                    .forEach(i -> this.predictedCounts.set(i, calPredictedCount(i)));
+        }
         if (logger.isDebugEnabled()){
             logger.debug("finish method  updatePredictedCounts");
         }
@@ -172,6 +188,52 @@ public class MLLogisticLoss implements Optimizable.ByGradient, Optimizable.ByGra
         return classProbMatrix[dataPointIndex];
     }
 
+    @Override
+    public int getNumDataPoints() {
+        return dataSet.getNumDataPoints();
+    }
+
+    /**
+     * negative log likelihood over [from, to) and its gradient, computed from the rows only
+     */
+    @Override
+    public double addBatchGradient(int from, int to, MiniBatchGradient gradient) {
+        MultiLabel[] labels = dataSet.getMultiLabels();
+        int numFeatures = mlLogisticRegression.getNumFeatures();
+        int numClasses = mlLogisticRegression.getNumClasses();
+        double sum = 0;
+        for (int i=from;i<to;i++){
+            Vector row = dataSet.getRow(i);
+            double[] classScores = mlLogisticRegression.predictClassScores(row);
+            double[] assignmentScores = mlLogisticRegression.calAssignmentScores(classScores);
+            sum += MathUtil.logSumExp(assignmentScores) - mlLogisticRegression.calAssignmentScore(labels[i], classScores);
+            double[] classProbs = mlLogisticRegression.calClassProbs(mlLogisticRegression.calAssignmentProbs(assignmentScores));
+            for (int k=0;k<numClasses;k++){
+                double diff = classProbs[k];
+                if (labels[i].matchClass(k)){
+                    diff -= 1;
+                }
+                if (diff==0){
+                    continue;
+                }
+                int start = (numFeatures+1)*k;
+                gradient.add(start, diff);
+                for (Vector.Element element: row.nonZeroes()){
+                    gradient.add(start+1+element.index(), diff*element.get());
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * same as getValue, all parameters are regularized
+     */
+    @Override
+    public boolean isRegularized(int parameterIndex) {
+        return true;
+    }
+
     private void updateClassScoreMatrix(){
         IntStream.range(0,dataSet.getNumDataPoints()).parallel()
                 .forEach(i-> classScoreMatrix[i] = mlLogisticRegression.predictClassScores(dataSet.getRow(i)));
@@ -0,0 +1,42 @@
+package edu.neu.ccs.pyramid.optimization;
+
+/**
+ * mini-batch AdaGrad
+ * Duchi, John, Elad Hazan, and Yoram Singer.
+ * "Adaptive subgradient methods for online learning and stochastic optimization." JMLR 12 (2011): 2121-2159.
+ */
+public class AdaGrad extends MiniBatchOptimizer{
+    private double epsilon = 1e-8;
+    /**
+     * sum of squared gradients of each parameter
+     */
+    private double[] squareSums;
+
+    public AdaGrad(Optimizable.ByMiniBatchGradient function) {
+        super(function, 0.1);
+        this.squareSums = new double[numParameters];
+    }
+
+    @Override
+    protected double update(int parameterIndex, double gradient) {
+        squareSums[parameterIndex] += gradient*gradient;
+        double rate = currentLearningRate(parameterIndex);
+        parameters[parameterIndex] -= rate*gradient;
+        return rate;
+    }
+
+    /**
+     * parameters without gradient history use the base learning rate
+     */
+    @Override
+    protected double currentLearningRate(int parameterIndex) {
+        if (squareSums[parameterIndex]==0){
+            return learningRate;
+        }
+        return learningRate/(Math.sqrt(squareSums[parameterIndex])+epsilon);
+    }
+
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+}
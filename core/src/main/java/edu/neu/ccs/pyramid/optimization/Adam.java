@@ -0,0 +1,56 @@
+package edu.neu.ccs.pyramid.optimization;
+
+/**
+ * mini-batch Adam; the moments of a parameter only change when the parameter is touched,
+ * bias corrections use the global step
+ * Kingma, Diederik, and Jimmy Ba. "Adam: A method for stochastic optimization." ICLR 2015.
+ */
+public class Adam extends MiniBatchOptimizer{
+    private double beta1 = 0.9;
+    private double beta2 = 0.999;
+    private double epsilon = 1e-8;
+    private double[] firstMoments;
+    private double[] secondMoments;
+
+    public Adam(Optimizable.ByMiniBatchGradient function) {
+        super(function, 0.001);
+        this.firstMoments = new double[numParameters];
+        this.secondMoments = new double[numParameters];
+    }
+
+    @Override
+    protected double update(int parameterIndex, double gradient) {
+        double m = beta1*firstMoments[parameterIndex] + (1-beta1)*gradient;
+        double v = beta2*secondMoments[parameterIndex] + (1-beta2)*gradient*gradient;
+        firstMoments[parameterIndex] = m;
+        secondMoments[parameterIndex] = v;
+        double rate = currentLearningRate(parameterIndex);
+        parameters[parameterIndex] -= rate*m/(1-Math.pow(beta1, step));
+        return rate;
+    }
+
+    /**
+     * learningRate / (sqrt of bias corrected second moment + epsilon);
+     * parameters without gradient history use the base learning rate
+     */
+    @Override
+    protected double currentLearningRate(int parameterIndex) {
+        double v = secondMoments[parameterIndex];
+        if (v==0){
+            return learningRate;
+        }
+        return learningRate/(Math.sqrt(v/(1-Math.pow(beta2, step)))+epsilon);
+    }
+
+    public void setBeta1(double beta1) {
+        this.beta1 = beta1;
+    }
+
+    public void setBeta2(double beta2) {
+        this.beta2 = beta2;
+    }
+
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
+}
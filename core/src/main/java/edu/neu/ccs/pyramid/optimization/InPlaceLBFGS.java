@@ -0,0 +1,293 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+
+/**
+ * same algorithm as LBFGS (two-loop recursion + backtracking line search), without per-iteration allocation
+ * the last m (s, y) pairs live in preallocated double[] rows used as a circular buffer;
+ * the direction, the trial position and the history are updated in place with fused axpy/dot kernels.
+ * the parameters handed to the function are two DenseVectors wrapping our own arrays, used alternately:
+ * the function holds the accepted one, the line search writes trials into the other one
+ */
+public class InPlaceLBFGS extends GradientValueOptimizer implements Optimizer{
+    private static final Logger logger = LogManager.getLogger();
+    private int numParameters;
+    /**
+     * history length
+     */
+    private int m;
+    private double[][] sHistory;
+    private double[][] yHistory;
+    private double[] rhoHistory;
+    private double[] alphas;
+    /**
+     * slot of the oldest pair
+     */
+    private int head;
+    private int historySize;
+    private double gamma = 1;
+
+    private double[] gradient;
+    private double[] direction;
+    private double[] position;
+    private double[] trial;
+    private Vector positionVector;
+    private Vector trialVector;
+
+    private double initialStepLength = 1;
+    private double shrinkage = 0.5;
+    private double c = 1e-4;
+
+    public InPlaceLBFGS(Optimizable.ByGradientValue function) {
+        this(function, 5);
+    }
+
+    public InPlaceLBFGS(Optimizable.ByGradientValue function, int m) {
+        super(function);
+        if (m<1){
+            throw new IllegalArgumentException("history length should be at least 1");
+        }
+        this.numParameters = function.getParameters().size();
+        this.m = m;
+        this.sHistory = new double[m][numParameters];
+        this.yHistory = new double[m][numParameters];
+        this.rhoHistory = new double[m];
+        this.alphas = new double[m];
+        this.gradient = new double[numParameters];
+        this.direction = new double[numParameters];
+        this.position = new double[numParameters];
+        this.trial = new double[numParameters];
+        this.positionVector = new DenseVector(position, true);
+        this.trialVector = new DenseVector(trial, true);
+    }
+
+    /**
+     * forget the history
+     */
+    public void reset(){
+        this.head = 0;
+        this.historySize = 0;
+        this.gamma = 1;
+    }
+
+    @Override
+    public void iterate(){
+        if (logger.isDebugEnabled()){
+            logger.debug("start one iteration");
+        }
+        // parameters set from outside since the last iteration
+        if (function.getParameters()!=positionVector){
+            copy(function.getParameters(), position);
+        }
+        copy(function.getGradient(), gradient);
+        findDirection();
+
+        double value = function.getValue();
+        double product = dot(gradient, direction);
+        if (product>=0){
+            if (logger.isWarnEnabled()) {
+                logger.warn("Bad search direction! Use negative gradient instead. Product of gradient and search direction = " + product);
+            }
+            for (int i=0;i<numParameters;i++){
+                direction[i] = -gradient[i];
+            }
+            product = -dot(gradient, gradient);
+        }
+        double stepLength = lineSearch(value, product);
+
+        // the step and the gradient change go directly into the next slot of the buffer
+        int slot;
+        if (historySize<m){
+            slot = (head+historySize)%m;
+            historySize += 1;
+        } else {
+            slot = head;
+            head = (head+1)%m;
+        }
+        double[] s = sHistory[slot];
+        double[] y = yHistory[slot];
+        Vector newGradient = function.getGradient();
+        double sy = 0;
+        double yy = 0;
+        if (newGradient.isDense()){
+            for (int i=0;i<numParameters;i++){
+                double si = stepLength*direction[i];
+                double yi = newGradient.getQuick(i) - gradient[i];
+                s[i] = si;
+                y[i] = yi;
+                sy += si*yi;
+                yy += yi*yi;
+            }
+        } else {
+            for (int i=0;i<numParameters;i++){
+                s[i] = stepLength*direction[i];
+                y[i] = -gradient[i];
+            }
+            for (Vector.Element element: newGradient.nonZeroes()){
+                y[element.index()] += element.get();
+            }
+            sy = dot(s, y);
+            yy = dot(y, y);
+        }
+
+        double rho = 0;
+        if (sy>0){
+            rho = 1/sy;
+        } else {
+            terminator.forceTerminate();
+            if (logger.isWarnEnabled()){
+                logger.warn("denominator <= 0, force to terminate");
+            }
+        }
+        rhoHistory[slot] = rho;
+        if (yy>0){
+            gamma = sy/yy;
+        } else {
+            gamma = 1;
+        }
+        if (logger.isDebugEnabled()){
+            logger.debug("denominator = "+sy);
+            logger.debug("rho = "+rho);
+        }
+
+        double newValue = function.getValue();
+        terminator.add(newValue);
+        if (logger.isDebugEnabled()){
+            logger.debug("finish one iteration. loss = "+newValue);
+        }
+    }
+
+    /**
+     * direction = -H * gradient, written into direction
+     * each loop step fuses the axpy of this pair with the dot product needed by the next pair
+     */
+    private void findDirection(){
+        System.arraycopy(gradient, 0, direction, 0, numParameters);
+        if (historySize==0){
+            scale(-1, direction);
+            return;
+        }
+        int newest = (head+historySize-1)%m;
+        double dot = dot(sHistory[newest], direction);
+        for (int k=historySize-1;k>=0;k--){
+            int slot = (head+k)%m;
+            double alpha = rhoHistory[slot]*dot;
+            alphas[slot] = alpha;
+            if (k>0){
+                dot = axpyDot(-alpha, yHistory[slot], direction, sHistory[(head+k-1)%m]);
+            } else {
+                axpy(-alpha, yHistory[slot], direction);
+            }
+        }
+        // H_k^0 = gamma I
+        scale(gamma, direction);
+        dot = dot(yHistory[head], direction);
+        for (int k=0;k<historySize;k++){
+            int slot = (head+k)%m;
+            double beta = rhoHistory[slot]*dot;
+            if (k<historySize-1){
+                dot = axpyDot(alphas[slot]-beta, sHistory[slot], direction, yHistory[(head+k+1)%m]);
+            } else {
+                axpy(alphas[slot]-beta, sHistory[slot], direction);
+            }
+        }
+        scale(-1, direction);
+    }
+
+    /**
+     * backtracking until the sufficient decrease condition holds, same rule as BackTrackingLineSearcher
+     * on return, the function holds the accepted position
+     * @return accepted step length
+     */
+    private double lineSearch(double value, double product){
+        double stepLength = initialStepLength;
+        while(true){
+            for (int i=0;i<numParameters;i++){
+                trial[i] = position[i] + stepLength*direction[i];
+            }
+            function.setParameters(trialVector);
+            double targetValue = function.getValue();
+            if (logger.isDebugEnabled()){
+                logger.debug("step length = "+stepLength+", target value = "+targetValue);
+            }
+            if ((targetValue <= value + c*stepLength*product && value<Double.POSITIVE_INFINITY )|| stepLength==0){
+                break;
+            }
+            stepLength *= shrinkage;
+        }
+        // the accepted trial becomes the position; the old position is free for the next trials
+        double[] tmp = position;
+        position = trial;
+        trial = tmp;
+        Vector tmpVector = positionVector;
+        positionVector = trialVector;
+        trialVector = tmpVector;
+        return stepLength;
+    }
+
+    private void copy(Vector vector, double[] array){
+        if (vector.isDense()){
+            for (int i=0;i<numParameters;i++){
+                array[i] = vector.getQuick(i);
+            }
+        } else {
+            Arrays.fill(array, 0);
+            for (Vector.Element element: vector.nonZeroes()){
+                array[element.index()] = element.get();
+            }
+        }
+    }
+
+    private static double dot(double[] a, double[] b){
+        double sum = 0;
+        for (int i=0;i<a.length;i++){
+            sum += a[i]*b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * y += a*x
+     */
+    private static void axpy(double a, double[] x, double[] y){
+        for (int i=0;i<y.length;i++){
+            y[i] += a*x[i];
+        }
+    }
+
+    /**
+     * y += a*x, then return y.z in the same pass
+     */
+    private static double axpyDot(double a, double[] x, double[] y, double[] z){
+        double sum = 0;
+        for (int i=0;i<y.length;i++){
+            double yi = y[i] + a*x[i];
+            y[i] = yi;
+            sum += yi*z[i];
+        }
+        return sum;
+    }
+
+    private static void scale(double a, double[] x){
+        for (int i=0;i<x.length;i++){
+            x[i] *= a;
+        }
+    }
+
+    public void setInitialStepLength(double initialStepLength) {
+        this.initialStepLength = initialStepLength;
+    }
+
+    public void setShrinkage(double shrinkage) {
+        this.shrinkage = shrinkage;
+    }
+
+    public void setC(double c) {
+        this.c = c;
+    }
+}
@@ -0,0 +1,58 @@
+package edu.neu.ccs.pyramid.optimization;
+
+/**
+ * sparse gradient of one mini-batch
+ * values are accumulated in a dense array, and the touched parameters are listed,
+ * so clearing and visiting costs O(number of touched parameters)
+ * not thread safe
+ */
+public class MiniBatchGradient {
+    private double[] values;
+    private boolean[] isTouched;
+    private int[] touched;
+    private int numTouched;
+
+    public MiniBatchGradient(int numParameters) {
+        this.values = new double[numParameters];
+        this.isTouched = new boolean[numParameters];
+        this.touched = new int[numParameters];
+    }
+
+    public void add(int parameterIndex, double value){
+        if (!isTouched[parameterIndex]){
+            isTouched[parameterIndex] = true;
+            touched[numTouched] = parameterIndex;
+            numTouched += 1;
+        }
+        values[parameterIndex] += value;
+    }
+
+    public double get(int parameterIndex){
+        return values[parameterIndex];
+    }
+
+    public int getNumTouched() {
+        return numTouched;
+    }
+
+    /**
+     * @param t from 0 to getNumTouched()-1
+     * @return parameter index
+     */
+    public int getTouched(int t){
+        return touched[t];
+    }
+
+    public int size(){
+        return values.length;
+    }
+
+    public void clear(){
+        for (int t=0;t<numTouched;t++){
+            int parameterIndex = touched[t];
+            values[parameterIndex] = 0;
+            isTouched[parameterIndex] = false;
+        }
+        numTouched = 0;
+    }
+}
@@ -0,0 +1,232 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+
+/**
+ * stochastic optimization over mini-batches of contiguous data points
+ * minimizes mean data term + regularization * ((1-l1Ratio)/2 * ||w||_2^2 + l1Ratio * ||w||_1)
+ * over the regularized parameters; a full-batch loss with gaussian prior variance v corresponds to
+ * regularization = 1/(v * numDataPoints) and l1Ratio = 0
+ *
+ * one iteration is one pass over the data; the terminator sees the mean data term over the pass plus the penalty.
+ *
+ * updates are lazy: a parameter is only updated when the batch gradient touches it;
+ * the l2 shrinkage and l1 truncation of the skipped steps are replayed at that time with the current
+ * learning rate of the parameter, so the cost of a step is proportional to the touched parameters.
+ * the data term of a batch sees the parameters before this replay.
+ * all parameters are brought up to date at the end of each pass.
+ * Tsuruoka, Yoshimasa, Jun'ichi Tsujii, and Sophia Ananiadou.
+ * "Stochastic gradient descent training for l1-regularized log-linear models with cumulative penalty." ACL 2009.
+ */
+public abstract class MiniBatchOptimizer implements Optimizer{
+    private static final Logger logger = LogManager.getLogger();
+    protected Optimizable.ByMiniBatchGradient function;
+    protected Terminator terminator;
+    protected int numParameters;
+    /**
+     * the function holds a vector on this array
+     */
+    protected double[] parameters;
+    private Vector parameterVector;
+    private MiniBatchGradient gradient;
+    private boolean[] isRegularized;
+    /**
+     * the step up to which the penalty of the parameter has been applied
+     */
+    private int[] lastSteps;
+    /**
+     * number of updates so far, starting from 1 in the first update
+     */
+    protected int step;
+    protected double learningRate;
+    private int batchSize = 100;
+    private double regularization = 0;
+    private double l1Ratio = 0;
+    private boolean shuffle = true;
+    private Random random = new Random(0L);
+
+    protected MiniBatchOptimizer(Optimizable.ByMiniBatchGradient function, double learningRate) {
+        this.function = function;
+        this.learningRate = learningRate;
+        this.terminator = new Terminator();
+        this.terminator.setGoal(Terminator.Goal.MINIMIZE);
+        this.numParameters = function.getParameters().size();
+        this.parameters = new double[numParameters];
+        this.parameterVector = new DenseVector(parameters, true);
+        this.gradient = new MiniBatchGradient(numParameters);
+        this.isRegularized = new boolean[numParameters];
+        for (int j=0;j<numParameters;j++){
+            isRegularized[j] = function.isRegularized(j);
+        }
+        this.lastSteps = new int[numParameters];
+    }
+
+    /**
+     * update the parameter with the gradient (regularization included) at the current step
+     * @return the learning rate used, which scales the l1 truncation
+     */
+    protected abstract double update(int parameterIndex, double gradient);
+
+    /**
+     * current learning rate of the parameter, used to replay the penalty of skipped steps
+     */
+    protected abstract double currentLearningRate(int parameterIndex);
+
+    @Override
+    public void optimize() {
+        while(true){
+            iterate();
+            if (terminator.shouldTerminate()){
+                break;
+            }
+        }
+    }
+
+    /**
+     * one pass over the data
+     */
+    public void iterate(){
+        // parameters set from outside since the last pass
+        Vector current = function.getParameters();
+        if (current!=parameterVector){
+            for (int j=0;j<numParameters;j++){
+                parameters[j] = current.get(j);
+            }
+        }
+        int numData = function.getNumDataPoints();
+        int numBatches = (numData+batchSize-1)/batchSize;
+        int[] order = new int[numBatches];
+        for (int b=0;b<numBatches;b++){
+            order[b] = b;
+        }
+        if (shuffle){
+            for (int b=numBatches-1;b>0;b--){
+                int r = random.nextInt(b+1);
+                int tmp = order[b];
+                order[b] = order[r];
+                order[r] = tmp;
+            }
+        }
+        double l2 = regularization*(1-l1Ratio);
+        double l1 = regularization*l1Ratio;
+        double dataTerm = 0;
+        for (int b: order){
+            int from = b*batchSize;
+            int to = Math.min(from+batchSize, numData);
+            function.setParameters(parameterVector);
+            gradient.clear();
+            dataTerm += function.addBatchGradient(from, to, gradient);
+            step += 1;
+            double scale = 1.0/(to-from);
+            for (int t=0;t<gradient.getNumTouched();t++){
+                int j = gradient.getTouched(t);
+                double g = gradient.get(j)*scale;
+                if (isRegularized[j]){
+                    catchUp(j, step-1, l2, l1);
+                    g += l2*parameters[j];
+                }
+                double rate = update(j, g);
+                if (isRegularized[j] && l1>0){
+                    parameters[j] = truncate(parameters[j], rate*l1);
+                }
+                lastSteps[j] = step;
+            }
+        }
+        for (int j=0;j<numParameters;j++){
+            if (isRegularized[j]){
+                catchUp(j, step, l2, l1);
+            }
+            lastSteps[j] = step;
+        }
+        function.setParameters(parameterVector);
+        double value = dataTerm/numData + penalty(l2, l1);
+        terminator.add(value);
+        if (logger.isDebugEnabled()){
+            logger.debug("finish one pass. objective = "+value);
+        }
+    }
+
+    /**
+     * apply the penalty of steps (lastSteps[j], upTo], in which the parameter had no data gradient
+     */
+    private void catchUp(int j, int upTo, double l2, double l1){
+        int numSkipped = upTo - lastSteps[j];
+        if (numSkipped<=0 || parameters[j]==0){
+            return;
+        }
+        double rate = currentLearningRate(j);
+        if (l2>0){
+            parameters[j] *= Math.pow(Math.max(0, 1-rate*l2), numSkipped);
+        }
+        if (l1>0){
+            parameters[j] = truncate(parameters[j], numSkipped*rate*l1);
+        }
+    }
+
+    private static double truncate(double value, double threshold){
+        if (value>threshold){
+            return value - threshold;
+        }
+        if (value<-threshold){
+            return value + threshold;
+        }
+        return 0;
+    }
+
+    private double penalty(double l2, double l1){
+        double square = 0;
+        double abs = 0;
+        for (int j=0;j<numParameters;j++){
+            if (isRegularized[j]){
+                square += parameters[j]*parameters[j];
+                abs += Math.abs(parameters[j]);
+            }
+        }
+        return l2/2*square + l1*abs;
+    }
+
+    @Override
+    public double getFinalObjective() {
+        return this.terminator.getLastValue();
+    }
+
+    @Override
+    public Terminator getTerminator() {
+        return this.terminator;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize<1){
+            throw new IllegalArgumentException("batch size should be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    public void setRegularization(double regularization) {
+        this.regularization = regularization;
+    }
+
+    public void setL1Ratio(double l1Ratio) {
+        this.l1Ratio = l1Ratio;
+    }
+
+    /**
+     * whether to visit the batches in a random order in each pass; the data points inside a batch stay contiguous
+     */
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+}
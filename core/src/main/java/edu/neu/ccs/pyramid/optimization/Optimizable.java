@@ -27,4 +27,24 @@ public interface Optimizable{
 
     }
 
+    /**
+     * objectives that are a sum over data points, trained by MiniBatchOptimizer
+     * data points are visited as index ranges, so the data set does not have to fit in memory (e.g. MappedDataSet)
+     * the optimizer changes the parameter vector in place and calls setParameters before each batch
+     */
+    public interface ByMiniBatchGradient extends Optimizable{
+        int getNumDataPoints();
+
+        /**
+         * add the gradient of the data term (no regularization) over data points [from, to) into gradient
+         * @return the data term summed over [from, to)
+         */
+        double addBatchGradient(int from, int to, MiniBatchGradient gradient);
+
+        /**
+         * @return whether the regularization applies to the parameter (e.g. false for bias)
+         */
+        boolean isRegularized(int parameterIndex);
+    }
+
 }
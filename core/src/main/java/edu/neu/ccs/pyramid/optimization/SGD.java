@@ -0,0 +1,36 @@
+package edu.neu.ccs.pyramid.optimization;
+
+/**
+ * mini-batch stochastic gradient descent with momentum
+ * v = momentum * v - learningRate * g; w = w + v
+ * the velocity of a parameter only changes when the parameter is touched
+ */
+public class SGD extends MiniBatchOptimizer{
+    private double momentum = 0.9;
+    private double[] velocities;
+
+    public SGD(Optimizable.ByMiniBatchGradient function) {
+        super(function, 0.1);
+        this.velocities = new double[numParameters];
+    }
+
+    @Override
+    protected double update(int parameterIndex, double gradient) {
+        double velocity = momentum*velocities[parameterIndex] - learningRate*gradient;
+        velocities[parameterIndex] = velocity;
+        parameters[parameterIndex] += velocity;
+        return learningRate;
+    }
+
+    @Override
+    protected double currentLearningRate(int parameterIndex) {
+        return learningRate;
+    }
+
+    /**
+     * 0 gives plain SGD
+     */
+    public void setMomentum(double momentum) {
+        this.momentum = momentum;
+    }
+}
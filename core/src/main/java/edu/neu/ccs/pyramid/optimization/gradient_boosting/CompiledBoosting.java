@@ -0,0 +1,364 @@
+package edu.neu.ccs.pyramid.optimization.gradient_boosting;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.Node;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+import org.apache.mahout.math.Vector;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * read-only scoring form of trained boosting ensembles
+ * all trees are flattened into primitive arrays (struct of arrays), nodes of a tree are stored in pre-order;
+ * a child reference c >= 0 points to an internal node, c < 0 points to leaf ~c
+ * constant regressors and single-leaf trees are folded into one bias per ensemble
+ * scoring a vector copies its non-zeros into a per-thread dense buffer once, and walks the arrays without allocation
+ * missing values are handled as in RegressionTree.predict
+ */
+public class CompiledBoosting implements Serializable{
+    private static final long serialVersionUID = 1L;
+
+    private int numEnsembles;
+    private int numFeatures;
+    // per ensemble
+    private double[] biases;
+    // trees of ensemble k are [treeStarts[k], treeStarts[k+1])
+    private int[] treeStarts;
+    // per tree
+    private int[] roots;
+    // per internal node
+    private int[] featureIndices;
+    private double[] thresholds;
+    private int[] leftChildren;
+    private int[] rightChildren;
+    private double[] leftProbs;
+    private double[] rightProbs;
+    // per leaf
+    private double[] leafValues;
+    // for tree t of ensemble k, remainingBounds[t+k] = sum of the largest leaf values of trees t, t+1, ... of ensemble k
+    // each ensemble has one extra slot after its last tree, holding 0
+    private double[] remainingBounds;
+
+    private transient volatile ThreadLocal<double[]> buffers;
+
+    public static CompiledBoosting compile(GradientBoosting boosting){
+        List<List<Regressor>> regressors = new ArrayList<>();
+        for (int k=0;k<boosting.getNumEnsembles();k++){
+            regressors.add(boosting.getEnsemble(k).getRegressors());
+        }
+        return compile(regressors);
+    }
+
+    /**
+     *
+     * @param regressors regressors.get(k) are summed up as the score of ensemble k;
+     *                   only RegressionTree and ConstantRegressor are supported
+     * @return
+     */
+    public static CompiledBoosting compile(List<List<Regressor>> regressors){
+        return new Compiler(regressors).compile();
+    }
+
+    public int getNumEnsembles() {
+        return numEnsembles;
+    }
+
+    public int getNumTrees(){
+        return roots.length;
+    }
+
+    /**
+     * scores of all ensembles
+     * @param vector
+     * @param scores output, length = number of ensembles
+     */
+    public void score(Vector vector, double[] scores){
+        double[] x = load(vector);
+        for (int k=0;k<numEnsembles;k++){
+            scores[k] = score(x,k);
+        }
+        unload(vector,x);
+    }
+
+    public double[] score(Vector vector){
+        double[] scores = new double[numEnsembles];
+        score(vector,scores);
+        return scores;
+    }
+
+    public double score(Vector vector, int ensembleIndex){
+        double[] x = load(vector);
+        double score = score(x,ensembleIndex);
+        unload(vector,x);
+        return score;
+    }
+
+    /**
+     * parallel over data points
+     * @param dataSet
+     * @param from inclusive
+     * @param to exclusive
+     * @return scores[i-from][k]
+     */
+    public double[][] score(DataSet dataSet, int from, int to){
+        double[][] scores = new double[to-from][numEnsembles];
+        IntStream.range(from,to).parallel()
+                .forEach(i -> score(dataSet.getRow(i),scores[i-from]));
+        return scores;
+    }
+
+    /**
+     * scores of the selected ensembles
+     * @param vector
+     * @param ensembleIndices
+     * @param scores output, scores[j] is the score of ensembleIndices[j]
+     */
+    public void score(Vector vector, int[] ensembleIndices, double[] scores){
+        double[] x = load(vector);
+        for (int j=0;j<ensembleIndices.length;j++){
+            scores[j] = score(x,ensembleIndices[j]);
+        }
+        unload(vector,x);
+    }
+
+    /**
+     * stop an ensemble as soon as the score plus the largest possible output of its remaining trees
+     * falls below the threshold
+     * @param vector
+     * @param ensembleIndices
+     * @param threshold
+     * @param scores output, scores[j] is the exact score of ensembleIndices[j] if it reaches the threshold,
+     *               otherwise an upper bound of the score that is below the threshold
+     */
+    public void scoreWithThreshold(Vector vector, int[] ensembleIndices, double threshold, double[] scores){
+        double[] x = load(vector);
+        for (int j=0;j<ensembleIndices.length;j++){
+            scores[j] = scoreWithThreshold(x,ensembleIndices[j],threshold);
+        }
+        unload(vector,x);
+    }
+
+    /**
+     * features used by the trees of an ensemble, sorted;
+     * if none of them is non-zero in a vector, the score of the vector equals the score of the zero vector
+     */
+    public int[] getFeatureIndices(int ensembleIndex){
+        return IntStream.range(treeStarts[ensembleIndex],treeStarts[ensembleIndex+1])
+                .flatMap(t -> internalNodes(roots[t]))
+                .map(node -> featureIndices[node])
+                .distinct().sorted().toArray();
+    }
+
+    private IntStream internalNodes(int root){
+        if (root<0){
+            return IntStream.empty();
+        }
+        return IntStream.concat(IntStream.of(root),
+                IntStream.concat(internalNodes(leftChildren[root]),internalNodes(rightChildren[root])));
+    }
+
+    private double score(double[] x, int ensembleIndex){
+        double score = biases[ensembleIndex];
+        for (int t=treeStarts[ensembleIndex];t<treeStarts[ensembleIndex+1];t++){
+            score += predictTree(x,roots[t]);
+        }
+        return score;
+    }
+
+    private double scoreWithThreshold(double[] x, int ensembleIndex, double threshold){
+        double score = biases[ensembleIndex];
+        // trees of ensemble k are shifted by k in remainingBounds
+        int offset = ensembleIndex;
+        for (int t=treeStarts[ensembleIndex];t<treeStarts[ensembleIndex+1];t++){
+            double bound = score + remainingBounds[t+offset];
+            if (bound<threshold){
+                return bound;
+            }
+            score += predictTree(x,roots[t]);
+        }
+        return score;
+    }
+
+    private double predictTree(double[] x, int root){
+        int node = root;
+        while (node>=0){
+            double featureValue = x[featureIndices[node]];
+            if (Double.isNaN(featureValue)){
+                return predictWithMissingValue(x,node);
+            }
+            if (featureValue<=thresholds[node]){
+                node = leftChildren[node];
+            } else {
+                node = rightChildren[node];
+            }
+        }
+        return leafValues[~node];
+    }
+
+    /**
+     * go to both children probabilistically on missing values
+     */
+    private double predictWithMissingValue(double[] x, int node){
+        if (node<0){
+            return leafValues[~node];
+        }
+        double featureValue = x[featureIndices[node]];
+        if (Double.isNaN(featureValue)){
+            return leftProbs[node]*predictWithMissingValue(x,leftChildren[node])
+                    + rightProbs[node]*predictWithMissingValue(x,rightChildren[node]);
+        }
+        if (featureValue<=thresholds[node]){
+            return predictWithMissingValue(x,leftChildren[node]);
+        } else {
+            return predictWithMissingValue(x,rightChildren[node]);
+        }
+    }
+
+    /**
+     * copy the vector into the dense buffer of the current thread
+     */
+    private double[] load(Vector vector){
+        if (buffers==null){
+            synchronized (this){
+                if (buffers==null){
+                    buffers = new ThreadLocal<>();
+                }
+            }
+        }
+        double[] x = buffers.get();
+        int size = Math.max(numFeatures,vector.size());
+        if (x==null || x.length<size){
+            x = new double[size];
+            buffers.set(x);
+        }
+        for (Vector.Element element: vector.nonZeroes()){
+            x[element.index()] = element.get();
+        }
+        return x;
+    }
+
+    /**
+     * reset the buffer to all 0
+     */
+    private void unload(Vector vector, double[] x){
+        for (Vector.Element element: vector.nonZeroes()){
+            x[element.index()] = 0;
+        }
+    }
+
+    private static class Compiler {
+        private List<List<Regressor>> regressors;
+        private int numFeatures;
+        private double[] biases;
+        private int[] treeStarts;
+        private List<Integer> roots = new ArrayList<>();
+        private List<Node> internalNodes = new ArrayList<>();
+        private List<Node> leaves = new ArrayList<>();
+        // child references in the same order as internalNodes
+        private List<int[]> children = new ArrayList<>();
+
+        Compiler(List<List<Regressor>> regressors) {
+            this.regressors = regressors;
+        }
+
+        CompiledBoosting compile(){
+            int numEnsembles = regressors.size();
+            biases = new double[numEnsembles];
+            treeStarts = new int[numEnsembles+1];
+            for (int k=0;k<numEnsembles;k++){
+                treeStarts[k] = roots.size();
+                for (Regressor regressor: regressors.get(k)){
+                    if (regressor instanceof ConstantRegressor){
+                        biases[k] += ((ConstantRegressor) regressor).getScore();
+                    } else if (regressor instanceof RegressionTree){
+                        Node root = ((RegressionTree) regressor).getRoot();
+                        if (root.isLeaf()){
+                            biases[k] += root.getValue();
+                        } else {
+                            roots.add(add(root));
+                        }
+                    } else {
+                        throw new IllegalArgumentException("cannot compile "+regressor.getClass().getSimpleName());
+                    }
+                }
+            }
+            treeStarts[numEnsembles] = roots.size();
+
+            CompiledBoosting compiled = new CompiledBoosting();
+            compiled.numEnsembles = numEnsembles;
+            compiled.numFeatures = numFeatures;
+            compiled.biases = biases;
+            compiled.treeStarts = treeStarts;
+            compiled.roots = roots.stream().mapToInt(Integer::intValue).toArray();
+            int numNodes = internalNodes.size();
+            compiled.featureIndices = new int[numNodes];
+            compiled.thresholds = new double[numNodes];
+            compiled.leftChildren = new int[numNodes];
+            compiled.rightChildren = new int[numNodes];
+            compiled.leftProbs = new double[numNodes];
+            compiled.rightProbs = new double[numNodes];
+            for (int n=0;n<numNodes;n++){
+                Node node = internalNodes.get(n);
+                compiled.featureIndices[n] = node.getFeatureIndex();
+                compiled.thresholds[n] = node.getThreshold();
+                compiled.leftChildren[n] = children.get(n)[0];
+                compiled.rightChildren[n] = children.get(n)[1];
+                compiled.leftProbs[n] = node.getLeftProb();
+                compiled.rightProbs[n] = node.getRightProb();
+            }
+            compiled.leafValues = leaves.stream().mapToDouble(Node::getValue).toArray();
+            compiled.remainingBounds = remainingBounds(compiled);
+            return compiled;
+        }
+
+        /**
+         * a tree never outputs more than its largest leaf value, also with missing values
+         */
+        private double[] remainingBounds(CompiledBoosting compiled){
+            int numEnsembles = compiled.numEnsembles;
+            double[] remainingBounds = new double[compiled.roots.length+numEnsembles];
+            for (int k=0;k<numEnsembles;k++){
+                int start = compiled.treeStarts[k];
+                int end = compiled.treeStarts[k+1];
+                double bound = 0;
+                for (int t=end-1;t>=start;t--){
+                    bound += maxLeafValue(compiled,compiled.roots[t]);
+                    remainingBounds[t+k] = bound;
+                }
+            }
+            return remainingBounds;
+        }
+
+        private double maxLeafValue(CompiledBoosting compiled, int node){
+            if (node<0){
+                return compiled.leafValues[~node];
+            }
+            return Math.max(maxLeafValue(compiled,compiled.leftChildren[node]),
+                    maxLeafValue(compiled,compiled.rightChildren[node]));
+        }
+
+        /**
+         * pre-order
+         * @return reference to the node
+         */
+        private int add(Node node){
+            if (node.isLeaf()){
+                leaves.add(node);
+                return ~(leaves.size()-1);
+            }
+            int index = internalNodes.size();
+            internalNodes.add(node);
+            int[] childRefs = new int[2];
+            children.add(childRefs);
+            numFeatures = Math.max(numFeatures, node.getFeatureIndex()+1);
+            childRefs[0] = add(node.getLeftChild());
+            childRefs[1] = add(node.getRightChild());
+            return index;
+        }
+    }
+}
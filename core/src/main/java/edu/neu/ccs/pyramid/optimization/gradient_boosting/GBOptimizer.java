@@ -1,6 +1,8 @@
 package edu.neu.ccs.pyramid.optimization.gradient_boosting;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.DenseFloatMatrix;
+import edu.neu.ccs.pyramid.dataset.FloatMatrix;
 import edu.neu.ccs.pyramid.dataset.GradientMatrix;
 import edu.neu.ccs.pyramid.dataset.ScoreMatrix;
 import edu.neu.ccs.pyramid.regression.Regressor;
@@ -23,6 +25,10 @@ public abstract class GBOptimizer {
     protected double[] weights;
     protected boolean isInitialized;
     protected double shrinkage = 1;
+    // null if all rows are used for every regressor
+    protected RowSampler rowSampler;
+    // storage of the score matrix and model specific matrices
+    protected FloatMatrix.Factory matrixFactory = DenseFloatMatrix.factory(FloatMatrix.Layout.ROW_MAJOR);
 
 
     protected GBOptimizer(GradientBoosting boosting, DataSet dataSet,  RegressorFactory factory, double[] weights) {
@@ -46,7 +52,7 @@ public abstract class GBOptimizer {
         if (boosting.getEnsemble(0).getRegressors().size()==0){
             addPriors();
         }
-        this.scoreMatrix = new ScoreMatrix(dataSet.getNumDataPoints(),boosting.getNumEnsembles());
+        this.scoreMatrix = new ScoreMatrix(matrixFactory.create(dataSet.getNumDataPoints(),boosting.getNumEnsembles()));
         this.initStagedScores();
         initializeOthers();
         updateOthers();
@@ -64,8 +70,11 @@ public abstract class GBOptimizer {
 
     protected Regressor fitRegressor(int ensembleIndex){
         double[] gradients = gradient(ensembleIndex);
-        Regressor regressor = factory.fit(dataSet,gradients, weights);
-        return regressor;
+        if (rowSampler==null){
+            return factory.fit(dataSet,gradients, weights);
+        }
+        // only the sampled rows are visited
+        return factory.fitSample(dataSet,gradients, rowSampler.sample(gradients, weights));
     }
 
     //todo make it more general
@@ -82,8 +91,20 @@ public abstract class GBOptimizer {
         this.scoreMatrix.increment(dataIndex,ensembleIndex,score);
     }
 
+    /**
+     * a tree that has just been trained on dataSet keeps the leaf of each data point,
+     * so the leaf values are added directly; the leaves are released afterwards
+     */
     protected void updateStagedScores(Regressor regressor, int ensembleIndex){
         int numDataPoints = dataSet.getNumDataPoints();
+        if (regressor instanceof RegressionTree && ((RegressionTree)regressor).hasTrainingLeaves()){
+            RegressionTree tree = (RegressionTree)regressor;
+            IntStream.range(0, numDataPoints).parallel()
+                    .forEach(dataIndex -> this.scoreMatrix.increment(dataIndex,ensembleIndex,
+                            tree.predictTrainingDataPoint(dataSet,dataIndex)));
+            tree.clearTrainingLeaves();
+            return;
+        }
         IntStream.range(0, numDataPoints).parallel()
                 .forEach(dataIndex -> this.updateStagedScore(regressor,ensembleIndex,dataIndex));
     }
@@ -125,6 +146,22 @@ public abstract class GBOptimizer {
         this.shrinkage = shrinkage;
     }
 
+    /**
+     * fit each regressor on a sample of rows, e.g. subsampling or GOSS
+     * staged scores are still updated on all rows
+     */
+    public void setRowSampler(RowSampler rowSampler) {
+        this.rowSampler = rowSampler;
+    }
+
+    /**
+     * e.g. off-heap or sparse storage for large data sets
+     * should be called before initialize
+     */
+    public void setMatrixFactory(FloatMatrix.Factory matrixFactory) {
+        this.matrixFactory = matrixFactory;
+    }
+
     public RegressorFactory getRegressorFactory() {
         return factory;
     }
@@ -46,10 +46,22 @@ public class GradientBoosting implements Serializable{
         return scores;
     }
 
+    /**
+     * flatten all trees for fast scoring
+     * the compiled form does not change if more regressors are added later
+     */
+    public CompiledBoosting compile(){
+        return CompiledBoosting.compile(this);
+    }
+
     public FeatureList getFeatureList() {
         return featureList;
     }
 
+    public void setFeatureList(FeatureList featureList) {
+        this.featureList = featureList;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("GradientBoosting{");
@@ -0,0 +1,140 @@
+package edu.neu.ccs.pyramid.optimization.gradient_boosting;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * row sampling for fitting one regressor in boosting
+ * the data set is not copied: rows left out get weight 0, and the regressor is fit with RegressorFactory.fitSample,
+ * which only visits the sampled rows, so the cost of a tree scales with the sample size
+ * subsample: each row is kept with probability rate
+ * GOSS (gradient-based one-side sampling): the topRate fraction of rows with the largest |gradient| are kept,
+ * and rows among the rest are kept with probability otherRate/(1-topRate) and weight amplified by the inverse
+ * rows with weight 0 are never sampled
+ */
+public class RowSampler {
+    private Strategy strategy;
+    private double topRate;
+    private double otherRate;
+    private Random random;
+
+    public enum Strategy{
+        SUBSAMPLE, GOSS
+    }
+
+    /**
+     * stochastic gradient boosting
+     * @param rate fraction of rows to keep
+     */
+    public static RowSampler subsample(double rate, long randomSeed){
+        if (rate<=0 || rate>1){
+            throw new IllegalArgumentException("rate should be in (0,1]");
+        }
+        RowSampler sampler = new RowSampler(Strategy.SUBSAMPLE, randomSeed);
+        sampler.otherRate = rate;
+        return sampler;
+    }
+
+    /**
+     * gradient-based one-side sampling
+     * @param topRate fraction of rows with the largest |gradient|, always kept
+     * @param otherRate fraction of all rows sampled from the rest
+     */
+    public static RowSampler goss(double topRate, double otherRate, long randomSeed){
+        if (topRate<0 || otherRate<=0 || topRate+otherRate>1){
+            throw new IllegalArgumentException("topRate and otherRate should be non-negative, with otherRate>0 and topRate+otherRate<=1");
+        }
+        RowSampler sampler = new RowSampler(Strategy.GOSS, randomSeed);
+        sampler.topRate = topRate;
+        sampler.otherRate = otherRate;
+        return sampler;
+    }
+
+    private RowSampler(Strategy strategy, long randomSeed) {
+        this.strategy = strategy;
+        this.random = new Random(randomSeed);
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * thread safe
+     * @param gradients gradients of all rows; only used by GOSS
+     * @param weights weights of all rows, not modified
+     * @return weights of the sample, 0 for rows left out
+     */
+    public double[] sample(double[] gradients, double[] weights){
+        // one generator per call, so that concurrent calls do not share state
+        Random callRandom = new Random(random.nextLong());
+        switch (strategy){
+            case SUBSAMPLE:
+                return subsample(weights, callRandom);
+            case GOSS:
+                return goss(gradients, weights, callRandom);
+            default:
+                throw new RuntimeException("unknown strategy "+strategy);
+        }
+    }
+
+    private double[] subsample(double[] weights, Random callRandom){
+        double[] sampled = new double[weights.length];
+        for (int i=0;i<weights.length;i++){
+            if (weights[i]!=0 && callRandom.nextDouble()<otherRate){
+                sampled[i] = weights[i];
+            }
+        }
+        return sampled;
+    }
+
+    private double[] goss(double[] gradients, double[] weights, Random callRandom){
+        int numCandidates = 0;
+        for (double weight: weights){
+            if (weight!=0){
+                numCandidates += 1;
+            }
+        }
+        double[] absGradients = new double[numCandidates];
+        int count = 0;
+        for (int i=0;i<weights.length;i++){
+            if (weights[i]!=0){
+                absGradients[count] = Math.abs(gradients[i]);
+                count += 1;
+            }
+        }
+        int numTop = (int)(topRate*numCandidates);
+        // rows with |gradient| above the threshold are top rows; ties at the threshold are taken in order
+        double threshold = Double.POSITIVE_INFINITY;
+        int numAboveThreshold = 0;
+        if (numTop>0){
+            Arrays.sort(absGradients);
+            threshold = absGradients[numCandidates-numTop];
+            for (double absGradient: absGradients){
+                if (absGradient>threshold){
+                    numAboveThreshold += 1;
+                }
+            }
+        }
+        int numTiesToTake = numTop - numAboveThreshold;
+
+        double keepProb = otherRate/(1-topRate);
+        double amplification = (1-topRate)/otherRate;
+        double[] sampled = new double[weights.length];
+        for (int i=0;i<weights.length;i++){
+            if (weights[i]==0){
+                continue;
+            }
+            double absGradient = Math.abs(gradients[i]);
+            if (absGradient>threshold){
+                sampled[i] = weights[i];
+            } else if (absGradient==threshold && numTiesToTake>0){
+                sampled[i] = weights[i];
+                numTiesToTake -= 1;
+            } else if (callRandom.nextDouble()<keepProb){
+                sampled[i] = weights[i]*amplification;
+            }
+        }
+        return sampled;
+    }
+}
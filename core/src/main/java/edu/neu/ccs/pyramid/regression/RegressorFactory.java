@@ -2,8 +2,10 @@ package edu.neu.ccs.pyramid.regression;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.RegDataSet;
+import edu.neu.ccs.pyramid.dataset.RowSubsetDataSet;
 
 import java.util.Arrays;
+import java.util.stream.IntStream;
 
 /**
  * Created by chengli on 7/5/15.
@@ -20,4 +22,16 @@ public interface RegressorFactory {
     default Regressor fit(RegDataSet dataSet){
         return fit(dataSet, dataSet.getLabels());
     }
+
+    /**
+     * fit on the rows with non-zero weights only, e.g. a row sample in boosting,
+     * so that the cost scales with the number of these rows
+     * by default, the regressor is fit on a read-only view of these rows
+     */
+    default Regressor fitSample(DataSet dataSet, double[] labels, double[] weights){
+        int[] rows = IntStream.range(0, weights.length).filter(i -> weights[i]!=0).toArray();
+        DataSet sample = new RowSubsetDataSet(dataSet, rows);
+        return fit(sample, Arrays.stream(rows).mapToDouble(i -> labels[i]).toArray(),
+                Arrays.stream(rows).mapToDouble(i -> weights[i]).toArray());
+    }
 }
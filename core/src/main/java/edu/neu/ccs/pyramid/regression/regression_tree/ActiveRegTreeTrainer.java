@@ -87,6 +87,7 @@ public class ActiveRegTreeTrainer {
 
             //parallel
             setLeavesOutputs(regTreeConfig, tree.leaves,leafOutputCalculator, labels);
+            RegTreeTrainer.setTrainingLeaves(tree,weights);
             cleanLeaves(tree.leaves);
             normalizeReductions(tree,dataSet);
             return tree;
@@ -133,6 +134,7 @@ public class ActiveRegTreeTrainer {
 
             //parallel
             setLeavesOutputs(regTreeConfig, tree.leaves,leafOutputCalculator, labels);
+            RegTreeTrainer.setTrainingLeaves(tree,weights);
             cleanLeaves(tree.leaves);
             normalizeReductions(tree,dataSet);
             return tree;
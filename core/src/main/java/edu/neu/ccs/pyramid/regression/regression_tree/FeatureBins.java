@@ -0,0 +1,278 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * features quantized once into compact bin codes, used by histogram based split finding
+ * each feature is cut into equal-width bins between its min and max present values (0 included if the column has zeros),
+ * which mirrors the intervals used by IntervalSplitter, except that the range is computed once on the whole data set
+ * only non-zero (and NaN) entries are stored; zeros are recovered from node totals
+ */
+public class FeatureBins {
+    // codes are stored as unsigned bytes when possible
+    private static final int MAX_BYTE_BINS = 255;
+    private static final int MAX_SHORT_BINS = Short.MAX_VALUE;
+
+    private DataSet dataSet;
+    private int numFeatures;
+    private int numDataPoints;
+    // per feature, 0 if the feature cannot be split
+    private int[] numBins;
+    // start position of each feature in a histogram, each feature takes numBins+1 slots, the last one for missing values
+    private int[] offsets;
+    private int totalNumSlots;
+    private double[] mins;
+    private double[] binLengths;
+    // bin holding value 0; -1 if the column has no zero
+    private int[] zeroBins;
+    // rows with non-zero or NaN values
+    private int[][] rows;
+    // one of the two is used for each feature
+    private byte[][] byteCodes;
+    private short[][] shortCodes;
+    // row major copy of the stored entries, for filling histograms from the rows of a node;
+    // built on first use, entries of row i are at [rowStarts[i], rowStarts[i+1])
+    private volatile int[] rowStarts;
+    private int[] rowFeatures;
+    private short[] rowCodes;
+
+    /**
+     *
+     * @param dataSet
+     * @param maxNumBins number of bins per feature
+     * @param parallel
+     * @return
+     */
+    public static FeatureBins build(DataSet dataSet, int maxNumBins, boolean parallel){
+        if (maxNumBins<=1){
+            throw new IllegalArgumentException("maxNumBins must be greater than 1");
+        }
+        if (maxNumBins>=MAX_SHORT_BINS){
+            throw new IllegalArgumentException("maxNumBins must be smaller than "+MAX_SHORT_BINS);
+        }
+        FeatureBins featureBins = new FeatureBins(dataSet);
+        IntStream intStream = IntStream.range(0, featureBins.numFeatures);
+        if (parallel){
+            intStream = intStream.parallel();
+        }
+        intStream.forEach(j -> featureBins.quantize(j, maxNumBins));
+        featureBins.computeOffsets();
+        return featureBins;
+    }
+
+    private FeatureBins(DataSet dataSet) {
+        this.dataSet = dataSet;
+        this.numFeatures = dataSet.getNumFeatures();
+        this.numDataPoints = dataSet.getNumDataPoints();
+        this.numBins = new int[numFeatures];
+        this.offsets = new int[numFeatures];
+        this.mins = new double[numFeatures];
+        this.binLengths = new double[numFeatures];
+        this.zeroBins = new int[numFeatures];
+        this.rows = new int[numFeatures][];
+        this.byteCodes = new byte[numFeatures][];
+        this.shortCodes = new short[numFeatures][];
+    }
+
+    private void quantize(int featureIndex, int maxNumBins){
+        Vector column = dataSet.getColumn(featureIndex);
+        int numStored = column.getNumNonZeroElements();
+        int[] featureRows = new int[numStored];
+        double[] values = new double[numStored];
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (Vector.Element element: column.nonZeroes()){
+            double value = element.get();
+            featureRows[count] = element.index();
+            values[count] = value;
+            count += 1;
+            if (!Double.isNaN(value)){
+                if (value<min){
+                    min = value;
+                }
+                if (value>max){
+                    max = value;
+                }
+            }
+        }
+        boolean hasZero = count<numDataPoints;
+        if (hasZero){
+            min = Math.min(min, 0);
+            max = Math.max(max, 0);
+        }
+
+        zeroBins[featureIndex] = -1;
+        // no present values or no range, the feature cannot be used for split
+        if (!(max>min)){
+            numBins[featureIndex] = 0;
+            rows[featureIndex] = new int[0];
+            byteCodes[featureIndex] = new byte[0];
+            return;
+        }
+
+        int featureNumBins = maxNumBins;
+        double binLength = (max-min)/featureNumBins;
+        numBins[featureIndex] = featureNumBins;
+        mins[featureIndex] = min;
+        binLengths[featureIndex] = binLength;
+        if (hasZero){
+            zeroBins[featureIndex] = IntervalSplitter.getIntervalIndex(0,min,binLength,featureNumBins);
+        }
+        rows[featureIndex] = featureRows;
+        // missing values get the code featureNumBins
+        if (featureNumBins<MAX_BYTE_BINS){
+            byte[] codes = new byte[count];
+            for (int p=0;p<count;p++){
+                codes[p] = (byte)code(values[p],min,binLength,featureNumBins);
+            }
+            byteCodes[featureIndex] = codes;
+        } else {
+            short[] codes = new short[count];
+            for (int p=0;p<count;p++){
+                codes[p] = (short)code(values[p],min,binLength,featureNumBins);
+            }
+            shortCodes[featureIndex] = codes;
+        }
+    }
+
+    private static int code(double value, double min, double binLength, int numBins){
+        if (Double.isNaN(value)){
+            return numBins;
+        }
+        return IntervalSplitter.getIntervalIndex(value,min,binLength,numBins);
+    }
+
+    private void computeOffsets(){
+        int offset = 0;
+        for (int j=0;j<numFeatures;j++){
+            offsets[j] = offset;
+            if (numBins[j]>0){
+                offset += numBins[j]+1;
+            }
+        }
+        totalNumSlots = offset;
+    }
+
+    /**
+     * whether the bins are built on the given data set
+     */
+    boolean isBuiltOn(DataSet dataSet){
+        return this.dataSet==dataSet;
+    }
+
+    int getNumFeatures() {
+        return numFeatures;
+    }
+
+    int getNumDataPoints() {
+        return numDataPoints;
+    }
+
+    int getNumBins(int featureIndex){
+        return numBins[featureIndex];
+    }
+
+    int getOffset(int featureIndex){
+        return offsets[featureIndex];
+    }
+
+    int getTotalNumSlots() {
+        return totalNumSlots;
+    }
+
+    int getZeroBin(int featureIndex){
+        return zeroBins[featureIndex];
+    }
+
+    int[] getRows(int featureIndex){
+        return rows[featureIndex];
+    }
+
+    /**
+     * @return the bin of the p-th stored entry of the feature; numBins for missing value
+     */
+    int getCode(int featureIndex, int p){
+        byte[] codes = byteCodes[featureIndex];
+        if (codes!=null){
+            return codes[p] & 0xFF;
+        }
+        return shortCodes[featureIndex][p];
+    }
+
+    /**
+     * builds the row major copy of the stored entries if not built yet;
+     * it takes as much memory again as the column major codes
+     */
+    void ensureRowCodes(){
+        if (rowStarts!=null){
+            return;
+        }
+        synchronized (this){
+            if (rowStarts!=null){
+                return;
+            }
+            int[] starts = new int[numDataPoints+1];
+            for (int j=0;j<numFeatures;j++){
+                for (int i: rows[j]){
+                    starts[i+1] += 1;
+                }
+            }
+            for (int i=0;i<numDataPoints;i++){
+                starts[i+1] += starts[i];
+            }
+            int[] features = new int[starts[numDataPoints]];
+            short[] codes = new short[starts[numDataPoints]];
+            int[] next = Arrays.copyOf(starts, numDataPoints);
+            for (int j=0;j<numFeatures;j++){
+                int[] featureRows = rows[j];
+                for (int p=0;p<featureRows.length;p++){
+                    int i = featureRows[p];
+                    features[next[i]] = j;
+                    codes[next[i]] = (short)getCode(j,p);
+                    next[i] += 1;
+                }
+            }
+            rowFeatures = features;
+            rowCodes = codes;
+            rowStarts = starts;
+        }
+    }
+
+    /**
+     * start of the stored entries of a row in the row major copy, see ensureRowCodes
+     */
+    int getRowStart(int dataIndex){
+        return rowStarts[dataIndex];
+    }
+
+    int getRowEnd(int dataIndex){
+        return rowStarts[dataIndex+1];
+    }
+
+    int getRowFeature(int q){
+        return rowFeatures[q];
+    }
+
+    int getRowCode(int q){
+        return rowCodes[q];
+    }
+
+    /**
+     * @return the bin of a feature value
+     */
+    int getBin(int featureIndex, double featureValue){
+        return code(featureValue, mins[featureIndex], binLengths[featureIndex], numBins[featureIndex]);
+    }
+
+    /**
+     * upper bound of a bin
+     */
+    double getUpper(int featureIndex, int bin){
+        return mins[featureIndex] + (bin+1)*binLengths[featureIndex];
+    }
+}
@@ -0,0 +1,240 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * per node statistics for every bin of every feature
+ * weighted label sums and probabilistic counts are kept in flat arrays laid out by FeatureBins.getOffset
+ * both are linear in the data point probabilities,
+ * so the histogram of a child can be obtained by subtracting its sibling from the parent
+ */
+class Histogram {
+    // relative to the node count, smaller counts left by subtraction are treated as empty
+    private static final double EMPTY_TOLERANCE = 1E-10;
+    // nodes with fewer rows are filled by one thread
+    private static final int MIN_ROWS_PER_CHUNK = 1024;
+
+    private FeatureBins featureBins;
+    // \sum _i p_i * y_i for each slot
+    private double[] sums;
+    // \sum _i p_i for each slot
+    private double[] counts;
+    // \sum _i p_i * y_i over the node
+    private double totalSum;
+    // \sum _i p_i over the node
+    private double totalCount;
+
+    private Histogram(FeatureBins featureBins) {
+        this.featureBins = featureBins;
+        this.sums = new double[featureBins.getTotalNumSlots()];
+        this.counts = new double[featureBins.getTotalNumSlots()];
+    }
+
+    /**
+     * scan the stored entries of all features once
+     * @param featureBins
+     * @param labels
+     * @param probs the probability of each data point at the node
+     * @param parallel
+     * @return
+     */
+    static Histogram build(FeatureBins featureBins, double[] labels, double[] probs, boolean parallel){
+        double totalSum = 0;
+        double totalCount = 0;
+        for (int i=0;i<probs.length;i++){
+            double prob = probs[i];
+            if (prob!=0){
+                totalSum += prob*labels[i];
+                totalCount += prob;
+            }
+        }
+        return build(featureBins,labels,probs,totalSum,totalCount,parallel);
+    }
+
+    /**
+     * same as above, with node totals already known
+     */
+    static Histogram build(FeatureBins featureBins, double[] labels, double[] probs,
+                           double totalSum, double totalCount, boolean parallel){
+        Histogram histogram = new Histogram(featureBins);
+        histogram.totalSum = totalSum;
+        histogram.totalCount = totalCount;
+        IntStream intStream = IntStream.range(0, featureBins.getNumFeatures());
+        if (parallel){
+            intStream = intStream.parallel();
+        }
+        intStream.forEach(j -> histogram.fill(j, labels, probs));
+        return histogram;
+    }
+
+    /**
+     * scan the stored entries of the given data points only, through the row major codes of featureBins,
+     * so the cost is the number of stored entries in these rows plus the number of slots
+     * in parallel, chunks of rows fill histograms of their own, which are then added up
+     * @param featureBins
+     * @param rows data points of the node
+     * @param probs probability of each data point of the node, in the order of rows
+     * @param labels labels of all data points
+     * @param totalSum node total weighted label sum
+     * @param totalCount node total count
+     * @param parallel
+     * @return
+     */
+    static Histogram build(FeatureBins featureBins, int[] rows, double[] probs, double[] labels,
+                           double totalSum, double totalCount, boolean parallel){
+        featureBins.ensureRowCodes();
+        Histogram histogram = new Histogram(featureBins);
+        histogram.totalSum = totalSum;
+        histogram.totalCount = totalCount;
+        int numChunks = 1;
+        if (parallel){
+            numChunks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), rows.length/MIN_ROWS_PER_CHUNK));
+        }
+        if (numChunks==1){
+            histogram.fillRows(rows, probs, labels, 0, rows.length);
+        } else {
+            int chunks = numChunks;
+            Histogram sum = IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> {
+                        Histogram part = new Histogram(featureBins);
+                        int from = (int)((long)rows.length*chunk/chunks);
+                        int to = (int)((long)rows.length*(chunk+1)/chunks);
+                        part.fillRows(rows, probs, labels, from, to);
+                        return part;
+                    })
+                    .reduce(Histogram::add)
+                    .get();
+            histogram.sums = sum.sums;
+            histogram.counts = sum.counts;
+        }
+        histogram.fillZeroBins();
+        return histogram;
+    }
+
+    /**
+     * the histogram of the sibling of child
+     * @param parent
+     * @param child
+     * @return
+     */
+    static Histogram subtract(Histogram parent, Histogram child){
+        Histogram sibling = new Histogram(parent.featureBins);
+        sibling.totalSum = parent.totalSum - child.totalSum;
+        sibling.totalCount = parent.totalCount - child.totalCount;
+        double tolerance = EMPTY_TOLERANCE*parent.totalCount;
+        for (int s=0;s<sibling.counts.length;s++){
+            double count = parent.counts[s] - child.counts[s];
+            if (count<=tolerance){
+                sibling.counts[s] = 0;
+                sibling.sums[s] = 0;
+            } else {
+                sibling.counts[s] = count;
+                sibling.sums[s] = parent.sums[s] - child.sums[s];
+            }
+        }
+        return sibling;
+    }
+
+    private void fill(int featureIndex, double[] labels, double[] probs){
+        int numBins = featureBins.getNumBins(featureIndex);
+        if (numBins==0){
+            return;
+        }
+        int offset = featureBins.getOffset(featureIndex);
+        int[] rows = featureBins.getRows(featureIndex);
+        double storedSum = 0;
+        double storedCount = 0;
+        for (int p=0;p<rows.length;p++){
+            int i = rows[p];
+            double prob = probs[i];
+            if (prob!=0){
+                int slot = offset + featureBins.getCode(featureIndex, p);
+                double weightedLabel = prob*labels[i];
+                sums[slot] += weightedLabel;
+                counts[slot] += prob;
+                storedSum += weightedLabel;
+                storedCount += prob;
+            }
+        }
+        // zeros are not stored, they all go to the same bin
+        int zeroBin = featureBins.getZeroBin(featureIndex);
+        if (zeroBin>=0){
+            sums[offset+zeroBin] += totalSum - storedSum;
+            counts[offset+zeroBin] += totalCount - storedCount;
+        }
+    }
+
+    private void fillRows(int[] rows, double[] probs, double[] labels, int from, int to){
+        for (int s=from;s<to;s++){
+            double prob = probs[s];
+            if (prob!=0){
+                int i = rows[s];
+                double weightedLabel = prob*labels[i];
+                for (int q=featureBins.getRowStart(i);q<featureBins.getRowEnd(i);q++){
+                    int slot = featureBins.getOffset(featureBins.getRowFeature(q)) + featureBins.getRowCode(q);
+                    sums[slot] += weightedLabel;
+                    counts[slot] += prob;
+                }
+            }
+        }
+    }
+
+    /**
+     * zeros are not stored, each feature gets the node totals minus its stored entries in its zero bin
+     */
+    private void fillZeroBins(){
+        for (int j=0;j<featureBins.getNumFeatures();j++){
+            int numBins = featureBins.getNumBins(j);
+            int zeroBin = featureBins.getZeroBin(j);
+            if (numBins==0 || zeroBin<0){
+                continue;
+            }
+            int offset = featureBins.getOffset(j);
+            double storedSum = 0;
+            double storedCount = 0;
+            for (int slot=offset;slot<=offset+numBins;slot++){
+                storedSum += sums[slot];
+                storedCount += counts[slot];
+            }
+            sums[offset+zeroBin] += totalSum - storedSum;
+            counts[offset+zeroBin] += totalCount - storedCount;
+        }
+    }
+
+    private static Histogram add(Histogram histogram1, Histogram histogram2){
+        for (int s=0;s<histogram1.counts.length;s++){
+            histogram1.sums[s] += histogram2.sums[s];
+            histogram1.counts[s] += histogram2.counts[s];
+        }
+        return histogram1;
+    }
+
+    FeatureBins getFeatureBins() {
+        return featureBins;
+    }
+
+    double getSum(int featureIndex, int bin){
+        return sums[featureBins.getOffset(featureIndex)+bin];
+    }
+
+    double getCount(int featureIndex, int bin){
+        return counts[featureBins.getOffset(featureIndex)+bin];
+    }
+
+    double getMissingSum(int featureIndex){
+        return getSum(featureIndex, featureBins.getNumBins(featureIndex));
+    }
+
+    double getMissingCount(int featureIndex){
+        return getCount(featureIndex, featureBins.getNumBins(featureIndex));
+    }
+
+    double getTotalSum() {
+        return totalSum;
+    }
+
+    double getTotalCount() {
+        return totalCount;
+    }
+}
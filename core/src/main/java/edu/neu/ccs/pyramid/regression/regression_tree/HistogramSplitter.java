@@ -0,0 +1,217 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * histogram counterpart of IntervalSplitter
+ * bins play the role of intervals: missing values are spread over bins following the bin percentages,
+ * empty bins are skipped, and thresholds are placed in the middle of empty gaps
+ */
+class HistogramSplitter {
+    private static final double EMPTY_TOLERANCE = 1E-10;
+
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       Histogram histogram){
+        FeatureBins featureBins = histogram.getFeatureBins();
+        IntStream intStream = IntStream.range(0, featureBins.getNumFeatures());
+        if (regTreeConfig.isParallel()){
+            intStream = intStream.parallel();
+        }
+        // the stream might be empty
+        return intStream.mapToObj(featureIndex -> split(regTreeConfig, histogram, featureIndex))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .reduce((a,b) -> b.getReduction()>a.getReduction() ? b : a);
+    }
+
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       Histogram histogram,
+                                       int featureIndex){
+        FeatureBins featureBins = histogram.getFeatureBins();
+        int numBins = featureBins.getNumBins(featureIndex);
+        if (numBins==0){
+            return Optional.empty();
+        }
+        double nodeCount = histogram.getTotalCount();
+        if (nodeCount<=0){
+            return Optional.empty();
+        }
+        double tolerance = EMPTY_TOLERANCE*nodeCount;
+        double nanCount = histogram.getMissingCount(featureIndex);
+        double nanSum = histogram.getMissingSum(featureIndex);
+
+        // totals over present bins, including the shares of missing values
+        double totalCount = 0;
+        double totalSum = 0;
+        for (int b=0;b<numBins;b++){
+            double count = histogram.getCount(featureIndex,b);
+            if (count>tolerance){
+                double percentage = count/nodeCount;
+                totalCount += count + percentage*nanCount;
+                totalSum += histogram.getSum(featureIndex,b) + percentage*nanSum;
+            }
+        }
+
+        int minDataPerLeaf = regTreeConfig.getMinDataPerLeaf();
+        double leftCount = 0;
+        double leftSum = 0;
+        int previous = -1;
+        boolean found = false;
+        double bestReduction = 0;
+        double bestThreshold = 0;
+        double bestLeftCount = 0;
+        double bestRightCount = 0;
+        for (int b=0;b<numBins;b++){
+            double count = histogram.getCount(featureIndex,b);
+            if (count<=tolerance){
+                continue;
+            }
+            // candidate split between the previous non-empty bin and this one
+            if (previous>=0){
+                double rightSum = totalSum - leftSum;
+                double rightCount = totalCount - leftCount;
+                if (leftCount>=minDataPerLeaf && rightCount>=minDataPerLeaf){
+                    double reduction = leftSum * leftSum / leftCount +
+                            rightSum * rightSum / rightCount
+                            - totalSum * totalSum / totalCount;
+                    if (!found || reduction>bestReduction){
+                        found = true;
+                        bestReduction = reduction;
+                        bestThreshold = (featureBins.getUpper(featureIndex,previous)
+                                + featureBins.getUpper(featureIndex,b-1))/2;
+                        bestLeftCount = leftCount;
+                        bestRightCount = rightCount;
+                    }
+                }
+            }
+            double percentage = count/nodeCount;
+            leftCount += count + percentage*nanCount;
+            leftSum += histogram.getSum(featureIndex,b) + percentage*nanSum;
+            previous = b;
+        }
+
+        if (!found){
+            return Optional.empty();
+        }
+        SplitResult splitResult = new SplitResult();
+        splitResult.setFeatureIndex(featureIndex)
+                .setLeftCount(bestLeftCount)
+                .setRightCount(bestRightCount)
+                .setReduction(bestReduction)
+                .setThreshold(bestThreshold);
+        return Optional.of(splitResult);
+    }
+
+    /**
+     * multi-output version, the reduction of a split is the sum of the reductions of all outputs
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       MultiOutputHistogram histogram){
+        FeatureBins featureBins = histogram.getFeatureBins();
+        IntStream intStream = IntStream.range(0, featureBins.getNumFeatures());
+        if (regTreeConfig.isParallel()){
+            intStream = intStream.parallel();
+        }
+        // the stream might be empty
+        return intStream.mapToObj(featureIndex -> split(regTreeConfig, histogram, featureIndex))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .reduce((a,b) -> b.getReduction()>a.getReduction() ? b : a);
+    }
+
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       MultiOutputHistogram histogram,
+                                       int featureIndex){
+        FeatureBins featureBins = histogram.getFeatureBins();
+        int numBins = featureBins.getNumBins(featureIndex);
+        if (numBins==0){
+            return Optional.empty();
+        }
+        double nodeCount = histogram.getTotalCount();
+        if (nodeCount<=0){
+            return Optional.empty();
+        }
+        int numOutputs = histogram.getNumOutputs();
+        double tolerance = EMPTY_TOLERANCE*nodeCount;
+        double nanCount = histogram.getMissingCount(featureIndex);
+        double[] nanSums = new double[numOutputs];
+        for (int l=0;l<numOutputs;l++){
+            nanSums[l] = histogram.getMissingSum(featureIndex,l);
+        }
+
+        // totals over present bins, including the shares of missing values
+        double totalCount = 0;
+        double[] totalSums = new double[numOutputs];
+        for (int b=0;b<numBins;b++){
+            double count = histogram.getCount(featureIndex,b);
+            if (count>tolerance){
+                double percentage = count/nodeCount;
+                totalCount += count + percentage*nanCount;
+                for (int l=0;l<numOutputs;l++){
+                    totalSums[l] += histogram.getSum(featureIndex,b,l) + percentage*nanSums[l];
+                }
+            }
+        }
+        double totalScore = 0;
+        for (int l=0;l<numOutputs;l++){
+            totalScore += totalSums[l] * totalSums[l];
+        }
+        totalScore /= totalCount;
+
+        int minDataPerLeaf = regTreeConfig.getMinDataPerLeaf();
+        double leftCount = 0;
+        double[] leftSums = new double[numOutputs];
+        int previous = -1;
+        boolean found = false;
+        double bestReduction = 0;
+        double bestThreshold = 0;
+        double bestLeftCount = 0;
+        double bestRightCount = 0;
+        for (int b=0;b<numBins;b++){
+            double count = histogram.getCount(featureIndex,b);
+            if (count<=tolerance){
+                continue;
+            }
+            // candidate split between the previous non-empty bin and this one
+            if (previous>=0){
+                double rightCount = totalCount - leftCount;
+                if (leftCount>=minDataPerLeaf && rightCount>=minDataPerLeaf){
+                    double leftScore = 0;
+                    double rightScore = 0;
+                    for (int l=0;l<numOutputs;l++){
+                        double rightSum = totalSums[l] - leftSums[l];
+                        leftScore += leftSums[l] * leftSums[l];
+                        rightScore += rightSum * rightSum;
+                    }
+                    double reduction = leftScore / leftCount + rightScore / rightCount - totalScore;
+                    if (!found || reduction>bestReduction){
+                        found = true;
+                        bestReduction = reduction;
+                        bestThreshold = (featureBins.getUpper(featureIndex,previous)
+                                + featureBins.getUpper(featureIndex,b-1))/2;
+                        bestLeftCount = leftCount;
+                        bestRightCount = rightCount;
+                    }
+                }
+            }
+            double percentage = count/nodeCount;
+            leftCount += count + percentage*nanCount;
+            for (int l=0;l<numOutputs;l++){
+                leftSums[l] += histogram.getSum(featureIndex,b,l) + percentage*nanSums[l];
+            }
+            previous = b;
+        }
+
+        if (!found){
+            return Optional.empty();
+        }
+        SplitResult splitResult = new SplitResult();
+        splitResult.setFeatureIndex(featureIndex)
+                .setLeftCount(bestLeftCount)
+                .setRightCount(bestRightCount)
+                .setReduction(bestReduction)
+                .setThreshold(bestThreshold);
+        return Optional.of(splitResult);
+    }
+}
@@ -21,7 +21,18 @@ class IntervalSplitter {
                                        double[] probs,
                                        int featureIndex,
                                        Splitter.GlobalStats globalStats){
-        Vector featureValues = dataSet.getColumn(featureIndex);
+        return split(regTreeConfig,dataSet.getColumn(featureIndex),labels,probs,featureIndex,globalStats);
+    }
+
+    /**
+     * @param featureValues column of the feature, indexed like labels and probs
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       Vector featureValues,
+                                       double[] labels,
+                                       double[] probs,
+                                       int featureIndex,
+                                       Splitter.GlobalStats globalStats){
         if (featureValues.getNumNonZeroElements()==0){
             return Optional.empty();
         }
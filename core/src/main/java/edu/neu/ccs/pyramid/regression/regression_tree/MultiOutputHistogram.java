@@ -0,0 +1,189 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Histogram for several outputs at once
+ * counts are shared by all outputs; weighted label sums are kept for every output of every slot,
+ * laid out as sums[slot*numOutputs+output], so one scan of a feature fills the statistics of all outputs
+ * labels are given row major: rowLabels[i*numOutputs+output]
+ */
+class MultiOutputHistogram {
+    // relative to the node count, smaller counts left by subtraction are treated as empty
+    private static final double EMPTY_TOLERANCE = 1E-10;
+    // nodes with fewer rows are filled by one thread
+    private static final int MIN_ROWS_PER_CHUNK = 1024;
+
+    private FeatureBins featureBins;
+    private int numOutputs;
+    // \sum _i p_i * y_il for each slot and output
+    private double[] sums;
+    // \sum _i p_i for each slot
+    private double[] counts;
+    // \sum _i p_i * y_il over the node
+    private double[] totalSums;
+    // \sum _i p_i over the node
+    private double totalCount;
+
+    private MultiOutputHistogram(FeatureBins featureBins, int numOutputs) {
+        this.featureBins = featureBins;
+        this.numOutputs = numOutputs;
+        this.sums = new double[featureBins.getTotalNumSlots()*numOutputs];
+        this.counts = new double[featureBins.getTotalNumSlots()];
+    }
+
+    /**
+     * scan the stored entries of the given data points only, through the row major codes of featureBins,
+     * so the cost is the number of stored entries in these rows times numOutputs, plus the number of slots
+     * in parallel, chunks of rows fill histograms of their own, which are then added up
+     * @param featureBins
+     * @param rows data points of the node
+     * @param probs probability of each data point of the node, in the order of rows
+     * @param rowLabels row major labels of all data points
+     * @param numOutputs
+     * @param totalSums node totals for each output
+     * @param totalCount node total count
+     * @param parallel
+     * @return
+     */
+    static MultiOutputHistogram build(FeatureBins featureBins, int[] rows, double[] probs, double[] rowLabels,
+                                      int numOutputs, double[] totalSums, double totalCount, boolean parallel){
+        featureBins.ensureRowCodes();
+        MultiOutputHistogram histogram = new MultiOutputHistogram(featureBins, numOutputs);
+        histogram.totalSums = totalSums;
+        histogram.totalCount = totalCount;
+        int numChunks = 1;
+        if (parallel){
+            numChunks = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), rows.length/MIN_ROWS_PER_CHUNK));
+        }
+        if (numChunks==1){
+            histogram.fillRows(rows, probs, rowLabels, 0, rows.length);
+        } else {
+            int chunks = numChunks;
+            MultiOutputHistogram sum = IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> {
+                        MultiOutputHistogram part = new MultiOutputHistogram(featureBins, numOutputs);
+                        int from = (int)((long)rows.length*chunk/chunks);
+                        int to = (int)((long)rows.length*(chunk+1)/chunks);
+                        part.fillRows(rows, probs, rowLabels, from, to);
+                        return part;
+                    })
+                    .reduce(MultiOutputHistogram::add)
+                    .get();
+            histogram.sums = sum.sums;
+            histogram.counts = sum.counts;
+        }
+        histogram.fillZeroBins();
+        return histogram;
+    }
+
+    /**
+     * the histogram of the sibling of child
+     */
+    static MultiOutputHistogram subtract(MultiOutputHistogram parent, MultiOutputHistogram child){
+        int numOutputs = parent.numOutputs;
+        MultiOutputHistogram sibling = new MultiOutputHistogram(parent.featureBins, numOutputs);
+        sibling.totalSums = new double[numOutputs];
+        for (int l=0;l<numOutputs;l++){
+            sibling.totalSums[l] = parent.totalSums[l] - child.totalSums[l];
+        }
+        sibling.totalCount = parent.totalCount - child.totalCount;
+        double tolerance = EMPTY_TOLERANCE*parent.totalCount;
+        for (int s=0;s<sibling.counts.length;s++){
+            double count = parent.counts[s] - child.counts[s];
+            // empty slots stay 0
+            if (count>tolerance){
+                sibling.counts[s] = count;
+                int start = s*numOutputs;
+                for (int l=start;l<start+numOutputs;l++){
+                    sibling.sums[l] = parent.sums[l] - child.sums[l];
+                }
+            }
+        }
+        return sibling;
+    }
+
+    private void fillRows(int[] rows, double[] probs, double[] rowLabels, int from, int to){
+        for (int s=from;s<to;s++){
+            double prob = probs[s];
+            if (prob!=0){
+                int i = rows[s];
+                int rowStart = i*numOutputs;
+                for (int q=featureBins.getRowStart(i);q<featureBins.getRowEnd(i);q++){
+                    int slot = featureBins.getOffset(featureBins.getRowFeature(q)) + featureBins.getRowCode(q);
+                    counts[slot] += prob;
+                    int start = slot*numOutputs;
+                    for (int l=0;l<numOutputs;l++){
+                        sums[start+l] += prob*rowLabels[rowStart+l];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * zeros are not stored, each feature gets the node totals minus its stored entries in its zero bin
+     */
+    private void fillZeroBins(){
+        for (int j=0;j<featureBins.getNumFeatures();j++){
+            int numBins = featureBins.getNumBins(j);
+            int zeroBin = featureBins.getZeroBin(j);
+            if (numBins==0 || zeroBin<0){
+                continue;
+            }
+            int offset = featureBins.getOffset(j);
+            double storedCount = 0;
+            double[] storedSums = new double[numOutputs];
+            for (int slot=offset;slot<=offset+numBins;slot++){
+                storedCount += counts[slot];
+                for (int l=0;l<numOutputs;l++){
+                    storedSums[l] += sums[slot*numOutputs+l];
+                }
+            }
+            int slot = offset + zeroBin;
+            counts[slot] += totalCount - storedCount;
+            for (int l=0;l<numOutputs;l++){
+                sums[slot*numOutputs+l] += totalSums[l] - storedSums[l];
+            }
+        }
+    }
+
+    private static MultiOutputHistogram add(MultiOutputHistogram histogram1, MultiOutputHistogram histogram2){
+        for (int s=0;s<histogram1.counts.length;s++){
+            histogram1.counts[s] += histogram2.counts[s];
+        }
+        for (int s=0;s<histogram1.sums.length;s++){
+            histogram1.sums[s] += histogram2.sums[s];
+        }
+        return histogram1;
+    }
+
+    FeatureBins getFeatureBins() {
+        return featureBins;
+    }
+
+    int getNumOutputs() {
+        return numOutputs;
+    }
+
+    double getSum(int featureIndex, int bin, int output){
+        return sums[(featureBins.getOffset(featureIndex)+bin)*numOutputs+output];
+    }
+
+    double getCount(int featureIndex, int bin){
+        return counts[featureBins.getOffset(featureIndex)+bin];
+    }
+
+    double getMissingSum(int featureIndex, int output){
+        return getSum(featureIndex, featureBins.getNumBins(featureIndex), output);
+    }
+
+    double getMissingCount(int featureIndex){
+        return getCount(featureIndex, featureBins.getNumBins(featureIndex));
+    }
+
+    double getTotalCount() {
+        return totalCount;
+    }
+}
@@ -0,0 +1,285 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * fit several regression targets with trees of the same structure
+ * one tree is grown on the sum of the squared error reductions of all outputs, then copied once per output
+ * with its own leaf averages, as given by AverageOutputCalculator.
+ * feature bins, the row partition of nodes and the node histograms are shared by all outputs,
+ * so each feature column is scanned once per node for all outputs instead of once per output
+ * histograms are required
+ */
+public class MultiOutputRegTreeTrainer {
+
+    /**
+     *
+     * @param regTreeConfig
+     * @param dataSet
+     * @param labels labels[output][i]
+     * @return trees[output]
+     */
+    public static RegressionTree[] fit(RegTreeConfig regTreeConfig,
+                                       DataSet dataSet,
+                                       double[][] labels){
+        double[] weights = new double[dataSet.getNumDataPoints()];
+        Arrays.fill(weights,1.0);
+        return fit(regTreeConfig,dataSet,labels,weights);
+    }
+
+    /**
+     *
+     * @param regTreeConfig
+     * @param dataSet
+     * @param labels labels[output][i]
+     * @param weights data point weights
+     * @return trees[output]
+     */
+    public static RegressionTree[] fit(RegTreeConfig regTreeConfig,
+                                       DataSet dataSet,
+                                       double[][] labels,
+                                       double[] weights){
+        FeatureBins featureBins = regTreeConfig.getFeatureBins(dataSet);
+        if (featureBins==null){
+            throw new IllegalArgumentException("multi-output trees require histograms");
+        }
+        int numOutputs = labels.length;
+        int numDataPoints = dataSet.getNumDataPoints();
+        double[] rowLabels = new double[numDataPoints*numOutputs];
+        for (int l=0;l<numOutputs;l++){
+            for (int i=0;i<numDataPoints;i++){
+                rowLabels[i*numOutputs+l] = labels[l][i];
+            }
+        }
+        Growth growth = new Growth(regTreeConfig,dataSet,rowLabels,numOutputs,weights,featureBins);
+        growth.grow();
+        return growth.toTrees();
+    }
+
+    /**
+     * a node of the shared tree
+     */
+    private static class GrowingNode {
+        private RowPartition.NodeRows nodeRows;
+        private MultiOutputHistogram histogram;
+        // \sum _i p_i * y_il
+        private double[] sums;
+        // \sum _i p_i
+        private double count;
+        private boolean splitable;
+        private int featureIndex;
+        private double threshold;
+        private double reduction;
+        private double leftProb;
+        private double rightProb;
+        private int leftChild = -1;
+        private int rightChild = -1;
+        // per output, filled when split
+        private double[] reductions;
+    }
+
+    private static class Growth {
+        private RegTreeConfig regTreeConfig;
+        private DataSet dataSet;
+        private double[] rowLabels;
+        private int numOutputs;
+        private FeatureBins featureBins;
+        private RowPartition rowPartition;
+        // in creation order, the root first
+        private List<GrowingNode> nodes;
+        private List<GrowingNode> leaves;
+        // shared by the trees of all outputs
+        private int[] trainingLeaves;
+
+        Growth(RegTreeConfig regTreeConfig, DataSet dataSet, double[] rowLabels, int numOutputs,
+               double[] weights, FeatureBins featureBins) {
+            this.regTreeConfig = regTreeConfig;
+            this.dataSet = dataSet;
+            this.rowLabels = rowLabels;
+            this.numOutputs = numOutputs;
+            this.featureBins = featureBins;
+            this.rowPartition = new RowPartition(weights);
+            this.nodes = new ArrayList<>();
+            this.leaves = new ArrayList<>();
+        }
+
+        void grow(){
+            GrowingNode root = newNode(rowPartition.root());
+            root.histogram = buildHistogram(root);
+            updateNode(root);
+            leaves.add(root);
+            int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+            while (leaves.size()<maxNumLeaves){
+                Optional<GrowingNode> leafToSplit = leaves.stream().filter(node -> node.splitable)
+                        .max((a,b) -> Double.compare(a.reduction,b.reduction));
+                if (leafToSplit.isPresent()){
+                    splitNode(leafToSplit.get());
+                } else {
+                    break;
+                }
+            }
+            setTrainingLeaves();
+            for (GrowingNode leaf: leaves){
+                leaf.nodeRows = null;
+                leaf.histogram = null;
+            }
+        }
+
+        /**
+         * leaves are numbered in pre-order, as in RegressionTree.newTree
+         */
+        private void setTrainingLeaves(){
+            trainingLeaves = rowPartition.newLeafAssignment();
+            assignLeaves(nodes.get(0),0);
+        }
+
+        /**
+         * @return the next leaf position
+         */
+        private int assignLeaves(GrowingNode node, int leafPosition){
+            if (node.leftChild==-1){
+                rowPartition.assignLeaf(node.nodeRows,leafPosition,trainingLeaves);
+                return leafPosition+1;
+            }
+            int next = assignLeaves(nodes.get(node.leftChild),leafPosition);
+            return assignLeaves(nodes.get(node.rightChild),next);
+        }
+
+        private GrowingNode newNode(RowPartition.NodeRows nodeRows){
+            GrowingNode node = new GrowingNode();
+            node.nodeRows = nodeRows;
+            node.sums = new double[numOutputs];
+            node.count = rowPartition.weightedLabelSums(nodeRows,rowLabels,numOutputs,node.sums);
+            nodes.add(node);
+            return node;
+        }
+
+        private void splitNode(GrowingNode leafToSplit){
+            RowPartition.NodeRows[] children = rowPartition.split(leafToSplit.nodeRows,
+                    dataSet.getColumn(leafToSplit.featureIndex),leafToSplit.threshold,
+                    leafToSplit.leftProb,leafToSplit.rightProb);
+            leafToSplit.leftChild = nodes.size();
+            GrowingNode leftChild = newNode(children[0]);
+            leafToSplit.rightChild = nodes.size();
+            GrowingNode rightChild = newNode(children[1]);
+            leafToSplit.reductions = reductions(leafToSplit,leftChild,rightChild);
+
+            //the last two leaves need not to be updated completely
+            //as we don't need to split them later
+            if (leaves.size()!=regTreeConfig.getMaxNumLeaves()-1){
+                setChildrenHistograms(leafToSplit,leftChild,rightChild);
+                updateNode(leftChild);
+                updateNode(rightChild);
+            }
+
+            leafToSplit.nodeRows = null;
+            leafToSplit.histogram = null;
+            leaves.remove(leafToSplit);
+            leaves.add(leftChild);
+            leaves.add(rightChild);
+        }
+
+        private MultiOutputHistogram buildHistogram(GrowingNode node){
+            return MultiOutputHistogram.build(featureBins,rowPartition.rows(node.nodeRows),
+                    rowPartition.probs(node.nodeRows),rowLabels,numOutputs,node.sums,node.count,regTreeConfig.isParallel());
+        }
+
+        /**
+         * only scan the smaller child;
+         * the histogram of the larger child is the difference between the parent and the smaller child
+         */
+        private void setChildrenHistograms(GrowingNode parent, GrowingNode leftChild, GrowingNode rightChild){
+            GrowingNode smallChild;
+            GrowingNode largeChild;
+            if (parent.leftProb<=parent.rightProb){
+                smallChild = leftChild;
+                largeChild = rightChild;
+            } else {
+                smallChild = rightChild;
+                largeChild = leftChild;
+            }
+            smallChild.histogram = buildHistogram(smallChild);
+            largeChild.histogram = MultiOutputHistogram.subtract(parent.histogram,smallChild.histogram);
+        }
+
+        private void updateNode(GrowingNode node){
+            Optional<SplitResult> splitResultOptional = Splitter.split(regTreeConfig,node.histogram);
+            if (splitResultOptional.isPresent()){
+                SplitResult splitResult = splitResultOptional.get();
+                node.featureIndex = splitResult.getFeatureIndex();
+                node.threshold = splitResult.getThreshold();
+                node.reduction = splitResult.getReduction();
+                double leftCount = splitResult.getLeftCount();
+                double rightCount = splitResult.getRightCount();
+                double totalCount = leftCount + rightCount;
+                node.leftProb = leftCount/totalCount;
+                node.rightProb = rightCount/totalCount;
+                node.splitable = true;
+            } else {
+                node.splitable = false;
+            }
+        }
+
+        /**
+         * squared error reduction of each output, from the totals of the children
+         */
+        private double[] reductions(GrowingNode parent, GrowingNode leftChild, GrowingNode rightChild){
+            double[] reductions = new double[numOutputs];
+            if (leftChild.count<=0 || rightChild.count<=0){
+                return reductions;
+            }
+            for (int l=0;l<numOutputs;l++){
+                reductions[l] = leftChild.sums[l]*leftChild.sums[l]/leftChild.count
+                        + rightChild.sums[l]*rightChild.sums[l]/rightChild.count
+                        - parent.sums[l]*parent.sums[l]/parent.count;
+            }
+            return reductions;
+        }
+
+        RegressionTree[] toTrees(){
+            int numNodes = nodes.size();
+            int[] featureIndices = new int[numNodes];
+            double[] thresholds = new double[numNodes];
+            int[] leftChildren = new int[numNodes];
+            int[] rightChildren = new int[numNodes];
+            double[] leftProbs = new double[numNodes];
+            double[] rightProbs = new double[numNodes];
+            for (int n=0;n<numNodes;n++){
+                GrowingNode node = nodes.get(n);
+                leftChildren[n] = node.leftChild;
+                rightChildren[n] = node.rightChild;
+                if (node.leftChild!=-1){
+                    featureIndices[n] = node.featureIndex;
+                    thresholds[n] = node.threshold;
+                    leftProbs[n] = node.leftProb;
+                    rightProbs[n] = node.rightProb;
+                }
+            }
+            // reductions are normalized as in RegTreeTrainer
+            int numDataPoints = dataSet.getNumDataPoints();
+            RegressionTree[] trees = new RegressionTree[numOutputs];
+            for (int l=0;l<numOutputs;l++){
+                double[] reductions = new double[numNodes];
+                double[] values = new double[numNodes];
+                for (int n=0;n<numNodes;n++){
+                    GrowingNode node = nodes.get(n);
+                    if (node.leftChild!=-1){
+                        reductions[n] = node.reductions[l]/numDataPoints;
+                    } else if (node.count>0){
+                        values[n] = node.sums[l]/node.count;
+                    }
+                }
+                trees[l] = RegressionTree.newTree(0,featureIndices,thresholds,leftChildren,rightChildren,
+                        leftProbs,rightProbs,reductions,values);
+                trees[l].setFeatureList(dataSet.getFeatureList());
+                trees[l].setTrainingLeaves(trainingLeaves);
+            }
+            return trees;
+        }
+    }
+}
@@ -47,6 +47,12 @@ public class Node implements Serializable {
     //todo this should be transient? maybe doesn't matter as it is cleaned
     private double[] probs;
 
+    // only used in histogram based training
+    private transient Histogram histogram;
+
+    // only used in row partition based training
+    private transient RowPartition.NodeRows nodeRows;
+
     boolean isSplitable() {
         return splitable;
     }
@@ -85,7 +91,7 @@ public class Node implements Serializable {
         return this;
     }
 
-    boolean isLeaf() {
+    public boolean isLeaf() {
         return leaf;
     }
 
@@ -149,7 +155,33 @@ public class Node implements Serializable {
         this.probs=null;
     }
 
-    double getLeftProb() {
+    Histogram getHistogram() {
+        return histogram;
+    }
+
+    Node setHistogram(Histogram histogram) {
+        this.histogram = histogram;
+        return this;
+    }
+
+    void clearHistogram(){
+        this.histogram=null;
+    }
+
+    RowPartition.NodeRows getNodeRows() {
+        return nodeRows;
+    }
+
+    Node setNodeRows(RowPartition.NodeRows nodeRows) {
+        this.nodeRows = nodeRows;
+        return this;
+    }
+
+    void clearNodeRows(){
+        this.nodeRows=null;
+    }
+
+    public double getLeftProb() {
         return leftProb;
     }
 
@@ -157,7 +189,7 @@ public class Node implements Serializable {
         this.leftProb = leftProb;
     }
 
-    double getRightProb() {
+    public double getRightProb() {
         return rightProb;
     }
 
@@ -0,0 +1,70 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.ArraySparseVectorView;
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+
+/**
+ * the columns of a data set restricted to the rows of one node, gathered from row storage
+ * column entries are indexed by position in the node, so the probabilities and labels of the node
+ * are indexed the same way
+ * building costs the number of features plus the stored entries of the node rows
+ */
+class NodeColumns {
+    private int numRows;
+    // entries of feature j are at [starts[j], starts[j+1])
+    private int[] starts;
+    private int[] positions;
+    private double[] values;
+
+    /**
+     * @param rows data points of the node
+     */
+    static NodeColumns build(DataSet dataSet, int[] rows){
+        int numFeatures = dataSet.getNumFeatures();
+        NodeColumns nodeColumns = new NodeColumns();
+        nodeColumns.numRows = rows.length;
+        int[] starts = new int[numFeatures+1];
+        for (int row: rows){
+            for (Vector.Element element: dataSet.getRow(row).nonZeroes()){
+                starts[element.index()+1] += 1;
+            }
+        }
+        for (int j=0;j<numFeatures;j++){
+            starts[j+1] += starts[j];
+        }
+        int[] positions = new int[starts[numFeatures]];
+        double[] values = new double[starts[numFeatures]];
+        int[] next = Arrays.copyOf(starts, numFeatures);
+        // rows are visited in order, so positions of each feature are sorted
+        for (int s=0;s<rows.length;s++){
+            for (Vector.Element element: dataSet.getRow(rows[s]).nonZeroes()){
+                int p = next[element.index()];
+                positions[p] = s;
+                values[p] = element.get();
+                next[element.index()] = p+1;
+            }
+        }
+        nodeColumns.starts = starts;
+        nodeColumns.positions = positions;
+        nodeColumns.values = values;
+        return nodeColumns;
+    }
+
+    int getNumFeatures(){
+        return starts.length-1;
+    }
+
+    boolean isEmpty(int featureIndex){
+        return starts[featureIndex]==starts[featureIndex+1];
+    }
+
+    /**
+     * read-only view, nothing is copied
+     */
+    Vector getColumn(int featureIndex){
+        return new ArraySparseVectorView(numRows, positions, values, starts[featureIndex], starts[featureIndex+1]);
+    }
+}
@@ -0,0 +1,241 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * same tree growing procedure as RegTreeTrainer,
+ * but data points of a node are kept in a RowPartition instead of a dense probability array,
+ * so that the cost of a node scales with the data points in the node, not with the data set size:
+ * split finding works on the columns of the node gathered from row storage (NodeColumns),
+ * histograms are filled from the row major bin codes of the node rows,
+ * and leaf outputs are computed on the probabilities and labels of the leaf rows
+ * missing values are handled as in RegTreeTrainer, with probabilities Node.getLeftProb and Node.getRightProb
+ */
+class PartitionRegTreeTrainer {
+
+    static RegressionTree fit(RegTreeConfig regTreeConfig,
+                              DataSet dataSet,
+                              double[] labels,
+                              double[] weights,
+                              LeafOutputCalculator leafOutputCalculator){
+        RowPartition rowPartition = new RowPartition(weights);
+        // null if histogram is not used
+        FeatureBins featureBins = regTreeConfig.getFeatureBins(dataSet);
+
+        RegressionTree tree = new RegressionTree();
+        tree.setFeatureList(dataSet.getFeatureList());
+
+        tree.leaves = new ArrayList<>();
+        tree.root = new Node();
+        tree.root.setId(tree.numNodes);
+        tree.numNodes += 1;
+
+        //root gets all active data points
+        tree.root.setNodeRows(rowPartition.root());
+        if (featureBins!=null){
+            tree.root.setHistogram(buildHistogram(tree.root,rowPartition,regTreeConfig,featureBins,labels));
+        }
+        updateNode(tree.root,regTreeConfig,dataSet,labels,rowPartition,featureBins);
+        tree.leaves.add(tree.root);
+        tree.root.setLeaf(true);
+        tree.allNodes.add(tree.root);
+
+        /**
+         * grow the tree
+         */
+        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+        while (tree.leaves.size()<maxNumLeaves) {
+            /**
+             *find the splitable node which gives the max reduction once split
+             */
+            Optional<Node> leafToSplitOptional = RegTreeTrainer.findLeafToSplit(tree.leaves);
+            if (leafToSplitOptional.isPresent()){
+                Node leafToSplit = leafToSplitOptional.get();
+                splitNode(tree,leafToSplit,regTreeConfig,dataSet,labels,rowPartition,featureBins);
+            } else {
+                break;
+            }
+        }
+
+        setLeavesOutputs(regTreeConfig,tree.leaves,leafOutputCalculator,labels,rowPartition);
+        setTrainingLeaves(tree,rowPartition);
+        cleanLeaves(tree.leaves);
+        RegTreeTrainer.normalizeReductions(tree,dataSet);
+        return tree;
+    }
+
+    /**
+     * split a splitable node
+     * the range of the node in the row permutation is partitioned in place
+     */
+    private static void splitNode(RegressionTree tree, Node leafToSplit, RegTreeConfig regTreeConfig,
+                                  DataSet dataSet, double[] labels, RowPartition rowPartition,
+                                  FeatureBins featureBins) {
+        int featureIndex = leafToSplit.getFeatureIndex();
+        double threshold = leafToSplit.getThreshold();
+        Vector columnVector = dataSet.getColumn(featureIndex);
+
+        /**
+         * create children
+         */
+        Node leftChild = new Node();
+        leftChild.setId(tree.numNodes);
+        tree.numNodes += 1;
+        Node rightChild = new Node();
+        rightChild.setId(tree.numNodes);
+        tree.numNodes += 1;
+
+        RowPartition.NodeRows[] children = rowPartition.split(leafToSplit.getNodeRows(),columnVector,threshold,
+                leafToSplit.getLeftProb(),leafToSplit.getRightProb());
+        leftChild.setNodeRows(children[0]);
+        rightChild.setNodeRows(children[1]);
+
+        //the last two leaves need not to be updated completely
+        //as we don't need to split them later
+        int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
+        if (tree.leaves.size()!=maxNumLeaves-1){
+            if (featureBins!=null){
+                setChildrenHistograms(leafToSplit,leftChild,rightChild,regTreeConfig,featureBins,labels,rowPartition);
+            }
+            updateNode(leftChild,regTreeConfig,dataSet,labels,rowPartition,featureBins);
+            updateNode(rightChild,regTreeConfig,dataSet,labels,rowPartition,featureBins);
+        }
+
+        /**
+         * link left and right child to the parent
+         */
+        leafToSplit.setLeftChild(leftChild);
+        leafToSplit.setRightChild(rightChild);
+
+        /**
+         * update leaves, remove the parent, and add children
+         */
+        leafToSplit.setLeaf(false);
+        leafToSplit.clearNodeRows();
+        leafToSplit.clearHistogram();
+        tree.leaves.remove(leafToSplit);
+        leftChild.setLeaf(true);
+        rightChild.setLeaf(true);
+        tree.leaves.add(leftChild);
+        tree.leaves.add(rightChild);
+        tree.allNodes.add(leftChild);
+        tree.allNodes.add(rightChild);
+    }
+
+    private static Histogram buildHistogram(Node node, RowPartition rowPartition, RegTreeConfig regTreeConfig,
+                                            FeatureBins featureBins, double[] labels){
+        RowPartition.NodeRows nodeRows = node.getNodeRows();
+        Splitter.GlobalStats globalStats = rowPartition.globalStats(nodeRows,labels);
+        return Histogram.build(featureBins,rowPartition.rows(nodeRows),rowPartition.probs(nodeRows),labels,
+                globalStats.getWeightedLabelSum(),globalStats.getProbabilisticCount(),regTreeConfig.isParallel());
+    }
+
+    /**
+     * only scan the smaller child;
+     * the histogram of the larger child is the difference between the parent and the smaller child
+     */
+    private static void setChildrenHistograms(Node parent, Node leftChild, Node rightChild,
+                                              RegTreeConfig regTreeConfig, FeatureBins featureBins,
+                                              double[] labels, RowPartition rowPartition){
+        Node smallChild;
+        Node largeChild;
+        if (parent.getLeftProb()<=parent.getRightProb()){
+            smallChild = leftChild;
+            largeChild = rightChild;
+        } else {
+            smallChild = rightChild;
+            largeChild = leftChild;
+        }
+        Histogram smallHistogram = buildHistogram(smallChild,rowPartition,regTreeConfig,featureBins,labels);
+        smallChild.setHistogram(smallHistogram);
+        largeChild.setHistogram(Histogram.subtract(parent.getHistogram(),smallHistogram));
+    }
+
+    /**
+     * parallel
+     * given rows, fill other information
+     * @param node
+     * @param featureBins null if histogram is not used
+     */
+    private static void updateNode(Node node,
+                                   RegTreeConfig regTreeConfig,
+                                   DataSet dataSet,
+                                   double[] labels,
+                                   RowPartition rowPartition,
+                                   FeatureBins featureBins) {
+        Optional<SplitResult> splitResultOptional;
+        if (featureBins==null){
+            RowPartition.NodeRows nodeRows = node.getNodeRows();
+            Splitter.GlobalStats globalStats = rowPartition.globalStats(nodeRows,labels);
+            int[] rows = rowPartition.rows(nodeRows);
+            NodeColumns nodeColumns = NodeColumns.build(dataSet,rows);
+            splitResultOptional = Splitter.split(regTreeConfig,nodeColumns,nodeLabels(rows,labels),
+                    rowPartition.probs(nodeRows),globalStats);
+        } else {
+            splitResultOptional = Splitter.split(regTreeConfig,node.getHistogram());
+        }
+        if (splitResultOptional.isPresent()){
+            SplitResult splitResult = splitResultOptional.get();
+            node.setFeatureIndex(splitResult.getFeatureIndex());
+            node.setThreshold(splitResult.getThreshold());
+            node.setReduction(splitResult.getReduction());
+            double leftCount = splitResult.getLeftCount();
+            double rightCount = splitResult.getRightCount();
+            double totalCount = leftCount + rightCount;
+            node.setLeftProb(leftCount/totalCount);
+            node.setRightProb(rightCount/totalCount);
+            node.setSplitable(true);
+        } else{
+            node.setSplitable(false);
+        }
+    }
+
+    private static void setTrainingLeaves(RegressionTree tree, RowPartition rowPartition){
+        int[] trainingLeaves = rowPartition.newLeafAssignment();
+        for (int l=0;l<tree.leaves.size();l++){
+            rowPartition.assignLeaf(tree.leaves.get(l).getNodeRows(),l,trainingLeaves);
+        }
+        tree.setTrainingLeaves(trainingLeaves);
+    }
+
+    private static void cleanLeaves(List<Node> leaves){
+        for (Node leaf: leaves){
+            leaf.clearNodeRows();
+            leaf.clearHistogram();
+        }
+    }
+
+    /**
+     * parallel
+     */
+    private static void setLeavesOutputs(RegTreeConfig regTreeConfig, List<Node> leaves, LeafOutputCalculator calculator,
+                                         double[] labels, RowPartition rowPartition){
+        Stream<Node> stream = leaves.stream();
+        if (regTreeConfig.isParallel()){
+            stream = stream.parallel();
+        }
+        stream.forEach(leaf -> {
+            RowPartition.NodeRows nodeRows = leaf.getNodeRows();
+            double[] probs = rowPartition.probs(nodeRows);
+            double[] nodeLabels = nodeLabels(rowPartition.rows(nodeRows),labels);
+            leaf.setValue(calculator.getLeafOutput(probs,nodeLabels));
+        });
+    }
+
+    /**
+     * labels of the given rows
+     */
+    private static double[] nodeLabels(int[] rows, double[] labels){
+        double[] nodeLabels = new double[rows.length];
+        for (int s=0;s<rows.length;s++){
+            nodeLabels[s] = labels[rows[s]];
+        }
+        return nodeLabels;
+    }
+}
@@ -1,5 +1,7 @@
 package edu.neu.ccs.pyramid.regression.regression_tree;
 
+import edu.neu.ccs.pyramid.dataset.DataSet;
+
 import java.util.List;
 import java.util.Optional;
 
@@ -12,6 +14,10 @@ public class RegTreeConfig {
     private int minDataPerLeaf=0;
     private boolean parallel=true;
     private int numActiveFeatures=10;
+    private boolean useHistogram=false;
+    private boolean useRowPartition=false;
+    // quantized features, built once and shared by all trees trained on the same data set
+    private FeatureBins featureBins;
 
 
     public RegTreeConfig setMaxNumLeaves(int maxNumLeaves) {
@@ -42,6 +48,34 @@ public class RegTreeConfig {
         return this;
     }
 
+    /**
+     * find splits on pre-binned features with per-node histograms
+     * each feature is cut into numSplitIntervals bins when the first tree is trained
+     */
+    public RegTreeConfig setUseHistogram(boolean useHistogram) {
+        this.useHistogram = useHistogram;
+        return this;
+    }
+
+    /**
+     * keep data points of nodes as ranges of a row permutation instead of dense probability arrays,
+     * so that splitting a node costs time proportional to its size
+     */
+    public RegTreeConfig setUseRowPartition(boolean useRowPartition) {
+        this.useRowPartition = useRowPartition;
+        return this;
+    }
+
+    /**
+     * use features that are already binned, e.g. shared by several trainers
+     * also turns on histogram based splitting
+     */
+    public RegTreeConfig setFeatureBins(FeatureBins featureBins) {
+        this.featureBins = featureBins;
+        this.useHistogram = true;
+        return this;
+    }
+
     int getMaxNumLeaves() {
         return maxNumLeaves;
     }
@@ -64,4 +98,27 @@ public class RegTreeConfig {
     public boolean isParallel() {
         return parallel;
     }
+
+    public boolean useHistogram() {
+        return useHistogram;
+    }
+
+    public boolean useRowPartition() {
+        return useRowPartition;
+    }
+
+    /**
+     *
+     * @param dataSet
+     * @return feature bins for the data set, null if histogram is not used
+     */
+    synchronized FeatureBins getFeatureBins(DataSet dataSet){
+        if (!useHistogram){
+            return null;
+        }
+        if (featureBins==null || !featureBins.isBuiltOn(dataSet)){
+            featureBins = FeatureBins.build(dataSet, numSplitIntervals, parallel);
+        }
+        return featureBins;
+    }
 }
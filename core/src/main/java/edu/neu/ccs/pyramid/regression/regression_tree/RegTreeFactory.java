@@ -29,4 +29,14 @@ public class RegTreeFactory implements RegressorFactory {
     public Regressor fit(DataSet dataSet, double[] labels, double[] weights) {
         return RegTreeTrainer.fit(regTreeConfig,dataSet,labels,weights, leafOutputCalculator);
     }
+
+    /**
+     * the tree is grown on a row partition, which drops the rows with weight 0 at the root,
+     * so nodes only visit the sampled rows; feature bins of the whole data set are reused,
+     * and the training leaves cover the whole data set
+     */
+    @Override
+    public Regressor fitSample(DataSet dataSet, double[] labels, double[] weights) {
+        return PartitionRegTreeTrainer.fit(regTreeConfig,dataSet,labels,weights,leafOutputCalculator);
+    }
 }
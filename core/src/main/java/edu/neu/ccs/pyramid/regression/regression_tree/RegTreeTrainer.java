@@ -41,6 +41,9 @@ public class RegTreeTrainer {
                                      double[] labels,
                                      double[] weights,
                                      LeafOutputCalculator leafOutputCalculator){
+        if (regTreeConfig.useRowPartition()){
+            return PartitionRegTreeTrainer.fit(regTreeConfig,dataSet,labels,weights,leafOutputCalculator);
+        }
         RegressionTree tree = new RegressionTree();
         tree.setFeatureList(dataSet.getFeatureList());
 
@@ -56,8 +59,13 @@ public class RegTreeTrainer {
             rootProbs[dataPoint]=weights[dataPoint];
         }
         tree.root.setProbs(rootProbs);
+        // null if histogram is not used
+        FeatureBins featureBins = regTreeConfig.getFeatureBins(dataSet);
+        if (featureBins!=null){
+            tree.root.setHistogram(Histogram.build(featureBins,labels,rootProbs,regTreeConfig.isParallel()));
+        }
         //parallel
-        updateNode(tree.root, regTreeConfig,dataSet,labels);
+        updateNode(tree.root, regTreeConfig,dataSet,labels,featureBins);
         tree.leaves.add(tree.root);
         tree.root.setLeaf(true);
         tree.allNodes.add(tree.root);
@@ -73,7 +81,7 @@ public class RegTreeTrainer {
             Optional<Node> leafToSplitOptional = findLeafToSplit(tree.leaves);
             if (leafToSplitOptional.isPresent()){
                 Node leafToSplit = leafToSplitOptional.get();
-                splitNode(tree, leafToSplit,regTreeConfig,dataSet,labels);
+                splitNode(tree, leafToSplit,regTreeConfig,dataSet,labels,featureBins);
             } else {
                 break;
             }
@@ -81,6 +89,7 @@ public class RegTreeTrainer {
 
         //parallel
         setLeavesOutputs(regTreeConfig, tree.leaves,leafOutputCalculator, labels);
+        setTrainingLeaves(tree,weights);
         cleanLeaves(tree.leaves);
         normalizeReductions(tree,dataSet);
         return tree;
@@ -101,9 +110,10 @@ public class RegTreeTrainer {
      * @param leafToSplit
      * @param regTreeConfig
      * @param dataSet
+     * @param featureBins null if histogram is not used
      */
     private static void splitNode(RegressionTree tree, Node leafToSplit, RegTreeConfig regTreeConfig,
-                                  DataSet dataSet, double[] labels) {
+                                  DataSet dataSet, double[] labels, FeatureBins featureBins) {
         int numDataPoints = dataSet.getNumDataPoints();
 
         /**
@@ -161,8 +171,11 @@ public class RegTreeTrainer {
         //as we don't need to split them later
         int maxNumLeaves = regTreeConfig.getMaxNumLeaves();
         if (tree.leaves.size()!=maxNumLeaves-1){
-            updateNode(leftChild,regTreeConfig,dataSet,labels);
-            updateNode(rightChild,regTreeConfig,dataSet,labels);
+            if (featureBins!=null){
+                setChildrenHistograms(leafToSplit,leftChild,rightChild,regTreeConfig,featureBins,labels);
+            }
+            updateNode(leftChild,regTreeConfig,dataSet,labels,featureBins);
+            updateNode(rightChild,regTreeConfig,dataSet,labels,featureBins);
         }
 
 
@@ -177,6 +190,7 @@ public class RegTreeTrainer {
          */
         leafToSplit.setLeaf(false);
         leafToSplit.clearProbs();
+        leafToSplit.clearHistogram();
         tree.leaves.remove(leafToSplit);
         leftChild.setLeaf(true);
         rightChild.setLeaf(true);
@@ -186,17 +200,45 @@ public class RegTreeTrainer {
         tree.allNodes.add(rightChild);
     }
 
+    /**
+     * only scan the smaller child;
+     * the histogram of the larger child is the difference between the parent and the smaller child
+     */
+    private static void setChildrenHistograms(Node parent, Node leftChild, Node rightChild,
+                                              RegTreeConfig regTreeConfig, FeatureBins featureBins,
+                                              double[] labels){
+        Node smallChild;
+        Node largeChild;
+        if (parent.getLeftProb()<=parent.getRightProb()){
+            smallChild = leftChild;
+            largeChild = rightChild;
+        } else {
+            smallChild = rightChild;
+            largeChild = leftChild;
+        }
+        Histogram smallHistogram = Histogram.build(featureBins,labels,smallChild.getProbs(),regTreeConfig.isParallel());
+        smallChild.setHistogram(smallHistogram);
+        largeChild.setHistogram(Histogram.subtract(parent.getHistogram(),smallHistogram));
+    }
+
     /**
      * parallel
      * given probs, fill other information
      * @param node
+     * @param featureBins null if histogram is not used
      */
     private static void updateNode(Node node,
                                    RegTreeConfig regTreeConfig,
                                    DataSet dataSet,
-                                   double[] labels) {
-        Optional<SplitResult> splitResultOptional = Splitter.split(regTreeConfig,
-                dataSet,labels,node.getProbs());
+                                   double[] labels,
+                                   FeatureBins featureBins) {
+        Optional<SplitResult> splitResultOptional;
+        if (featureBins==null){
+            splitResultOptional = Splitter.split(regTreeConfig,
+                    dataSet,labels,node.getProbs());
+        } else {
+            splitResultOptional = Splitter.split(regTreeConfig,node.getHistogram());
+        }
         if (splitResultOptional.isPresent()){
             SplitResult splitResult = splitResultOptional.get();
             node.setFeatureIndex(splitResult.getFeatureIndex());
@@ -213,9 +255,34 @@ public class RegTreeTrainer {
         }
     }
 
+    /**
+     * should be called before the leaves are cleaned
+     * a data point is assigned to a leaf if its whole weight is in the leaf
+     */
+    static void setTrainingLeaves(RegressionTree tree, double[] weights){
+        int[] trainingLeaves = new int[weights.length];
+        Arrays.fill(trainingLeaves,-1);
+        for (int l=0;l<tree.leaves.size();l++){
+            double[] probs = tree.leaves.get(l).getProbs();
+            for (int i=0;i<probs.length;i++){
+                double prob = probs[i];
+                if (prob==0){
+                    continue;
+                }
+                if (prob==weights[i]){
+                    trainingLeaves[i] = l;
+                } else {
+                    trainingLeaves[i] = -1;
+                }
+            }
+        }
+        tree.setTrainingLeaves(trainingLeaves);
+    }
+
     private static void cleanLeaves(List<Node> leaves){
         for (Node leaf: leaves){
             leaf.clearProbs();
+            leaf.clearHistogram();
         }
     }
 
@@ -238,7 +305,7 @@ public class RegTreeTrainer {
         leaf.setValue(output);
     }
 
-    private static Optional<Node> findLeafToSplit(List<Node> leaves){
+    static Optional<Node> findLeafToSplit(List<Node> leaves){
         return leaves.stream().filter(Node::isSplitable)
                 .max(Comparator.comparing(Node::getReduction));
     }
@@ -249,7 +316,7 @@ public class RegTreeTrainer {
      * and make trees trained with different number of data comparable
      * @param tree
      */
-    private static void normalizeReductions(RegressionTree tree, DataSet dataSet){
+    static void normalizeReductions(RegressionTree tree, DataSet dataSet){
         int numDataPoints = dataSet.getNumDataPoints();
         List<Node> nodes = tree.traverse();
         for (Node node: nodes){
@@ -1,5 +1,6 @@
 package edu.neu.ccs.pyramid.regression.regression_tree;
 
+import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.feature.FeatureList;
 import edu.neu.ccs.pyramid.regression.GeneralTreeRule;
 import edu.neu.ccs.pyramid.regression.Regressor;
@@ -50,6 +51,13 @@ public class RegressionTree implements Regressor, Serializable {
 
     private FeatureList featureList;
 
+    /**
+     * for each data point of the training set, the position in leaves of the only leaf it falls into;
+     * -1 for data points that go through missing values or have weight 0 in training
+     * set by the trainers, so that staged scores can be updated without traversing the tree again
+     */
+    private transient int[] trainingLeaves;
+
     protected RegressionTree() {
         this.numNodes = 0;
         this.leaves = new ArrayList<>();
@@ -92,6 +100,50 @@ public class RegressionTree implements Regressor, Serializable {
         return tree;
     }
 
+    /**
+     * rebuild a tree from flat node arrays
+     * nodes are referred to by their positions in the arrays; a node with leftChildren = -1 is a leaf
+     * node ids are assigned in pre-order
+     * the feature list is not set; callers should set it with setFeatureList, as display and toPMML use it
+     * @param root position of the root
+     */
+    public static RegressionTree newTree(int root, int[] featureIndices, double[] thresholds,
+                                         int[] leftChildren, int[] rightChildren,
+                                         double[] leftProbs, double[] rightProbs,
+                                         double[] reductions, double[] values){
+        RegressionTree tree = new RegressionTree();
+        tree.root = tree.addNode(root, featureIndices, thresholds, leftChildren, rightChildren,
+                leftProbs, rightProbs, reductions, values);
+        return tree;
+    }
+
+    private Node addNode(int position, int[] featureIndices, double[] thresholds,
+                         int[] leftChildren, int[] rightChildren,
+                         double[] leftProbs, double[] rightProbs,
+                         double[] reductions, double[] values){
+        Node node = new Node();
+        node.setId(numNodes);
+        numNodes += 1;
+        allNodes.add(node);
+        node.setValue(values[position]);
+        node.setReduction(reductions[position]);
+        if (leftChildren[position]==-1){
+            node.setLeaf(true);
+            leaves.add(node);
+            return node;
+        }
+        node.setLeaf(false);
+        node.setFeatureIndex(featureIndices[position]);
+        node.setThreshold(thresholds[position]);
+        node.setLeftProb(leftProbs[position]);
+        node.setRightProb(rightProbs[position]);
+        node.setLeftChild(addNode(leftChildren[position], featureIndices, thresholds, leftChildren, rightChildren,
+                leftProbs, rightProbs, reductions, values));
+        node.setRightChild(addNode(rightChildren[position], featureIndices, thresholds, leftChildren, rightChildren,
+                leftProbs, rightProbs, reductions, values));
+        return node;
+    }
+
     /**
      *
      * @return number of leaves
@@ -105,6 +157,62 @@ public class RegressionTree implements Regressor, Serializable {
         return root;
     }
 
+    void setTrainingLeaves(int[] trainingLeaves) {
+        this.trainingLeaves = trainingLeaves;
+    }
+
+    /**
+     * for a tree trained on a row view of a data set, so that the training leaves refer to rows of the data set;
+     * rows outside the view get -1 and are predicted
+     * @param rows index in the data set of each row of the view
+     * @param numDataPoints number of data points in the data set
+     */
+    public void mapTrainingLeaves(int[] rows, int numDataPoints){
+        if (trainingLeaves==null){
+            return;
+        }
+        if (trainingLeaves.length!=rows.length){
+            throw new IllegalArgumentException("the tree is not trained on the view");
+        }
+        int[] mapped = new int[numDataPoints];
+        Arrays.fill(mapped,-1);
+        for (int r=0;r<rows.length;r++){
+            mapped[rows[r]] = trainingLeaves[r];
+        }
+        this.trainingLeaves = mapped;
+    }
+
+    /**
+     * @return whether leaves of the training data points are kept
+     */
+    public boolean hasTrainingLeaves(){
+        return trainingLeaves!=null;
+    }
+
+    /**
+     * same as predict(dataSet.getRow(dataIndex)) for the data set the tree is trained on
+     * the leaf found in training is used when there is one
+     */
+    public double predictTrainingDataPoint(DataSet dataSet, int dataIndex){
+        if (trainingLeaves!=null){
+            if (trainingLeaves.length!=dataSet.getNumDataPoints()){
+                throw new IllegalArgumentException("the tree is not trained on the data set");
+            }
+            int leaf = trainingLeaves[dataIndex];
+            if (leaf>=0){
+                return leaves.get(leaf).getValue();
+            }
+        }
+        return predict(dataSet.getRow(dataIndex));
+    }
+
+    /**
+     * free memory once staged scores are updated
+     */
+    public void clearTrainingLeaves(){
+        this.trainingLeaves = null;
+    }
+
     @Override
     public double predict(Vector vector){
         Optional<Double> predictionNoMissing = predictNoMissingValue(vector);
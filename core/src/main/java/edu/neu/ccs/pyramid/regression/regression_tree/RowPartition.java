@@ -0,0 +1,261 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+
+/**
+ * data points of tree nodes, kept as ranges of one shared row permutation
+ * splitting a node partitions its range in place, like quicksort;
+ * a row in a range has probability equal to its weight at the root.
+ * rows that have gone through missing values carry fractional probabilities,
+ * and are kept in a compact side list of the node instead
+ */
+class RowPartition {
+    private int[] rows;
+    private double[] weights;
+
+    /**
+     *
+     * @param weights weights of data points at the root; rows with 0 weight are dropped
+     */
+    RowPartition(double[] weights) {
+        this.weights = weights;
+        int numRows = 0;
+        for (double weight: weights){
+            if (weight!=0){
+                numRows += 1;
+            }
+        }
+        this.rows = new int[numRows];
+        int count = 0;
+        for (int i=0;i<weights.length;i++){
+            if (weights[i]!=0){
+                rows[count] = i;
+                count += 1;
+            }
+        }
+    }
+
+    NodeRows root(){
+        return new NodeRows(0, rows.length, new int[0], new double[0]);
+    }
+
+    /**
+     * data points of the node, the range first, then the side list
+     */
+    int[] rows(NodeRows nodeRows){
+        int[] nodeRowIndices = new int[nodeRows.size()];
+        int rangeSize = nodeRows.end - nodeRows.begin;
+        System.arraycopy(rows, nodeRows.begin, nodeRowIndices, 0, rangeSize);
+        System.arraycopy(nodeRows.fractionalRows, 0, nodeRowIndices, rangeSize, nodeRows.fractionalRows.length);
+        return nodeRowIndices;
+    }
+
+    /**
+     * probabilities of the data points of the node, in the order of rows(nodeRows)
+     */
+    double[] probs(NodeRows nodeRows){
+        double[] probs = new double[nodeRows.size()];
+        int rangeSize = nodeRows.end - nodeRows.begin;
+        for (int p=0;p<rangeSize;p++){
+            probs[p] = weights[rows[nodeRows.begin+p]];
+        }
+        System.arraycopy(nodeRows.fractionalProbs, 0, probs, rangeSize, nodeRows.fractionalProbs.length);
+        return probs;
+    }
+
+    Splitter.GlobalStats globalStats(NodeRows nodeRows, double[] labels){
+        double weightedLabelSum = 0;
+        double probabilisticCount = 0;
+        for (int p=nodeRows.begin;p<nodeRows.end;p++){
+            int i = rows[p];
+            weightedLabelSum += weights[i]*labels[i];
+            probabilisticCount += weights[i];
+        }
+        int binaryCount = nodeRows.end - nodeRows.begin;
+        for (int p=0;p<nodeRows.fractionalRows.length;p++){
+            int i = nodeRows.fractionalRows[p];
+            double prob = nodeRows.fractionalProbs[p];
+            weightedLabelSum += prob*labels[i];
+            probabilisticCount += prob;
+            if (prob>0){
+                binaryCount += 1;
+            }
+        }
+        return new Splitter.GlobalStats(weightedLabelSum, probabilisticCount, binaryCount);
+    }
+
+    /**
+     * @return leaf of each data point, all -1
+     */
+    int[] newLeafAssignment(){
+        int[] leafAssignment = new int[weights.length];
+        Arrays.fill(leafAssignment,-1);
+        return leafAssignment;
+    }
+
+    /**
+     * rows in the range of the leaf get the leaf;
+     * a side list row gets the leaf only if its whole weight is in the leaf, and -1 if part of it is
+     */
+    void assignLeaf(NodeRows nodeRows, int leaf, int[] leafAssignment){
+        for (int p=nodeRows.begin;p<nodeRows.end;p++){
+            leafAssignment[rows[p]] = leaf;
+        }
+        for (int p=0;p<nodeRows.fractionalRows.length;p++){
+            int i = nodeRows.fractionalRows[p];
+            double prob = nodeRows.fractionalProbs[p];
+            if (prob==weights[i]){
+                leafAssignment[i] = leaf;
+            } else if (prob!=0){
+                leafAssignment[i] = -1;
+            }
+        }
+    }
+
+    /**
+     * weighted label sums of the node for several outputs
+     * @param rowLabels row major labels, rowLabels[i*numOutputs+output]
+     * @param sums output, length = numOutputs
+     * @return probabilistic count of the node
+     */
+    double weightedLabelSums(NodeRows nodeRows, double[] rowLabels, int numOutputs, double[] sums){
+        double probabilisticCount = 0;
+        for (int p=nodeRows.begin;p<nodeRows.end;p++){
+            int i = rows[p];
+            double weight = weights[i];
+            int rowStart = i*numOutputs;
+            for (int l=0;l<numOutputs;l++){
+                sums[l] += weight*rowLabels[rowStart+l];
+            }
+            probabilisticCount += weight;
+        }
+        for (int p=0;p<nodeRows.fractionalRows.length;p++){
+            int i = nodeRows.fractionalRows[p];
+            double prob = nodeRows.fractionalProbs[p];
+            int rowStart = i*numOutputs;
+            for (int l=0;l<numOutputs;l++){
+                sums[l] += prob*rowLabels[rowStart+l];
+            }
+            probabilisticCount += prob;
+        }
+        return probabilisticCount;
+    }
+
+    /**
+     * <= threshold go left, > threshold go right, missing values go to both sides probabilistically
+     * the range of the parent is reordered in place; missing rows are moved to the side lists of the children
+     * @param parent
+     * @param column feature values
+     * @param threshold
+     * @param leftProb probability for a missing value to go left
+     * @param rightProb probability for a missing value to go right
+     * @return left and right children
+     */
+    NodeRows[] split(NodeRows parent, Vector column, double threshold, double leftProb, double rightProb){
+        // three way partition: [begin,lt) left, [lt,gt) right, [gt,end) missing
+        int lt = parent.begin;
+        int gt = parent.end;
+        int p = parent.begin;
+        while (p<gt){
+            int i = rows[p];
+            double featureValue = column.get(i);
+            if (Double.isNaN(featureValue)){
+                gt -= 1;
+                swap(p,gt);
+            } else if (featureValue<=threshold){
+                swap(p,lt);
+                lt += 1;
+                p += 1;
+            } else {
+                p += 1;
+            }
+        }
+        int numMissing = parent.end - gt;
+
+        // 0 = left, 1 = right, 2 = both
+        int numFractional = parent.fractionalRows.length;
+        byte[] directions = new byte[numFractional];
+        int numLeftFractional = numMissing;
+        int numRightFractional = numMissing;
+        for (int q=0;q<numFractional;q++){
+            double featureValue = column.get(parent.fractionalRows[q]);
+            if (Double.isNaN(featureValue)){
+                directions[q] = 2;
+                numLeftFractional += 1;
+                numRightFractional += 1;
+            } else if (featureValue<=threshold){
+                directions[q] = 0;
+                numLeftFractional += 1;
+            } else {
+                directions[q] = 1;
+                numRightFractional += 1;
+            }
+        }
+
+        int[] leftRows = new int[numLeftFractional];
+        double[] leftProbs = new double[numLeftFractional];
+        int[] rightRows = new int[numRightFractional];
+        double[] rightProbs = new double[numRightFractional];
+        int leftCount = 0;
+        int rightCount = 0;
+        for (int q=gt;q<parent.end;q++){
+            int i = rows[q];
+            leftRows[leftCount] = i;
+            leftProbs[leftCount] = weights[i]*leftProb;
+            leftCount += 1;
+            rightRows[rightCount] = i;
+            rightProbs[rightCount] = weights[i]*rightProb;
+            rightCount += 1;
+        }
+        for (int q=0;q<numFractional;q++){
+            int i = parent.fractionalRows[q];
+            double prob = parent.fractionalProbs[q];
+            if (directions[q]!=1){
+                leftRows[leftCount] = i;
+                leftProbs[leftCount] = directions[q]==2 ? prob*leftProb : prob;
+                leftCount += 1;
+            }
+            if (directions[q]!=0){
+                rightRows[rightCount] = i;
+                rightProbs[rightCount] = directions[q]==2 ? prob*rightProb : prob;
+                rightCount += 1;
+            }
+        }
+
+        NodeRows[] children = new NodeRows[2];
+        children[0] = new NodeRows(parent.begin, lt, leftRows, leftProbs);
+        children[1] = new NodeRows(lt, gt, rightRows, rightProbs);
+        return children;
+    }
+
+    private void swap(int p, int q){
+        int tmp = rows[p];
+        rows[p] = rows[q];
+        rows[q] = tmp;
+    }
+
+    /**
+     * data points of one node
+     */
+    static class NodeRows {
+        // range in the row permutation
+        private int begin;
+        private int end;
+        // rows that have gone through missing values
+        private int[] fractionalRows;
+        private double[] fractionalProbs;
+
+        NodeRows(int begin, int end, int[] fractionalRows, double[] fractionalProbs) {
+            this.begin = begin;
+            this.end = end;
+            this.fractionalRows = fractionalRows;
+            this.fractionalProbs = fractionalProbs;
+        }
+
+        int size(){
+            return end - begin + fractionalRows.length;
+        }
+    }
+}
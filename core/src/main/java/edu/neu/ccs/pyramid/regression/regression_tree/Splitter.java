@@ -31,6 +31,21 @@ public class Splitter {
                                        double[] labels,
                                        double[] probs){
         GlobalStats globalStats = new GlobalStats(labels,probs);
+        return split(regTreeConfig,dataSet,labels,probs,globalStats);
+    }
+
+    /**
+     *
+     * @param regTreeConfig
+     * @param probs
+     * @param globalStats statistics of the node, already computed
+     * @return best valid splitResult, possibly nothing
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       DataSet dataSet,
+                                       double[] labels,
+                                       double[] probs,
+                                       GlobalStats globalStats){
         if (logger.isDebugEnabled()){
             logger.debug("global statistics = "+globalStats);
         }
@@ -51,6 +66,55 @@ public class Splitter {
 
 
 
+    /**
+     * split finding on the rows of one node only
+     * @param regTreeConfig
+     * @param nodeColumns columns restricted to the node
+     * @param labels label of each row of the node
+     * @param probs probability of each row of the node
+     * @param globalStats statistics of the node
+     * @return best valid splitResult, possibly nothing
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       NodeColumns nodeColumns,
+                                       double[] labels,
+                                       double[] probs,
+                                       GlobalStats globalStats){
+        IntStream intStream = IntStream.range(0, nodeColumns.getNumFeatures())
+                .filter(featureIndex -> !nodeColumns.isEmpty(featureIndex));
+        if (regTreeConfig.isParallel()){
+            intStream = intStream.parallel();
+        }
+        return intStream.mapToObj(featureIndex -> IntervalSplitter.split(regTreeConfig,nodeColumns.getColumn(featureIndex),
+                labels,probs,featureIndex,globalStats))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .max(Comparator.comparing(SplitResult::getReduction));
+    }
+
+    /**
+     * histogram based split finding
+     * @param regTreeConfig
+     * @param histogram statistics of the node
+     * @return best valid splitResult, possibly nothing
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       Histogram histogram){
+        return HistogramSplitter.split(regTreeConfig, histogram);
+    }
+
+    /**
+     * histogram based split finding for several outputs sharing one tree
+     * @param regTreeConfig
+     * @param histogram statistics of the node for all outputs
+     * @return best valid splitResult, possibly nothing
+     */
+    static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
+                                       MultiOutputHistogram histogram){
+        return HistogramSplitter.split(regTreeConfig, histogram);
+    }
+
+
     // this is for active feature faster boosting
 
     static Optional<SplitResult> split(RegTreeConfig regTreeConfig,
@@ -139,6 +203,14 @@ public class Splitter {
         // number of elements with non-zero probabilities
         private int binaryCount;
 
+        GlobalStats(double weightedLabelSum,
+                    double probabilisticCount,
+                    int binaryCount) {
+            this.WeightedLabelSum = weightedLabelSum;
+            this.probabilisticCount = probabilisticCount;
+            this.binaryCount = binaryCount;
+        }
+
         GlobalStats(double[] labels,
                     double[] probs) {
             for (int i=0;i<labels.length;i++){
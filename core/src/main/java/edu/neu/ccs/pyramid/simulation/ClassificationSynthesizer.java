@@ -2,11 +2,14 @@ package edu.neu.ccs.pyramid.simulation;
 
 import edu.neu.ccs.pyramid.dataset.ClfDataSet;
 import edu.neu.ccs.pyramid.dataset.ClfDataSetBuilder;
+import edu.neu.ccs.pyramid.dataset.Density;
 import edu.neu.ccs.pyramid.dataset.RegDataSet;
 import edu.neu.ccs.pyramid.dataset.RegDataSetBuilder;
 import edu.neu.ccs.pyramid.util.Sampling;
 import org.apache.commons.math3.distribution.NormalDistribution;
 
+import java.util.Random;
+
 /**
  * Created by chengli on 5/30/15.
  */
@@ -45,6 +48,33 @@ public class ClassificationSynthesizer {
         return dataSet;
     }
 
+    /**
+     * 5 gaussian features, 3 classes
+     * class 2 if x0 plus noise is above 0.5, otherwise class 1 if x1>0, otherwise class 0
+     * each feature value is missing (NaN) with probability 0.1
+     * @param numDataPoints
+     * @param seed same seed, same data set
+     * @return
+     */
+    public static ClfDataSet missingValues(int numDataPoints, long seed){
+        Random random = new Random(seed);
+        int numFeatures = 5;
+        ClfDataSet dataSet = ClfDataSetBuilder.getBuilder().numDataPoints(numDataPoints).numFeatures(numFeatures)
+                .numClasses(3).density(Density.DENSE).missingValue(true).build();
+        for (int i=0;i<numDataPoints;i++){
+            double[] values = new double[numFeatures];
+            for (int j=0;j<numFeatures;j++){
+                values[j] = random.nextGaussian();
+            }
+            int label = values[0]+0.3*random.nextGaussian()>0.5 ? 2 : (values[1]>0 ? 1 : 0);
+            dataSet.setLabel(i, label);
+            for (int j=0;j<numFeatures;j++){
+                dataSet.setFeatureValue(i, j, random.nextDouble()<0.1 ? Double.NaN : values[j]);
+            }
+        }
+        return dataSet;
+    }
+
     public static Builder getBuilder(){
         return new Builder();
     }
@@ -1,5 +1,6 @@
 package edu.neu.ccs.pyramid.simulation;
 
+import edu.neu.ccs.pyramid.dataset.Density;
 import edu.neu.ccs.pyramid.dataset.MLClfDataSetBuilder;
 import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
@@ -16,6 +17,7 @@ import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by chengli on 12/1/15.
@@ -757,6 +759,77 @@ public class MultiLabelSynthesizer {
 
 
 
+        return dataSet;
+    }
+
+
+    /**
+     * 2 gaussian features, 4 labels, 3 clusters
+     * cluster 0: center (1,1), labels {0,1}
+     * cluster 1: center (-1,1), labels {2}
+     * cluster 2: center (0,-1), labels {1,3}
+     * each label of the cluster is dropped with probability 0.05
+     * @param numData
+     * @param seed same seed, same data set
+     * @return
+     */
+    public static MultiLabelClfDataSet clusters(int numData, long seed){
+        Random random = new Random(seed);
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder().numFeatures(2).numClasses(4)
+                .numDataPoints(numData).density(Density.DENSE).build();
+        int[][] patterns = {{0,1},{2},{1,3}};
+        double[][] centers = {{1,1},{-1,1},{0,-1}};
+        for (int i=0;i<numData;i++){
+            int cluster = random.nextInt(3);
+            dataSet.setFeatureValue(i, 0, centers[cluster][0]+0.7*random.nextGaussian());
+            dataSet.setFeatureValue(i, 1, centers[cluster][1]+0.7*random.nextGaussian());
+            for (int l: patterns[cluster]){
+                if (random.nextDouble()<0.95){
+                    dataSet.addLabel(i, l);
+                }
+            }
+        }
+        return dataSet;
+    }
+
+    /**
+     * sparse rows, each feature is non-zero with probability 0.06, values uniform in [0,1)
+     * label l is on when feature 2l or 2l+1 is above 0.3; then each label is flipped with probability 0.05
+     * @param numData
+     * @param numClass at most numFeature/2
+     * @param numFeature
+     * @param seed same seed, same data set
+     * @return
+     */
+    public static MultiLabelClfDataSet sparseFeaturePairs(int numData, int numClass, int numFeature, long seed){
+        if (2*numClass>numFeature){
+            throw new IllegalArgumentException("2*numClass>numFeature");
+        }
+        Random random = new Random(seed);
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder().numDataPoints(numData)
+                .numFeatures(numFeature).numClasses(numClass).density(Density.SPARSE_RANDOM).build();
+        for (int i=0;i<numData;i++){
+            MultiLabel multiLabel = new MultiLabel();
+            for (int j=0;j<numFeature;j++){
+                if (random.nextDouble()<0.06){
+                    double value = random.nextDouble();
+                    dataSet.setFeatureValue(i, j, value);
+                    if (j/2<numClass && value>0.3){
+                        multiLabel.addLabel(j/2);
+                    }
+                }
+            }
+            for (int l=0;l<numClass;l++){
+                if (random.nextDouble()<0.05){
+                    if (multiLabel.matchClass(l)){
+                        multiLabel.removeLabel(l);
+                    } else {
+                        multiLabel.addLabel(l);
+                    }
+                }
+            }
+            dataSet.setLabels(i, multiLabel);
+        }
         return dataSet;
     }
 }
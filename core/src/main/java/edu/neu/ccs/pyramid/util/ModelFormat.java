@@ -0,0 +1,826 @@
+package edu.neu.ccs.pyramid.util;
+
+import edu.neu.ccs.pyramid.classification.Classifier;
+import edu.neu.ccs.pyramid.classification.PriorProbClassifier;
+import edu.neu.ccs.pyramid.classification.lkboost.LKBoost;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
+import edu.neu.ccs.pyramid.dataset.LabelTranslator;
+import edu.neu.ccs.pyramid.dataset.MappedDenseVector;
+import edu.neu.ccs.pyramid.dataset.MappedDoubleArray;
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.multilabel_classification.cbm.CBM;
+import edu.neu.ccs.pyramid.multilabel_classification.crf.CMLCRF;
+import edu.neu.ccs.pyramid.multilabel_classification.imlgb.IMLGradientBoosting;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.GradientBoosting;
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.least_squares_boost.LSBoost;
+import edu.neu.ccs.pyramid.regression.regression_tree.Node;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * versioned binary format for trained models, as an alternative to java serialization
+ * supported models: LKBoost, LSBoost, IMLGradientBoosting, LogisticRegression, CMLCRF, CBM
+ * (with LogisticRegression, LKBoost or PriorProbClassifier components)
+ *
+ * layout, all numbers big endian:
+ * magic, version, then one model record: int type, followed by the fields of the model;
+ * CBM records contain the records of their components.
+ * trees of a boosting model are stored together as flat node arrays in pre-order
+ * (feature index, threshold, children, missing value probabilities, reduction, value),
+ * and each regressor refers to its root node.
+ * weight vectors are raw double blocks starting at a multiple of 8 bytes, so they can be memory mapped.
+ * feature lists are kept as java serialized blobs; label translators and label sets are stored as plain values.
+ *
+ * load reads everything onto the heap. map only reads the structure and serves weight vectors
+ * from a read-only memory mapping of the file, so large LogisticRegression, CMLCRF and CBM models open quickly,
+ * are paged in on demand and share pages between processes; trees are always read onto the heap.
+ */
+public class ModelFormat {
+    static final int MAGIC = 0x50594D44;
+    static final int VERSION = 1;
+
+    static final int TYPE_NULL = 0;
+    static final int TYPE_LKBOOST = 1;
+    static final int TYPE_LSBOOST = 2;
+    static final int TYPE_IMLGB = 3;
+    static final int TYPE_LOGISTIC_REGRESSION = 4;
+    static final int TYPE_CMLCRF = 5;
+    static final int TYPE_CBM = 6;
+    static final int TYPE_PRIOR = 7;
+
+    // regressor without tree
+    private static final int NO_ROOT = -1;
+    // node without children
+    private static final int NO_CHILD = -1;
+
+    public static void save(Object model, String file) throws IOException{
+        save(model, new File(file));
+    }
+
+    public static void save(Object model, File file) throws IOException{
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()){
+            parent.mkdirs();
+        }
+        try (Writer writer = new Writer(file)){
+            writer.writeInt(MAGIC);
+            writer.writeInt(VERSION);
+            writeModel(writer, model);
+        }
+    }
+
+    public static Object load(String file) throws IOException{
+        return load(new File(file));
+    }
+
+    public static Object load(File file) throws IOException{
+        try (Reader reader = new Reader(file, false)){
+            return reader.readFile();
+        }
+    }
+
+    /**
+     * weight vectors are read-only views on the mapped file
+     */
+    public static Object map(String file) throws IOException{
+        return map(new File(file));
+    }
+
+    public static Object map(File file) throws IOException{
+        try (Reader reader = new Reader(file, true)){
+            return reader.readFile();
+        }
+    }
+
+    public static LKBoost loadLKBoost(String file) throws IOException{
+        return (LKBoost) load(file);
+    }
+
+    public static LSBoost loadLSBoost(String file) throws IOException{
+        return (LSBoost) load(file);
+    }
+
+    public static IMLGradientBoosting loadIMLGradientBoosting(String file) throws IOException{
+        return (IMLGradientBoosting) load(file);
+    }
+
+    public static LogisticRegression loadLogisticRegression(String file) throws IOException{
+        return (LogisticRegression) load(file);
+    }
+
+    public static CMLCRF loadCMLCRF(String file) throws IOException{
+        return (CMLCRF) load(file);
+    }
+
+    public static CBM loadCBM(String file) throws IOException{
+        return (CBM) load(file);
+    }
+
+    //==========write==========
+
+    private static void writeModel(Writer writer, Object model) throws IOException{
+        if (model==null){
+            writer.writeInt(TYPE_NULL);
+        } else if (model instanceof LKBoost){
+            LKBoost lkBoost = (LKBoost) model;
+            writer.writeInt(TYPE_LKBOOST);
+            writer.writeInt(lkBoost.getNumClasses());
+            writeRegressors(writer, getRegressors(lkBoost));
+            writeLabelTranslator(writer, lkBoost.getLabelTranslator());
+            writer.writeObject(lkBoost.getFeatureList());
+        } else if (model instanceof LSBoost){
+            LSBoost lsBoost = (LSBoost) model;
+            writer.writeInt(TYPE_LSBOOST);
+            writeRegressors(writer, getRegressors(lsBoost));
+            writer.writeObject(lsBoost.getFeatureList());
+        } else if (model instanceof IMLGradientBoosting){
+            IMLGradientBoosting boosting = (IMLGradientBoosting) model;
+            writer.writeInt(TYPE_IMLGB);
+            writer.writeInt(boosting.getNumClasses());
+            List<List<Regressor>> regressors = new ArrayList<>();
+            for (int k=0;k<boosting.getNumClasses();k++){
+                regressors.add(boosting.getRegressors(k));
+            }
+            writeRegressors(writer, regressors);
+            writeMultiLabels(writer, boosting.getAssignments());
+            writeLabelTranslator(writer, boosting.getLabelTranslator());
+            writer.writeObject(boosting.getFeatureList());
+        } else if (model instanceof LogisticRegression){
+            LogisticRegression logisticRegression = (LogisticRegression) model;
+            writer.writeInt(TYPE_LOGISTIC_REGRESSION);
+            writer.writeInt(logisticRegression.getNumClasses());
+            writer.writeInt(logisticRegression.getNumFeatures());
+            writer.writeDoubleBlock(logisticRegression.getWeights().getAllWeights());
+            writeLabelTranslator(writer, logisticRegression.getLabelTranslator());
+            writer.writeObject(logisticRegression.getFeatureList());
+        } else if (model instanceof CMLCRF){
+            CMLCRF cmlcrf = (CMLCRF) model;
+            writer.writeInt(TYPE_CMLCRF);
+            writer.writeInt(cmlcrf.getNumClasses());
+            writer.writeInt(cmlcrf.getNumFeatures());
+            writer.writeInt(cmlcrf.considerPair() ? 1 : 0);
+            writer.writeDouble(cmlcrf.getLossStrength());
+            writeMultiLabels(writer, cmlcrf.getSupportCombinations());
+            writer.writeDoubleBlock(cmlcrf.getWeights().getAllWeights());
+            writeLabelTranslator(writer, cmlcrf.getLabelTranslator());
+            writer.writeObject(cmlcrf.getFeatureList());
+        } else if (model instanceof CBM){
+            CBM cbm = (CBM) model;
+            writer.writeInt(TYPE_CBM);
+            writer.writeInt(cbm.getNumClasses());
+            writer.writeInt(cbm.getNumComponents());
+            writer.writeInt(cbm.getNumFeatures());
+            writer.writeInt(cbm.getNumSample());
+            writer.writeInt(cbm.getAllowEmpty() ? 1 : 0);
+            writer.writeString(cbm.getPredictMode());
+            writer.writeString(cbm.getBinaryClassifierType());
+            writer.writeString(cbm.getMultiClassClassifierType());
+            writeMultiLabels(writer, cbm.getSupport());
+            writeModel(writer, cbm.getMultiClassClassifier());
+            Classifier.ProbabilityEstimator[][] binaryClassifiers = cbm.getBinaryClassifiers();
+            for (int k=0;k<cbm.getNumComponents();k++){
+                for (int l=0;l<cbm.getNumClasses();l++){
+                    writeModel(writer, binaryClassifiers[k][l]);
+                }
+            }
+        } else if (model instanceof PriorProbClassifier){
+            PriorProbClassifier priorProbClassifier = (PriorProbClassifier) model;
+            writer.writeInt(TYPE_PRIOR);
+            double[] probs = priorProbClassifier.getClassProbs();
+            writer.writeInt(probs.length);
+            writer.writeDoubles(probs);
+        } else {
+            throw new IllegalArgumentException("cannot save "+model.getClass().getSimpleName());
+        }
+    }
+
+    private static List<List<Regressor>> getRegressors(GradientBoosting boosting){
+        List<List<Regressor>> regressors = new ArrayList<>();
+        for (int k=0;k<boosting.getNumEnsembles();k++){
+            regressors.add(boosting.getEnsemble(k).getRegressors());
+        }
+        return regressors;
+    }
+
+    /**
+     * numEnsembles, ensemble sizes, numRegressors, roots, constants, numNodes, node arrays
+     */
+    private static void writeRegressors(Writer writer, List<List<Regressor>> regressors) throws IOException{
+        FlatTrees flatTrees = new FlatTrees(regressors);
+        writer.writeInt(regressors.size());
+        for (List<Regressor> ensemble: regressors){
+            writer.writeInt(ensemble.size());
+        }
+        writer.writeInt(flatTrees.roots.length);
+        writer.writeInts(flatTrees.roots);
+        writer.writeDoubles(flatTrees.constants);
+        writer.writeInt(flatTrees.numNodes);
+        writer.writeInts(flatTrees.featureIndices);
+        writer.writeInts(flatTrees.leftChildren);
+        writer.writeInts(flatTrees.rightChildren);
+        writer.writeDoubles(flatTrees.thresholds);
+        writer.writeDoubles(flatTrees.leftProbs);
+        writer.writeDoubles(flatTrees.rightProbs);
+        writer.writeDoubles(flatTrees.reductions);
+        writer.writeDoubles(flatTrees.values);
+    }
+
+    /**
+     * -1 for null
+     */
+    private static void writeMultiLabels(Writer writer, List<MultiLabel> multiLabels) throws IOException{
+        if (multiLabels==null){
+            writer.writeInt(-1);
+            return;
+        }
+        writer.writeInt(multiLabels.size());
+        for (MultiLabel multiLabel: multiLabels){
+            List<Integer> labels = multiLabel.getMatchedLabelsOrdered();
+            writer.writeInt(labels.size());
+            for (int label: labels){
+                writer.writeInt(label);
+            }
+        }
+    }
+
+    private static void writeLabelTranslator(Writer writer, LabelTranslator labelTranslator) throws IOException{
+        if (labelTranslator==null){
+            writer.writeInt(-1);
+            return;
+        }
+        writer.writeInt(labelTranslator.getNumClasses());
+        for (int k=0;k<labelTranslator.getNumClasses();k++){
+            writer.writeString(labelTranslator.toExtLabel(k));
+        }
+    }
+
+    //==========read==========
+
+    private static LKBoost readLKBoost(Reader reader) throws IOException{
+        int numClasses = reader.readInt();
+        LKBoost lkBoost = new LKBoost(numClasses);
+        List<List<Regressor>> regressors = readRegressors(reader);
+        for (int k=0;k<numClasses;k++){
+            lkBoost.getEnsemble(k).getRegressors().addAll(regressors.get(k));
+        }
+        lkBoost.setLabelTranslator(readLabelTranslator(reader));
+        lkBoost.setFeatureList((FeatureList) reader.readObject());
+        setFeatureList(regressors, lkBoost.getFeatureList());
+        return lkBoost;
+    }
+
+    private static LSBoost readLSBoost(Reader reader) throws IOException{
+        LSBoost lsBoost = new LSBoost();
+        List<List<Regressor>> regressors = readRegressors(reader);
+        lsBoost.getEnsemble(0).getRegressors().addAll(regressors.get(0));
+        lsBoost.setFeatureList((FeatureList) reader.readObject());
+        setFeatureList(regressors, lsBoost.getFeatureList());
+        return lsBoost;
+    }
+
+    private static IMLGradientBoosting readIMLGradientBoosting(Reader reader) throws IOException{
+        int numClasses = reader.readInt();
+        IMLGradientBoosting boosting = new IMLGradientBoosting(numClasses);
+        List<List<Regressor>> regressors = readRegressors(reader);
+        for (int k=0;k<numClasses;k++){
+            boosting.getRegressors(k).addAll(regressors.get(k));
+        }
+        boosting.setAssignments(readMultiLabels(reader));
+        boosting.setLabelTranslator(readLabelTranslator(reader));
+        boosting.setFeatureList((FeatureList) reader.readObject());
+        setFeatureList(regressors, boosting.getFeatureList());
+        return boosting;
+    }
+
+    private static LogisticRegression readLogisticRegression(Reader reader) throws IOException{
+        int numClasses = reader.readInt();
+        int numFeatures = reader.readInt();
+        Vector weights = reader.readDoubleBlock((numFeatures+1)*numClasses);
+        LogisticRegression logisticRegression = new LogisticRegression(numClasses, numFeatures, weights);
+        logisticRegression.setLabelTranslator(readLabelTranslator(reader));
+        logisticRegression.setFeatureList((FeatureList) reader.readObject());
+        return logisticRegression;
+    }
+
+    private static CMLCRF readCMLCRF(Reader reader) throws IOException{
+        int numClasses = reader.readInt();
+        int numFeatures = reader.readInt();
+        boolean considerPair = reader.readInt()==1;
+        double lossStrength = reader.readDouble();
+        List<MultiLabel> supportCombinations = readMultiLabels(reader);
+        int numWeights = (numFeatures + 1) * numClasses + (numClasses * (numClasses-1)/2) * 4;
+        Vector weightVector = reader.readDoubleBlock(numWeights);
+        edu.neu.ccs.pyramid.multilabel_classification.crf.Weights weights =
+                new edu.neu.ccs.pyramid.multilabel_classification.crf.Weights(numClasses, numFeatures, weightVector);
+        CMLCRF cmlcrf = new CMLCRF(numClasses, numFeatures, supportCombinations, weights);
+        cmlcrf.setLossStrength(lossStrength);
+        // also updates the label part scores
+        cmlcrf.setConsiderPair(considerPair);
+        cmlcrf.setLabelTranslator(readLabelTranslator(reader));
+        cmlcrf.setFeatureList((FeatureList) reader.readObject());
+        return cmlcrf;
+    }
+
+    private static CBM readCBM(Reader reader) throws IOException{
+        int numClasses = reader.readInt();
+        int numComponents = reader.readInt();
+        int numFeatures = reader.readInt();
+        int numSample = reader.readInt();
+        boolean allowEmpty = reader.readInt()==1;
+        String predictMode = reader.readString();
+        String binaryClassifierType = reader.readString();
+        String multiClassClassifierType = reader.readString();
+        List<MultiLabel> support = readMultiLabels(reader);
+        Classifier.ProbabilityEstimator multiClassClassifier = (Classifier.ProbabilityEstimator) reader.readModel();
+        CBM cbm = CBM.getBuilder()
+                .setNumClasses(numClasses)
+                .setNumComponents(numComponents)
+                .setNumFeatures(numFeatures)
+                .setBinaryClassifierType(binaryClassifierType)
+                .setMultiClassClassifierType(multiClassClassifierType)
+                .setSupport(support)
+                .setMultiClassClassifier(multiClassClassifier)
+                .build();
+        cbm.setNumSample(numSample);
+        cbm.setAllowEmpty(allowEmpty);
+        cbm.setPredictMode(predictMode);
+        Classifier.ProbabilityEstimator[][] binaryClassifiers = cbm.getBinaryClassifiers();
+        for (int k=0;k<numComponents;k++){
+            for (int l=0;l<numClasses;l++){
+                binaryClassifiers[k][l] = (Classifier.ProbabilityEstimator) reader.readModel();
+            }
+        }
+        return cbm;
+    }
+
+    private static PriorProbClassifier readPriorProbClassifier(Reader reader) throws IOException{
+        int numClasses = reader.readInt();
+        return new PriorProbClassifier(reader.readDoubles(numClasses));
+    }
+
+    /**
+     * regressors.get(k) is a new list for ensemble k
+     */
+    private static List<List<Regressor>> readRegressors(Reader reader) throws IOException{
+        int numEnsembles = reader.readInt();
+        int[] ensembleSizes = reader.readInts(numEnsembles);
+        int numRegressors = reader.readInt();
+        int[] roots = reader.readInts(numRegressors);
+        double[] constants = reader.readDoubles(numRegressors);
+        int numNodes = reader.readInt();
+        int[] featureIndices = reader.readInts(numNodes);
+        int[] leftChildren = reader.readInts(numNodes);
+        int[] rightChildren = reader.readInts(numNodes);
+        double[] thresholds = reader.readDoubles(numNodes);
+        double[] leftProbs = reader.readDoubles(numNodes);
+        double[] rightProbs = reader.readDoubles(numNodes);
+        double[] reductions = reader.readDoubles(numNodes);
+        double[] values = reader.readDoubles(numNodes);
+
+        List<List<Regressor>> regressors = new ArrayList<>(numEnsembles);
+        int r = 0;
+        for (int k=0;k<numEnsembles;k++){
+            List<Regressor> ensemble = new ArrayList<>(ensembleSizes[k]);
+            for (int i=0;i<ensembleSizes[k];i++){
+                if (roots[r]==NO_ROOT){
+                    ensemble.add(new ConstantRegressor(constants[r]));
+                } else {
+                    ensemble.add(RegressionTree.newTree(roots[r], featureIndices, thresholds, leftChildren, rightChildren,
+                            leftProbs, rightProbs, reductions, values));
+                }
+                r += 1;
+            }
+            regressors.add(ensemble);
+        }
+        return regressors;
+    }
+
+    /**
+     * trees are read before the feature list of their model
+     */
+    private static void setFeatureList(List<List<Regressor>> regressors, FeatureList featureList){
+        for (List<Regressor> ensemble: regressors){
+            for (Regressor regressor: ensemble){
+                if (regressor instanceof RegressionTree){
+                    ((RegressionTree) regressor).setFeatureList(featureList);
+                }
+            }
+        }
+    }
+
+    private static List<MultiLabel> readMultiLabels(Reader reader) throws IOException{
+        int size = reader.readInt();
+        if (size==-1){
+            return null;
+        }
+        List<MultiLabel> multiLabels = new ArrayList<>(size);
+        for (int i=0;i<size;i++){
+            int numLabels = reader.readInt();
+            MultiLabel multiLabel = new MultiLabel();
+            for (int l=0;l<numLabels;l++){
+                multiLabel.addLabel(reader.readInt());
+            }
+            multiLabels.add(multiLabel);
+        }
+        return multiLabels;
+    }
+
+    private static LabelTranslator readLabelTranslator(Reader reader) throws IOException{
+        int numClasses = reader.readInt();
+        if (numClasses==-1){
+            return null;
+        }
+        List<String> extLabels = new ArrayList<>(numClasses);
+        for (int k=0;k<numClasses;k++){
+            extLabels.add(reader.readString());
+        }
+        return new LabelTranslator(extLabels);
+    }
+
+    private static long align(long position){
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * all trees of a boosting model in one set of node arrays
+     */
+    private static class FlatTrees {
+        private int[] roots;
+        private double[] constants;
+        private int numNodes;
+        private int[] featureIndices;
+        private int[] leftChildren;
+        private int[] rightChildren;
+        private double[] thresholds;
+        private double[] leftProbs;
+        private double[] rightProbs;
+        private double[] reductions;
+        private double[] values;
+
+        FlatTrees(List<List<Regressor>> regressors) {
+            int numRegressors = 0;
+            int totalNodes = 0;
+            for (List<Regressor> ensemble: regressors){
+                for (Regressor regressor: ensemble){
+                    numRegressors += 1;
+                    if (regressor instanceof RegressionTree){
+                        totalNodes += countNodes(((RegressionTree) regressor).getRoot());
+                    } else if (!(regressor instanceof ConstantRegressor)){
+                        throw new IllegalArgumentException("cannot save "+regressor.getClass().getSimpleName());
+                    }
+                }
+            }
+            roots = new int[numRegressors];
+            constants = new double[numRegressors];
+            featureIndices = new int[totalNodes];
+            leftChildren = new int[totalNodes];
+            rightChildren = new int[totalNodes];
+            thresholds = new double[totalNodes];
+            leftProbs = new double[totalNodes];
+            rightProbs = new double[totalNodes];
+            reductions = new double[totalNodes];
+            values = new double[totalNodes];
+            int r = 0;
+            for (List<Regressor> ensemble: regressors){
+                for (Regressor regressor: ensemble){
+                    if (regressor instanceof RegressionTree){
+                        roots[r] = add(((RegressionTree) regressor).getRoot());
+                    } else {
+                        roots[r] = NO_ROOT;
+                        constants[r] = ((ConstantRegressor) regressor).getScore();
+                    }
+                    r += 1;
+                }
+            }
+        }
+
+        private static int countNodes(Node node){
+            if (node.isLeaf()){
+                return 1;
+            }
+            return 1 + countNodes(node.getLeftChild()) + countNodes(node.getRightChild());
+        }
+
+        /**
+         * pre-order
+         * @return position of the node
+         */
+        private int add(Node node){
+            int position = numNodes;
+            numNodes += 1;
+            values[position] = node.getValue();
+            reductions[position] = node.getReduction();
+            if (node.isLeaf()){
+                leftChildren[position] = NO_CHILD;
+                rightChildren[position] = NO_CHILD;
+                return position;
+            }
+            featureIndices[position] = node.getFeatureIndex();
+            thresholds[position] = node.getThreshold();
+            leftProbs[position] = node.getLeftProb();
+            rightProbs[position] = node.getRightProb();
+            leftChildren[position] = add(node.getLeftChild());
+            rightChildren[position] = add(node.getRightChild());
+            return position;
+        }
+    }
+
+    /**
+     * buffered output keeping track of the byte position
+     */
+    private static class Writer implements Closeable {
+        private DataOutputStream out;
+        private long position;
+
+        Writer(File file) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<20));
+        }
+
+        void writeInt(int v) throws IOException {
+            out.writeInt(v);
+            position += 4;
+        }
+
+        void writeLong(long v) throws IOException {
+            out.writeLong(v);
+            position += 8;
+        }
+
+        void writeDouble(double v) throws IOException {
+            out.writeDouble(v);
+            position += 8;
+        }
+
+        void writeInts(int[] array) throws IOException {
+            for (int v: array){
+                writeInt(v);
+            }
+        }
+
+        void writeDoubles(double[] array) throws IOException {
+            for (double v: array){
+                writeDouble(v);
+            }
+        }
+
+        /**
+         * size, padding, values
+         */
+        void writeDoubleBlock(Vector vector) throws IOException {
+            writeInt(vector.size());
+            while (position!=align(position)){
+                out.writeByte(0);
+                position += 1;
+            }
+            for (int i=0;i<vector.size();i++){
+                writeDouble(vector.getQuick(i));
+            }
+        }
+
+        /**
+         * utf-8, prefixed by length; -1 for null
+         */
+        void writeString(String string) throws IOException {
+            if (string==null){
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            out.write(bytes);
+            position += bytes.length;
+        }
+
+        /**
+         * java serialization, prefixed by length; 0 for null
+         */
+        void writeObject(Object object) throws IOException {
+            if (object==null){
+                writeLong(0);
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes)){
+                objectOutputStream.writeObject(object);
+            }
+            writeLong(bytes.size());
+            bytes.writeTo(out);
+            position += bytes.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * sequential reads through a buffer; in mapped mode, double blocks are views on a mapping of the whole file
+     */
+    private static class Reader implements Closeable {
+        private File file;
+        private FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1<<20);
+        // position of the next byte to return
+        private long position;
+        // position of the next byte to read from the channel
+        private long channelPosition;
+        private boolean mapped;
+        private MappedDoubleArray fileAsDoubles;
+
+        Reader(File file, boolean mapped) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.mapped = mapped;
+            buffer.limit(0);
+        }
+
+        Object readFile() throws IOException {
+            if (channel.size()<8 || readInt()!=MAGIC){
+                throw new IOException(file+" is not a model file");
+            }
+            int version = readInt();
+            if (version!=VERSION){
+                throw new IOException("unsupported model file version "+version);
+            }
+            return readModel();
+        }
+
+        Object readModel() throws IOException {
+            int type = readInt();
+            switch (type){
+                case TYPE_NULL:
+                    return null;
+                case TYPE_LKBOOST:
+                    return readLKBoost(this);
+                case TYPE_LSBOOST:
+                    return readLSBoost(this);
+                case TYPE_IMLGB:
+                    return readIMLGradientBoosting(this);
+                case TYPE_LOGISTIC_REGRESSION:
+                    return readLogisticRegression(this);
+                case TYPE_CMLCRF:
+                    return readCMLCRF(this);
+                case TYPE_CBM:
+                    return readCBM(this);
+                case TYPE_PRIOR:
+                    return readPriorProbClassifier(this);
+                default:
+                    throw new IOException("unknown model type "+type);
+            }
+        }
+
+        /**
+         * make at least n bytes available in the buffer
+         */
+        private void ensure(int n) throws IOException {
+            if (buffer.remaining()>=n){
+                return;
+            }
+            buffer.compact();
+            while (buffer.position()<n){
+                int read = channel.read(buffer, channelPosition);
+                if (read<0){
+                    throw new EOFException("unexpected end of "+file);
+                }
+                channelPosition += read;
+            }
+            buffer.flip();
+        }
+
+        private void skip(long n) throws IOException {
+            if (n<=buffer.remaining()){
+                buffer.position(buffer.position()+(int)n);
+            } else {
+                channelPosition = position + n;
+                buffer.limit(0);
+            }
+            position += n;
+        }
+
+        int readInt() throws IOException {
+            ensure(4);
+            position += 4;
+            return buffer.getInt();
+        }
+
+        long readLong() throws IOException {
+            ensure(8);
+            position += 8;
+            return buffer.getLong();
+        }
+
+        double readDouble() throws IOException {
+            ensure(8);
+            position += 8;
+            return buffer.getDouble();
+        }
+
+        int[] readInts(int length) throws IOException {
+            int[] array = new int[length];
+            int p = 0;
+            while (p<length){
+                ensure(4);
+                int count = Math.min(length-p, buffer.remaining()/4);
+                buffer.asIntBuffer().get(array, p, count);
+                buffer.position(buffer.position()+count*4);
+                position += count*4L;
+                p += count;
+            }
+            return array;
+        }
+
+        double[] readDoubles(int length) throws IOException {
+            double[] array = new double[length];
+            int p = 0;
+            while (p<length){
+                ensure(8);
+                int count = Math.min(length-p, buffer.remaining()/8);
+                buffer.asDoubleBuffer().get(array, p, count);
+                buffer.position(buffer.position()+count*8);
+                position += count*8L;
+                p += count;
+            }
+            return array;
+        }
+
+        Vector readDoubleBlock(int expectedSize) throws IOException {
+            int size = readInt();
+            if (size!=expectedSize){
+                throw new IOException("expected "+expectedSize+" weights, found "+size);
+            }
+            skip(align(position)-position);
+            if (!mapped){
+                return new DenseVector(readDoubles(size), true);
+            }
+            if (fileAsDoubles==null){
+                long length = channel.size()/8;
+                if (length>Integer.MAX_VALUE){
+                    throw new IOException(file+" is too large to be mapped");
+                }
+                fileAsDoubles = new MappedDoubleArray(channel, 0, (int) length);
+            }
+            Vector vector = new MappedDenseVector(fileAsDoubles, (int)(position/8), size);
+            skip(8L*size);
+            return vector;
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length==-1){
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            int p = 0;
+            while (p<length){
+                ensure(1);
+                int count = Math.min(length-p, buffer.remaining());
+                buffer.get(bytes, p, count);
+                position += count;
+                p += count;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Object readObject() throws IOException {
+            long length = readLong();
+            if (length==0){
+                return null;
+            }
+            if (length>Integer.MAX_VALUE){
+                throw new IOException("object is too large: "+length);
+            }
+            byte[] bytes = new byte[(int) length];
+            int p = 0;
+            while (p<length){
+                ensure(1);
+                int count = Math.min((int)length-p, buffer.remaining());
+                buffer.get(bytes, p, count);
+                position += count;
+                p += count;
+            }
+            try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes))){
+                return objectInputStream.readObject();
+            } catch (ClassNotFoundException e){
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package edu.neu.ccs.pyramid.classification.logistic_regression;
+
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+
+public class PackedLinearScorerTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    /**
+     * packed scores should be the same as predictClassScores
+     */
+    private static void test1(){
+        LogisticRegression logisticRegression = new LogisticRegression(5, 1000, true);
+        PackedLinearScorer scorer = logisticRegression.pack();
+        Random random = new Random(0);
+        Vector vector = new RandomAccessSparseVector(1000);
+        for (int j=0;j<30;j++){
+            vector.set(random.nextInt(1000), random.nextGaussian());
+        }
+        double[] expected = logisticRegression.predictClassScores(vector);
+        double[] scores = scorer.score(vector);
+        double maxDiff = 0;
+        for (int k=0;k<expected.length;k++){
+            maxDiff = Math.max(maxDiff, Math.abs(expected[k]-scores[k]));
+        }
+        System.out.println("max difference with predictClassScores = "+maxDiff);
+    }
+
+    /**
+     * log odds column of a binary logistic regression
+     */
+    private static void test2(){
+        LogisticRegression logisticRegression = new LogisticRegression(2, 100, true);
+        PackedLinearScorer scorer = new PackedLinearScorer(100, 1);
+        scorer.setLogOddsColumn(0, logisticRegression);
+        Vector vector = new RandomAccessSparseVector(100);
+        vector.set(3, 1.5);
+        vector.set(70, -2);
+        double[] logProbs = logisticRegression.predictLogClassProbs(vector);
+        System.out.println("difference of log odds = "+Math.abs(logProbs[1]-logProbs[0]-scorer.score(vector)[0]));
+    }
+}
@@ -2,12 +2,17 @@ package edu.neu.ccs.pyramid.clustering.bm;
 
 import edu.neu.ccs.pyramid.dataset.DataSet;
 import edu.neu.ccs.pyramid.dataset.DataSetBuilder;
+import edu.neu.ccs.pyramid.dataset.Density;
+import edu.neu.ccs.pyramid.dataset.MultiLabel;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
+import java.util.Random;
+
 public class BMSelectorTest {
     public static void main(String[] args) {
         test1();
+        test2();
     }
 
     private static void test1(){
@@ -58,4 +63,36 @@ public class BMSelectorTest {
 
     }
 
+
+    /**
+     * gammas from distinct label sets should be the same as gammas from all rows
+     */
+    private static void test2(){
+        Random random = new Random(0);
+        MultiLabel[] multiLabels = new MultiLabel[1000];
+        for (int i=0;i<multiLabels.length;i++){
+            multiLabels[i] = new MultiLabel();
+            for (int l=0;l<6;l++){
+                if (random.nextDouble()<(l<3 ? 0.5 : 0.1)){
+                    multiLabels[i].addLabel(l);
+                }
+            }
+        }
+        DataSet labelMatrix = DataSetBuilder.getBuilder().numDataPoints(multiLabels.length).numFeatures(6)
+                .density(Density.SPARSE_RANDOM).build();
+        for (int i=0;i<multiLabels.length;i++){
+            for (int l: multiLabels[i].getMatchedLabels()){
+                labelMatrix.setFeatureValue(i,l,1);
+            }
+        }
+        double[][] gammas = BMSelector.selectGammas(labelMatrix, multiLabels, 3);
+        double[][] expected = BMSelector.selectTrainer(labelMatrix, 3, 10).getGammas();
+        double maxDiff = 0;
+        for (int i=0;i<multiLabels.length;i++){
+            for (int k=0;k<3;k++){
+                maxDiff = Math.max(maxDiff, Math.abs(gammas[i][k]-expected[i][k]));
+            }
+        }
+        System.out.println("max difference of gammas = "+maxDiff);
+    }
 }
\ No newline at end of file
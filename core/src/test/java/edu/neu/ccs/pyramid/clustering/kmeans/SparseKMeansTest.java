@@ -0,0 +1,182 @@
+package edu.neu.ccs.pyramid.clustering.kmeans;
+
+import edu.neu.ccs.pyramid.dataset.DataSet;
+import edu.neu.ccs.pyramid.dataset.SparseDataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+
+public class SparseKMeansTest {
+    private static final int NUM_CLUSTERS = 5;
+
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    /**
+     * full batch with Hamerly's bounds should follow plain Lloyd iterations from the same centers
+     */
+    private static void test1(){
+        int[] truth = new int[4000];
+        DataSet dataSet = blobs(truth, 1);
+        SparseKMeans kMeans = new SparseKMeans(NUM_CLUSTERS, dataSet).setRandomSeed(3);
+        kMeans.randomInitialize();
+        double[][] centers = toArrays(kMeans.getCenters());
+        int[] lloyd = new int[dataSet.getNumDataPoints()];
+        lloydAssign(dataSet, centers, lloyd);
+        int numDataPoints = dataSet.getNumDataPoints();
+        int numMismatches = countMismatches(lloyd, kMeans.getAssignments());
+        int numIterations = 0;
+        long before = kMeans.getNumDistances();
+        for (int iter=0;iter<50;iter++){
+            int numChanges = kMeans.iterate();
+            lloydUpdate(dataSet, centers, lloyd);
+            lloydAssign(dataSet, centers, lloyd);
+            numMismatches += countMismatches(lloyd, kMeans.getAssignments());
+            numIterations += 1;
+            if (numChanges==0){
+                break;
+            }
+        }
+        System.out.println("iterations = "+numIterations+", assignments different from Lloyd = "+numMismatches);
+        System.out.println("distances computed = "+(kMeans.getNumDistances()-before)
+                +", by Lloyd = "+(long)numIterations*numDataPoints*NUM_CLUSTERS);
+        System.out.println("purity = "+purity(kMeans.getAssignments(), truth));
+    }
+
+    /**
+     * mini-batch should reach about the same objective as full batch
+     */
+    private static void test2(){
+        int[] truth = new int[4000];
+        DataSet dataSet = blobs(truth, 2);
+        SparseKMeans full = new SparseKMeans(NUM_CLUSTERS, dataSet).setRandomSeed(5);
+        full.kmeansPlusPlusInitialize();
+        for (int iter=0;iter<100;iter++){
+            if (full.iterate()==0){
+                break;
+            }
+        }
+        SparseKMeans miniBatch = new SparseKMeans(NUM_CLUSTERS, dataSet).setRandomSeed(5).setBatchSize(100);
+        miniBatch.kmeansPlusPlusInitialize();
+        for (int iter=1;iter<=400;iter++){
+            miniBatch.iterate();
+            if (iter%100==0){
+                miniBatch.assign();
+                System.out.println("mini-batch iteration "+iter+", objective = "+miniBatch.objective());
+            }
+        }
+        System.out.println("full batch objective = "+full.objective());
+        System.out.println("full batch purity = "+purity(full.getAssignments(), truth)
+                +", mini-batch purity = "+purity(miniBatch.getAssignments(), truth));
+    }
+
+    /**
+     * sparse gaussian blobs; each blob uses its own block of features plus a few shared noisy features
+     */
+    private static DataSet blobs(int[] truth, long seed){
+        int numDataPoints = truth.length;
+        int blockSize = 10;
+        int numFeatures = NUM_CLUSTERS*blockSize+20;
+        Random random = new Random(seed);
+        SparseDataSet dataSet = new SparseDataSet(numDataPoints, numFeatures, false);
+        for (int i=0;i<numDataPoints;i++){
+            int cluster = random.nextInt(NUM_CLUSTERS);
+            truth[i] = cluster;
+            for (int j=cluster*blockSize;j<(cluster+1)*blockSize;j++){
+                if (random.nextDouble()<0.6){
+                    dataSet.setFeatureValue(i, j, 1+0.3*random.nextGaussian());
+                }
+            }
+            for (int j=NUM_CLUSTERS*blockSize;j<numFeatures;j++){
+                if (random.nextDouble()<0.1){
+                    dataSet.setFeatureValue(i, j, random.nextGaussian());
+                }
+            }
+        }
+        return dataSet;
+    }
+
+    private static double[][] toArrays(Vector[] vectors){
+        double[][] arrays = new double[vectors.length][];
+        for (int k=0;k<vectors.length;k++){
+            arrays[k] = new double[vectors[k].size()];
+            for (int j=0;j<arrays[k].length;j++){
+                arrays[k][j] = vectors[k].get(j);
+            }
+        }
+        return arrays;
+    }
+
+    private static void lloydAssign(DataSet dataSet, double[][] centers, int[] assignments){
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            Vector row = dataSet.getRow(i);
+            int best = 0;
+            double bestDistance = Double.POSITIVE_INFINITY;
+            for (int k=0;k<centers.length;k++){
+                double distance = 0;
+                for (int j=0;j<centers[k].length;j++){
+                    double diff = row.get(j)-centers[k][j];
+                    distance += diff*diff;
+                }
+                if (distance<bestDistance){
+                    bestDistance = distance;
+                    best = k;
+                }
+            }
+            assignments[i] = best;
+        }
+    }
+
+    /**
+     * empty clusters keep their centers
+     */
+    private static void lloydUpdate(DataSet dataSet, double[][] centers, int[] assignments){
+        double[][] sums = new double[centers.length][centers[0].length];
+        int[] counts = new int[centers.length];
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            counts[assignments[i]] += 1;
+            for (Vector.Element element: dataSet.getRow(i).nonZeroes()){
+                sums[assignments[i]][element.index()] += element.get();
+            }
+        }
+        for (int k=0;k<centers.length;k++){
+            if (counts[k]==0){
+                continue;
+            }
+            for (int j=0;j<centers[k].length;j++){
+                centers[k][j] = sums[k][j]/counts[k];
+            }
+        }
+    }
+
+    private static int countMismatches(int[] expected, int[] actual){
+        int count = 0;
+        for (int i=0;i<expected.length;i++){
+            if (expected[i]!=actual[i]){
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * fraction of data points in the majority blob of their cluster
+     */
+    private static double purity(int[] assignments, int[] truth){
+        int[][] counts = new int[NUM_CLUSTERS][NUM_CLUSTERS];
+        for (int i=0;i<assignments.length;i++){
+            counts[assignments[i]][truth[i]] += 1;
+        }
+        int correct = 0;
+        for (int[] row: counts){
+            int max = 0;
+            for (int count: row){
+                max = Math.max(max, count);
+            }
+            correct += max;
+        }
+        return ((double) correct)/assignments.length;
+    }
+}
@@ -0,0 +1,46 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import edu.neu.ccs.pyramid.configuration.Config;
+
+import java.io.File;
+
+public class BinaryFormatTest {
+    private static final Config config = new Config("config/local.properties");
+    private static final String DATASETS = config.getString("input.datasets");
+    private static final String TMP = config.getString("output.tmp");
+
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+    }
+
+    static void test1() throws Exception{
+        ClfDataSet clfDataSet = new SparseClfDataSet(5,3,false,6);
+        clfDataSet.setFeatureValue(0,0,3.5);
+        clfDataSet.setFeatureValue(1,2,5.5);
+        clfDataSet.setFeatureValue(4,1,2.5);
+        clfDataSet.setFeatureValue(4,2,5.5);
+        clfDataSet.setLabel(0, 1);
+        clfDataSet.setLabel(1,2);
+        clfDataSet.setLabel(2,3);
+        clfDataSet.setLabel(3,5);
+        clfDataSet.setLabel(4,2);
+        BinaryFormat.save(clfDataSet,new File(TMP,"tmp_clfdata.bin"));
+        ClfDataSet loaded = BinaryFormat.loadClfDataSet(new File(TMP,"tmp_clfdata.bin").getAbsolutePath());
+        System.out.println(loaded.getMetaInfo());
+        for (int i=0;i<loaded.getNumDataPoints();i++){
+            System.out.println(loaded.getLabels()[i]+" "+loaded.getRow(i));
+        }
+        System.out.println(loaded.getColumn(2));
+    }
+
+    static void test2() throws Exception{
+        File binaryFile = new File(TMP,"spam.bin");
+        BinaryFormat.convertTRECClfDataSet(new File(DATASETS,"spam/trec_data/train.trec").getAbsolutePath(),
+                binaryFile.getAbsolutePath());
+        long start = System.currentTimeMillis();
+        ClfDataSet dataSet = BinaryFormat.loadClfDataSet(binaryFile.getAbsolutePath());
+        System.out.println("loading takes "+(System.currentTimeMillis()-start)+" ms");
+        System.out.println(dataSet.getMetaInfo());
+    }
+}
@@ -0,0 +1,119 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class CompactDataSetTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+        test4();
+    }
+
+    static void test1(){
+        CompactDataSet dataSet = new CompactDataSet(10,5,false);
+        dataSet.setFeatureValue(1,4,-0.9);
+        dataSet.setFeatureValue(1,3,-0.9);
+        dataSet.setFeatureValue(1,4,-60.9);
+        dataSet.setFeatureValue(7,4,18);
+        dataSet.setFeatureValue(7,2,5);
+        dataSet.setFeatureValue(7,2,0);
+        System.out.println(dataSet);
+        System.out.println(dataSet.getRow(1));
+        System.out.println(dataSet.getRow(2));
+        System.out.println(dataSet.getRow(7));
+        System.out.println(dataSet.getColumn(4));
+        // in place
+        dataSet.setFeatureValue(7,4,20);
+        System.out.println(dataSet.getColumn(4));
+        // new non-zero
+        dataSet.setFeatureValue(3,0,1);
+        System.out.println(dataSet.getColumn(0));
+    }
+
+    /**
+     * should agree with SparseDataSet, rows filled in parallel
+     */
+    static void test2(){
+        int numData = 2000;
+        int numFeatures = 300;
+        Random random = new Random(0);
+        SparseDataSet sparse = new SparseDataSet(numData,numFeatures,false);
+        for (int i=0;i<numData;i++){
+            for (int j=0;j<numFeatures;j++){
+                if (random.nextDouble()<0.05){
+                    sparse.setFeatureValue(i,j,random.nextGaussian());
+                }
+            }
+        }
+        CompactDataSet compact = (CompactDataSet) DataSetBuilder.getBuilder().numDataPoints(numData)
+                .numFeatures(numFeatures).density(Density.SPARSE_COMPACT).build();
+        IntStream.range(0,numData).parallel().forEach(i -> compact.setRow(i,sparse.getRow(i)));
+        double maxDiff = 0;
+        for (int i=0;i<numData;i++){
+            maxDiff = Math.max(maxDiff,compact.getRow(i).minus(sparse.getRow(i)).norm(1));
+        }
+        for (int j=0;j<numFeatures;j++){
+            maxDiff = Math.max(maxDiff,compact.getColumn(j).minus(sparse.getColumn(j)).norm(1));
+            for (Vector.Element element: compact.getColumn(j).nonZeroes()){
+                maxDiff = Math.max(maxDiff,Math.abs(element.get()-sparse.getColumn(j).get(element.index())));
+            }
+        }
+        System.out.println("max difference = "+maxDiff);
+        System.out.println("number of non-zeros = "+compact.getNumNonZeros());
+    }
+
+    static void test3(){
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder().numDataPoints(3).numFeatures(4)
+                .numClasses(2).density(Density.SPARSE_COMPACT).build();
+        dataSet.setFeatureValue(0,1,1);
+        dataSet.setFeatureValue(2,3,2);
+        dataSet.addLabel(0,1);
+        System.out.println(dataSet.getMetaInfo());
+        System.out.println(dataSet);
+        ClfDataSet clfDataSet = ClfDataSetBuilder.getBuilder().numDataPoints(3).numFeatures(4)
+                .numClasses(2).density(Density.SPARSE_COMPACT).build();
+        System.out.println(clfDataSet.getMetaInfo());
+    }
+
+    /**
+     * after compaction, parallel writers mix in-place updates and new non-zeros,
+     * which switch the data set back to the buffered form
+     */
+    static void test4(){
+        int numData = 2000;
+        int numFeatures = 50;
+        CompactDataSet compact = new CompactDataSet(numData,numFeatures,false);
+        for (int i=0;i<numData;i++){
+            compact.setFeatureValue(i,i%numFeatures,1);
+        }
+        compact.compact();
+        IntStream.range(0,numData).parallel().forEach(i -> {
+            for (int j=0;j<numFeatures;j++){
+                if (j==i%numFeatures){
+                    compact.setFeatureValue(i,j,2);
+                } else if (j%10==i%10){
+                    compact.setFeatureValue(i,j,i+j);
+                }
+            }
+        });
+        int numErrors = 0;
+        for (int i=0;i<numData;i++){
+            for (int j=0;j<numFeatures;j++){
+                double expected = 0;
+                if (j==i%numFeatures){
+                    expected = 2;
+                } else if (j%10==i%10){
+                    expected = i+j;
+                }
+                if (compact.getRow(i).get(j)!=expected||compact.getColumn(j).get(i)!=expected){
+                    numErrors += 1;
+                }
+            }
+        }
+        System.out.println("number of wrong entries = "+numErrors);
+    }
+}
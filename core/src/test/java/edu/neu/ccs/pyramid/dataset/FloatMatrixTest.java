@@ -0,0 +1,93 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.util.Arrays;
+
+public class FloatMatrixTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+        test4();
+    }
+
+    /**
+     * all storages should agree with a float[][]
+     */
+    private static void test1(){
+        int numDataPoints = 100;
+        int numClasses = 7;
+        FloatMatrix[] matrices = {new DenseFloatMatrix(numDataPoints,numClasses, FloatMatrix.Layout.ROW_MAJOR),
+                new DenseFloatMatrix(numDataPoints,numClasses, FloatMatrix.Layout.COLUMN_MAJOR),
+                new OffHeapFloatMatrix(numDataPoints,numClasses, FloatMatrix.Layout.ROW_MAJOR),
+                new OffHeapFloatMatrix(numDataPoints,numClasses, FloatMatrix.Layout.COLUMN_MAJOR),
+                new SparseFloatMatrix(numDataPoints,numClasses,0,0)};
+        float[][] expected = new float[numDataPoints][numClasses];
+        for (int i=0;i<numDataPoints;i++){
+            for (int k=0;k<numClasses;k++){
+                if ((i+k)%3==0){
+                    continue;
+                }
+                expected[i][k] = i*0.5f-k;
+                for (FloatMatrix matrix: matrices){
+                    matrix.set(i,k,i);
+                    matrix.increment(i,k,-i*0.5f-k);
+                }
+            }
+        }
+        for (FloatMatrix matrix: matrices){
+            boolean same = true;
+            float[] row = new float[numClasses];
+            for (int i=0;i<numDataPoints;i++){
+                matrix.getRow(i,row);
+                same = same && Arrays.equals(row,expected[i]);
+            }
+            System.out.println(matrix.getClass().getSimpleName()+" same = "+same);
+        }
+    }
+
+    /**
+     * small values are kept until compaction
+     */
+    private static void test2(){
+        SparseFloatMatrix matrix = new SparseFloatMatrix(3,1000,0,1E-4f);
+        matrix.set(0,10,0.5f);
+        matrix.set(0,20,0.00001f);
+        matrix.set(1,999,0.3f);
+        matrix.set(1,999,0);
+        System.out.println("active cells before compaction = "+matrix.getNumActiveCells());
+        matrix.compact();
+        System.out.println("active cells = "+matrix.getNumActiveCells());
+        System.out.println("matrix.get(0,10) = " + matrix.get(0,10));
+        System.out.println("matrix.get(0,20) = " + matrix.get(0,20));
+        ScoreMatrix scoreMatrix = new ScoreMatrix(matrix);
+        System.out.println("scoreMatrix.getScore(1,999) = " + scoreMatrix.getScore(1,999));
+    }
+
+    /**
+     * increments below the threshold should add up
+     */
+    private static void test3(){
+        SparseFloatMatrix matrix = new SparseFloatMatrix(1,5,0,1E-4f);
+        for (int t=0;t<100;t++){
+            matrix.increment(0,3,0.00001f);
+        }
+        System.out.println("matrix.get(0,3) = "+matrix.get(0,3)+", expected about 0.001");
+        matrix.compact();
+        System.out.println("matrix.get(0,3) after compaction = "+matrix.get(0,3));
+    }
+
+    /**
+     * gradients are doubles by default; float storage only through the factory
+     */
+    private static void test4(){
+        double gradient = 0.1+1E-12;
+        GradientMatrix doubles = GradientMatrix.create(2,3, GradientMatrix.Objective.MAXIMIZE, null);
+        GradientMatrix floats = GradientMatrix.create(2,3, GradientMatrix.Objective.MAXIMIZE,
+                DenseFloatMatrix.factory(FloatMatrix.Layout.COLUMN_MAJOR));
+        doubles.setGradient(1,2,gradient);
+        floats.setGradient(1,2,gradient);
+        System.out.println("double storage exact = "+(doubles.getGradientsForClass(2)[1]==gradient)
+                +", float storage = "+(floats.getStorage()!=null)
+                +", float error = "+Math.abs(floats.getGradientsForClass(2)[1]-gradient));
+    }
+}
@@ -0,0 +1,87 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class ParallelTextParserTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+        test3();
+    }
+
+    /**
+     * should agree with Double.parseDouble
+     */
+    static void test1(){
+        Random random = new Random(0);
+        int numMismatches = 0;
+        for (int i=0;i<100000;i++){
+            double d = random.nextGaussian()*Math.pow(10,random.nextInt(20)-10);
+            for (String s: new String[]{Double.toString(d),String.format("%.4f",d),String.format("%.3e",d)}){
+                byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+                if (ParallelTextParser.parseDouble(bytes,0,bytes.length)!=Double.parseDouble(s)){
+                    numMismatches += 1;
+                }
+            }
+        }
+        System.out.println("number of mismatches = "+numMismatches);
+    }
+
+    /**
+     * load a libsvm file and compare with the text
+     */
+    static void test2() throws Exception{
+        File file = File.createTempFile("libsvm",".txt");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)){
+            writer.write("1 1:0.5 3:2\n");
+            writer.write("-1  2:1.5\t4:-3 # comment 1:1\n");
+            writer.write("1\n");
+            writer.write("-1 4:1e-3");
+        }
+        System.out.println("number of lines = "+LibSvmFormat.getNumDataPoints(file.getAbsolutePath()));
+        ClfDataSet dataSet = LibSvmFormat.loadClfDataSet(file.getAbsolutePath(),4,2,false);
+        System.out.println(dataSet);
+    }
+
+    /**
+     * sparse and dense data sets are filled row by row in parallel;
+     * rows and columns should both match the file
+     */
+    static void test3() throws Exception{
+        int numData = 20000;
+        int numFeatures = 200;
+        Random random = new Random(1);
+        double[][] expected = new double[numData][numFeatures];
+        File file = File.createTempFile("libsvm",".txt");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)){
+            for (int i=0;i<numData;i++){
+                StringBuilder sb = new StringBuilder();
+                sb.append(i);
+                for (int j=0;j<numFeatures;j++){
+                    if (random.nextDouble()<0.05){
+                        expected[i][j] = random.nextInt(100)+1;
+                        sb.append(" ").append(j+1).append(":").append((int)expected[i][j]);
+                    }
+                }
+                writer.write(sb.append("\n").toString());
+            }
+        }
+        for (boolean dense: new boolean[]{false,true}){
+            RegDataSet dataSet = LibSvmFormat.loadRegDataSet(file.getAbsolutePath(),numFeatures,dense);
+            int numErrors = 0;
+            for (int i=0;i<numData;i++){
+                for (int j=0;j<numFeatures;j++){
+                    if (dataSet.getRow(i).get(j)!=expected[i][j]||dataSet.getColumn(j).get(i)!=expected[i][j]){
+                        numErrors += 1;
+                    }
+                }
+            }
+            System.out.println("dense = "+dense+", number of wrong entries = "+numErrors);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package edu.neu.ccs.pyramid.dataset;
+
+import org.apache.mahout.math.Vector;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class RowSubsetDataSetTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    private static double maxDifference(DataSet view, DataSet copy){
+        double maxDiff = 0;
+        for (int i=0;i<view.getNumDataPoints();i++){
+            for (int j=0;j<view.getNumFeatures();j++){
+                maxDiff = Math.max(maxDiff, Math.abs(view.getRow(i).get(j)-copy.getRow(i).get(j)));
+            }
+        }
+        for (int j=0;j<view.getNumFeatures();j++){
+            Vector column = view.getColumn(j);
+            if (column.getNumNonZeroElements()!=copy.getColumn(j).getNumNonZeroElements()){
+                return Double.POSITIVE_INFINITY;
+            }
+            for (Vector.Element element: column.nonZeroes()){
+                maxDiff = Math.max(maxDiff, Math.abs(element.get()-copy.getColumn(j).get(element.index())));
+            }
+        }
+        return maxDiff;
+    }
+
+    /**
+     * same rows and columns as sampleData, with rows in random order and repeated
+     */
+    private static void test1(){
+        int numData = 500;
+        int numFeatures = 40;
+        Random random = new Random(0);
+        for (Density density: new Density[]{Density.SPARSE_RANDOM, Density.SPARSE_COMPACT}){
+            MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder().numDataPoints(numData)
+                    .numFeatures(numFeatures).numClasses(3).density(density).build();
+            for (int i=0;i<numData;i++){
+                for (int j=0;j<numFeatures;j++){
+                    if (random.nextDouble()<0.1){
+                        dataSet.setFeatureValue(i,j,random.nextGaussian());
+                    }
+                }
+                dataSet.addLabel(i,random.nextInt(3));
+            }
+            int[] rows = random.ints(300,0,numData).toArray();
+            List<Integer> rowList = Arrays.stream(rows).boxed().collect(Collectors.toList());
+            MultiLabelClfDataSet view = new RowSubsetMLClfDataSet(dataSet, rows);
+            MultiLabelClfDataSet copy = DataSetUtil.sampleData(dataSet, rowList);
+            System.out.println(density+": max difference = "+maxDifference(view, copy)
+                    +", same labels = "+Arrays.equals(view.getMultiLabels(), copy.getMultiLabels()));
+        }
+    }
+
+    /**
+     * folds
+     */
+    private static void test2(){
+        ClfDataSet dataSet = ClfDataSetBuilder.getBuilder().numDataPoints(10).numFeatures(2).numClasses(2).build();
+        for (int i=0;i<10;i++){
+            dataSet.setFeatureValue(i,0,i);
+            dataSet.setLabel(i,i%2);
+        }
+        ClfDataSet fold = DataSetUtil.sampleByFold(dataSet, 3, new java.util.HashSet<>(Arrays.asList(1)));
+        System.out.println(fold.getMetaInfo());
+        System.out.println("column 0 = "+fold.getColumn(0));
+        System.out.println("labels = "+Arrays.toString(fold.getLabels()));
+    }
+}
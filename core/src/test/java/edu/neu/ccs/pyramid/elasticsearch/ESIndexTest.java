@@ -8,12 +8,14 @@ import org.elasticsearch.search.SearchHit;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.IntStream;
 
 public class ESIndexTest {
     public static void main(String[] args) throws Exception{
         test22();
-
+        test23();
     }
 
     static void test1() throws Exception{
@@ -404,4 +406,22 @@ public class ESIndexTest {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * batched fetching should give the same term vectors as one request per document
+     */
+    static void test23() throws Exception{
+        try(ESIndex index = new ESIndex.Builder().setClientType("node").setIndexName("imdb")
+                .setTermVectorBatchSize(7).setNumTermVectorFetchThreads(2)
+                .build()){
+            String[] ids = IntStream.range(0,100).mapToObj(i -> ""+i).toArray(String[]::new);
+            Map<String, Map<Integer,String>> batched = new ConcurrentHashMap<>();
+            index.forEachTermVector(ids, batched::put);
+            boolean same = batched.size()==ids.length;
+            for (String id: ids){
+                same = same && index.getTermVectorFromIndex(id).equals(batched.get(id));
+            }
+            System.out.println("same = " + same);
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package edu.neu.ccs.pyramid.elasticsearch;
+
+import edu.neu.ccs.pyramid.feature.Ngram;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+
+import java.util.Map;
+
+public class LuceneIndexTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+    }
+
+    /**
+     * the local index should agree with elasticsearch on a single shard index
+     */
+    static void test1() throws Exception{
+        try(ESIndex esIndex = new ESIndex.Builder().setClientType("node").setIndexName("imdb")
+                .build();
+            LuceneIndex luceneIndex = new LuceneIndex.Builder()
+                    .addPath("/tmp/elasticsearch/data/nodes/0/indices/imdb/0/index")
+                    .build()){
+            System.out.println("num docs = " + esIndex.getNumDocs() + " " + luceneIndex.getNumDocs());
+            System.out.println("same term vector = " + esIndex.getTermVectorFromIndex("0")
+                    .equals(luceneIndex.getTermVectorFromIndex("0")));
+
+            Ngram ngram = new Ngram();
+            ngram.setInOrder(true);
+            ngram.setNgram("really nice");
+            ngram.setField("body");
+            ngram.setSlop(0);
+            String filterQuery = "{\"term\":{\"split\":\"train\"}}";
+            SearchResponse response = esIndex.spanNearFrequency(ngram, filterQuery, esIndex.getNumDocs());
+            Map<String, Float> hits = luceneIndex.spanNearFrequency(ngram,
+                    new org.apache.lucene.search.TermQuery(new org.apache.lucene.index.Term("split","train")));
+            boolean same = response.getHits().getHits().length==hits.size();
+            for (SearchHit hit: response.getHits().getHits()){
+                same = same && hits.containsKey(hit.getId()) && hits.get(hit.getId())==hit.getScore();
+            }
+            System.out.println("same frequencies = " + same);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package edu.neu.ccs.pyramid.feature_extraction;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+public class NgramCounterTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    /**
+     * zipf-like documents, 1000 distinct words
+     */
+    private static List<long[]> documents(){
+        Random random = new Random(0);
+        List<long[]> documents = new ArrayList<>();
+        for (int d=0;d<2000;d++){
+            long[] keys = IntStream.range(0,50).mapToLong(i -> NgramCounter.hash("w"+(int)Math.pow(1000,random.nextDouble())))
+                    .sorted().distinct().toArray();
+            documents.add(keys);
+        }
+        return documents;
+    }
+
+    private static Map<Long, Integer> expected(List<long[]> documents, int minDF){
+        Map<Long, Integer> counts = new HashMap<>();
+        for (long[] keys: documents){
+            for (long key: keys){
+                counts.merge(key,1,Integer::sum);
+            }
+        }
+        counts.values().removeIf(count -> count<minDF);
+        return counts;
+    }
+
+    private static boolean same(NgramCounter counter, Map<Long, Integer> expected){
+        if (counter.getNumFrequent()!=expected.size()){
+            return false;
+        }
+        for (Map.Entry<Long, Integer> entry: expected.entrySet()){
+            if (counter.getCount(entry.getKey())!=entry.getValue()){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * spilling to disk
+     */
+    private static void test1(){
+        List<long[]> documents = documents();
+        int minDF = 20;
+        try (NgramCounter counter = new NgramCounter.Builder().setMaxEntriesInMemory(64).setNumPartitions(4).build()){
+            documents.parallelStream().forEach(keys -> counter.add(keys,minDF));
+            System.out.println("number of spills = "+counter.getNumSpills());
+            counter.merge(minDF);
+            System.out.println("frequent = "+counter.getNumFrequent());
+            System.out.println("same as hash map = "+same(counter,expected(documents,minDF)));
+        }
+    }
+
+    /**
+     * count-min sketch
+     */
+    private static void test2(){
+        List<long[]> documents = documents();
+        int minDF = 20;
+        try (NgramCounter counter = new NgramCounter.Builder().setMaxEntriesInMemory(64).setNumPartitions(4)
+                .setSketchWidth(2000).build()){
+            documents.parallelStream().forEach(counter::sketch);
+            documents.parallelStream().forEach(keys -> counter.add(keys,minDF));
+            System.out.println("number of spills with sketch = "+counter.getNumSpills());
+            counter.merge(minDF);
+            System.out.println("same as hash map = "+same(counter,expected(documents,minDF)));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package edu.neu.ccs.pyramid.feature_extraction;
+
+import edu.neu.ccs.pyramid.feature.Feature;
+import edu.neu.ccs.pyramid.feature.Ngram;
+import edu.neu.ccs.pyramid.feature.SpanNotNgram;
+
+import java.util.*;
+
+public class NgramMatcherTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+    }
+
+    private static Map<Integer, String> termVector(String text){
+        Map<Integer, String> termVector = new HashMap<>();
+        String[] terms = text.split(" ");
+        for (int i=0;i<terms.length;i++){
+            // "_" marks a removed stop word
+            if (!terms[i].equals("_")){
+                termVector.put(i, terms[i]);
+            }
+        }
+        return termVector;
+    }
+
+    private static Ngram ngram(String ngram, int slop, boolean inOrder, int index){
+        Ngram feature = new Ngram();
+        feature.setNgram(ngram);
+        feature.setField("body");
+        feature.setSlop(slop);
+        feature.setInOrder(inOrder);
+        feature.setIndex(index);
+        return feature;
+    }
+
+    /**
+     * exact phrases
+     */
+    private static void test1(){
+        List<Feature> features = new ArrayList<>();
+        features.add(ngram("a",0,true,0));
+        features.add(ngram("a b",0,true,1));
+        features.add(ngram("a b c",0,true,2));
+        features.add(ngram("B C",0,true,3));
+        features.add(ngram("c a",0,true,4));
+        NgramMatcher matcher = new NgramMatcher("body",features);
+        // expected {0=3, 1=2, 2=1, 3=1}
+        System.out.println(matcher.match(termVector("a b c _ a a b")));
+    }
+
+    /**
+     * sloppy and unordered
+     */
+    private static void test2(){
+        List<Feature> features = new ArrayList<>();
+        features.add(ngram("a c",1,true,0));
+        features.add(ngram("c a",1,true,1));
+        features.add(ngram("c a",1,false,2));
+        features.add(ngram("a a",0,false,3));
+        features.add(ngram("a d",5,true,4));
+        NgramMatcher matcher = new NgramMatcher("body",features);
+        // expected {0=2, 1=2, 2=4, 3=1}
+        System.out.println(matcher.match(termVector("a b c a c a a")));
+    }
+
+    /**
+     * span not
+     */
+    private static void test3(){
+        List<Feature> features = new ArrayList<>();
+        features.add(ngram("new",0,true,0));
+        for (SpanNotNgram spanNotNgram: SpanNotNgram.breakBigram(ngram("new york",0,true,-1))){
+            spanNotNgram.setIndex(features.size());
+            features.add(spanNotNgram);
+        }
+        NgramMatcher matcher = new NgramMatcher("body",features);
+        // expected {0=2, 1=1, 2=1}
+        System.out.println(matcher.match(termVector("new york is new and york")));
+    }
+}
@@ -0,0 +1,194 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.classification.lkboost.LKBoost;
+import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.eval.MLMeasures;
+import edu.neu.ccs.pyramid.simulation.MultiLabelSynthesizer;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class AbstractCBMOptimizerTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+        test4();
+    }
+
+    /**
+     * the running sums of stochastic mode should match a full recompute after several batches
+     */
+    private static void test1(){
+        MultiLabelClfDataSet dataSet = MultiLabelSynthesizer.clusters(3000, 1);
+        CBM cbm = newCBM(dataSet, "lr");
+        LRCBMOptimizer optimizer = new LRCBMOptimizer(cbm, dataSet);
+        optimizer.setBinaryUpdatesPerIter(5);
+        optimizer.setMulticlassUpdatesPerIter(5);
+        optimizer.initialize();
+        optimizer.setStochastic(true);
+        optimizer.setBatchSize(250);
+        for (int b=0;b<7;b++){
+            optimizer.iterateBatch();
+        }
+        double[][] gammas = optimizer.getGammas();
+        double[][] positives = new double[cbm.getNumComponents()][dataSet.getNumClasses()];
+        double[] weights = new double[cbm.getNumComponents()];
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int k=0;k<cbm.getNumComponents();k++){
+                weights[k] += gammas[i][k];
+                for (int l: dataSet.getMultiLabels()[i].getMatchedLabels()){
+                    positives[k][l] += gammas[i][k];
+                }
+            }
+        }
+        double maxDiff = 0;
+        for (int k=0;k<cbm.getNumComponents();k++){
+            maxDiff = Math.max(maxDiff, Math.abs(weights[k]-optimizer.getComponentWeights()[k]));
+            for (int l=0;l<dataSet.getNumClasses();l++){
+                maxDiff = Math.max(maxDiff, Math.abs(positives[k][l]-optimizer.getComponentPositives()[k][l]));
+            }
+        }
+        System.out.println("max difference between running sums and recomputed sums = "+maxDiff);
+    }
+
+    /**
+     * stochastic EM should reach about the accuracy of full EM
+     */
+    private static void test2(){
+        MultiLabelClfDataSet train = MultiLabelSynthesizer.clusters(10000, 1);
+        MultiLabelClfDataSet test = MultiLabelSynthesizer.clusters(5000, 2);
+        for (boolean stochastic: new boolean[]{false, true}){
+            CBM cbm = newCBM(train, "lr");
+            LRCBMOptimizer lr = new LRCBMOptimizer(cbm, train);
+            if (stochastic){
+                lr.setBinaryUpdatesPerIter(5);
+                lr.setMulticlassUpdatesPerIter(5);
+            }
+            System.out.println("lr, stochastic = "+stochastic+", accuracy = "+run(lr, cbm, test, stochastic, 3));
+
+            cbm = newCBM(train, "lr");
+            ENCBMOptimizer en = new ENCBMOptimizer(cbm, train);
+            en.setRegularizationBinary(0.0001);
+            en.setRegularizationMultiClass(0.0001);
+            System.out.println("en, stochastic = "+stochastic+", accuracy = "+run(en, cbm, test, stochastic, 2));
+        }
+    }
+
+    /**
+     * in stochastic mode, each batch adds treesPerBatch trees to each ensemble, up to maxTreesPerEnsemble
+     */
+    private static void test3(){
+        MultiLabelClfDataSet dataSet = MultiLabelSynthesizer.clusters(2000, 3);
+        CBM cbm = newCBM(dataSet, "boost");
+        GBCBMOptimizer optimizer = new GBCBMOptimizer(cbm, dataSet);
+        optimizer.setBinaryUpdatesPerIter(10);
+        optimizer.setMulticlassUpdatesPerIter(10);
+        optimizer.initialize();
+        int before = ((LKBoost) cbm.multiClassClassifier).getEnsemble(0).getRegressors().size();
+        optimizer.setStochastic(true);
+        optimizer.setBatchSize(500);
+        optimizer.setTreesPerBatch(2);
+        for (int b=0;b<4;b++){
+            optimizer.iterateBatch();
+        }
+        int after = ((LKBoost) cbm.multiClassClassifier).getEnsemble(0).getRegressors().size();
+        System.out.println("trees added to the multiclass ensemble by 4 batches = "+(after-before)+", expected 8");
+
+        // later batches stop at the cap
+        optimizer.setMaxTreesPerEnsemble(after+3);
+        for (int b=0;b<4;b++){
+            optimizer.iterateBatch();
+        }
+        int capped = ((LKBoost) cbm.multiClassClassifier).getEnsemble(0).getRegressors().size();
+        int maxBinary = 0;
+        for (int k=0;k<cbm.getNumComponents();k++){
+            for (int l=0;l<dataSet.getNumClasses();l++){
+                if (cbm.binaryClassifiers[k][l] instanceof LKBoost){
+                    maxBinary = Math.max(maxBinary, ((LKBoost) cbm.binaryClassifiers[k][l]).getEnsemble(0).getRegressors().size());
+                }
+            }
+        }
+        System.out.println("regressors after 4 more batches with a cap of "+(after+3)+": multiclass = "+capped
+                +", largest binary = "+maxBinary);
+    }
+
+    /**
+     * the cap on active non-zeros splits the components into rounds but should not change the fit;
+     * tasks should cover each (component, label) once, largest estimated cost first within a round
+     */
+    private static void test4(){
+        MultiLabelClfDataSet dataSet = MultiLabelSynthesizer.clusters(3000, 4);
+        CBM cbm = newCBM(dataSet, "lr");
+        LRCBMOptimizer optimizer = new LRCBMOptimizer(cbm, dataSet);
+        // labels missing from a cluster fall back to the prior
+        optimizer.setSkipLabelThreshold(0.01);
+        optimizer.initialize();
+        CBM cappedCBM = newCBM(dataSet, "lr");
+        LRCBMOptimizer capped = new LRCBMOptimizer(cappedCBM, dataSet);
+        capped.setSkipLabelThreshold(0.01);
+        // every component in a round of its own
+        capped.setMaxActiveNonZeros(1);
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            System.arraycopy(optimizer.getGammas()[i], 0, capped.getGammas()[i], 0, cbm.getNumComponents());
+        }
+        capped.mStep();
+        double maxDiff = 0;
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            double[] probs = cbm.predictClassProbs(dataSet.getRow(i));
+            double[] cappedProbs = cappedCBM.predictClassProbs(dataSet.getRow(i));
+            for (int l=0;l<probs.length;l++){
+                maxDiff = Math.max(maxDiff, Math.abs(probs[l]-cappedProbs[l]));
+            }
+        }
+        System.out.println("max difference of class probabilities with and without the cap = "+maxDiff);
+
+        for (AbstractCBMOptimizer o: new AbstractCBMOptimizer[]{optimizer, capped}){
+            List<AbstractCBMOptimizer.BinaryTask> tasks = o.getBinaryTasks();
+            Set<Integer> covered = new HashSet<>();
+            int numSkipped = 0;
+            boolean skippedAreFree = true;
+            boolean ordered = true;
+            for (int t=0;t<tasks.size();t++){
+                AbstractCBMOptimizer.BinaryTask task = tasks.get(t);
+                covered.add(task.getComponent()*dataSet.getNumClasses()+task.getLabel());
+                if (task.isSkipped()){
+                    numSkipped += 1;
+                    skippedAreFree = skippedAreFree && task.getEstimatedCost()==0;
+                }
+                if (t>0){
+                    AbstractCBMOptimizer.BinaryTask previous = tasks.get(t-1);
+                    boolean sameRound = o==optimizer || previous.getComponent()==task.getComponent();
+                    ordered = ordered && (!sameRound || previous.getEstimatedCost()>=task.getEstimatedCost());
+                    // with the cap, rounds follow the order of the components
+                    ordered = ordered && (o==optimizer || previous.getComponent()<=task.getComponent());
+                }
+            }
+            System.out.println((o==capped ? "capped: " : "")+tasks.size()+" tasks, "+covered.size()+" distinct, expected "
+                    +cbm.getNumComponents()*dataSet.getNumClasses()+"; "+numSkipped+" use the prior, free = "+skippedAreFree
+                    +", ordered = "+ordered);
+        }
+    }
+
+    private static double run(AbstractCBMOptimizer optimizer, CBM cbm, MultiLabelClfDataSet test,
+                              boolean stochastic, int numIterations){
+        optimizer.initialize();
+        optimizer.setStochastic(stochastic);
+        optimizer.setBatchSize(500);
+        for (int i=0;i<numIterations;i++){
+            optimizer.iterate();
+        }
+        return new MLMeasures(new AccPredictor(cbm), test).getInstanceAverage().getAccuracy();
+    }
+
+    private static CBM newCBM(MultiLabelClfDataSet dataSet, String type){
+        return CBM.getBuilder()
+                .setNumClasses(dataSet.getNumClasses())
+                .setNumFeatures(dataSet.getNumFeatures())
+                .setNumComponents(3)
+                .setMultiClassClassifierType(type)
+                .setBinaryClassifierType(type)
+                .build();
+    }
+}
@@ -0,0 +1,77 @@
+package edu.neu.ccs.pyramid.multilabel_classification.cbm;
+
+import edu.neu.ccs.pyramid.classification.Classifier;
+import edu.neu.ccs.pyramid.classification.PriorProbClassifier;
+import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.simulation.MultiLabelSynthesizer;
+
+public class PackedCBMTest {
+    public static void main(String[] args) {
+        test1();
+    }
+
+    /**
+     * packed BMDistributions should match the unpacked ones on a trained CBM with skipped labels
+     */
+    private static void test1(){
+        MultiLabelClfDataSet dataSet = MultiLabelSynthesizer.clusters(3000, 5);
+        CBM cbm = CBM.getBuilder()
+                .setNumClasses(dataSet.getNumClasses())
+                .setNumFeatures(dataSet.getNumFeatures())
+                .setNumComponents(3)
+                .setMultiClassClassifierType("lr")
+                .setBinaryClassifierType("lr")
+                .build();
+        LRCBMOptimizer optimizer = new LRCBMOptimizer(cbm, dataSet);
+        // labels missing from a cluster fall back to the prior
+        optimizer.setSkipLabelThreshold(0.01);
+        optimizer.initialize();
+        for (int iter=0;iter<3;iter++){
+            optimizer.iterate();
+        }
+        int numPriors = 0;
+        for (Classifier.ProbabilityEstimator[] classifiers: cbm.binaryClassifiers){
+            for (Classifier.ProbabilityEstimator classifier: classifiers){
+                if (classifier instanceof PriorProbClassifier){
+                    numPriors += 1;
+                }
+            }
+        }
+        MultiLabelClfDataSet test = MultiLabelSynthesizer.clusters(1000, 6);
+        BMDistribution[] unpacked = new BMDistribution[test.getNumDataPoints()];
+        BMDistribution[] unpackedThreshold = new BMDistribution[test.getNumDataPoints()];
+        for (int i=0;i<test.getNumDataPoints();i++){
+            unpacked[i] = cbm.computeBM(test.getRow(i));
+            unpackedThreshold[i] = cbm.computeBM(test.getRow(i), 0.1);
+        }
+        cbm.packWeights();
+        double maxDiff = 0;
+        int numDifferentComponents = 0;
+        for (int i=0;i<test.getNumDataPoints();i++){
+            maxDiff = Math.max(maxDiff, maxDiff(unpacked[i], cbm.computeBM(test.getRow(i))));
+            BMDistribution packedThreshold = cbm.computeBM(test.getRow(i), 0.1);
+            if (packedThreshold.getLogProportions().length!=unpackedThreshold[i].getLogProportions().length){
+                numDifferentComponents += 1;
+            } else {
+                maxDiff = Math.max(maxDiff, maxDiff(unpackedThreshold[i], packedThreshold));
+            }
+        }
+        cbm.unpackWeights();
+        System.out.println("binary classifiers using the prior = "+numPriors);
+        System.out.println("max difference of packed and unpacked log probabilities = "+maxDiff
+                +", rows with different active components = "+numDifferentComponents);
+    }
+
+    private static double maxDiff(BMDistribution expected, BMDistribution actual){
+        double maxDiff = 0;
+        for (int k=0;k<expected.getLogProportions().length;k++){
+            maxDiff = Math.max(maxDiff, Math.abs(expected.getLogProportions()[k]-actual.getLogProportions()[k]));
+            for (int l=0;l<expected.getLogClassProbs()[k].length;l++){
+                for (int b=0;b<2;b++){
+                    maxDiff = Math.max(maxDiff, Math.abs(expected.getLogClassProbs()[k][l][b]-actual.getLogClassProbs()[k][l][b]));
+                }
+            }
+        }
+        return maxDiff;
+    }
+}
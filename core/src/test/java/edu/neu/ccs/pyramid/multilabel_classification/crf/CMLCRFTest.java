@@ -16,8 +16,15 @@ import edu.neu.ccs.pyramid.optimization.LBFGS;
 import edu.neu.ccs.pyramid.optimization.Optimizer;
 import edu.neu.ccs.pyramid.simulation.MultiLabelSynthesizer;
 
+import edu.neu.ccs.pyramid.util.MathUtil;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -39,6 +46,9 @@ public class CMLCRFTest {
 
 //        test7();
         test8();
+        test10();
+        test11();
+        test12();
     }
 
     public static void test2() throws Exception {
@@ -491,6 +501,159 @@ public class CMLCRFTest {
         }
         System.out.println(cmlcrf);
     }
-}
+    /**
+     * training with the top combinations only
+     */
+    private static void test10(){
+        MultiLabelClfDataSet train = MultiLabelSynthesizer.independentNoise();
+        MultiLabelClfDataSet test = MultiLabelSynthesizer.independent();
+        CMLCRF cmlcrf = new CMLCRF(train);
+        CRFLoss crfLoss = new CRFLoss(cmlcrf,train,1,2);
+        LBFGS optimizer = new LBFGS(crfLoss);
+        while (!optimizer.getTerminator().shouldTerminate()) {
+            optimizer.iterate();
+            System.out.println("loss with top 2 combinations = "+optimizer.getTerminator().getLastValue());
+        }
+        System.out.println("exact loss = "+new CRFLoss(cmlcrf,train,1).getValue());
+        System.out.println("test performance");
+        System.out.println(new MLMeasures(cmlcrf, test));
 
+        boolean same = true;
+        for (int i=0;i<test.getNumDataPoints();i++){
+            double[] scores = cmlcrf.predictCombinationScores(test.getRow(i));
+            TopCombinations top = cmlcrf.predictTopCombinations(test.getRow(i),1);
+            same = same && top.getScores()[0]==Arrays.stream(scores).max().getAsDouble();
+        }
+        System.out.println("top 1 combination has the highest score = "+same);
+    }
 
+    /**
+     * SupportIndex.top against sorting all combination scores:
+     * the K best scores should be exact, the approximate log normalizer should not be below the exact one,
+     * and the required combination should be kept with its exact score
+     */
+    private static void test11(){
+        Random random = new Random(0);
+        int numClasses = 12;
+        List<MultiLabel> supports = new ArrayList<>();
+        for (int c=0;c<300;c++){
+            MultiLabel multiLabel = new MultiLabel();
+            int numLabels = random.nextInt(7);
+            for (int m=0;m<numLabels;m++){
+                multiLabel.addLabel(random.nextInt(numClasses));
+            }
+            supports.add(multiLabel);
+        }
+        int numMismatches = 0;
+        int numBelowExact = 0;
+        int numMissingRequired = 0;
+        int numChecks = 0;
+        for (boolean considerPair: new boolean[]{false, true}){
+            double[] labelPartScores = new double[supports.size()];
+            if (considerPair){
+                for (int c=0;c<labelPartScores.length;c++){
+                    labelPartScores[c] = random.nextGaussian();
+                }
+            }
+            SupportIndex index = new SupportIndex(supports, labelPartScores);
+            for (int t=0;t<200;t++){
+                double[] classScores = new double[numClasses];
+                for (int l=0;l<numClasses;l++){
+                    classScores[l] = 2*random.nextGaussian();
+                }
+                double[] all = index.scores(classScores);
+                double[] sorted = Arrays.copyOf(all, all.length);
+                Arrays.sort(sorted);
+                double exactLogZ = MathUtil.logSumExp(all);
+                for (int topK: new int[]{1, 2, 5, 20}){
+                    int required = random.nextInt(supports.size());
+                    TopCombinations top = index.top(classScores, topK, required);
+                    numChecks += 1;
+                    // the required combination is appended after the top K if it is not among them
+                    double[] topScores = Arrays.copyOf(top.getScores(), topK);
+                    Arrays.sort(topScores);
+                    for (int k=0;k<topK;k++){
+                        if (topScores[topK-1-k]!=sorted[sorted.length-1-k]){
+                            numMismatches += 1;
+                            break;
+                        }
+                    }
+                    if (top.getLogNormalizer()<exactLogZ-1E-10){
+                        numBelowExact += 1;
+                    }
+                    int position = -1;
+                    for (int p=0;p<top.getCombinations().length;p++){
+                        if (top.getCombinations()[p]==required){
+                            position = p;
+                        }
+                    }
+                    if (position==-1 || top.getScores()[position]!=all[required]){
+                        numMissingRequired += 1;
+                    }
+                }
+            }
+        }
+        System.out.println(numChecks+" checks: top K scores differ = "+numMismatches
+                +", log normalizer below exact = "+numBelowExact+", required missing = "+numMissingRequired);
+
+        // the same through CMLCRF, with and without pairs
+        MultiLabelClfDataSet dataSet = MultiLabelSynthesizer.independentNoise();
+        CMLCRF cmlcrf = new CMLCRF(dataSet);
+        for (int j=0;j<cmlcrf.getWeights().totalSize();j++){
+            cmlcrf.getWeights().getAllWeights().set(j, random.nextGaussian());
+        }
+        for (boolean considerPair: new boolean[]{false, true}){
+            cmlcrf.setConsiderPair(considerPair);
+            boolean same = true;
+            for (int i=0;i<dataSet.getNumDataPoints();i++){
+                double[] sorted = cmlcrf.predictCombinationScores(dataSet.getRow(i));
+                Arrays.sort(sorted);
+                int topK = Math.min(3, sorted.length);
+                double[] topScores = cmlcrf.predictTopCombinations(dataSet.getRow(i), topK).getScores();
+                Arrays.sort(topScores);
+                same = same && Arrays.equals(topScores, Arrays.copyOfRange(sorted, sorted.length-topK, sorted.length));
+            }
+            System.out.println("considerPair = "+considerPair+", top 3 scores are exact = "+same);
+        }
+    }
+
+    /**
+     * with topK>0, getGradient should be the derivative of getValue: compare with central differences
+     */
+    private static void test12(){
+        Random random = new Random(1);
+        MultiLabelClfDataSet dataSet = MultiLabelSynthesizer.independentNoise();
+        for (boolean considerPair: new boolean[]{false, true}){
+            CMLCRF cmlcrf = new CMLCRF(dataSet);
+            cmlcrf.setConsiderPair(considerPair);
+            CRFLoss crfLoss = new CRFLoss(cmlcrf, dataSet, 1, 2);
+            Vector parameters = new DenseVector(crfLoss.getParameters().size());
+            for (int j=0;j<parameters.size();j++){
+                parameters.set(j, 0.5*random.nextGaussian());
+            }
+            crfLoss.setParameters(parameters);
+            Vector gradient = new DenseVector(crfLoss.getGradient());
+            double epsilon = 1E-5;
+            double maxRelativeDiff = 0;
+            for (int j=0;j<parameters.size();j++){
+                double original = parameters.get(j);
+                parameters.set(j, original+epsilon);
+                crfLoss.setParameters(parameters);
+                double plus = crfLoss.getValue();
+                parameters.set(j, original-epsilon);
+                crfLoss.setParameters(parameters);
+                double minus = crfLoss.getValue();
+                parameters.set(j, original);
+                double numerical = (plus-minus)/(2*epsilon);
+                double diff = Math.abs(numerical-gradient.get(j))/Math.max(1, Math.abs(numerical));
+                maxRelativeDiff = Math.max(maxRelativeDiff, diff);
+            }
+            crfLoss.setParameters(parameters);
+            System.out.println("considerPair = "+considerPair+", "+parameters.size()+" parameters, "
+                    +"max relative difference of gradient and finite differences = "+maxRelativeDiff);
+            System.out.println("loss over the kept combinations = "+crfLoss.getValue()
+                    +", with tail estimate = "+crfLoss.getValueWithTailEstimate()
+                    +", exact = "+new CRFLoss(cmlcrf, dataSet, 1).getValue());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package edu.neu.ccs.pyramid.multilabel_classification.imlgb;
+
+import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import edu.neu.ccs.pyramid.optimization.gradient_boosting.CompiledBoosting;
+import edu.neu.ccs.pyramid.simulation.MultiLabelSynthesizer;
+import edu.neu.ccs.pyramid.util.Pair;
+import org.apache.mahout.math.Vector;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+public class CandidateLabelPredictorTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    /**
+     * candidate-pruned predictions and scores should equal the exhaustive ones of IMLGradientBoosting
+     */
+    private static void test1(){
+        IMLGradientBoosting boosting = train(MultiLabelSynthesizer.sparseFeaturePairs(3000, 40, 100, 1));
+        CandidateLabelPredictor predictor = new CandidateLabelPredictor(boosting);
+        MultiLabelClfDataSet test = MultiLabelSynthesizer.sparseFeaturePairs(1000, 40, 100, 2);
+        int numDifferentPredictions = 0;
+        int numDifferentCandidates = 0;
+        double maxScoreDiff = 0;
+        for (int i=0;i<test.getNumDataPoints();i++){
+            Vector row = test.getRow(i);
+            if (!predictor.predict(row).equals(boosting.predict(row))){
+                numDifferentPredictions += 1;
+            }
+            double[] expected = boosting.predictClassScores(row);
+            double[] scores = predictor.predictClassScores(row);
+            for (int k=0;k<expected.length;k++){
+                maxScoreDiff = Math.max(maxScoreDiff, Math.abs(expected[k]-scores[k]));
+            }
+            for (double threshold: new double[]{-1, 0, 1}){
+                int[] reaching = IntStream.range(0, expected.length).filter(k -> expected[k]>=threshold).toArray();
+                List<Pair<Integer,Double>> candidates = predictor.predictCandidateScores(row, threshold);
+                boolean same = candidates.size()==reaching.length;
+                for (int j=0;same && j<reaching.length;j++){
+                    same = candidates.get(j).getFirst()==reaching[j]
+                            && Math.abs(candidates.get(j).getSecond()-expected[reaching[j]])<1e-10;
+                }
+                if (!same){
+                    numDifferentCandidates += 1;
+                }
+            }
+        }
+        System.out.println("predictions different from IMLGradientBoosting.predict = "+numDifferentPredictions);
+        System.out.println("candidate lists different from exhaustive thresholding = "+numDifferentCandidates);
+        System.out.println("max difference of class scores = "+maxScoreDiff);
+    }
+
+    /**
+     * scoreWithThreshold should be exact when the threshold is reached, and an upper bound below it otherwise
+     */
+    private static void test2(){
+        IMLGradientBoosting boosting = train(MultiLabelSynthesizer.sparseFeaturePairs(3000, 40, 100, 3));
+        CompiledBoosting compiled = boosting.compile();
+        int[] labels = IntStream.range(0, boosting.getNumClasses()).toArray();
+        double[] scores = new double[labels.length];
+        MultiLabelClfDataSet test = MultiLabelSynthesizer.sparseFeaturePairs(1000, 40, 100, 4);
+        int numPruned = 0;
+        int numViolations = 0;
+        for (int i=0;i<test.getNumDataPoints();i++){
+            Vector row = test.getRow(i);
+            double[] expected = boosting.predictClassScores(row);
+            for (double threshold: new double[]{-1, 0, 1}){
+                compiled.scoreWithThreshold(row, labels, threshold, scores);
+                for (int k=0;k<labels.length;k++){
+                    if (scores[k]>=threshold){
+                        if (Math.abs(scores[k]-expected[k])>1e-10){
+                            numViolations += 1;
+                        }
+                    } else {
+                        if (Math.abs(scores[k]-expected[k])>1e-10){
+                            numPruned += 1;
+                        }
+                        if (expected[k]>scores[k]+1e-10){
+                            numViolations += 1;
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("labels stopped early = "+numPruned+", wrong scores or bounds = "+numViolations);
+    }
+
+    private static IMLGradientBoosting train(MultiLabelClfDataSet dataSet){
+        IMLGradientBoosting boosting = new IMLGradientBoosting(dataSet.getNumClasses());
+        IMLGBConfig config = new IMLGBConfig.Builder(dataSet)
+                .numLeaves(4).learningRate(0.3).minDataPerLeaf(5).build();
+        IMLGBTrainer trainer = new IMLGBTrainer(config, boosting);
+        for (int round=0;round<20;round++){
+            trainer.iterate();
+        }
+        return boosting;
+    }
+}
@@ -1,11 +1,49 @@
 package edu.neu.ccs.pyramid.multilabel_classification.multi_label_logistic_regression;
 
+import edu.neu.ccs.pyramid.dataset.DataSetUtil;
+import edu.neu.ccs.pyramid.dataset.MLClfDataSetBuilder;
+import edu.neu.ccs.pyramid.dataset.MultiLabelClfDataSet;
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 public class MLLogisticLossTest {
     public static void main(String[] args) throws Exception{
+        test1();
+    }
 
-
+    /**
+     * row major and column major gradients should agree
+     */
+    private static void test1(){
+        Random random = new Random(0);
+        MultiLabelClfDataSet dataSet = MLClfDataSetBuilder.getBuilder().numDataPoints(200).numFeatures(50)
+                .numClasses(5).build();
+        for (int i=0;i<dataSet.getNumDataPoints();i++){
+            for (int j=0;j<dataSet.getNumFeatures();j++){
+                if (random.nextDouble()<0.1){
+                    dataSet.setFeatureValue(i,j,random.nextGaussian());
+                }
+            }
+            for (int k=0;k<dataSet.getNumClasses();k++){
+                if (random.nextBoolean()){
+                    dataSet.addLabel(i,k);
+                }
+            }
+        }
+        MLLogisticRegression model = new MLLogisticRegression(dataSet.getNumClasses(), dataSet.getNumFeatures(),
+                DataSetUtil.gatherMultiLabels(dataSet));
+        Vector weights = model.getWeights().getAllWeights();
+        for (int p=0;p<weights.size();p++){
+            weights.set(p,random.nextGaussian()*0.1);
+        }
+        MLLogisticLoss columnMajor = new MLLogisticLoss(model,dataSet,1);
+        MLLogisticLoss rowMajor = new MLLogisticLoss(model,dataSet,1);
+        rowMajor.setRowMajorGradient(true);
+        double difference = columnMajor.getGradient().minus(rowMajor.getGradient()).norm(Double.POSITIVE_INFINITY);
+        System.out.println("max difference = "+difference);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,71 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+public class InPlaceLBFGSTest {
+    public static void main(String[] args) {
+        test1();
+    }
+
+    /**
+     * rosenbrock function; both optimizers should reach the same minimum
+     */
+    private static void test1(){
+        Rosenbrock function1 = new Rosenbrock(100);
+        LBFGS lbfgs = new LBFGS(function1);
+        lbfgs.getTerminator().setMaxIteration(1000);
+        lbfgs.optimize();
+        System.out.println("LBFGS: objective = "+lbfgs.getFinalObjective()+", iterations = "+lbfgs.getTerminator().getNumIterations());
+
+        Rosenbrock function2 = new Rosenbrock(100);
+        InPlaceLBFGS inPlaceLBFGS = new InPlaceLBFGS(function2);
+        inPlaceLBFGS.getTerminator().setMaxIteration(1000);
+        inPlaceLBFGS.optimize();
+        System.out.println("InPlaceLBFGS: objective = "+inPlaceLBFGS.getFinalObjective()+", iterations = "+inPlaceLBFGS.getTerminator().getNumIterations());
+        System.out.println("x[0] = "+function2.getParameters().get(0)+", x[99] = "+function2.getParameters().get(99));
+    }
+
+    private static class Rosenbrock implements Optimizable.ByGradientValue{
+        private Vector parameters;
+
+        Rosenbrock(int numParameters) {
+            this.parameters = new DenseVector(numParameters);
+            for (int i=0;i<numParameters;i++){
+                parameters.set(i, i%2==0 ? -1.2 : 1);
+            }
+        }
+
+        @Override
+        public Vector getParameters() {
+            return parameters;
+        }
+
+        @Override
+        public void setParameters(Vector parameters) {
+            this.parameters = parameters;
+        }
+
+        @Override
+        public double getValue() {
+            double value = 0;
+            for (int i=0;i<parameters.size()-1;i++){
+                double a = parameters.get(i+1) - parameters.get(i)*parameters.get(i);
+                double b = 1 - parameters.get(i);
+                value += 100*a*a + b*b;
+            }
+            return value;
+        }
+
+        @Override
+        public Vector getGradient() {
+            Vector gradient = new DenseVector(parameters.size());
+            for (int i=0;i<parameters.size()-1;i++){
+                double a = parameters.get(i+1) - parameters.get(i)*parameters.get(i);
+                gradient.set(i, gradient.get(i) - 400*a*parameters.get(i) - 2*(1-parameters.get(i)));
+                gradient.set(i+1, gradient.get(i+1) + 200*a);
+            }
+            return gradient;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package edu.neu.ccs.pyramid.optimization;
+
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+
+public class MiniBatchOptimizerTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    /**
+     * least squares without regularization; all optimizers should recover the true weights
+     */
+    private static void test1(){
+        LeastSquares function = new LeastSquares(1000, 20, 0);
+        MiniBatchOptimizer[] optimizers = {new SGD(function), new AdaGrad(function), new Adam(function)};
+        optimizers[0].setLearningRate(0.01);
+        optimizers[2].setLearningRate(0.01);
+        for (MiniBatchOptimizer optimizer: optimizers){
+            function.setParameters(new DenseVector(function.numFeatures));
+            optimizer.setBatchSize(10);
+            optimizer.getTerminator().setMaxIteration(50);
+            optimizer.optimize();
+            System.out.println(optimizer.getClass().getSimpleName()+": objective = "+optimizer.getFinalObjective()
+                    +", passes = "+optimizer.getTerminator().getNumIterations()
+                    +", w[0] = "+function.getParameters().get(0)+", true w[0] = "+function.trueWeights[0]);
+        }
+    }
+
+    /**
+     * sparse features with l1; weights of irrelevant features should be exactly 0
+     */
+    private static void test2(){
+        LeastSquares function = new LeastSquares(2000, 50, 0.9);
+        SGD sgd = new SGD(function);
+        sgd.setLearningRate(0.01);
+        sgd.setRegularization(0.01);
+        sgd.setL1Ratio(1);
+        sgd.getTerminator().setMaxIteration(100);
+        sgd.optimize();
+        int numZeros = 0;
+        for (int j=0;j<function.numFeatures;j++){
+            if (function.getParameters().get(j)==0){
+                numZeros += 1;
+            }
+        }
+        System.out.println("objective = "+sgd.getFinalObjective()+", number of zero weights = "+numZeros
+                +", number of irrelevant features = "+function.numFeatures/2);
+    }
+
+    /**
+     * 0.5*(w.x - y)^2 per data point; the second half of the features is irrelevant
+     */
+    private static class LeastSquares implements Optimizable.ByMiniBatchGradient{
+        private int numFeatures;
+        private double[][] rows;
+        private double[] targets;
+        private double[] trueWeights;
+        private Vector parameters;
+
+        LeastSquares(int numData, int numFeatures, double sparsity) {
+            this.numFeatures = numFeatures;
+            Random random = new Random(0);
+            this.trueWeights = new double[numFeatures];
+            for (int j=0;j<numFeatures/2;j++){
+                trueWeights[j] = random.nextGaussian();
+            }
+            this.rows = new double[numData][numFeatures];
+            this.targets = new double[numData];
+            for (int i=0;i<numData;i++){
+                for (int j=0;j<numFeatures;j++){
+                    if (random.nextDouble()>=sparsity){
+                        rows[i][j] = random.nextGaussian();
+                    }
+                    targets[i] += rows[i][j]*trueWeights[j];
+                }
+            }
+            this.parameters = new DenseVector(numFeatures);
+        }
+
+        @Override
+        public Vector getParameters() {
+            return parameters;
+        }
+
+        @Override
+        public void setParameters(Vector parameters) {
+            this.parameters = parameters;
+        }
+
+        @Override
+        public int getNumDataPoints() {
+            return rows.length;
+        }
+
+        @Override
+        public double addBatchGradient(int from, int to, MiniBatchGradient gradient) {
+            double sum = 0;
+            for (int i=from;i<to;i++){
+                double diff = -targets[i];
+                for (int j=0;j<numFeatures;j++){
+                    diff += rows[i][j]*parameters.get(j);
+                }
+                sum += 0.5*diff*diff;
+                for (int j=0;j<numFeatures;j++){
+                    if (rows[i][j]!=0){
+                        gradient.add(j, diff*rows[i][j]);
+                    }
+                }
+            }
+            return sum;
+        }
+
+        @Override
+        public boolean isRegularized(int parameterIndex) {
+            return true;
+        }
+    }
+}
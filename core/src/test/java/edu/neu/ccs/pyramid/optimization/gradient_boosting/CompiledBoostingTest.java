@@ -0,0 +1,111 @@
+package edu.neu.ccs.pyramid.optimization.gradient_boosting;
+
+import edu.neu.ccs.pyramid.classification.lkboost.LKBoost;
+import edu.neu.ccs.pyramid.classification.lkboost.LKBoostOptimizer;
+import edu.neu.ccs.pyramid.dataset.ClfDataSet;
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+import edu.neu.ccs.pyramid.simulation.ClassificationSynthesizer;
+import org.apache.mahout.math.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompiledBoostingTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+    }
+
+    /**
+     * compiled scores should match the ensembles of a trained model, also on rows with missing values
+     */
+    private static void test1(){
+        ClfDataSet dataSet = ClassificationSynthesizer.missingValues(3000, 1);
+        LKBoost boosting = new LKBoost(dataSet.getNumClasses());
+        LKBoostOptimizer optimizer = new LKBoostOptimizer(boosting, dataSet);
+        optimizer.initialize();
+        optimizer.iterate(20);
+        CompiledBoosting compiled = boosting.compile();
+        ClfDataSet test = ClassificationSynthesizer.missingValues(1000, 2);
+        double[][] batchScores = compiled.score(test, 0, test.getNumDataPoints());
+        int[] ensembleIndices = {2, 0};
+        double[] selectedScores = new double[ensembleIndices.length];
+        int numMissing = 0;
+        double maxDiff = 0;
+        double maxMissingDiff = 0;
+        for (int i=0;i<test.getNumDataPoints();i++){
+            Vector row = test.getRow(i);
+            double[] expected = boosting.scores(row);
+            double[] scores = compiled.score(row);
+            compiled.score(row, ensembleIndices, selectedScores);
+            double diff = 0;
+            for (int k=0;k<expected.length;k++){
+                diff = Math.max(diff, Math.abs(expected[k]-scores[k]));
+                diff = Math.max(diff, Math.abs(expected[k]-batchScores[i][k]));
+                diff = Math.max(diff, Math.abs(expected[k]-compiled.score(row, k)));
+            }
+            for (int j=0;j<ensembleIndices.length;j++){
+                diff = Math.max(diff, Math.abs(expected[ensembleIndices[j]]-selectedScores[j]));
+            }
+            if (hasMissing(row)){
+                numMissing += 1;
+                maxMissingDiff = Math.max(maxMissingDiff, diff);
+            } else {
+                maxDiff = Math.max(maxDiff, diff);
+            }
+        }
+        System.out.println("trees = "+compiled.getNumTrees()+", rows with missing values = "+numMissing);
+        System.out.println("max difference with the ensembles = "+maxDiff
+                +", on rows with missing values = "+maxMissingDiff);
+    }
+
+    /**
+     * each compiled tree alone should match RegressionTree.predict; constant regressors go into the bias
+     */
+    private static void test2(){
+        ClfDataSet dataSet = ClassificationSynthesizer.missingValues(3000, 3);
+        LKBoost boosting = new LKBoost(dataSet.getNumClasses());
+        LKBoostOptimizer optimizer = new LKBoostOptimizer(boosting, dataSet);
+        optimizer.initialize();
+        optimizer.iterate(10);
+        List<Regressor> trees = new ArrayList<>();
+        for (Regressor regressor: boosting.getEnsemble(0).getRegressors()){
+            if (regressor instanceof RegressionTree){
+                trees.add(regressor);
+            }
+        }
+        List<List<Regressor>> single = new ArrayList<>();
+        for (Regressor tree: trees){
+            List<Regressor> ensemble = new ArrayList<>();
+            ensemble.add(tree);
+            single.add(ensemble);
+        }
+        List<Regressor> withBias = new ArrayList<>();
+        withBias.add(new ConstantRegressor(0.5));
+        withBias.add(trees.get(0));
+        single.add(withBias);
+        CompiledBoosting compiled = CompiledBoosting.compile(single);
+        ClfDataSet test = ClassificationSynthesizer.missingValues(1000, 4);
+        double maxDiff = 0;
+        for (int i=0;i<test.getNumDataPoints();i++){
+            Vector row = test.getRow(i);
+            double[] scores = compiled.score(row);
+            for (int t=0;t<trees.size();t++){
+                maxDiff = Math.max(maxDiff, Math.abs(trees.get(t).predict(row)-scores[t]));
+            }
+            maxDiff = Math.max(maxDiff, Math.abs(0.5+trees.get(0).predict(row)-scores[trees.size()]));
+        }
+        System.out.println("max difference of single trees = "+maxDiff);
+    }
+
+    private static boolean hasMissing(Vector row){
+        for (Vector.Element element: row.nonZeroes()){
+            if (Double.isNaN(element.get())){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,107 @@
+package edu.neu.ccs.pyramid.optimization.gradient_boosting;
+
+import edu.neu.ccs.pyramid.dataset.SparseDataSet;
+import edu.neu.ccs.pyramid.regression.Regressor;
+import edu.neu.ccs.pyramid.regression.RegressorFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeConfig;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegTreeFactory;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RowSamplerTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+    }
+
+    /**
+     * about 30% of the rows should be kept with unchanged weights
+     */
+    private static void test1(){
+        int numData = 10000;
+        double[] weights = new double[numData];
+        Arrays.fill(weights,1.0);
+        RowSampler sampler = RowSampler.subsample(0.3, 0L);
+        double[] sampled = sampler.sample(new double[numData], weights);
+        System.out.println("number of sampled rows = "+Arrays.stream(sampled).filter(w -> w!=0).count());
+    }
+
+    /**
+     * the top 10% should all be kept; the weighted gradient sum should stay close to the full sum
+     */
+    private static void test2(){
+        int numData = 10000;
+        Random random = new Random(1);
+        double[] gradients = new double[numData];
+        double[] weights = new double[numData];
+        for (int i=0;i<numData;i++){
+            gradients[i] = Math.abs(random.nextGaussian());
+            weights[i] = 1;
+        }
+        RowSampler sampler = RowSampler.goss(0.1, 0.2, 0L);
+        double[] sampled = sampler.sample(gradients, weights);
+        double[] sorted = gradients.clone();
+        Arrays.sort(sorted);
+        double threshold = sorted[numData - numData/10];
+        int numTopKept = 0;
+        double fullSum = 0;
+        double sampledSum = 0;
+        for (int i=0;i<numData;i++){
+            if (gradients[i]>=threshold && sampled[i]==1){
+                numTopKept += 1;
+            }
+            fullSum += gradients[i];
+            sampledSum += sampled[i]*gradients[i];
+        }
+        System.out.println("number of top rows kept = "+numTopKept+", expected = "+numData/10);
+        System.out.println("number of sampled rows = "+Arrays.stream(sampled).filter(w -> w!=0).count());
+        System.out.println("full gradient sum = "+fullSum+", sampled gradient sum = "+sampledSum);
+    }
+
+    /**
+     * fitting on the sampled rows only, by row partition or on a row view,
+     * should give the same tree as fitting on all rows with 0 weights for the rows left out
+     */
+    private static void test3(){
+        int numData = 5000;
+        Random random = new Random(2);
+        SparseDataSet dataSet = new SparseDataSet(numData,10,true);
+        double[] labels = new double[numData];
+        double[] weights = new double[numData];
+        for (int i=0;i<numData;i++){
+            for (int j=0;j<10;j++){
+                double u = random.nextDouble();
+                if (u<0.05){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                } else if (u<0.5){
+                    dataSet.setFeatureValue(i,j,random.nextGaussian());
+                }
+            }
+            double value = dataSet.getRow(i).get(0);
+            labels[i] = (Double.isNaN(value)?0:value)+0.1*random.nextGaussian();
+            weights[i] = 1;
+        }
+        double[] sampled = RowSampler.goss(0.1, 0.2, 0L).sample(labels, weights);
+        RegTreeFactory factory = new RegTreeFactory(new RegTreeConfig().setMaxNumLeaves(8));
+        // the default fitSample, on a row view
+        RegressorFactory viewFactory = factory::fit;
+        RegressionTree full = (RegressionTree) factory.fit(dataSet,labels,sampled);
+        RegressionTree partition = (RegressionTree) factory.fitSample(dataSet,labels,sampled);
+        Regressor view = viewFactory.fitSample(dataSet,labels,sampled);
+        double maxPartitionDiff = 0;
+        double maxViewDiff = 0;
+        double maxLeafDiff = 0;
+        for (int i=0;i<numData;i++){
+            double prediction = full.predict(dataSet.getRow(i));
+            maxPartitionDiff = Math.max(maxPartitionDiff,Math.abs(prediction-partition.predict(dataSet.getRow(i))));
+            maxViewDiff = Math.max(maxViewDiff,Math.abs(prediction-view.predict(dataSet.getRow(i))));
+            maxLeafDiff = Math.max(maxLeafDiff,Math.abs(prediction-partition.predictTrainingDataPoint(dataSet,i)));
+        }
+        System.out.println("max difference with row partition = "+maxPartitionDiff);
+        System.out.println("max difference with row view = "+maxViewDiff);
+        System.out.println("max difference of training leaves = "+maxLeafDiff);
+    }
+}
@@ -0,0 +1,100 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.SparseDataSet;
+
+import java.util.Random;
+
+public class HistogramSplitterTest {
+    public static void main(String[] args) {
+        test1();
+        test2();
+        test3();
+    }
+
+    /**
+     * should agree with IntervalSplitter on the root
+     */
+    private static void test1(){
+        SparseDataSet dataSet = new SparseDataSet(5,2,false);
+        dataSet.setFeatureValue(0,0,0);
+        dataSet.setFeatureValue(1,0,0);
+        dataSet.setFeatureValue(2,0,0);
+        dataSet.setFeatureValue(3,0,1);
+        dataSet.setFeatureValue(4,0,1);
+        double[] labels = {1,2,3,3,1};
+        RegTreeConfig regTreeConfig = new RegTreeConfig();
+        double[] probs = {1,1,1,1,0};
+        regTreeConfig.setMinDataPerLeaf(1)
+                .setNumSplitIntervals(2);
+        Splitter.GlobalStats globalStats = new Splitter.GlobalStats(labels,probs);
+        System.out.println(IntervalSplitter.split(regTreeConfig, dataSet, labels, probs, 0,globalStats));
+        FeatureBins featureBins = FeatureBins.build(dataSet,2,false);
+        Histogram histogram = Histogram.build(featureBins,labels,probs,false);
+        System.out.println(HistogramSplitter.split(regTreeConfig, histogram, 0));
+    }
+
+    /**
+     * missing values
+     */
+    private static void test2(){
+        SparseDataSet dataSet = new SparseDataSet(6,1,true);
+        dataSet.setFeatureValue(0,0,-1);
+        dataSet.setFeatureValue(1,0,2);
+        dataSet.setFeatureValue(2,0,Double.NaN);
+        dataSet.setFeatureValue(3,0,5);
+        dataSet.setFeatureValue(4,0,Double.NaN);
+        double[] labels = {1,2,3,3,1,4};
+        double[] probs = {1,1,1,1,1,1};
+        RegTreeConfig regTreeConfig = new RegTreeConfig();
+        regTreeConfig.setNumSplitIntervals(10);
+        Splitter.GlobalStats globalStats = new Splitter.GlobalStats(labels,probs);
+        System.out.println(IntervalSplitter.split(regTreeConfig, dataSet, labels, probs, 0,globalStats));
+        FeatureBins featureBins = FeatureBins.build(dataSet,10,false);
+        Histogram histogram = Histogram.build(featureBins,labels,probs,false);
+        System.out.println(HistogramSplitter.split(regTreeConfig, histogram, 0));
+    }
+
+    /**
+     * histogram obtained by subtraction should match the one built directly
+     */
+    private static void test3(){
+        int numData = 1000;
+        int numFeatures = 20;
+        Random random = new Random(0);
+        SparseDataSet dataSet = new SparseDataSet(numData,numFeatures,false);
+        double[] labels = new double[numData];
+        double[] parentProbs = new double[numData];
+        double[] leftProbs = new double[numData];
+        double[] rightProbs = new double[numData];
+        for (int i=0;i<numData;i++){
+            for (int j=0;j<numFeatures;j++){
+                if (random.nextDouble()<0.3){
+                    dataSet.setFeatureValue(i,j,random.nextGaussian());
+                }
+            }
+            labels[i] = random.nextGaussian();
+            parentProbs[i] = 1;
+            if (random.nextBoolean()){
+                leftProbs[i] = 1;
+            } else {
+                rightProbs[i] = 1;
+            }
+        }
+        FeatureBins featureBins = FeatureBins.build(dataSet,50,true);
+        Histogram parent = Histogram.build(featureBins,labels,parentProbs,true);
+        Histogram left = Histogram.build(featureBins,labels,leftProbs,true);
+        Histogram right = Histogram.build(featureBins,labels,rightProbs,true);
+        Histogram subtracted = Histogram.subtract(parent,left);
+        double maxDiff = 0;
+        for (int j=0;j<numFeatures;j++){
+            for (int b=0;b<=featureBins.getNumBins(j);b++){
+                maxDiff = Math.max(maxDiff,Math.abs(subtracted.getSum(j,b)-right.getSum(j,b)));
+                maxDiff = Math.max(maxDiff,Math.abs(subtracted.getCount(j,b)-right.getCount(j,b)));
+            }
+        }
+        System.out.println("max difference = "+maxDiff);
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setNumSplitIntervals(50);
+        System.out.println(HistogramSplitter.split(regTreeConfig,right));
+        System.out.println(HistogramSplitter.split(regTreeConfig,subtracted));
+    }
+}
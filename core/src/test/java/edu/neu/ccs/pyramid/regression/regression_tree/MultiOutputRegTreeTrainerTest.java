@@ -0,0 +1,76 @@
+package edu.neu.ccs.pyramid.regression.regression_tree;
+
+import edu.neu.ccs.pyramid.dataset.SparseDataSet;
+
+import java.util.Random;
+
+public class MultiOutputRegTreeTrainerTest {
+    private static int numData = 2000;
+    private static int numFeatures = 20;
+    private static int numOutputs = 4;
+    private static SparseDataSet dataSet;
+    private static double[][] labels;
+
+    public static void main(String[] args) {
+        generate();
+        test1();
+        test2();
+    }
+
+    /**
+     * output l depends on feature l
+     */
+    private static void generate(){
+        Random random = new Random(1);
+        dataSet = new SparseDataSet(numData,numFeatures,false);
+        labels = new double[numOutputs][numData];
+        for (int i=0;i<numData;i++){
+            for (int j=0;j<numFeatures;j++){
+                if (random.nextDouble()<0.5){
+                    dataSet.setFeatureValue(i,j,random.nextGaussian());
+                }
+            }
+            for (int l=0;l<numOutputs;l++){
+                double sign = dataSet.getRow(i).get(l)>0.3 ? 1 : -1;
+                labels[l][i] = sign + 0.1*random.nextGaussian();
+            }
+        }
+    }
+
+    /**
+     * with one output, the tree should be the same as the one from RegTreeTrainer
+     */
+    private static void test1(){
+        RegTreeConfig regTreeConfig = new RegTreeConfig()
+                .setMaxNumLeaves(8)
+                .setNumSplitIntervals(50)
+                .setUseHistogram(true);
+        RegressionTree multiOutputTree = MultiOutputRegTreeTrainer.fit(regTreeConfig,dataSet,new double[][]{labels[0]})[0];
+        RegressionTree tree = RegTreeTrainer.fit(regTreeConfig,dataSet,labels[0]);
+        double maxDiff = 0;
+        for (int i=0;i<numData;i++){
+            double diff = Math.abs(multiOutputTree.predict(dataSet.getRow(i))-tree.predict(dataSet.getRow(i)));
+            maxDiff = Math.max(maxDiff,diff);
+        }
+        System.out.println("max difference = "+maxDiff);
+    }
+
+    /**
+     * all outputs share the structure; the splits should cover the relevant features
+     */
+    private static void test2(){
+        RegTreeConfig regTreeConfig = new RegTreeConfig()
+                .setMaxNumLeaves(16)
+                .setNumSplitIntervals(50)
+                .setUseHistogram(true);
+        RegressionTree[] trees = MultiOutputRegTreeTrainer.fit(regTreeConfig,dataSet,labels);
+        for (int l=0;l<numOutputs;l++){
+            double mse = 0;
+            for (int i=0;i<numData;i++){
+                double diff = trees[l].predict(dataSet.getRow(i)) - labels[l][i];
+                mse += diff*diff/numData;
+            }
+            System.out.println("output "+l+": mse = "+mse+", features = "+trees[l].getFeatureIndices());
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package edu.neu.ccs.pyramid.regression.regression_tree;
 
+import edu.neu.ccs.pyramid.dataset.SparseDataSet;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Vector;
 
+import java.util.Random;
+
 public class RegressionTreeTest {
 
     public static void main(String[] args) {
@@ -11,6 +14,8 @@ public class RegressionTreeTest {
 //        test3();
 //        test4();
         test5();
+        test6();
+        test7();
     }
 
     private static void test1(){
@@ -280,4 +285,77 @@ public class RegressionTreeTest {
         vector.set(10,0.6);
         System.out.println(tree.predict(vector));
     }
-}
\ No newline at end of file
+
+    /**
+     * leaves kept from training should give the same scores as prediction, with missing values and 0 weights
+     */
+    private static void test6(){
+        int numData = 1000;
+        Random random = new Random(0);
+        SparseDataSet dataSet = new SparseDataSet(numData,5,true);
+        double[] labels = new double[numData];
+        double[] weights = new double[numData];
+        for (int i=0;i<numData;i++){
+            for (int j=0;j<5;j++){
+                double u = random.nextDouble();
+                if (u<0.1){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                } else if (u<0.6){
+                    dataSet.setFeatureValue(i,j,random.nextGaussian());
+                }
+            }
+            labels[i] = random.nextGaussian();
+            weights[i] = random.nextDouble()<0.3 ? 0 : 1;
+        }
+        RegTreeConfig regTreeConfig = new RegTreeConfig().setMaxNumLeaves(10).setUseRowPartition(true);
+        RegressionTree tree = RegTreeTrainer.fit(regTreeConfig,dataSet,labels,weights,new AverageOutputCalculator());
+        double maxDiff = 0;
+        for (int i=0;i<numData;i++){
+            double diff = Math.abs(tree.predictTrainingDataPoint(dataSet,i)-tree.predict(dataSet.getRow(i)));
+            maxDiff = Math.max(maxDiff,diff);
+        }
+        System.out.println("max difference = "+maxDiff);
+    }
+
+    /**
+     * the row partition trainer, which only visits the rows of each node, should grow the same tree as the dense trainer,
+     * with missing values and fractional weights, with and without histograms
+     */
+    private static void test7(){
+        int numData = 5000;
+        int numFeatures = 20;
+        Random random = new Random(1);
+        SparseDataSet dataSet = new SparseDataSet(numData,numFeatures,true);
+        double[] labels = new double[numData];
+        double[] weights = new double[numData];
+        for (int i=0;i<numData;i++){
+            for (int j=0;j<numFeatures;j++){
+                double u = random.nextDouble();
+                if (u<0.05){
+                    dataSet.setFeatureValue(i,j,Double.NaN);
+                } else if (u<0.3){
+                    dataSet.setFeatureValue(i,j,random.nextGaussian());
+                }
+            }
+            labels[i] = random.nextGaussian();
+            if (dataSet.getRow(i).get(3)>0){
+                labels[i] += 2;
+            }
+            double u = random.nextDouble();
+            weights[i] = u<0.2 ? 0 : (u<0.4 ? 0.5 : 1);
+        }
+        for (boolean useHistogram: new boolean[]{false,true}){
+            RegTreeConfig denseConfig = new RegTreeConfig().setMaxNumLeaves(10).setUseHistogram(useHistogram);
+            RegressionTree denseTree = RegTreeTrainer.fit(denseConfig,dataSet,labels,weights,new AverageOutputCalculator());
+            RegTreeConfig partitionConfig = new RegTreeConfig().setMaxNumLeaves(10).setUseHistogram(useHistogram)
+                    .setUseRowPartition(true);
+            RegressionTree partitionTree = RegTreeTrainer.fit(partitionConfig,dataSet,labels,weights,new AverageOutputCalculator());
+            double maxDiff = 0;
+            for (int i=0;i<numData;i++){
+                double diff = Math.abs(denseTree.predict(dataSet.getRow(i))-partitionTree.predict(dataSet.getRow(i)));
+                maxDiff = Math.max(maxDiff,diff);
+            }
+            System.out.println("histogram = "+useHistogram+", max difference between dense and row partition trees = "+maxDiff);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package edu.neu.ccs.pyramid.util;
+
+import edu.neu.ccs.pyramid.classification.lkboost.LKBoost;
+import edu.neu.ccs.pyramid.classification.logistic_regression.LogisticRegression;
+import edu.neu.ccs.pyramid.feature.Feature;
+import edu.neu.ccs.pyramid.feature.FeatureList;
+import edu.neu.ccs.pyramid.regression.ConstantRegressor;
+import edu.neu.ccs.pyramid.regression.regression_tree.RegressionTree;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.RandomAccessSparseVector;
+import org.apache.mahout.math.Vector;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ModelFormatTest {
+    public static void main(String[] args) throws Exception{
+        test1();
+        test2();
+    }
+
+    /**
+     * logistic regression, loaded and mapped
+     */
+    static void test1() throws Exception{
+        int numFeatures = 1000;
+        Random random = new Random(0);
+        Vector weights = new DenseVector((numFeatures+1)*3);
+        for (int i=0;i<weights.size();i++){
+            weights.set(i,random.nextGaussian());
+        }
+        LogisticRegression logisticRegression = new LogisticRegression(3,numFeatures,weights);
+        File file = File.createTempFile("model",".bin");
+        file.deleteOnExit();
+        ModelFormat.save(logisticRegression,file);
+        LogisticRegression loaded = (LogisticRegression) ModelFormat.load(file);
+        LogisticRegression mapped = (LogisticRegression) ModelFormat.map(file);
+        Vector vector = new RandomAccessSparseVector(numFeatures);
+        for (int j=0;j<20;j++){
+            vector.set(random.nextInt(numFeatures),random.nextDouble());
+        }
+        System.out.println(Arrays.toString(logisticRegression.predictClassProbs(vector)));
+        System.out.println(Arrays.toString(loaded.predictClassProbs(vector)));
+        System.out.println(Arrays.toString(mapped.predictClassProbs(vector)));
+    }
+
+    /**
+     * boosting with a prior and stumps; loaded trees should get the feature list of the model, used by toString
+     */
+    static void test2() throws Exception{
+        FeatureList featureList = new FeatureList();
+        for (int j=0;j<4;j++){
+            Feature feature = new Feature();
+            feature.setName("feature"+j);
+            featureList.add(feature);
+        }
+        LKBoost lkBoost = new LKBoost(2);
+        for (int k=0;k<2;k++){
+            lkBoost.getEnsemble(k).add(new ConstantRegressor(0.1*k));
+            lkBoost.getEnsemble(k).add(RegressionTree.newStump(k,0.5,-1,1));
+            lkBoost.getEnsemble(k).add(RegressionTree.newStump(3,0.2,0.3,-0.3));
+        }
+        lkBoost.setFeatureList(featureList);
+        File file = File.createTempFile("model",".bin");
+        file.deleteOnExit();
+        ModelFormat.save(lkBoost,file);
+        LKBoost loaded = ModelFormat.loadLKBoost(file.getAbsolutePath());
+        Vector vector = new DenseVector(new double[]{0.7,0.1,0,0.4});
+        System.out.println(Arrays.toString(lkBoost.predictClassScores(vector)));
+        System.out.println(Arrays.toString(loaded.predictClassScores(vector)));
+        System.out.println(loaded);
+    }
+}